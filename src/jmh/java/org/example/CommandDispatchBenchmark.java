@@ -0,0 +1,154 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сравнивает определение команды по сообщению: прежний разбор MessageHandler
+ * (split по регулярному выражению, matches("\\d+"), цепочка equals и switch, затем switch кнопок TelegramBot)
+ * и таблицу команд CommandRegistry. База данных не используется, измеряется только разбор.
+ * Для оценки выделения памяти запускать с -Pjmh -Djmh.args="CommandDispatch -prof gc".
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlog.level=WARN")
+public class CommandDispatchBenchmark {
+    private static final String[] MESSAGES = {
+            "/tasks",
+            "/add Купить молоко",
+            "📝 Показать список задач",
+            "✔ Выполнено",
+            "3",
+            "/expand",
+            "/add_subtask",
+            "Окончить расширение",
+            "/done Купить молоко",
+            "просто текст сообщения",
+    };
+
+    private static final BotResponse RESPONSE = new BotResponse("ok");
+
+    private CommandRegistry registry;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        CommandRegistry.Builder builder = CommandRegistry.builder();
+        String[][] commands = {
+                {"/start"}, {"/help", "Помощь"}, {"/add", "➕ Добавить задачу"},
+                {"/tasks", "📝 Показать список задач"}, {"/done", "✔ Выполнено"},
+                {"/dTask", "✅ Список выполненных задач"}, {"/delete", "✘ Удалить"},
+                {"/exit", "Выйти из аккаунта"}, {"/export", "Экспорт"}, {"/import", "Импорт"},
+                {"/expand", "Расширить задачу"}, {"/add_subtask", "➕ Добавить подзадачу"},
+                {"/delete_subtask", "✘ Удалить подзадачу"}, {"/edit_subtask", "Изменить подзадачу"},
+                {"/finish_expand", "Окончить расширение"}, {"/add_subtasks_with_gpt", "GPT добавление подзадач"},
+                {"/save_subtasks_from_gpt", "Сохранить"}, {"/delete_subtasks_from_gpt", "Удалить"},
+        };
+        for (String[] command : commands) {
+            builder.register(command[0], call -> RESPONSE, Arrays.copyOfRange(command, 1, command.length));
+        }
+        builder.registerAnonymous("/registration", call -> RESPONSE, "📝 Регистрация")
+                .registerAnonymous("/login", call -> RESPONSE, "Войти в аккаунт");
+        registry = builder.build();
+    }
+
+    private String nextMessage() {
+        String message = MESSAGES[next];
+        next = next + 1 == MESSAGES.length ? 0 : next + 1;
+        return message;
+    }
+
+    @Benchmark
+    public void legacy(Blackhole blackhole) {
+        String input = convertButton(nextMessage());
+        String[] parts = input.trim().split("\\s+", 2);
+        String command = parts[0];
+        String parameter = parts.length > 1 ? parts[1].trim() : "";
+        blackhole.consume(parameter);
+        if (isSubtaskCommand(command)) {
+            blackhole.consume(command);
+            return;
+        }
+        if (command.matches("\\d+")) {
+            blackhole.consume(Integer.parseInt(command));
+            return;
+        }
+        if (command.equals("/expand") || command.equals("Расширить задачу")) {
+            blackhole.consume(command);
+            return;
+        }
+        blackhole.consume(switch (command) {
+            case "/start", "/help", "/add", "/tasks", "/done", "/dTask", "/delete", "/registration", "/login",
+                 "/exit", "/export", "/import" -> RESPONSE;
+            default -> null;
+        });
+    }
+
+    @Benchmark
+    public void registry(Blackhole blackhole) {
+        String input = registry.resolveAlias(nextMessage());
+        int start = CommandRegistry.skipWhitespace(input, 0, input.length());
+        int end = CommandRegistry.trimEnd(input, start);
+        int tokenEnd = CommandRegistry.tokenEnd(input, start, end);
+        CommandRegistry.Command command = registry.find(input, start, end);
+        String parameter = "";
+        if (command == null && tokenEnd < end) {
+            command = registry.find(input, start, tokenEnd);
+            if (command != null) {
+                parameter = input.substring(CommandRegistry.skipWhitespace(input, tokenEnd, end), end);
+            }
+        }
+        blackhole.consume(parameter);
+        blackhole.consume(command);
+        blackhole.consume(command == null ? CommandRegistry.parseNumber(input, start, tokenEnd) : -1);
+    }
+
+    private static boolean isSubtaskCommand(String command) {
+        return command.equals("/add_subtask") || command.equals("/delete_subtask") ||
+                command.equals("/edit_subtask") || command.equals("/finish_expand") ||
+                command.equals("➕ Добавить подзадачу") || command.equals("✘ Удалить подзадачу") ||
+                command.equals("Изменить подзадачу") || command.equals("Окончить расширение") ||
+                command.equals("/add_subtasks_with_gpt") || command.equals("/save_subtasks_from_gpt") ||
+                command.equals("/delete_subtasks_from_gpt");
+    }
+
+    private static String convertButton(String button) {
+        return switch (button) {
+            case "➕ Добавить задачу" -> "/add";
+            case "📝 Показать список задач" -> "/tasks";
+            case "✅ Список выполненных задач" -> "/dTask";
+            case "✘ Удалить" -> "/delete";
+            case "✔ Выполнено" -> "/done";
+            case "Экспорт" -> "/export";
+            case "Импорт" -> "/import";
+            case "Помощь" -> "/help";
+            case "📝 Регистрация" -> "/registration";
+            case "Войти в аккаунт" -> "/login";
+            case "Выйти из аккаунта" -> "/exit";
+            case "Расширить задачу" -> "/expand";
+            case "➕ Добавить подзадачу" -> "/add_subtask";
+            case "✘ Удалить подзадачу" -> "/delete_subtask";
+            case "Изменить подзадачу" -> "/edit_subtask";
+            case "Окончить расширение" -> "/finish_expand";
+            case "GPT добавление подзадач" -> "/add_subtasks_with_gpt";
+            case "Сохранить" -> "/save_subtasks_from_gpt";
+            case "Удалить" -> "/delete_subtasks_from_gpt";
+            default -> button;
+        };
+    }
+}
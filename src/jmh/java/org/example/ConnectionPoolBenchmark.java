@@ -0,0 +1,174 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сравнение пула соединений с прежним открытием соединения через DriverManager на каждый запрос.
+ * Одно сообщение - те же запросы, что делает DatabaseService без кэша: поиск сессии по платформе,
+ * чтение списка задач и на каждое восьмое сообщение добавление задачи.
+ * Группа mixed изображает одновременную работу пользователей Telegram и Discord.
+ * Пример: -Pjmh -Djmh.args="ConnectionPool".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlog.level=WARN")
+public class ConnectionPoolBenchmark {
+    private static final String[] PLATFORMS = {"telegram", "discord"};
+    private static final int USERS_PER_PLATFORM = 50;
+    private static final int TASKS_PER_USER = 20;
+
+    /**
+     * Источник соединений: POOL - ConnectionPool, DRIVER_MANAGER - новое соединение на каждый запрос.
+     */
+    @Param({"POOL", "DRIVER_MANAGER"})
+    public String source;
+
+    private Path directory;
+    private String databaseUrl;
+    private ConnectionPool pool;
+
+    /**
+     * Номер очередного сообщения в потоке бенчмарка.
+     */
+    @State(Scope.Thread)
+    public static class Messages {
+        int counter;
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("connection-pool-bench");
+        databaseUrl = "jdbc:sqlite:" + directory.resolve("bench.db");
+        try (DatabaseService databaseService = new DatabaseService(databaseUrl)) {
+            for (String platform : PLATFORMS) {
+                for (int user = 0; user < USERS_PER_PLATFORM; user++) {
+                    String username = platform + "_user_" + user;
+                    databaseService.registerUser(username, "bench_password");
+                    databaseService.createSession(username, platform, String.valueOf(user));
+                    String userId = databaseService.getUserIdByPlatform(platform, String.valueOf(user));
+                    for (int task = 0; task < TASKS_PER_USER; task++) {
+                        databaseService.addTask(userId, "Задача " + task);
+                    }
+                }
+            }
+        }
+        if ("POOL".equals(source)) {
+            pool = new ConnectionPool(databaseUrl, StorageProfile.BALANCED, 4, 5000);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        if (pool != null) {
+            pool.close();
+        }
+        try (var files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(directory);
+    }
+
+    private Connection reader() throws SQLException {
+        return pool != null ? pool.getReader("bench_read") : DriverManager.getConnection(databaseUrl);
+    }
+
+    private Connection writer() throws SQLException {
+        return pool != null ? pool.getWriter("bench_write") : DriverManager.getConnection(databaseUrl);
+    }
+
+    /**
+     * Обрабатывает одно сообщение пользователя платформы.
+     */
+    private int message(String platform, Messages messages) throws SQLException {
+        int number = messages.counter++;
+        String platformId = String.valueOf(number % USERS_PER_PLATFORM);
+        String userId;
+        try (Connection conn = reader();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT user_id FROM user_sessions WHERE platform_type = ? AND platform_id = ?")) {
+            stmt.setString(1, platform);
+            stmt.setString(2, platformId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                userId = rs.getString(1);
+            }
+        }
+        if (number % 8 == 7) {
+            try (Connection conn = writer();
+                 PreparedStatement stmt = conn.prepareStatement(
+                         "INSERT OR IGNORE INTO user_tasks (user_id, task_text) VALUES (?, ?)")) {
+                stmt.setString(1, userId);
+                stmt.setString(2, "Новая задача " + Thread.currentThread().threadId() + " " + number);
+                return stmt.executeUpdate();
+            }
+        }
+        int tasks = 0;
+        try (Connection conn = reader();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT task_text FROM user_tasks WHERE user_id = ? ORDER BY id")) {
+            stmt.setString(1, userId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    tasks++;
+                }
+            }
+        }
+        return tasks;
+    }
+
+    /**
+     * Одно сообщение без конкуренции: цена получения соединения.
+     */
+    @Benchmark
+    public int single(Messages messages) throws SQLException {
+        return message("telegram", messages);
+    }
+
+    /**
+     * Пользователи Telegram в смешанной нагрузке.
+     */
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(4)
+    public int telegram(Messages messages) throws SQLException {
+        return message("telegram", messages);
+    }
+
+    /**
+     * Пользователи Discord в смешанной нагрузке.
+     */
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(4)
+    public int discord(Messages messages) throws SQLException {
+        return message("discord", messages);
+    }
+}
@@ -0,0 +1,124 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сравнивает выбор обработчика сообщения для пользователя с многошаговым диалогом:
+ * прежний опрос трех хранилищ сервисов (contains, затем get, затем switch по строковому шагу)
+ * и один поиск в ConversationEngine с выбором обработчика по enum-состоянию.
+ * Пользователи поровну распределены между входом, вводом задачи, подзадачами и отсутствием диалога.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlog.level=WARN")
+public class ConversationDispatchBenchmark {
+    private static final BotResponse RESPONSE = new BotResponse("ok");
+    private static final Duration IDLE_TTL = Duration.ofHours(1);
+    private static final Duration SWEEP_INTERVAL = Duration.ofMinutes(1);
+
+    @Param({"10000"})
+    private int users;
+
+    private String[] userIds;
+    private ConversationStateStore<String> subtaskStates;
+    private ConversationStateStore<String> operationStates;
+    private ConversationStateStore<String> authStates;
+    private ConversationEngine engine;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        subtaskStates = createStore("subtask");
+        operationStates = createStore("operation");
+        authStates = createStore("auth");
+        engine = new ConversationEngine();
+        engine.register(ConversationEngine.Flow.AUTH, (userId, input, command, conversation) ->
+                conversation.state() == ConversationEngine.State.AUTH_USERNAME ? RESPONSE : null, null);
+        engine.register(ConversationEngine.Flow.OPERATION, (userId, input, command, conversation) -> RESPONSE, null);
+        engine.register(ConversationEngine.Flow.SUBTASK, (userId, input, command, conversation) ->
+                switch (conversation.state()) {
+                    case SUBTASK_MENU, SUBTASK_ADD, SUBTASK_DELETE, SUBTASK_EDIT_SELECT, SUBTASK_EDIT_TEXT -> RESPONSE;
+                    default -> null;
+                }, null);
+
+        userIds = new String[users];
+        for (int i = 0; i < users; i++) {
+            String userId = "user" + i;
+            userIds[i] = userId;
+            switch (i % 4) {
+                case 0 -> {
+                    authStates.put(userId, "username");
+                    engine.start(userId, ConversationEngine.State.AUTH_USERNAME, "auth");
+                }
+                case 1 -> {
+                    operationStates.put(userId, "add");
+                    engine.start(userId, ConversationEngine.State.OPERATION_INPUT, "add");
+                }
+                case 2 -> {
+                    subtaskStates.put(userId, "add_subtask");
+                    engine.start(userId, ConversationEngine.State.SUBTASK_MENU, "task");
+                }
+                default -> {
+                }
+            }
+        }
+    }
+
+    private ConversationStateStore<String> createStore(String flow) {
+        return new ConversationStateStore<>(flow, null, ConversationStateBackend.inMemory(),
+                IDLE_TTL, users * 2, SWEEP_INTERVAL);
+    }
+
+    private String nextUser() {
+        String userId = userIds[next];
+        next = next + 1 == userIds.length ? 0 : next + 1;
+        return userId;
+    }
+
+    @Benchmark
+    public void legacy(Blackhole blackhole) {
+        String userId = nextUser();
+        if (subtaskStates.contains(userId)) {
+            String step = subtaskStates.get(userId);
+            blackhole.consume(switch (step) {
+                case "add_subtask", "delete_subtask", "edit_subtask" -> RESPONSE;
+                default -> null;
+            });
+            return;
+        }
+        if (operationStates.contains(userId)) {
+            blackhole.consume(operationStates.get(userId));
+            return;
+        }
+        if (authStates.contains(userId)) {
+            String step = authStates.get(userId);
+            blackhole.consume("username".equals(step) ? RESPONSE : null);
+            return;
+        }
+        blackhole.consume(userId);
+    }
+
+    @Benchmark
+    public void engine(Blackhole blackhole) {
+        String userId = nextUser();
+        ConversationEngine.Conversation conversation = engine.get(userId);
+        blackhole.consume(conversation != null ? engine.dispatch(userId, "text", null, conversation) : userId);
+    }
+}
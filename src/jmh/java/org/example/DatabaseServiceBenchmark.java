@@ -0,0 +1,204 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Бенчмарки DatabaseService: пакетный импорт, запись при разных профилях хранилища,
+ * параллельное чтение через пул соединений и чтение одновременно с записью.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(value = 1, jvmArgsAppend = "-Dlog.level=WARN")
+public class DatabaseServiceBenchmark {
+
+    /**
+     * Временная база с одним пользователем, пересоздается на каждую итерацию.
+     */
+    @State(Scope.Benchmark)
+    public static class Database {
+        @Param({"LEGACY", "DURABLE", "BALANCED"})
+        public String profile;
+
+        @Param({"1000"})
+        public int taskCount;
+
+        Path directory;
+        DatabaseService databaseService;
+        String userId;
+        final AtomicInteger counter = new AtomicInteger();
+
+        @Setup(Level.Iteration)
+        public void setUp() throws Exception {
+            System.setProperty("db.profile", profile);
+            directory = Files.createTempDirectory("database-service-bench");
+            databaseService = new DatabaseService("jdbc:sqlite:" + directory.resolve("bench.db"));
+            databaseService.registerUser("bench_user", "bench_password");
+            databaseService.createSession("bench_user", "bench", "1");
+            userId = databaseService.getUserIdByPlatform("bench", "1");
+            List<String> tasks = new ArrayList<>(taskCount);
+            for (int i = 0; i < taskCount; i++) {
+                tasks.add("Задача " + i);
+            }
+            databaseService.importTasks(userId, tasks, List.of());
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() throws IOException {
+            databaseService.close();
+            try (var files = Files.list(directory)) {
+                for (Path file : files.toList()) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    /**
+     * Добавление одной задачи: стоимость фиксации транзакции при выбранном профиле.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    public void addTask(Database database) {
+        database.databaseService.addTask(database.userId, "Новая задача " + database.counter.incrementAndGet());
+    }
+
+    /**
+     * Чтение без кэша из восьми потоков: пропускная способность пула соединений для чтения.
+     */
+    @Benchmark
+    @Threads(8)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    public Integer pooledReads(Database database) throws SQLException {
+        int task = Math.floorMod(database.counter.incrementAndGet(), database.taskCount);
+        return database.databaseService.getTaskId(database.userId, "Задача " + task);
+    }
+
+    /**
+     * Ошибки чтения в смешанной нагрузке: без WAL читатель может не дождаться блокировки,
+     * пока писатель фиксирует транзакцию.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class ReadErrors {
+        public long readErrors;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            readErrors = 0;
+        }
+    }
+
+    /**
+     * Смешанная нагрузка: один поток пишет, четыре читают без кэша. Показывает, как профиль
+     * хранилища влияет на чтение, пока идут фиксации транзакций, и на запись под чтением.
+     */
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(1)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    public void writer(Database database) {
+        database.databaseService.addTask(database.userId, "Новая задача " + database.counter.incrementAndGet());
+    }
+
+    /**
+     * Читающие потоки смешанной нагрузки.
+     */
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(4)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    public Integer reader(Database database, ReadErrors errors) {
+        int task = Math.floorMod(database.counter.incrementAndGet(), database.taskCount);
+        try {
+            return database.databaseService.getTaskId(database.userId, "Задача " + task);
+        } catch (SQLException e) {
+            errors.readErrors++;
+            return null;
+        }
+    }
+
+    /**
+     * База для пакетного импорта: новый пользователь на каждый вызов.
+     */
+    @State(Scope.Benchmark)
+    public static class Import {
+        @Param({"10000", "100000"})
+        public int importSize;
+
+        @Param({"BALANCED"})
+        public String profile;
+
+        Path directory;
+        DatabaseService databaseService;
+        List<String> tasks;
+        int user;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            System.setProperty("db.profile", profile);
+            tasks = new ArrayList<>(importSize);
+            for (int i = 0; i < importSize; i++) {
+                tasks.add("Импортированная задача " + i);
+            }
+            directory = Files.createTempDirectory("database-import-bench");
+            databaseService = new DatabaseService("jdbc:sqlite:" + directory.resolve("bench.db"));
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            databaseService.close();
+            try (var files = Files.list(directory)) {
+                for (Path file : files.toList()) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    /**
+     * Импорт importSize текущих задач одной транзакцией с пакетной вставкой.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2, batchSize = 1)
+    @Measurement(iterations = 5, batchSize = 1)
+    @BenchmarkMode(Mode.SingleShotTime)
+    public DatabaseService.ImportResult bulkImport(Import state) throws SQLException {
+        String userId = String.valueOf(++state.user);
+        return state.databaseService.importTasks(userId, state.tasks, List.of());
+    }
+}
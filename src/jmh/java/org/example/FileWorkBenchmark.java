@@ -0,0 +1,70 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарки экспорта и импорта JSON файла задач без базы данных.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlog.level=WARN")
+public class FileWorkBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int taskCount;
+
+    private final FileWork fileWork = new FileWork(Long.MAX_VALUE, Integer.MAX_VALUE, false);
+    private List<String> currentTasks;
+    private List<String> completedTasks;
+    private byte[] exported;
+
+    @Setup
+    public void setUp() throws IOException {
+        currentTasks = new ArrayList<>(taskCount);
+        completedTasks = new ArrayList<>(taskCount / 4);
+        for (int i = 0; i < taskCount; i++) {
+            currentTasks.add("Задача номер " + i + " с \"кавычками\" и текстом средней длины");
+        }
+        for (int i = 0; i < taskCount / 4; i++) {
+            completedTasks.add("Выполненная задача " + i);
+        }
+        exported = fileWork.export(currentTasks, completedTasks);
+    }
+
+    /**
+     * Экспорт списков задач в JSON в памяти.
+     */
+    @Benchmark
+    public byte[] export() throws IOException {
+        return fileWork.export(currentTasks, completedTasks);
+    }
+
+    /**
+     * Потоковый импорт: задачи передаются получателю по одной.
+     */
+    @Benchmark
+    public int importStream(Blackhole blackhole) throws IOException, SQLException {
+        return fileWork.importStream(new ByteArrayInputStream(exported), blackhole::consume, blackhole::consume);
+    }
+}
@@ -0,0 +1,124 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарки обработки команд MessageHandler.processUserInput на временной базе SQLite.
+ * У пользователя заранее создано taskCount задач, база пересоздается на каждую итерацию.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlog.level=WARN")
+public class MessageHandlerBenchmark {
+    private static final String PLATFORM_TYPE = "bench";
+    private static final String USER_ID = "bench_user";
+
+    @Param({"10", "1000"})
+    public int taskCount;
+
+    @Param({"BALANCED"})
+    public String profile;
+
+    private Path directory;
+    private DatabaseService databaseService;
+    private MessageHandler messageHandler;
+    private long counter;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws Exception {
+        System.setProperty("db.profile", profile);
+        directory = Files.createTempDirectory("message-handler-bench");
+        databaseService = new DatabaseService("jdbc:sqlite:" + directory.resolve("bench.db"));
+        messageHandler = new MessageHandler(databaseService);
+
+        messageHandler.processUserInput("/registration", USER_ID, PLATFORM_TYPE);
+        messageHandler.processUserInput("bench_login", USER_ID, PLATFORM_TYPE);
+        messageHandler.processUserInput("bench_password", USER_ID, PLATFORM_TYPE).getFollowUp().join();
+        for (int i = 0; i < taskCount; i++) {
+            messageHandler.processUserInput("/add Задача " + i, USER_ID, PLATFORM_TYPE);
+        }
+        counter = 0;
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        databaseService.close();
+        try (var files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(directory);
+    }
+
+    /**
+     * Добавление новой задачи: запись и инвалидация кэшей пользователя.
+     */
+    @Benchmark
+    public BotResponse addTask() {
+        return messageHandler.processUserInput("/add Новая задача " + counter++, USER_ID, PLATFORM_TYPE);
+    }
+
+    /**
+     * Показ списка задач. После первого вызова дерево задач берется из кэша.
+     */
+    @Benchmark
+    public BotResponse showTasks() {
+        return messageHandler.processUserInput("/tasks", USER_ID, PLATFORM_TYPE);
+    }
+
+    /**
+     * Добавление задачи и отметка ее выполненной: две записи и две инвалидации.
+     */
+    @Benchmark
+    public BotResponse addAndDone() {
+        String task = "Выполнить " + counter++;
+        messageHandler.processUserInput("/add " + task, USER_ID, PLATFORM_TYPE);
+        return messageHandler.processUserInput("/done " + task, USER_ID, PLATFORM_TYPE);
+    }
+
+    /**
+     * Вход в режим расширения первой задачи и выход из него.
+     */
+    @Benchmark
+    public BotResponse expand() {
+        messageHandler.processUserInput("/expand", USER_ID, PLATFORM_TYPE);
+        messageHandler.processUserInput("1", USER_ID, PLATFORM_TYPE);
+        return messageHandler.processUserInput("/finish_expand", USER_ID, PLATFORM_TYPE);
+    }
+
+    /**
+     * Полный цикл работы с подзадачей: расширение, добавление, удаление, выход.
+     */
+    @Benchmark
+    public BotResponse subtaskFlow() {
+        String subtask = "Подзадача " + counter++;
+        messageHandler.processUserInput("/expand", USER_ID, PLATFORM_TYPE);
+        messageHandler.processUserInput("1", USER_ID, PLATFORM_TYPE);
+        messageHandler.processUserInput("/add_subtask", USER_ID, PLATFORM_TYPE);
+        messageHandler.processUserInput(subtask, USER_ID, PLATFORM_TYPE);
+        messageHandler.processUserInput("/delete_subtask", USER_ID, PLATFORM_TYPE);
+        messageHandler.processUserInput(subtask, USER_ID, PLATFORM_TYPE);
+        return messageHandler.processUserInput("/finish_expand", USER_ID, PLATFORM_TYPE);
+    }
+}
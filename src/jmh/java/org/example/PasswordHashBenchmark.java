@@ -0,0 +1,63 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пропускная способность входа при разной стоимости PBKDF2: сколько проверок пароля в секунду
+ * выдерживает пул PasswordHasher. Четыре потока бенчмарка изображают одновременные входы,
+ * размер пула задается параметром poolThreads, так что видно и цену одного хеша, и то,
+ * что пул ограничивает долю процессора, которую заберут входы.
+ * Пример: -Pjmh -Djmh.args="PasswordHash -p iterations=210000".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(4)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlog.level=WARN")
+public class PasswordHashBenchmark {
+    @Param({"10000", "100000", "210000", "600000"})
+    private int iterations;
+
+    @Param({"1", "2"})
+    private int poolThreads;
+
+    private PasswordHasher hasher;
+    private String storedHash;
+
+    @Setup
+    public void setUp() {
+        hasher = new PasswordHasher(iterations, poolThreads, 64);
+        storedHash = hasher.hash("bench_password");
+    }
+
+    @TearDown
+    public void tearDown() {
+        hasher.close();
+    }
+
+    @Benchmark
+    public boolean login() {
+        return hasher.verify("bench_password", storedHash);
+    }
+
+    @Benchmark
+    public String register() {
+        return hasher.hash("bench_password");
+    }
+}
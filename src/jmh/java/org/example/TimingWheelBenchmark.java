@@ -0,0 +1,76 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Перенос напоминания пользователем (отмена и новая постановка) при заполненном планировщике:
+ * колесо таймеров против очереди с приоритетом, в которой отмена - поиск по всей очереди.
+ * Пример: -Pjmh -Djmh.args="TimingWheel -p pending=100000".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlog.level=WARN")
+public class TimingWheelBenchmark {
+    private static final long WINDOW_MILLIS = 24 * 3_600_000L;
+
+    @Param({"1000", "100000"})
+    private int pending;
+
+    private TimingWheel<long[]> wheel;
+    private TimingWheel.Timeout<long[]>[] timeouts;
+    private PriorityQueue<long[]> queue;
+    private long[][] entries;
+    private int next;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        wheel = new TimingWheel<>(1000, 6, 4, 0);
+        timeouts = new TimingWheel.Timeout[pending];
+        queue = new PriorityQueue<>(Comparator.comparingLong(entry -> entry[0]));
+        entries = new long[pending][];
+        for (int i = 0; i < pending; i++) {
+            long[] entry = {random.nextLong(1, WINDOW_MILLIS)};
+            entries[i] = entry;
+            timeouts[i] = wheel.schedule(entry, entry[0]);
+            queue.add(entry);
+        }
+    }
+
+    @Benchmark
+    public Object rescheduleWheel() {
+        int i = next++ % pending;
+        wheel.cancel(timeouts[i]);
+        long[] entry = {ThreadLocalRandom.current().nextLong(1, WINDOW_MILLIS)};
+        timeouts[i] = wheel.schedule(entry, entry[0]);
+        return timeouts[i];
+    }
+
+    @Benchmark
+    public Object reschedulePriorityQueue() {
+        int i = next++ % pending;
+        queue.remove(entries[i]);
+        entries[i] = new long[]{ThreadLocalRandom.current().nextLong(1, WINDOW_MILLIS)};
+        queue.add(entries[i]);
+        return entries[i];
+    }
+}
@@ -0,0 +1,316 @@
+package org.example;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Генератор нагрузки: виртуальные пользователи Telegram и Discord выполняют типичные сценарии
+ * напрямую через MessageHandler.processUserInput, как это делают боты.
+ * <p>
+ * Каждый пользователь работает в своем виртуальном потоке и отправляет сообщения строго
+ * по очереди: регистрация, выход, вход, затем в цикле добавление задач, просмотр списка,
+ * отметка выполненной, расширение задачи с подзадачей и экспорт.
+ * В конце печатается пропускная способность, перцентили задержек и доля ошибок по командам.
+ * <p>
+ * Пороги (--max-p99-ms, --max-p999-ms, --max-error-rate, --min-throughput) превращают запуск
+ * в проверку регрессии: при нарушении любого из них программа завершается с кодом 2.
+ * <p>
+ * Параметры: --users, --duration-seconds, --ramp-up-seconds, --think-ms, --db, --report и пороги.
+ */
+public class LoadGenerator {
+    private static final String[] PLATFORMS = {"telegram", "discord"};
+
+    private final Options options;
+    private final MessageHandler messageHandler;
+    private final Map<String, CommandStats> stats = new ConcurrentHashMap<>();
+    private final CommandStats total = new CommandStats();
+
+    /**
+     * Параметры запуска.
+     */
+    record Options(int users, int durationSeconds, int rampUpSeconds, long thinkMillis, String databaseUrl,
+                   Path report, double maxP99Millis, double maxP999Millis, double maxErrorRate,
+                   double minThroughput) {
+
+        static Options parse(String[] args) {
+            Map<String, String> values = new LinkedHashMap<>();
+            for (int i = 0; i < args.length; i++) {
+                if (!args[i].startsWith("--") || i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Ожидался параметр --имя значение: " + args[i]);
+                }
+                values.put(args[i].substring(2), args[++i]);
+            }
+            String report = values.remove("report");
+            Options options = new Options(
+                    Integer.parseInt(values.getOrDefault("users", "1000")),
+                    Integer.parseInt(values.getOrDefault("duration-seconds", "30")),
+                    Integer.parseInt(values.getOrDefault("ramp-up-seconds", "5")),
+                    Long.parseLong(values.getOrDefault("think-ms", "50")),
+                    values.getOrDefault("db", ""),
+                    report == null || report.isBlank() ? null : Path.of(report),
+                    Double.parseDouble(values.getOrDefault("max-p99-ms", "0")),
+                    Double.parseDouble(values.getOrDefault("max-p999-ms", "0")),
+                    Double.parseDouble(values.getOrDefault("max-error-rate", "-1")),
+                    Double.parseDouble(values.getOrDefault("min-throughput", "0")));
+            values.keySet().removeAll(List.of("users", "duration-seconds", "ramp-up-seconds", "think-ms", "db",
+                    "max-p99-ms", "max-p999-ms", "max-error-rate", "min-throughput"));
+            if (!values.isEmpty()) {
+                throw new IllegalArgumentException("Неизвестные параметры: " + values.keySet());
+            }
+            return options;
+        }
+    }
+
+    /**
+     * Задержки и ошибки одной команды.
+     */
+    static final class CommandStats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder errors = new LongAdder();
+    }
+
+    LoadGenerator(Options options, MessageHandler messageHandler) {
+        this.options = options;
+        this.messageHandler = messageHandler;
+    }
+
+    /**
+     * Запускает нагрузку, печатает отчет и возвращает код завершения.
+     */
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        Path directory = null;
+        String databaseUrl = options.databaseUrl();
+        if (databaseUrl.isEmpty()) {
+            directory = Files.createTempDirectory("bot-load");
+            databaseUrl = "jdbc:sqlite:" + directory.resolve("load.db");
+        }
+        int exitCode;
+        try (DatabaseService databaseService = new DatabaseService(databaseUrl)) {
+            LoadGenerator generator = new LoadGenerator(options, new MessageHandler(databaseService));
+            long elapsedNanos = generator.run();
+            exitCode = generator.report(elapsedNanos);
+        } finally {
+            if (directory != null) {
+                deleteDirectory(directory);
+            }
+        }
+        BotLogger.get().close();
+        System.exit(exitCode);
+    }
+
+    /**
+     * Запускает виртуальных пользователей и ждет окончания времени нагрузки.
+     *
+     * @return фактическая длительность в наносекундах
+     */
+    long run() throws InterruptedException {
+        long startedAt = System.nanoTime();
+        long deadline = startedAt + TimeUnit.SECONDS.toNanos(options.durationSeconds());
+        long rampUpNanos = TimeUnit.SECONDS.toNanos(options.rampUpSeconds());
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < options.users(); i++) {
+                int user = i;
+                long startDelay = options.users() > 1 ? rampUpNanos * i / (options.users() - 1) : 0;
+                executor.execute(() -> runUser(user, startedAt + startDelay, deadline));
+            }
+        }
+        return System.nanoTime() - startedAt;
+    }
+
+    private void runUser(int user, long startAt, long deadline) {
+        long delay = startAt - System.nanoTime();
+        if (delay > 0) {
+            sleep(TimeUnit.NANOSECONDS.toMillis(delay));
+        }
+        String platform = PLATFORMS[user % PLATFORMS.length];
+        String userId = platform + "-" + user;
+        String username = "load_user_" + user;
+
+        send(userId, platform, "/registration");
+        send(userId, platform, username);
+        send(userId, platform, "load_password");
+        send(userId, platform, "/exit");
+        send(userId, platform, "/login");
+        send(userId, platform, username);
+        send(userId, platform, "load_password");
+
+        int round = 0;
+        while (System.nanoTime() < deadline) {
+            String task = "Задача " + round;
+            send(userId, platform, "/add " + task);
+            send(userId, platform, "/add " + task + " для выполнения");
+            send(userId, platform, "/tasks");
+            send(userId, platform, "/done " + task + " для выполнения");
+            send(userId, platform, "/expand");
+            send(userId, platform, "1");
+            send(userId, platform, "/add_subtask");
+            send(userId, platform, "Подзадача " + round);
+            send(userId, platform, "/finish_expand");
+            send(userId, platform, "/dTask");
+            if (round % 10 == 0) {
+                send(userId, platform, "/export list_" + round);
+            }
+            round++;
+        }
+    }
+
+    /**
+     * Отправляет одно сообщение и учитывает его задержку и результат.
+     */
+    private void send(String userId, String platform, String input) {
+        long startedAt = System.nanoTime();
+        boolean failed;
+        try {
+            BotResponse response = messageHandler.processUserInput(input, userId, platform);
+            if (response.getFollowUp() != null) {
+                response = response.getFollowUp().join();
+            }
+            failed = isError(input, response);
+        } catch (RuntimeException e) {
+            failed = true;
+        }
+        long duration = System.nanoTime() - startedAt;
+        CommandStats command = stats.computeIfAbsent(commandName(input), name -> new CommandStats());
+        command.latency.record(duration);
+        total.latency.record(duration);
+        if (failed) {
+            command.errors.increment();
+            total.errors.increment();
+        }
+        if (options.thinkMillis() > 0) {
+            sleep((long) (-options.thinkMillis() * Math.log(1 - ThreadLocalRandom.current().nextDouble())));
+        }
+    }
+
+    private static boolean isError(String input, BotResponse response) {
+        String message = response.getMessage();
+        if (message == null) {
+            return true;
+        }
+        if (input.startsWith("/export") && !response.hasFile()) {
+            return true;
+        }
+        return message.startsWith("Ошибка") || message.startsWith("Произошла ошибка")
+                || message.startsWith("Неизвестная команда");
+    }
+
+    /**
+     * Название команды для отчета: первое слово команды или "text" для ответов на шаги.
+     */
+    private static String commandName(String input) {
+        if (!input.startsWith("/")) {
+            return "text";
+        }
+        int space = input.indexOf(' ');
+        return space < 0 ? input : input.substring(0, space);
+    }
+
+    /**
+     * Печатает отчет, сохраняет его в JSON при необходимости и проверяет пороги.
+     *
+     * @return 0 если пороги соблюдены, 2 если нет
+     */
+    int report(long elapsedNanos) throws IOException {
+        double seconds = elapsedNanos / 1e9;
+        LatencyHistogram.Snapshot overall = total.latency.snapshot();
+        double throughput = overall.count() / seconds;
+        double errorRate = overall.count() == 0 ? 0 : (double) total.errors.sum() / overall.count();
+
+        System.out.printf(Locale.ROOT, "Пользователей: %d, длительность: %.1f с, сообщений: %d%n",
+                options.users(), seconds, overall.count());
+        System.out.printf(Locale.ROOT, "%-18s %10s %8s %10s %10s %10s %10s%n",
+                "command", "count", "errors", "p50_ms", "p99_ms", "p999_ms", "max_ms");
+        ObjectMapper objectMapper = new ObjectMapper();
+        ObjectNode json = objectMapper.createObjectNode();
+        ObjectNode commands = json.putObject("commands");
+        List<String> names = new ArrayList<>(stats.keySet());
+        names.sort(null);
+        for (String name : names) {
+            CommandStats command = stats.get(name);
+            printRow(name, command.latency.snapshot(), command.errors.sum(), commands.putObject(name));
+        }
+        printRow("total", overall, total.errors.sum(), json.putObject("total"));
+        System.out.printf(Locale.ROOT, "Пропускная способность: %.1f сообщений/с, доля ошибок: %.4f%n",
+                throughput, errorRate);
+
+        json.put("users", options.users());
+        json.put("durationSeconds", seconds);
+        json.put("throughput", throughput);
+        json.put("errorRate", errorRate);
+
+        List<String> violations = new ArrayList<>();
+        double p99 = overall.valueAt(0.99) / 1e6;
+        double p999 = overall.valueAt(0.999) / 1e6;
+        if (options.maxP99Millis() > 0 && p99 > options.maxP99Millis()) {
+            violations.add(String.format(Locale.ROOT, "p99 %.2f мс > %.2f мс", p99, options.maxP99Millis()));
+        }
+        if (options.maxP999Millis() > 0 && p999 > options.maxP999Millis()) {
+            violations.add(String.format(Locale.ROOT, "p999 %.2f мс > %.2f мс", p999, options.maxP999Millis()));
+        }
+        if (options.maxErrorRate() >= 0 && errorRate > options.maxErrorRate()) {
+            violations.add(String.format(Locale.ROOT, "доля ошибок %.4f > %.4f", errorRate, options.maxErrorRate()));
+        }
+        if (options.minThroughput() > 0 && throughput < options.minThroughput()) {
+            violations.add(String.format(Locale.ROOT, "пропускная способность %.1f < %.1f",
+                    throughput, options.minThroughput()));
+        }
+        json.putPOJO("violations", violations);
+        if (options.report() != null) {
+            objectMapper.writerWithDefaultPrettyPrinter().writeValue(options.report().toFile(), json);
+        }
+
+        if (violations.isEmpty()) {
+            return 0;
+        }
+        System.out.println("Пороги нарушены: " + String.join("; ", violations));
+        return 2;
+    }
+
+    private static void printRow(String name, LatencyHistogram.Snapshot snapshot, long errors, ObjectNode json) {
+        double p50 = snapshot.valueAt(0.5) / 1e6;
+        double p99 = snapshot.valueAt(0.99) / 1e6;
+        double p999 = snapshot.valueAt(0.999) / 1e6;
+        double max = snapshot.maxNanos() / 1e6;
+        System.out.printf(Locale.ROOT, "%-18s %10d %8d %10.2f %10.2f %10.2f %10.2f%n",
+                name, snapshot.count(), errors, p50, p99, p999, max);
+        json.put("count", snapshot.count());
+        json.put("errors", errors);
+        json.put("p50Millis", p50);
+        json.put("p99Millis", p99);
+        json.put("p999Millis", p999);
+        json.put("maxMillis", max);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (var files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(directory);
+    }
+}
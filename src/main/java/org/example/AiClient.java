@@ -0,0 +1,66 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Клиент языковой модели, разбивающей задачу на подзадачи.
+ */
+public interface AiClient {
+
+    /**
+     * Асинхронно отправляет запрос модели.
+     *
+     * @param userPrompt текст запроса пользователя
+     * @return ответ модели: подзадачи, по одной на строку
+     */
+    CompletableFuture<String> sendRequestAsync(String userPrompt);
+
+    /**
+     * Генерирует подзадачи, передавая каждую получателю, как только она готова.
+     * По умолчанию ждет полного ответа и передает его строки разом;
+     * клиенты с потоковым ответом передают строки по мере поступления.
+     *
+     * @param userPrompt текст запроса пользователя
+     * @param onSubtask  вызывается для каждой непустой строки ответа в порядке поступления
+     * @return все непустые строки ответа
+     */
+    default CompletableFuture<List<String>> streamSubtasks(String userPrompt, Consumer<String> onSubtask) {
+        return sendRequestAsync(userPrompt).thenApply(response -> splitLines(response, onSubtask));
+    }
+
+    /**
+     * Генерирует подзадачи, как {@link #streamSubtasks(String, Consumer)}, с возможностью
+     * не брать сохраненный ответ. Клиенты без кэша флаг не учитывают.
+     *
+     * @param userPrompt  текст запроса пользователя
+     * @param bypassCache true - запросить новый ответ, даже если есть сохраненный
+     * @param onSubtask   вызывается для каждой непустой строки ответа в порядке поступления
+     * @return все непустые строки ответа
+     */
+    default CompletableFuture<List<String>> streamSubtasks(String userPrompt, boolean bypassCache,
+                                                           Consumer<String> onSubtask) {
+        return streamSubtasks(userPrompt, onSubtask);
+    }
+
+    /**
+     * Разбивает ответ модели на непустые строки и передает их получателю.
+     *
+     * @param response  ответ модели
+     * @param onSubtask получатель строк
+     * @return непустые строки ответа без пробелов по краям
+     */
+    static List<String> splitLines(String response, Consumer<String> onSubtask) {
+        List<String> lines = new ArrayList<>();
+        for (String line : response.split("\\R")) {
+            String subtask = line.trim();
+            if (!subtask.isEmpty()) {
+                lines.add(subtask);
+                onSubtask.accept(subtask);
+            }
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,108 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * Настройки приложения, загружаемые из application.properties.
+ * Значения можно переопределить системными свойствами JVM (-Dключ=значение).
+ */
+public class AppConfig {
+    private static final String RESOURCE_NAME = "application.properties";
+    private static final AppConfig INSTANCE = load();
+
+    private final Properties properties;
+
+    /**
+     * Конструктор с готовым набором свойств.
+     *
+     * @param properties свойства приложения
+     */
+    public AppConfig(Properties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Возвращает настройки, загруженные из application.properties.
+     *
+     * @return настройки приложения
+     */
+    public static AppConfig get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Загружает настройки из ресурса application.properties.
+     *
+     * @return настройки приложения
+     * @throws IllegalStateException если файл настроек не удалось прочитать
+     */
+    private static AppConfig load() {
+        Properties properties = new Properties();
+        try (InputStream inputStream = AppConfig.class.getClassLoader().getResourceAsStream(RESOURCE_NAME)) {
+            if (inputStream != null) {
+                properties.load(inputStream);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Ошибка - не удалось прочитать " + RESOURCE_NAME, e);
+        }
+        return new AppConfig(properties);
+    }
+
+    /**
+     * Возвращает строковое значение настройки.
+     *
+     * @param key          ключ настройки
+     * @param defaultValue значение по умолчанию
+     * @return значение настройки
+     */
+    public String getString(String key, String defaultValue) {
+        String value = System.getProperty(key, properties.getProperty(key));
+        return value == null || value.isBlank() ? defaultValue : value.trim();
+    }
+
+    /**
+     * Возвращает целочисленное значение настройки.
+     *
+     * @param key          ключ настройки
+     * @param defaultValue значение по умолчанию
+     * @return значение настройки
+     * @throws IllegalStateException если значение не является числом
+     */
+    public int getInt(String key, int defaultValue) {
+        return (int) getLong(key, defaultValue);
+    }
+
+    /**
+     * Возвращает значение настройки типа long.
+     *
+     * @param key          ключ настройки
+     * @param defaultValue значение по умолчанию
+     * @return значение настройки
+     * @throws IllegalStateException если значение не является числом
+     */
+    public long getLong(String key, long defaultValue) {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("Некорректное значение настройки " + key + ": " + value, e);
+        }
+    }
+
+    /**
+     * Возвращает логическое значение настройки.
+     *
+     * @param key          ключ настройки
+     * @param defaultValue значение по умолчанию
+     * @return значение настройки
+     */
+    public boolean getBoolean(String key, boolean defaultValue) {
+        String value = getString(key, null);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+}
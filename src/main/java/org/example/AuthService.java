@@ -1,15 +1,26 @@
 package org.example;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.sql.SQLException;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Сервис для управления аутентификацией пользователей.
  */
 public class AuthService {
     private final DatabaseService databaseService;
-    private final Map<String, AuthState> authStates = new ConcurrentHashMap<>();
+    private final ConversationEngine conversationEngine;
+    private final PasswordHasher passwordHasher;
+    private final RateLimiter passwordAttempts;
+    private final ExecutorService continuations = Executors.newVirtualThreadPerTaskExecutor();
 
     private final String WELCOME_MESSAGE = """
             Добро пожаловать в планировщик задач! \uD83D\uDC31 📝
@@ -50,21 +61,81 @@ public class AuthService {
      * Конструктор сервиса аутентификации.
      */
     public AuthService(DatabaseService databaseService) {
+        this(databaseService, new ConversationEngine());
+    }
+
+    /**
+     * Конструктор сервиса аутентификации, подключающий диалог входа к автомату диалогов.
+     *
+     * @param databaseService    сервис базы данных
+     * @param conversationEngine автомат диалогов пользователя
+     */
+    public AuthService(DatabaseService databaseService, ConversationEngine conversationEngine) {
+        this(databaseService, conversationEngine, new PasswordHasher(), createPasswordAttempts());
+    }
+
+    /**
+     * Конструктор сервиса аутентификации с заданным хешированием паролей и ограничением попыток.
+     *
+     * @param databaseService    сервис базы данных
+     * @param conversationEngine автомат диалогов пользователя
+     * @param passwordHasher     хеширование паролей
+     * @param passwordAttempts   ограничение попыток ввода пароля для одного пользователя платформы
+     */
+    public AuthService(DatabaseService databaseService, ConversationEngine conversationEngine,
+                       PasswordHasher passwordHasher, RateLimiter passwordAttempts) {
         this.databaseService = databaseService;
+        this.conversationEngine = conversationEngine;
+        this.passwordHasher = passwordHasher;
+        this.passwordAttempts = passwordAttempts;
+        conversationEngine.register(ConversationEngine.Flow.AUTH, this::handleAuthStep, AuthState.CODEC);
     }
 
     /**
-     * Внутренний класс для отслеживания состояния аутентификации пользователя.
+     * Создает ограничение попыток ввода пароля по настройкам auth.rate-limit.* из application.properties.
      */
-    private class AuthState {
-        String type;
+    private static RateLimiter createPasswordAttempts() {
+        AppConfig config = AppConfig.get();
+        return new RateLimiter(config.getInt("auth.rate-limit.attempts", 5),
+                Duration.ofSeconds(config.getLong("auth.rate-limit.period-seconds", 60)),
+                config.getInt("auth.rate-limit.max-keys", 100_000));
+    }
+
+    /**
+     * Вид диалога аутентификации.
+     */
+    private enum AuthType {
+        REGISTRATION, LOGIN
+    }
+
+    /**
+     * Внутренний класс для данных диалога аутентификации: шаг хранит автомат диалогов.
+     * Пароль в состоянии не хранится.
+     */
+    private static class AuthState {
+        static final ConversationStateCodec<AuthState> CODEC = new ConversationStateCodec<>() {
+            @Override
+            public void write(AuthState state, DataOutput out) throws IOException {
+                out.writeUTF(state.type.name());
+                out.writeUTF(state.platformType);
+                ConversationStateCodec.writeNullable(out, state.username);
+            }
+
+            @Override
+            public AuthState read(DataInput in) throws IOException {
+                AuthState state = new AuthState(AuthType.valueOf(in.readUTF()), in.readUTF());
+                state.username = ConversationStateCodec.readNullable(in);
+                return state;
+            }
+        };
+
+        final AuthType type;
+        final String platformType;
         String username;
-        String step;
-        String platformType;
+        volatile boolean checking;
 
-        AuthState(String type, String platformType) {
+        AuthState(AuthType type, String platformType) {
             this.type = type;
-            this.step = "username";
             this.platformType = platformType;
         }
     }
@@ -73,7 +144,8 @@ public class AuthService {
      * Начинает процесс регистрации пользователя.
      */
     public BotResponse handleRegistration(String userId, String platformType) {
-        authStates.put(userId, new AuthState("registration", platformType));
+        conversationEngine.start(userId, ConversationEngine.State.AUTH_USERNAME,
+                new AuthState(AuthType.REGISTRATION, platformType));
         return new BotResponse("""
         📝 Регистрация нового пользователя
         Введите логин:""");
@@ -83,7 +155,8 @@ public class AuthService {
      * Начинает процесс входа пользователя.
      */
     public BotResponse handleLogin(String userId, String platformType) {
-        authStates.put(userId, new AuthState("integration", platformType));
+        conversationEngine.start(userId, ConversationEngine.State.AUTH_USERNAME,
+                new AuthState(AuthType.LOGIN, platformType));
         return new BotResponse("""
         🔑 Вход в аккаунт
         Введите логин:""");
@@ -92,17 +165,14 @@ public class AuthService {
     /**
      * Обрабатывает шаг аутентификации.
      */
-    public BotResponse handleAuthStep(String userId, String userInput) {
-        AuthState state = authStates.get(userId);
-        if (state == null) {
-            return new BotResponse("Ошибка аутентификации. Попробуйте снова.");
-        }
-
-        return switch (state.step) {
-            case "username" -> processUsernameStep(state, userInput, userId);
-            case "password" -> processPasswordStep(state, userInput, userId);
+    private BotResponse handleAuthStep(String userId, String userInput, CommandRegistry.Command command,
+                                       ConversationEngine.Conversation conversation) {
+        AuthState state = (AuthState) conversation.data();
+        return switch (conversation.state()) {
+            case AUTH_USERNAME -> processUsernameStep(conversation, state, userInput, userId);
+            case AUTH_PASSWORD -> processPasswordStep(conversation, state, userInput, userId);
             default -> {
-                authStates.remove(userId);
+                conversationEngine.finish(userId);
                 yield new BotResponse("Ошибка аутентификации. Попробуйте снова.");
             }
         };
@@ -111,7 +181,8 @@ public class AuthService {
     /**
      * Обрабатывает шаг ввода логина при аутентификации.
      */
-    private BotResponse processUsernameStep(AuthState state, String userInput, String userId) {
+    private BotResponse processUsernameStep(ConversationEngine.Conversation conversation, AuthState state,
+                                            String userInput, String userId) {
         if (userInput.trim().isEmpty()) {
             return new BotResponse("""
                     Упс, кажется вы забыли ввести логин.
@@ -120,13 +191,13 @@ public class AuthService {
         }
         String username = userInput.trim();
         try {
-            if ("registration".equals(state.type) && databaseService.userExists(username)) {
-                authStates.remove(userId);
+            if (state.type == AuthType.REGISTRATION && databaseService.userExists(username)) {
+                conversationEngine.finish(userId);
                 return new BotResponse("""
                         Пользователь с таким логином уже существует.
                         Используйте другой логин или войдите с помощью /integration.""");
-            } else if ("integration".equals(state.type) && !databaseService.userExists(username)) {
-                authStates.remove(userId);
+            } else if (state.type == AuthType.LOGIN && !databaseService.userExists(username)) {
+                conversationEngine.finish(userId);
                 return new BotResponse("""
                         Пользователь '%s' не найден.
                         Проверьте логин или зарегистрируйтесь с помощью /registration.
@@ -134,7 +205,7 @@ public class AuthService {
             }
 
             state.username = username;
-            state.step = "password";
+            conversationEngine.moveTo(userId, conversation, ConversationEngine.State.AUTH_PASSWORD);
             return new BotResponse("✅Отлично! Теперь введите пароль:");
         } catch (SQLException e) {
             throw new RuntimeException("Ошибка проверки пользователя: " + e.getMessage());
@@ -143,8 +214,13 @@ public class AuthService {
 
     /**
      * Обрабатывает шаг ввода пароля при аутентификации.
+     * Хеш пароля считается в пуле {@link PasswordHasher}, а поток обработки сообщений его не ждет:
+     * пользователь сразу получает уведомление, а результат входа или регистрации приходит вторым ответом.
+     * Число попыток для одного пользователя платформы ограничено, а если пул перегружен
+     * или попытки кончились, диалог остается на вводе пароля.
      */
-    private BotResponse processPasswordStep(AuthState state, String userInput, String userId) {
+    private BotResponse processPasswordStep(ConversationEngine.Conversation conversation, AuthState state,
+                                            String userInput, String userId) {
         String password = userInput.trim();
         if (password.isEmpty()) {
             return new BotResponse("""
@@ -152,45 +228,118 @@ public class AuthService {
                 Введите пароль:
                 """);
         }
+        if (state.checking) {
+            return new BotResponse("Пароль уже проверяется, подождите немного.");
+        }
+
+        long waitNanos = passwordAttempts.tryAcquire(state.platformType + ":" + userId);
+        if (waitNanos > 0) {
+            return new BotResponse("Слишком много попыток. Введите пароль через "
+                    + Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos)) + " с.");
+        }
 
+        CompletableFuture<BotResponse> result;
         try {
-            if ("registration".equals(state.type)) {
-                if (databaseService.registerUser(state.username, password)) {
-                    databaseService.authenticateUser(state.username, password, state.platformType, userId);
-                    authStates.remove(userId);
+            result = state.type == AuthType.REGISTRATION
+                    ? register(conversation, state, password, userId)
+                    : login(conversation, state, password, userId);
+        } catch (RejectedExecutionException e) {
+            return new BotResponse("Сервер сейчас перегружен. Введите пароль чуть позже.");
+        } catch (SQLException e) {
+            throw new RuntimeException("Ошибка при авторизации: " + e.getMessage());
+        }
+        if (result.isDone()) {
+            return result.join();
+        }
+        state.checking = true;
+        CompletableFuture<BotResponse> followUp = result.handle((response, error) -> {
+            state.checking = false;
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                BotLogger.get().error("auth_failed", userId, state.platformType, cause);
+                return new BotResponse("Ошибка при авторизации: " + cause.getMessage());
+            }
+            return response;
+        });
+        return new BotResponse("Проверяю пароль...", followUp);
+    }
+
+    /**
+     * Считает хеш нового пароля и регистрирует пользователя, когда хеш готов.
+     */
+    private CompletableFuture<BotResponse> register(ConversationEngine.Conversation conversation, AuthState state,
+                                                    String password, String userId) {
+        return passwordHasher.hashAsync(password).thenApplyAsync(hash -> {
+            try {
+                if (databaseService.registerUser(state.username, hash)) {
+                    databaseService.createSession(state.username, state.platformType, userId);
+                    finishIfCurrent(userId, conversation);
                     return new BotResponse(String.format("""
                         ✅ Регистрация завершена успешно!
                         Добро пожаловать, %s!
                         %s""", state.username, START_MESSAGE));
-                } else {
-                    authStates.remove(userId);
-                    return new BotResponse("""
+                }
+                finishIfCurrent(userId, conversation);
+                return new BotResponse("""
                         Ошибка регистрации.
                         Попробуйте снова: /registration""");
-                }
-            } else {
-                if (databaseService.authenticateUser(state.username, password, state.platformType, userId)) {
-                    authStates.remove(userId);
-                    return new BotResponse(String.format("""
+            } catch (SQLException e) {
+                throw new CompletionException(e);
+            }
+        }, continuations);
+    }
+
+    /**
+     * Проверяет пароль и создает сессию, когда проверка завершилась.
+     */
+    private CompletableFuture<BotResponse> login(ConversationEngine.Conversation conversation, AuthState state,
+                                                 String password, String userId) throws SQLException {
+        String stored = databaseService.getPasswordHash(state.username);
+        if (stored == null) {
+            conversationEngine.finish(userId);
+            return CompletableFuture.completedFuture(new BotResponse("Неверный пароль. Попробуйте снова."));
+        }
+        return passwordHasher.verifyAsync(password, stored).thenApplyAsync(valid -> {
+            if (!valid) {
+                finishIfCurrent(userId, conversation);
+                return new BotResponse("Неверный пароль. Попробуйте снова.");
+            }
+            if (passwordHasher.needsRehash(stored)) {
+                rehash(state.username, stored, password);
+            }
+            try {
+                databaseService.createSession(state.username, state.platformType, userId);
+            } catch (SQLException e) {
+                throw new CompletionException(e);
+            }
+            finishIfCurrent(userId, conversation);
+            return new BotResponse(String.format("""
                         ✅ Вход выполнен успешно!
                         Добро пожаловать обратно, %s
                         
                         %s""", state.username, START_MESSAGE));
-                } else {
-                    authStates.remove(userId);
-                    return new BotResponse("Неверный пароль. Попробуйте снова.");
-                }
-            }
-        } catch (Exception e) {
-            throw new RuntimeException("Ошибка при авторизации: " + e.getMessage());
+        }, continuations);
+    }
+
+    /**
+     * Завершает диалог, если пользователь за время проверки пароля не начал новый.
+     */
+    private void finishIfCurrent(String userId, ConversationEngine.Conversation conversation) {
+        if (conversationEngine.get(userId) == conversation) {
+            conversationEngine.finish(userId);
         }
     }
 
     /**
-     * Проверяет, находится ли пользователь в процессе аутентификации.
+     * Заменяет пароль открытым текстом или устаревший хеш новым хешем после успешного входа.
+     * Ошибка замены не мешает входу: хеш будет пересчитан при следующем входе.
      */
-    public boolean isUserInAuthProcess(String userId) {
-        return authStates.containsKey(userId);
+    private void rehash(String username, String stored, String password) {
+        try {
+            databaseService.updatePasswordHash(username, stored, passwordHasher.hash(password));
+        } catch (SQLException | RejectedExecutionException e) {
+            BotLogger.get().warn("password_rehash_skipped", e.getMessage());
+        }
     }
 
     /**
@@ -209,7 +358,7 @@ public class AuthService {
             }
             return new BotResponse("Вы не авторизованы.");
         } catch (SQLException e) {
-            e.printStackTrace();
+            BotLogger.get().error("logout_failed", e);
             throw new RuntimeException("Ошибка при выходе из аккаунта: " + e.getMessage());
         }
     }
@@ -219,7 +368,7 @@ public class AuthService {
      */
     public boolean isUserAuthenticated(String userId, String platformType) {
         try {
-            return databaseService.getUsername(platformType, userId) != null;
+            return databaseService.getUserIdByPlatform(platformType, userId) != null;
         } catch (SQLException e) {
             throw new RuntimeException("Ошибка проверки авторизации: " + e.getMessage());
         }
@@ -4,6 +4,8 @@ import org.telegram.telegrambots.meta.TelegramBotsApi;
 import org.telegram.telegrambots.updatesreceivers.DefaultBotSession;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
+import java.io.IOException;
+
 /**
  * Класс для запуска Discord и Telegram, работать они будут параллельно.
  */
@@ -20,20 +22,72 @@ public class BotApplication {
             String telegramBotName = System.getenv("BOT_USERNAME");
             String telegramBotToken = System.getenv("BOT_TOKEN");
             String discordToken = System.getenv("DISCORD_TOKEN");
+            String openRouterApiKey = System.getenv("OPENROUTER_API_KEY");
 
-            MessageHandler messageHandler = new MessageHandler();
+            DatabaseService databaseService = new DatabaseService();
+            MetricsRegistry metrics = MetricsRegistry.get();
+            registerCacheMetrics(metrics, databaseService);
+            AiClient aiClient = null;
+            if (openRouterApiKey != null && !openRouterApiKey.isBlank()) {
+                CachingOpenRouterClient cachingClient =
+                        new CachingOpenRouterClient(new OpenRouterClient(openRouterApiKey), databaseService);
+                metrics.gauge("bot_cache_hit_ratio", "Доля попаданий в кэш", "cache", "ai_responses",
+                        () -> cachingClient.getStats().hitRatio());
+                aiClient = cachingClient;
+            } else {
+                BotLogger.get().warn("ai_disabled", "OPENROUTER_API_KEY не задан, генерация подзадач отключена");
+            }
+            ConversationStateBackend stateBackend = ConversationStateBackend.fromConfig(databaseService);
+            Runtime.getRuntime().addShutdownHook(new Thread(stateBackend::close, "conversation-state-shutdown"));
+            MessageHandler messageHandler = new MessageHandler(databaseService, aiClient, stateBackend);
 
             TelegramBot bot = new TelegramBot(telegramBotName, telegramBotToken, messageHandler);
             botsApi.registerBot(bot);
-            System.out.println("Telegram бот запущен");
+            BotLogger.get().info("telegram_started", "Telegram бот запущен");
 
             DiscordBot discordBot = new DiscordBot(discordToken, messageHandler);
             discordBot.start();
-            System.out.println("Discord бот запущен");
+
+            ReminderScheduler reminderScheduler = messageHandler.getReminderScheduler();
+            reminderScheduler.register(bot);
+            reminderScheduler.register(discordBot);
+            reminderScheduler.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(reminderScheduler::close, "reminder-shutdown"));
+
+            metrics.gauge("bot_log_dropped", "Записи журнала, отброшенные из-за переполнения буфера", "logger", "main",
+                    () -> BotLogger.get().getDroppedCount());
+            metrics.gauge("bot_log_errors_overflowed", "Ошибки, не поместившиеся в буфер журнала и напечатанные вне очереди",
+                    "logger", "main", () -> BotLogger.get().getOverflowedErrorCount());
+            if (AppConfig.get().getBoolean("metrics.enabled", true)) {
+                startMetricsServer(metrics);
+            }
 
         } catch (TelegramApiException e) {
-            System.err.println("Ошибка при запуске Telegram бота: " + e.getMessage());
-            e.printStackTrace();
+            BotLogger.get().error("telegram_start_failed", e);
+        }
+    }
+
+    /**
+     * Регистрирует показатели кэшей базы данных.
+     */
+    private static void registerCacheMetrics(MetricsRegistry metrics, DatabaseService databaseService) {
+        for (String cache : databaseService.getCacheStats().keySet()) {
+            metrics.gauge("bot_cache_hit_ratio", "Доля попаданий в кэш", "cache", cache,
+                    () -> databaseService.getCacheStats().get(cache).hitRatio());
+            metrics.gauge("bot_cache_size", "Количество записей в кэше", "cache", cache,
+                    () -> databaseService.getCacheStats().get(cache).size());
+        }
+    }
+
+    /**
+     * Запускает HTTP сервер метрик. Ошибка запуска не мешает работе ботов.
+     */
+    private static void startMetricsServer(MetricsRegistry metrics) {
+        try {
+            MetricsServer server = MetricsServer.fromConfig(metrics);
+            BotLogger.get().info("metrics_started", "Метрики доступны на порту " + server.getPort());
+        } catch (IOException e) {
+            BotLogger.get().error("metrics_start_failed", e);
         }
     }
 }
@@ -0,0 +1,399 @@
+package org.example;
+
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Асинхронный структурированный журнал.
+ * Потоки бота только кладут запись в кольцевой буфер фиксированного размера,
+ * форматирует и печатает записи один фоновый поток, поэтому обработчики сообщений
+ * не конкурируют за stdout. Если буфер заполнен, запись отбрасывается и учитывается в счетчике;
+ * записи уровня ERROR не отбрасываются, а попадают в отдельную неограниченную очередь
+ * и печатаются вне общего порядка. Без записей фоновый поток спит, пока его не разбудит новая запись.
+ * <p>
+ * Запись состоит из полей level, event, user, platform, command, latency_ms, msg
+ * и печатается одной строкой в формате key=value.
+ * Проверка уровня выполняется до любых вычислений: если уровень отключен,
+ * вызов не создает объектов, при условии что аргументы уже вычислены.
+ */
+public class BotLogger implements AutoCloseable {
+    /**
+     * Уровень записи.
+     */
+    public enum Level {
+        DEBUG, INFO, WARN, ERROR
+    }
+
+    /**
+     * Значение latencyNanos для записей без измерения времени.
+     */
+    public static final long NO_LATENCY = -1;
+
+    private static final long FLUSH_PARK_NANOS = 1_000_000;
+
+    private static final class Holder {
+        static final BotLogger INSTANCE = createDefault();
+    }
+
+    private final int minLevel;
+    private final Slot[] slots;
+    private final AtomicLongArray published;
+    private final int mask;
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong consumed = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+    private final Queue<Slot> overflow = new ConcurrentLinkedQueue<>();
+    private final AtomicLong overflowPending = new AtomicLong();
+    private final LongAdder overflowed = new LongAdder();
+    private final PrintStream out;
+    private final Thread writer;
+    private volatile boolean sleeping;
+    private volatile boolean closed;
+
+    /**
+     * Ячейка кольцевого буфера. Заполняется производителем, читается фоновым потоком.
+     */
+    private static final class Slot {
+        long timestampMillis;
+        Level level;
+        String event;
+        String userId;
+        String platform;
+        String command;
+        long latencyNanos;
+        String message;
+        Throwable error;
+    }
+
+    /**
+     * Создает журнал.
+     *
+     * @param level    минимальный уровень записей
+     * @param capacity размер буфера, округляется вверх до степени двойки
+     * @param out      поток вывода
+     */
+    public BotLogger(Level level, int capacity, PrintStream out) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Размер буфера журнала должен быть больше нуля");
+        }
+        int size = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+        this.minLevel = level.ordinal();
+        this.slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+        }
+        this.published = new AtomicLongArray(size);
+        this.mask = size - 1;
+        this.out = out;
+        this.writer = new Thread(this::drainLoop, "bot-logger");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Возвращает общий журнал приложения.
+     * Уровень и размер буфера берутся из application.properties (log.level, log.buffer-size).
+     *
+     * @return журнал
+     */
+    public static BotLogger get() {
+        return Holder.INSTANCE;
+    }
+
+    private static BotLogger createDefault() {
+        Level level = Level.valueOf(AppConfig.get().getString("log.level", "INFO").trim().toUpperCase(Locale.ROOT));
+        BotLogger logger = new BotLogger(level, AppConfig.get().getInt("log.buffer-size", 8192), System.out);
+        Runtime.getRuntime().addShutdownHook(new Thread(logger::close, "bot-logger-shutdown"));
+        return logger;
+    }
+
+    /**
+     * Проверяет, будут ли записаны записи указанного уровня.
+     * Нужна, если аргументы записи дорого вычислять.
+     *
+     * @param level уровень
+     * @return true если уровень включен
+     */
+    public boolean isEnabled(Level level) {
+        return level.ordinal() >= minLevel;
+    }
+
+    /**
+     * Записывает обработку запроса пользователя.
+     *
+     * @param event        название события
+     * @param userId       идентификатор пользователя на платформе
+     * @param platform     платформа
+     * @param command      команда
+     * @param latencyNanos время обработки в наносекундах
+     */
+    public void info(String event, String userId, String platform, String command, long latencyNanos) {
+        log(Level.INFO, event, userId, platform, command, latencyNanos, null, null);
+    }
+
+    /**
+     * Записывает отладочное сообщение.
+     *
+     * @param event   название события
+     * @param message текст сообщения
+     */
+    public void debug(String event, String message) {
+        log(Level.DEBUG, event, null, null, null, NO_LATENCY, message, null);
+    }
+
+    /**
+     * Записывает информационное сообщение.
+     *
+     * @param event   название события
+     * @param message текст сообщения
+     */
+    public void info(String event, String message) {
+        log(Level.INFO, event, null, null, null, NO_LATENCY, message, null);
+    }
+
+    /**
+     * Записывает предупреждение.
+     *
+     * @param event   название события
+     * @param message текст сообщения
+     */
+    public void warn(String event, String message) {
+        log(Level.WARN, event, null, null, null, NO_LATENCY, message, null);
+    }
+
+    /**
+     * Записывает ошибку вместе со стеком исключения.
+     *
+     * @param event название события
+     * @param error исключение
+     */
+    public void error(String event, Throwable error) {
+        log(Level.ERROR, event, null, null, null, NO_LATENCY, error.getMessage(), error);
+    }
+
+    /**
+     * Записывает ошибку обработки запроса пользователя.
+     *
+     * @param event    название события
+     * @param userId   идентификатор пользователя на платформе
+     * @param platform платформа
+     * @param error    исключение
+     */
+    public void error(String event, String userId, String platform, Throwable error) {
+        log(Level.ERROR, event, userId, platform, null, NO_LATENCY, error.getMessage(), error);
+    }
+
+    /**
+     * Кладет запись в буфер. Любое поле, кроме level и event, может быть null.
+     *
+     * @param level        уровень
+     * @param event        название события
+     * @param userId       идентификатор пользователя на платформе
+     * @param platform     платформа
+     * @param command      команда
+     * @param latencyNanos время обработки в наносекундах или {@link #NO_LATENCY}
+     * @param message      текст сообщения
+     * @param error        исключение
+     */
+    public void log(Level level, String event, String userId, String platform, String command,
+                    long latencyNanos, String message, Throwable error) {
+        if (level.ordinal() < minLevel) {
+            return;
+        }
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (closed) {
+                dropped.increment();
+                return;
+            }
+            if (sequence - consumed.get() >= slots.length) {
+                if (level == Level.ERROR) {
+                    Slot slot = new Slot();
+                    fill(slot, level, event, userId, platform, command, latencyNanos, message, error);
+                    overflowPending.incrementAndGet();
+                    overflowed.increment();
+                    overflow.add(slot);
+                    wakeWriter();
+                } else {
+                    dropped.increment();
+                }
+                return;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+
+        fill(slots[(int) (sequence & mask)], level, event, userId, platform, command, latencyNanos, message, error);
+        published.set((int) (sequence & mask), sequence + 1);
+        wakeWriter();
+    }
+
+    private static void fill(Slot slot, Level level, String event, String userId, String platform, String command,
+                             long latencyNanos, String message, Throwable error) {
+        slot.timestampMillis = System.currentTimeMillis();
+        slot.level = level;
+        slot.event = event;
+        slot.userId = userId;
+        slot.platform = platform;
+        slot.command = command;
+        slot.latencyNanos = latencyNanos;
+        slot.message = message;
+        slot.error = error;
+    }
+
+    /**
+     * Будит фоновый поток, если он уснул. Поток выставляет sleeping до последней проверки буфера,
+     * а производитель читает sleeping после публикации, поэтому хотя бы один из них видит запись другого
+     * и пробуждение не теряется.
+     */
+    private void wakeWriter() {
+        if (sleeping) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * Возвращает количество записей, отброшенных из-за переполнения буфера.
+     *
+     * @return количество отброшенных записей
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Возвращает количество записей уровня ERROR, которые не поместились в буфер
+     * и были напечатаны из отдельной очереди.
+     *
+     * @return количество записей, прошедших мимо буфера
+     */
+    public long getOverflowedErrorCount() {
+        return overflowed.sum();
+    }
+
+    /**
+     * Ждет, пока фоновый поток запишет все уже принятые записи.
+     */
+    public void flush() {
+        long target = claimed.get();
+        while ((consumed.get() < target || overflowPending.get() > 0) && writer.isAlive()) {
+            LockSupport.parkNanos(FLUSH_PARK_NANOS);
+        }
+        out.flush();
+    }
+
+    /**
+     * Перестает принимать записи, дописывает буфер и останавливает фоновый поток.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        out.flush();
+    }
+
+    private void drainLoop() {
+        StringBuilder line = new StringBuilder(256);
+        long next = 0;
+        while (true) {
+            Slot error;
+            while ((error = overflow.poll()) != null) {
+                line.setLength(0);
+                format(error, line);
+                out.println(line);
+                overflowPending.decrementAndGet();
+            }
+            int index = (int) (next & mask);
+            if (published.get(index) != next + 1) {
+                if (closed && claimed.get() == next) {
+                    return;
+                }
+                out.flush();
+                sleeping = true;
+                if (published.get(index) != next + 1 && overflow.isEmpty() && !closed) {
+                    LockSupport.park(this);
+                }
+                sleeping = false;
+                continue;
+            }
+            Slot slot = slots[index];
+            line.setLength(0);
+            format(slot, line);
+            out.println(line);
+            slot.event = null;
+            slot.userId = null;
+            slot.platform = null;
+            slot.command = null;
+            slot.message = null;
+            slot.error = null;
+            next++;
+            consumed.set(next);
+        }
+    }
+
+    private static void format(Slot slot, StringBuilder line) {
+        line.append(Instant.ofEpochMilli(slot.timestampMillis))
+                .append(" level=").append(slot.level)
+                .append(" event=").append(slot.event);
+        appendField(line, "user", slot.userId);
+        appendField(line, "platform", slot.platform);
+        appendField(line, "command", slot.command);
+        if (slot.latencyNanos >= 0) {
+            line.append(" latency_ms=").append(String.format(Locale.ROOT, "%.3f", slot.latencyNanos / 1e6));
+        }
+        appendField(line, "msg", slot.message);
+        if (slot.error != null) {
+            StringWriter stackTrace = new StringWriter();
+            slot.error.printStackTrace(new PrintWriter(stackTrace));
+            line.append(System.lineSeparator()).append(stackTrace.toString().stripTrailing());
+        }
+    }
+
+    /**
+     * Добавляет поле key=value; значения с пробелами, кавычками и переводами строк берутся в кавычки.
+     */
+    private static void appendField(StringBuilder line, String key, String value) {
+        if (value == null) {
+            return;
+        }
+        line.append(' ').append(key).append('=');
+        boolean quote = value.isEmpty();
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ' ' || c == '"' || c == '=' || c == '\n' || c == '\r' || c == '\t';
+        }
+        if (!quote) {
+            line.append(value);
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> line.append("\\\"");
+                case '\\' -> line.append("\\\\");
+                case '\n' -> line.append("\\n");
+                case '\r' -> line.append("\\r");
+                case '\t' -> line.append("\\t");
+                default -> line.append(c);
+            }
+        }
+        line.append('"');
+    }
+}
@@ -1,14 +1,17 @@
 package org.example;
 
-import java.io.File;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Класс, представляющий ответ бота на запрос.
  */
 public class BotResponse {
     private final String message;
-    private final File file;
+    private final byte[] fileContent;
     private final String fileName;
+    private final CompletableFuture<BotResponse> followUp;
 
     /**
      * Конструктор для создания текстового ответа.
@@ -17,21 +20,39 @@ public class BotResponse {
      */
     public BotResponse(String message) {
         this.message = message;
-        this.file = null;
+        this.fileContent = null;
         this.fileName = null;
+        this.followUp = null;
+    }
+
+    /**
+     * Конструктор для создания ответа, за которым последует второй ответ,
+     * например результат долгой генерации. Бот отправляет сообщение сразу,
+     * а второй ответ - когда он будет готов.
+     *
+     * @param message текстовое сообщение
+     * @param followUp ответ, который будет отправлен после завершения
+     */
+    public BotResponse(String message, CompletableFuture<BotResponse> followUp) {
+        this.message = message;
+        this.fileContent = null;
+        this.fileName = null;
+        this.followUp = followUp;
     }
 
     /**
      * Конструктор для создания ответа с файлом.
+     * Содержимое не копируется, массив нельзя изменять после передачи.
      *
      * @param message текстовое сообщение
-     * @param file файл
+     * @param fileContent содержимое файла
      * @param fileName имя файла
      */
-    public BotResponse(String message, File file, String fileName) {
+    public BotResponse(String message, byte[] fileContent, String fileName) {
         this.message = message;
-        this.file = file;
+        this.fileContent = fileContent;
         this.fileName = fileName;
+        this.followUp = null;
     }
 
     /**
@@ -44,12 +65,21 @@ public class BotResponse {
     }
 
     /**
-     * Возвращает файл ответа.
+     * Возвращает содержимое файла ответа.
      *
-     * @return файл для отправки
+     * @return содержимое файла для отправки
      */
-    public File getFile() {
-        return file;
+    public byte[] getFileContent() {
+        return fileContent;
+    }
+
+    /**
+     * Открывает поток для чтения содержимого файла ответа.
+     *
+     * @return поток с содержимым файла
+     */
+    public InputStream openFile() {
+        return new ByteArrayInputStream(fileContent);
     }
 
     /**
@@ -67,6 +97,24 @@ public class BotResponse {
      * @return true если ответ содержит файл, false в противном случае
      */
     public boolean hasFile() {
-        return file != null;
+        return fileContent != null;
+    }
+
+    /**
+     * Возвращает ответ, который нужно отправить после этого.
+     *
+     * @return будущий ответ
+     */
+    public CompletableFuture<BotResponse> getFollowUp() {
+        return followUp;
+    }
+
+    /**
+     * Проверяет, последует ли за ответом еще один.
+     *
+     * @return true если есть будущий ответ, false в противном случае
+     */
+    public boolean hasFollowUp() {
+        return followUp != null;
     }
 }
\ No newline at end of file
@@ -0,0 +1,243 @@
+package org.example;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Кэш ответов ИИ перед {@link OpenRouterClient}.
+ * Ключ кэша - модель и нормализованный текст запроса, поэтому "Купить продукты"
+ * и "купить  продукты " дают один ответ. Ответы хранятся в базе данных и переживают перезапуск.
+ * <p>
+ * Пустые ответы не сохраняются, чтобы неудачная генерация не повторялась до истечения срока жизни.
+ * <p>
+ * Устаревшие и лишние ответы удаляются не при каждом сохранении, а после каждых
+ * maxEntries / 10 сохранений, поэтому в таблице может временно оказаться до 10% лишних записей.
+ * Ошибки базы данных не мешают ответу: при ошибке чтения запрос уходит в OpenRouter,
+ * при ошибке записи ответ просто не сохраняется.
+ */
+public class CachingOpenRouterClient implements AiClient {
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final OpenRouterClient client;
+    private final DatabaseService databaseService;
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final int trimInterval;
+    private final AtomicInteger storesSinceTrim = new AtomicInteger();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder bypasses = new LongAdder();
+
+    /**
+     * Снимок счетчиков кэша ответов.
+     *
+     * @param hits     ответов выдано из кэша
+     * @param misses   запросов ушло в OpenRouter из-за отсутствия ответа в кэше
+     * @param bypasses запросов ушло в OpenRouter в обход кэша
+     */
+    public record Stats(long hits, long misses, long bypasses) {
+        /**
+         * Доля попаданий среди обращений к кэшу.
+         *
+         * @return значение от 0 до 1
+         */
+        public double hitRatio() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+    }
+
+    /**
+     * Конструктор, берущий время жизни и размер кэша из application.properties.
+     *
+     * @param client          клиент OpenRouter
+     * @param databaseService сервис базы данных для хранения ответов
+     */
+    public CachingOpenRouterClient(OpenRouterClient client, DatabaseService databaseService) {
+        this(client, databaseService,
+                Duration.ofHours(AppConfig.get().getLong("ai.cache.ttl-hours", 168)),
+                AppConfig.get().getInt("ai.cache.max-entries", 10000));
+    }
+
+    /**
+     * Конструктор с явными параметрами кэша.
+     *
+     * @param client          клиент OpenRouter
+     * @param databaseService сервис базы данных для хранения ответов
+     * @param ttl             время жизни ответа
+     * @param maxEntries      максимальное количество ответов в кэше
+     */
+    public CachingOpenRouterClient(OpenRouterClient client, DatabaseService databaseService,
+                                   Duration ttl, int maxEntries) {
+        this.client = client;
+        this.databaseService = databaseService;
+        this.ttlMillis = ttl.toMillis();
+        this.maxEntries = maxEntries;
+        this.trimInterval = Math.max(1, maxEntries / 10);
+    }
+
+    /**
+     * Возвращает ответ из кэша или запрашивает его у OpenRouter.
+     *
+     * @param userPrompt текст запроса пользователя
+     * @return ответ модели
+     */
+    @Override
+    public CompletableFuture<String> sendRequestAsync(String userPrompt) {
+        return sendRequestAsync(userPrompt, false);
+    }
+
+    /**
+     * Возвращает ответ из кэша или запрашивает его у OpenRouter.
+     *
+     * @param userPrompt  текст запроса пользователя
+     * @param bypassCache true - не читать кэш и запросить новый ответ; он заменит сохраненный
+     * @return ответ модели
+     */
+    public CompletableFuture<String> sendRequestAsync(String userPrompt, boolean bypassCache) {
+        String prompt = normalize(userPrompt);
+        String cacheKey = cacheKey(client.getModel(), prompt);
+        return CompletableFuture.supplyAsync(() -> cached(cacheKey, bypassCache), executor).thenCompose(cached -> {
+            if (cached != null) {
+                return CompletableFuture.completedFuture(cached);
+            }
+            return client.sendRequestAsync(userPrompt).thenApplyAsync(response -> {
+                if (!response.isBlank()) {
+                    store(cacheKey, prompt, response);
+                }
+                return response;
+            }, executor);
+        });
+    }
+
+    /**
+     * Возвращает подзадачи из кэша или получает их из потокового ответа OpenRouter.
+     * Ответ из кэша передается получателю целиком, потоковый - по мере поступления строк,
+     * и после окончания сохраняется в кэш, если в нем есть хотя бы одна подзадача.
+     *
+     * @param userPrompt текст запроса пользователя
+     * @param onSubtask  вызывается для каждой подзадачи в порядке поступления
+     * @return все подзадачи
+     */
+    @Override
+    public CompletableFuture<List<String>> streamSubtasks(String userPrompt, Consumer<String> onSubtask) {
+        return streamSubtasks(userPrompt, false, onSubtask);
+    }
+
+    /**
+     * Возвращает подзадачи из кэша или получает их из потокового ответа OpenRouter.
+     *
+     * @param userPrompt  текст запроса пользователя
+     * @param bypassCache true - не читать кэш и запросить новый ответ; он заменит сохраненный
+     * @param onSubtask   вызывается для каждой подзадачи в порядке поступления
+     * @return все подзадачи
+     */
+    @Override
+    public CompletableFuture<List<String>> streamSubtasks(String userPrompt, boolean bypassCache,
+                                                          Consumer<String> onSubtask) {
+        String prompt = normalize(userPrompt);
+        String cacheKey = cacheKey(client.getModel(), prompt);
+        return CompletableFuture.supplyAsync(() -> cached(cacheKey, bypassCache), executor).thenCompose(cached -> {
+            if (cached != null) {
+                return CompletableFuture.completedFuture(AiClient.splitLines(cached, onSubtask));
+            }
+            return client.streamSubtasks(userPrompt, onSubtask).thenApplyAsync(subtasks -> {
+                if (!subtasks.isEmpty()) {
+                    store(cacheKey, prompt, String.join("\n", subtasks));
+                }
+                return subtasks;
+            }, executor);
+        });
+    }
+
+    /**
+     * Ищет ответ в кэше и учитывает попадание, промах или обход кэша.
+     */
+    private String cached(String cacheKey, boolean bypassCache) {
+        if (bypassCache) {
+            bypasses.increment();
+            return null;
+        }
+        String cached = lookup(cacheKey);
+        if (cached != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return cached;
+    }
+
+    private String lookup(String cacheKey) {
+        try {
+            return databaseService.getCachedAiResponse(cacheKey, System.currentTimeMillis() - ttlMillis);
+        } catch (SQLException e) {
+            BotLogger.get().error("ai_cache_lookup_failed", e);
+            return null;
+        }
+    }
+
+    private String store(String cacheKey, String prompt, String response) {
+        long now = System.currentTimeMillis();
+        try {
+            databaseService.putCachedAiResponse(cacheKey, client.getModel(), prompt, response, now);
+        } catch (SQLException e) {
+            BotLogger.get().error("ai_cache_store_failed", e);
+            return response;
+        }
+        if (storesSinceTrim.incrementAndGet() >= trimInterval) {
+            storesSinceTrim.set(0);
+            try {
+                databaseService.trimAiResponseCache(now - ttlMillis, maxEntries);
+            } catch (SQLException e) {
+                BotLogger.get().error("ai_cache_trim_failed", e);
+            }
+        }
+        return response;
+    }
+
+    /**
+     * Приводит запрос к виду, по которому ищется ответ: без лишних пробелов и в нижнем регистре.
+     *
+     * @param prompt текст запроса
+     * @return нормализованный запрос
+     */
+    static String normalize(String prompt) {
+        return WHITESPACE.matcher(prompt.trim()).replaceAll(" ").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Ключ кэша: SHA-256 от модели и нормализованного запроса.
+     */
+    private static String cacheKey(String model, String prompt) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest((model + "\n" + prompt).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Возвращает счетчики кэша ответов.
+     *
+     * @return попадания, промахи и обходы кэша
+     */
+    public Stats getStats() {
+        return new Stats(hits.sum(), misses.sum(), bypasses.sum());
+    }
+}
@@ -0,0 +1,284 @@
+package org.example;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Таблица команд бота: команда или текст кнопки - обработчик.
+ * Собирается один раз при запуске через {@link Builder} и после этого не меняется,
+ * поэтому читается из любых потоков без синхронизации.
+ * <p>
+ * Поиск идет по части строки без выделения памяти: хеш считается по диапазону символов
+ * так же, как String.hashCode, ключ сравнивается через regionMatches.
+ * Таблица с открытой адресацией заполнена не больше чем наполовину.
+ */
+public class CommandRegistry {
+    private final String[] keys;
+    private final Command[] table;
+    private final int mask;
+    private final List<Command> commands;
+
+    /**
+     * Обработчик команды.
+     */
+    @FunctionalInterface
+    public interface Handler {
+        /**
+         * Выполняет команду.
+         *
+         * @param call параметры вызова
+         * @return ответ пользователю
+         * @throws SQLException при ошибке базы данных
+         */
+        BotResponse handle(Call call) throws SQLException;
+    }
+
+    /**
+     * Параметры вызова команды.
+     *
+     * @param command        команда, всегда основное имя, даже если пользователь нажал кнопку
+     * @param parameter      текст после команды без пробелов по краям, пустая строка если его нет
+     * @param userId         идентификатор пользователя на платформе
+     * @param platformType   платформа
+     * @param internalUserId внутренний идентификатор пользователя; null для команд без авторизации
+     */
+    public record Call(String command, String parameter, String userId, String platformType, String internalUserId) {
+    }
+
+    /**
+     * Зарегистрированная команда.
+     *
+     * @param name      основное имя, например "/add"
+     * @param handler   обработчик
+     * @param anonymous доступна ли команда без входа в аккаунт
+     * @param aliases   тексты кнопок, которые означают эту команду
+     */
+    public record Command(String name, Handler handler, boolean anonymous, List<String> aliases) {
+    }
+
+    /**
+     * Построитель таблицы команд. Не потокобезопасен, используется только при запуске.
+     */
+    public static final class Builder {
+        private final List<Command> commands = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Регистрирует команду, доступную только после входа в аккаунт.
+         *
+         * @param name    основное имя команды
+         * @param handler обработчик
+         * @param aliases тексты кнопок для этой команды
+         * @return этот построитель
+         */
+        public Builder register(String name, Handler handler, String... aliases) {
+            return add(name, handler, false, aliases);
+        }
+
+        /**
+         * Регистрирует команду, доступную без входа в аккаунт.
+         *
+         * @param name    основное имя команды
+         * @param handler обработчик
+         * @param aliases тексты кнопок для этой команды
+         * @return этот построитель
+         */
+        public Builder registerAnonymous(String name, Handler handler, String... aliases) {
+            return add(name, handler, true, aliases);
+        }
+
+        private Builder add(String name, Handler handler, boolean anonymous, String[] aliases) {
+            commands.add(new Command(name, handler, anonymous, List.of(aliases)));
+            return this;
+        }
+
+        /**
+         * Собирает неизменяемую таблицу.
+         *
+         * @return таблица команд
+         * @throws IllegalArgumentException если имя или текст кнопки зарегистрированы дважды
+         */
+        public CommandRegistry build() {
+            return new CommandRegistry(commands);
+        }
+    }
+
+    private CommandRegistry(List<Command> commands) {
+        this.commands = List.copyOf(commands);
+        int keys = 0;
+        for (Command command : this.commands) {
+            keys += 1 + command.aliases().size();
+        }
+        int size = Integer.highestOneBit(Math.max(2, keys) * 4 - 1);
+        this.table = new Command[size];
+        this.keys = new String[size];
+        this.mask = size - 1;
+        for (Command command : this.commands) {
+            put(command.name(), command);
+            for (String alias : command.aliases()) {
+                put(alias, command);
+            }
+        }
+    }
+
+    /**
+     * Создает построитель таблицы.
+     *
+     * @return построитель
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private void put(String key, Command command) {
+        if (key.isEmpty() || key.strip().length() != key.length()) {
+            throw new IllegalArgumentException("Недопустимое имя команды: \"" + key + "\"");
+        }
+        int index = hash(key, 0, key.length()) & mask;
+        while (keys[index] != null) {
+            if (keys[index].equals(key)) {
+                throw new IllegalArgumentException("Команда " + key + " уже зарегистрирована");
+            }
+            index = (index + 1) & mask;
+        }
+        keys[index] = key;
+        table[index] = command;
+    }
+
+    /**
+     * Ищет команду по имени или тексту кнопки в диапазоне строки.
+     *
+     * @param text  строка
+     * @param start начало диапазона
+     * @param end   конец диапазона, не включительно
+     * @return команда или null
+     */
+    public Command find(String text, int start, int end) {
+        int length = end - start;
+        int index = hash(text, start, end) & mask;
+        String key;
+        while ((key = keys[index]) != null) {
+            if (key.length() == length && text.regionMatches(start, key, 0, length)) {
+                return table[index];
+            }
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Ищет команду по имени или тексту кнопки.
+     *
+     * @param text имя команды или текст кнопки
+     * @return команда или null
+     */
+    public Command find(String text) {
+        return find(text, 0, text.length());
+    }
+
+    /**
+     * Переводит текст кнопки в основное имя команды.
+     *
+     * @param text текст сообщения
+     * @return основное имя команды или исходный текст, если это не кнопка
+     */
+    public String resolveAlias(String text) {
+        Command command = find(text);
+        return command == null ? text : command.name();
+    }
+
+    /**
+     * Возвращает все команды в порядке регистрации.
+     *
+     * @return неизменяемый список команд
+     */
+    public List<Command> getCommands() {
+        return commands;
+    }
+
+    /**
+     * Считает хеш диапазона так же, как String.hashCode, с перемешиванием старших бит.
+     */
+    private static int hash(String text, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + text.charAt(i);
+        }
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Возвращает индекс первого непробельного символа начиная с from.
+     *
+     * @param text строка
+     * @param from начальный индекс
+     * @param end  конец диапазона, не включительно
+     * @return индекс символа или end
+     */
+    public static int skipWhitespace(String text, int from, int end) {
+        while (from < end && Character.isWhitespace(text.charAt(from))) {
+            from++;
+        }
+        return from;
+    }
+
+    /**
+     * Возвращает индекс первого пробельного символа начиная с from.
+     *
+     * @param text строка
+     * @param from начальный индекс
+     * @param end  конец диапазона, не включительно
+     * @return индекс символа или end
+     */
+    public static int tokenEnd(String text, int from, int end) {
+        while (from < end && !Character.isWhitespace(text.charAt(from))) {
+            from++;
+        }
+        return from;
+    }
+
+    /**
+     * Возвращает конец строки без пробельных символов в конце.
+     *
+     * @param text  строка
+     * @param start начало диапазона
+     * @return индекс после последнего непробельного символа, не меньше start
+     */
+    public static int trimEnd(String text, int start) {
+        int end = text.length();
+        while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * Разбирает неотрицательное число из ASCII-цифр без регулярных выражений и исключений.
+     *
+     * @param text  строка
+     * @param start начало диапазона
+     * @param end   конец диапазона, не включительно
+     * @return число или -1, если диапазон пуст, содержит не только цифры или не помещается в int
+     */
+    public static int parseNumber(String text, int start, int end) {
+        if (start >= end) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            int digit = c - '0';
+            if (value > (Integer.MAX_VALUE - digit) / 10) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+}
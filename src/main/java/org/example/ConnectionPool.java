@@ -0,0 +1,309 @@
+package org.example;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Небольшой пул долгоживущих соединений с SQLite.
+ * SQLite допускает только одного писателя, поэтому пул держит одно выделенное
+ * соединение для записи и несколько соединений для чтения.
+ * Соединения, выданные пулом, возвращаются в него при вызове close().
+ * <p>
+ * Соединение выдается для именованной операции (метода DatabaseService): время от выдачи
+ * до возврата и ошибки SQL этой операции попадают в метрики.
+ * <p>
+ * Перед выдачей соединение проверяется, закрытое соединение заменяется новым.
+ * Соединение, которое не удалось вернуть в исходное состояние при возврате в пул, закрывается
+ * и будет заменено при следующей выдаче.
+ * Повторный запрос соединения для записи потоком, который уже держит его, сразу завершается ошибкой:
+ * иначе поток ждал бы сам себя до таймаута.
+ */
+public class ConnectionPool implements AutoCloseable {
+    private static final MetricsRegistry.Family<LatencyHistogram> OPERATION_DURATION = MetricsRegistry.get()
+            .histogram("db_operation_duration_seconds", "Время работы операции с соединением", "method");
+    private static final MetricsRegistry.Family<LatencyHistogram> ACQUIRE_WAIT = MetricsRegistry.get()
+            .histogram("db_pool_wait_seconds", "Ожидание свободного соединения", "role");
+    private static final MetricsRegistry.Family<LongAdder> ERRORS = MetricsRegistry.get()
+            .counter("db_errors_total", "Ошибки SQL по операциям", "method");
+    private static final MetricsRegistry.Family<LongAdder> REPLACED = MetricsRegistry.get()
+            .counter("db_pool_replaced_total", "Неисправные соединения, замененные новыми", "role");
+
+    private final String databaseUrl;
+    private final StorageProfile storageProfile;
+    private final long acquireTimeoutMillis;
+    private final BlockingQueue<Connection> writers = new ArrayBlockingQueue<>(1);
+    private final BlockingQueue<Connection> readers;
+    private final List<Connection> allConnections = new ArrayList<>();
+    private volatile Thread writerThread;
+    private volatile String writerOperation;
+    private volatile boolean closed;
+
+    /**
+     * Создает пул и сразу открывает все соединения.
+     *
+     * @param databaseUrl          URL базы данных SQLite
+     * @param storageProfile       PRAGMA, применяемые к каждому соединению
+     * @param readerCount          количество соединений для чтения
+     * @param acquireTimeoutMillis время ожидания свободного соединения в миллисекундах
+     * @throws SQLException если не удалось открыть соединение
+     */
+    public ConnectionPool(String databaseUrl, StorageProfile storageProfile, int readerCount, long acquireTimeoutMillis)
+            throws SQLException {
+        if (readerCount < 1) {
+            throw new IllegalArgumentException("Количество соединений для чтения должно быть больше нуля");
+        }
+        this.databaseUrl = databaseUrl;
+        this.storageProfile = storageProfile;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.readers = new ArrayBlockingQueue<>(readerCount);
+        try {
+            writers.add(open());
+            for (int i = 0; i < readerCount; i++) {
+                readers.add(open());
+            }
+        } catch (SQLException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Открывает новое физическое соединение и применяет к нему профиль хранилища.
+     *
+     * @return открытое соединение
+     * @throws SQLException если произошла ошибка при открытии
+     */
+    private Connection open() throws SQLException {
+        Connection connection = DriverManager.getConnection(databaseUrl);
+        synchronized (allConnections) {
+            allConnections.add(connection);
+        }
+        storageProfile.apply(connection);
+        return connection;
+    }
+
+    /**
+     * Закрывает физическое соединение и убирает его из списка соединений пула.
+     */
+    private void discard(Connection connection) {
+        synchronized (allConnections) {
+            allConnections.remove(connection);
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            BotLogger.get().error("connection_close_failed", e);
+        }
+    }
+
+    /**
+     * Проверяет соединение перед выдачей. Соединение с локальным файлом SQLite ломается только закрытием,
+     * поэтому достаточно isClosed(), без проверочного запроса на каждую выдачу.
+     */
+    private static boolean isHealthy(Connection connection) {
+        try {
+            return !connection.isClosed();
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Выдает соединение для записи. Одновременно может быть выдано только одно такое соединение.
+     *
+     * @param operation имя операции для метрик
+     * @return соединение, которое нужно закрыть после использования
+     * @throws SQLException если соединение не освободилось за отведенное время
+     *                      или этот поток уже держит соединение для записи
+     */
+    public Connection getWriter(String operation) throws SQLException {
+        if (writerThread == Thread.currentThread()) {
+            ERRORS.labels(operation).increment();
+            throw new SQLException("Вложенный запрос соединения для записи в " + operation
+                    + ": этот поток уже держит его для " + writerOperation);
+        }
+        Connection connection = acquire(writers, "записи", "writer", operation);
+        writerThread = Thread.currentThread();
+        writerOperation = operation;
+        return connection;
+    }
+
+    /**
+     * Выдает соединение для чтения.
+     *
+     * @param operation имя операции для метрик
+     * @return соединение, которое нужно закрыть после использования
+     * @throws SQLException если соединение не освободилось за отведенное время
+     */
+    public Connection getReader(String operation) throws SQLException {
+        return acquire(readers, "чтения", "reader", operation);
+    }
+
+    /**
+     * Берет соединение из очереди и оборачивает его так, чтобы close() возвращал его обратно.
+     */
+    private Connection acquire(BlockingQueue<Connection> queue, String purpose, String role, String operation)
+            throws SQLException {
+        if (closed) {
+            throw new SQLException("Пул соединений закрыт");
+        }
+        long startedAt = System.nanoTime();
+        Connection connection;
+        try {
+            connection = queue.poll(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Ожидание соединения для " + purpose + " прервано", e);
+        } finally {
+            ACQUIRE_WAIT.labels(role).recordSince(startedAt);
+        }
+        if (connection == null) {
+            ERRORS.labels(operation).increment();
+            throw new SQLException("Нет свободного соединения для " + purpose);
+        }
+        if (!isHealthy(connection)) {
+            Connection broken = connection;
+            try {
+                connection = open();
+            } catch (SQLException e) {
+                queue.add(broken);
+                ERRORS.labels(operation).increment();
+                throw e;
+            }
+            discard(broken);
+            REPLACED.labels(role).increment();
+            BotLogger.get().warn("connection_replaced", "Неисправное соединение для " + purpose + " заменено");
+        }
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                new PooledConnectionHandler(connection, queue, operation));
+    }
+
+    /**
+     * Вызывает метод объекта JDBC, считая ошибки SQL операции.
+     * Выражения, созданные соединением, тоже оборачиваются, чтобы учитывались ошибки их выполнения.
+     */
+    private static Object invokeCounted(Object target, java.lang.reflect.Method method, Object[] args,
+                                        String operation) throws Throwable {
+        Object result;
+        try {
+            result = method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof SQLException) {
+                ERRORS.labels(operation).increment();
+            }
+            throw e.getCause();
+        }
+        if (result instanceof Statement && method.getReturnType().isInterface()) {
+            return Proxy.newProxyInstance(
+                    Statement.class.getClassLoader(),
+                    new Class<?>[]{method.getReturnType()},
+                    (proxy, statementMethod, statementArgs) ->
+                            invokeCounted(result, statementMethod, statementArgs, operation));
+        }
+        return result;
+    }
+
+    /**
+     * Закрывает все соединения пула.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (allConnections) {
+            for (Connection connection : allConnections) {
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    BotLogger.get().error("connection_close_failed", e);
+                }
+            }
+            allConnections.clear();
+        }
+    }
+
+    /**
+     * Обработчик вызовов выданного соединения.
+     * Вместо закрытия откатывает незавершенную транзакцию и возвращает соединение в очередь.
+     * Если откатить не удалось, физическое соединение закрывается, чтобы его заменили при выдаче.
+     */
+    private class PooledConnectionHandler implements InvocationHandler {
+        private final Connection connection;
+        private final BlockingQueue<Connection> owner;
+        private final String operation;
+        private final long acquiredAtNanos = System.nanoTime();
+        private boolean released;
+
+        PooledConnectionHandler(Connection connection, BlockingQueue<Connection> owner, String operation) {
+            this.connection = connection;
+            this.owner = owner;
+            this.operation = operation;
+        }
+
+        @Override
+        public Object invoke(Object proxy, java.lang.reflect.Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close" -> {
+                    release();
+                    return null;
+                }
+                case "isClosed" -> {
+                    return released || connection.isClosed();
+                }
+                default -> {
+                    if (released) {
+                        throw new SQLException("Соединение уже возвращено в пул");
+                    }
+                    return invokeCounted(connection, method, args, operation);
+                }
+            }
+        }
+
+        /**
+         * Возвращает соединение в пул в исходном состоянии.
+         */
+        private void release() throws SQLException {
+            if (released) {
+                return;
+            }
+            released = true;
+            OPERATION_DURATION.labels(operation).recordSince(acquiredAtNanos);
+            if (owner == writers) {
+                writerThread = null;
+                writerOperation = null;
+            }
+            if (closed) {
+                return;
+            }
+            try {
+                if (!connection.getAutoCommit()) {
+                    connection.rollback();
+                    connection.setAutoCommit(true);
+                }
+            } catch (SQLException e) {
+                BotLogger.get().error("connection_reset_failed", e);
+                try {
+                    connection.close();
+                } catch (SQLException closeError) {
+                    e.addSuppressed(closeError);
+                }
+            } finally {
+                if (!closed) {
+                    owner.add(connection);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package org.example;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Конечный автомат многошаговых диалогов пользователя: регистрация и вход, ввод задачи
+ * для операции, работа с подзадачами.
+ * <p>
+ * У пользователя не больше одного диалога. Диалог находится в одном из состояний {@link State},
+ * допустимые переходы между ними заданы таблицей, недопустимый переход - ошибка программы.
+ * Сервисы подключаются как обработчики своих {@link Flow}. Чтобы понять, куда направить сообщение,
+ * достаточно одного поиска в хранилище: обработчик выбирается по состоянию найденного диалога.
+ * <p>
+ * Хранилище создается при первом обращении, после того как все сервисы зарегистрировались,
+ * поэтому состояния, сохраненные до перезапуска, читаются уже зная сериализацию каждого диалога.
+ */
+public class ConversationEngine {
+    private static final String STORE_NAME = "conversation";
+    private static final Map<State, Set<State>> TRANSITIONS = new EnumMap<>(State.class);
+
+    static {
+        TRANSITIONS.put(State.AUTH_USERNAME, EnumSet.of(State.AUTH_PASSWORD));
+        TRANSITIONS.put(State.AUTH_PASSWORD, EnumSet.noneOf(State.class));
+        TRANSITIONS.put(State.OPERATION_INPUT, EnumSet.noneOf(State.class));
+        TRANSITIONS.put(State.SUBTASK_MENU,
+                EnumSet.of(State.SUBTASK_ADD, State.SUBTASK_DELETE, State.SUBTASK_EDIT_SELECT));
+        TRANSITIONS.put(State.SUBTASK_ADD, EnumSet.of(State.SUBTASK_MENU));
+        TRANSITIONS.put(State.SUBTASK_DELETE, EnumSet.of(State.SUBTASK_MENU));
+        TRANSITIONS.put(State.SUBTASK_EDIT_SELECT, EnumSet.of(State.SUBTASK_EDIT_TEXT, State.SUBTASK_MENU));
+        TRANSITIONS.put(State.SUBTASK_EDIT_TEXT, EnumSet.of(State.SUBTASK_MENU));
+    }
+
+    /**
+     * Вид диалога. Каждый вид обрабатывает один сервис.
+     */
+    public enum Flow {
+        AUTH, OPERATION, SUBTASK
+    }
+
+    /**
+     * Состояние диалога: чего бот ждет от пользователя.
+     */
+    public enum State {
+        /** Ожидается логин. */
+        AUTH_USERNAME(Flow.AUTH, true),
+        /** Ожидается пароль. */
+        AUTH_PASSWORD(Flow.AUTH, false),
+        /** Ожидается текст для операции с задачей. */
+        OPERATION_INPUT(Flow.OPERATION, true),
+        /** Выбрана задача, ожидается действие с подзадачами. */
+        SUBTASK_MENU(Flow.SUBTASK, true),
+        /** Ожидается текст новой подзадачи. */
+        SUBTASK_ADD(Flow.SUBTASK, false),
+        /** Ожидается подзадача для удаления. */
+        SUBTASK_DELETE(Flow.SUBTASK, false),
+        /** Ожидается подзадача для изменения. */
+        SUBTASK_EDIT_SELECT(Flow.SUBTASK, false),
+        /** Ожидается новая формулировка подзадачи. */
+        SUBTASK_EDIT_TEXT(Flow.SUBTASK, false);
+
+        private final Flow flow;
+        private final boolean initial;
+
+        State(Flow flow, boolean initial) {
+            this.flow = flow;
+            this.initial = initial;
+        }
+
+        /**
+         * Возвращает вид диалога, которому принадлежит состояние.
+         *
+         * @return вид диалога
+         */
+        public Flow flow() {
+            return flow;
+        }
+
+        /**
+         * Проверяет, может ли диалог начинаться с этого состояния.
+         *
+         * @return true для начальных состояний
+         */
+        public boolean isInitial() {
+            return initial;
+        }
+    }
+
+    /**
+     * Обработчик сообщений одного вида диалога.
+     */
+    @FunctionalInterface
+    public interface FlowHandler {
+        /**
+         * Обрабатывает сообщение пользователя, у которого идет диалог этого вида.
+         *
+         * @param userId       идентификатор пользователя на платформе
+         * @param input        текст сообщения
+         * @param command      команда, которой оказалось сообщение; null, если это не команда
+         * @param conversation диалог пользователя
+         * @return ответ пользователю
+         */
+        BotResponse handle(String userId, String input, CommandRegistry.Command command, Conversation conversation);
+    }
+
+    /**
+     * Диалог пользователя: текущее состояние и данные, которые сервис собирает по ходу диалога.
+     */
+    public static final class Conversation {
+        private volatile State state;
+        private final Object data;
+
+        private Conversation(State state, Object data) {
+            this.state = state;
+            this.data = data;
+        }
+
+        /**
+         * Возвращает текущее состояние.
+         *
+         * @return состояние
+         */
+        public State state() {
+            return state;
+        }
+
+        /**
+         * Возвращает данные диалога, созданные сервисом при начале диалога.
+         *
+         * @return данные диалога
+         */
+        public Object data() {
+            return data;
+        }
+    }
+
+    private final ConversationStateBackend backend;
+    private final FlowHandler[] handlers = new FlowHandler[Flow.values().length];
+    @SuppressWarnings("unchecked")
+    private final ConversationStateCodec<Object>[] codecs = new ConversationStateCodec[Flow.values().length];
+    private final Map<State, LongAdder> transitions = new EnumMap<>(State.class);
+    private volatile ConversationStateStore<Conversation> store;
+
+    /**
+     * Создает автомат с хранением диалогов только в памяти.
+     */
+    public ConversationEngine() {
+        this(ConversationStateBackend.inMemory());
+    }
+
+    /**
+     * Создает автомат.
+     *
+     * @param backend место сохранения диалогов
+     */
+    public ConversationEngine(ConversationStateBackend backend) {
+        this.backend = backend;
+        MetricsRegistry.Family<LongAdder> counter = MetricsRegistry.get().counter(
+                "bot_conversation_transitions_total", "Переходы диалогов в состояние", "state");
+        for (State state : State.values()) {
+            transitions.put(state, counter.labels(state.name()));
+        }
+    }
+
+    /**
+     * Подключает обработчик вида диалога.
+     *
+     * @param flow    вид диалога
+     * @param handler обработчик сообщений
+     * @param codec   сериализация данных диалога
+     * @param <D>     тип данных диалога
+     * @throws IllegalStateException если автомат уже используется или вид диалога уже подключен
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized <D> void register(Flow flow, FlowHandler handler, ConversationStateCodec<D> codec) {
+        if (store != null) {
+            throw new IllegalStateException("Диалоги нужно подключать до первого сообщения");
+        }
+        if (handlers[flow.ordinal()] != null) {
+            throw new IllegalStateException("Обработчик диалога " + flow + " уже подключен");
+        }
+        handlers[flow.ordinal()] = handler;
+        codecs[flow.ordinal()] = (ConversationStateCodec<Object>) codec;
+    }
+
+    private ConversationStateStore<Conversation> store() {
+        ConversationStateStore<Conversation> current = store;
+        if (current == null) {
+            synchronized (this) {
+                current = store;
+                if (current == null) {
+                    current = new ConversationStateStore<>(STORE_NAME, new ConversationCodec(), backend);
+                    store = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Проверяет, разрешен ли переход между состояниями.
+     *
+     * @param from текущее состояние
+     * @param to   новое состояние
+     * @return true если переход есть в таблице
+     */
+    public static boolean canMove(State from, State to) {
+        return TRANSITIONS.get(from).contains(to);
+    }
+
+    /**
+     * Возвращает диалог пользователя и продлевает время его жизни.
+     *
+     * @param userId идентификатор пользователя на платформе
+     * @return диалог или null, если диалога нет
+     */
+    public Conversation get(String userId) {
+        return store().get(userId);
+    }
+
+    /**
+     * Возвращает вид текущего диалога пользователя.
+     *
+     * @param userId идентификатор пользователя на платформе
+     * @return вид диалога или null, если диалога нет
+     */
+    public Flow flowOf(String userId) {
+        Conversation conversation = get(userId);
+        return conversation == null ? null : conversation.state.flow;
+    }
+
+    /**
+     * Передает сообщение обработчику вида диалога.
+     *
+     * @param userId       идентификатор пользователя на платформе
+     * @param input        текст сообщения
+     * @param command      команда, найденная в сообщении; null, если это не команда
+     * @param conversation диалог пользователя, полученный через {@link #get(String)}
+     * @return ответ пользователю
+     */
+    public BotResponse dispatch(String userId, String input, CommandRegistry.Command command,
+                                Conversation conversation) {
+        return handlers[conversation.state.flow.ordinal()].handle(userId, input, command, conversation);
+    }
+
+    /**
+     * Начинает новый диалог, заменяя прежний.
+     *
+     * @param userId идентификатор пользователя на платформе
+     * @param state  начальное состояние
+     * @param data   данные диалога
+     * @return диалог
+     * @throws IllegalStateException если состояние не начальное или вид диалога не подключен
+     */
+    public Conversation start(String userId, State state, Object data) {
+        if (!state.initial) {
+            throw new IllegalStateException("Диалог не может начинаться с состояния " + state);
+        }
+        if (handlers[state.flow.ordinal()] == null) {
+            throw new IllegalStateException("Обработчик диалога " + state.flow + " не подключен");
+        }
+        Conversation conversation = new Conversation(state, data);
+        store().put(userId, conversation);
+        transitions.get(state).increment();
+        return conversation;
+    }
+
+    /**
+     * Переводит диалог в новое состояние и сохраняет его.
+     *
+     * @param userId       идентификатор пользователя на платформе
+     * @param conversation диалог
+     * @param next         новое состояние
+     * @throws IllegalStateException если перехода нет в таблице
+     */
+    public void moveTo(String userId, Conversation conversation, State next) {
+        State current = conversation.state;
+        if (!canMove(current, next)) {
+            throw new IllegalStateException("Недопустимый переход диалога: " + current + " -> " + next);
+        }
+        conversation.state = next;
+        transitions.get(next).increment();
+        store().update(userId, conversation);
+    }
+
+    /**
+     * Сохраняет изменения данных диалога, если диалог еще не завершен.
+     *
+     * @param userId       идентификатор пользователя на платформе
+     * @param conversation диалог
+     */
+    public void update(String userId, Conversation conversation) {
+        store().update(userId, conversation);
+    }
+
+    /**
+     * Завершает диалог пользователя.
+     *
+     * @param userId идентификатор пользователя на платформе
+     */
+    public void finish(String userId) {
+        store().remove(userId);
+    }
+
+    /**
+     * Сериализует диалог: имя состояния, затем данные в формате сервиса.
+     */
+    private final class ConversationCodec implements ConversationStateCodec<Conversation> {
+        @Override
+        public void write(Conversation conversation, DataOutput out) throws IOException {
+            State state = conversation.state;
+            out.writeUTF(state.name());
+            codecs[state.flow.ordinal()].write(conversation.data, out);
+        }
+
+        @Override
+        public Conversation read(DataInput in) throws IOException {
+            State state = State.valueOf(in.readUTF());
+            ConversationStateCodec<Object> codec = codecs[state.flow.ordinal()];
+            if (codec == null) {
+                throw new IOException("Сериализация диалога " + state.flow + " не подключена");
+            }
+            return new Conversation(state, codec.read(in));
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package org.example;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Место хранения состояний диалогов за пределами памяти процесса.
+ * {@link ConversationStateStore} читает состояния из своей памяти, а в хранилище только
+ * сообщает об изменениях и загружает из него состояния при запуске, поэтому медленное
+ * хранилище не замедляет обработку сообщений.
+ * <p>
+ * Состояние передается уже сериализованным в байты, см. {@link ConversationStateCodec}.
+ */
+public interface ConversationStateBackend extends AutoCloseable {
+
+    /**
+     * Сохраненное состояние.
+     *
+     * @param userId          идентификатор пользователя на платформе
+     * @param data            сериализованное состояние
+     * @param updatedAtMillis момент последнего изменения, мс с начала эпохи
+     */
+    record StoredState(String userId, byte[] data, long updatedAtMillis) {
+    }
+
+    /**
+     * Возвращает все состояния диалога, измененные не раньше указанного момента.
+     *
+     * @param flow            название диалога
+     * @param notBeforeMillis самый ранний допустимый момент изменения
+     * @return состояния
+     */
+    List<StoredState> loadAll(String flow, long notBeforeMillis);
+
+    /**
+     * Возвращает состояние пользователя, которого нет в памяти процесса.
+     * Нужно, когда несколько экземпляров бота обслуживают одних и тех же пользователей.
+     *
+     * @param flow            название диалога
+     * @param userId          идентификатор пользователя на платформе
+     * @param notBeforeMillis самый ранний допустимый момент изменения
+     * @return состояние или null
+     */
+    StoredState load(String flow, String userId, long notBeforeMillis);
+
+    /**
+     * Сохраняет состояние. Может выполняться отложенно.
+     *
+     * @param flow            название диалога
+     * @param userId          идентификатор пользователя на платформе
+     * @param data            сериализованное состояние
+     * @param updatedAtMillis момент изменения, мс с начала эпохи
+     */
+    void save(String flow, String userId, byte[] data, long updatedAtMillis);
+
+    /**
+     * Удаляет состояние. Может выполняться отложенно.
+     *
+     * @param flow   название диалога
+     * @param userId идентификатор пользователя на платформе
+     */
+    void delete(String flow, String userId);
+
+    /**
+     * Записывает отложенные изменения и освобождает ресурсы.
+     */
+    @Override
+    void close();
+
+    /**
+     * Возвращает хранилище, которое ничего не сохраняет: состояния живут только в памяти процесса.
+     *
+     * @return хранилище в памяти
+     */
+    static ConversationStateBackend inMemory() {
+        return InMemoryConversationStateBackend.INSTANCE;
+    }
+
+    /**
+     * Создает хранилище по настройке conversation.backend из application.properties:
+     * memory (по умолчанию) или sqlite.
+     *
+     * @param databaseService сервис базы данных для хранилища sqlite
+     * @return хранилище состояний
+     */
+    static ConversationStateBackend fromConfig(DatabaseService databaseService) {
+        AppConfig config = AppConfig.get();
+        String backend = config.getString("conversation.backend", "memory").trim().toLowerCase(Locale.ROOT);
+        return switch (backend) {
+            case "memory" -> inMemory();
+            case "sqlite" -> new SqliteConversationStateBackend(databaseService,
+                    Duration.ofMillis(config.getLong("conversation.sqlite.flush-ms", 200)),
+                    config.getInt("conversation.sqlite.batch-size", 256),
+                    config.getBoolean("conversation.sqlite.read-through", false));
+            default -> throw new IllegalArgumentException("Неизвестное хранилище состояний: " + backend);
+        };
+    }
+}
@@ -0,0 +1,59 @@
+package org.example;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Компактная двоичная сериализация состояния диалога для {@link ConversationStateBackend}.
+ * Каждый сервис описывает свое состояние сам: поля пишутся подряд без имен.
+ * Если формат состояния меняется, старые записи не читаются и пропускаются,
+ * пользователь просто начинает диалог заново.
+ *
+ * @param <S> тип состояния
+ */
+public interface ConversationStateCodec<S> {
+
+    /**
+     * Записывает состояние.
+     *
+     * @param state состояние
+     * @param out   поток записи
+     * @throws IOException при ошибке записи
+     */
+    void write(S state, DataOutput out) throws IOException;
+
+    /**
+     * Читает состояние.
+     *
+     * @param in поток чтения
+     * @return состояние
+     * @throws IOException если данные повреждены или записаны в другом формате
+     */
+    S read(DataInput in) throws IOException;
+
+    /**
+     * Записывает строку, которая может быть null.
+     *
+     * @param out   поток записи
+     * @param value строка или null
+     * @throws IOException при ошибке записи
+     */
+    static void writeNullable(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    /**
+     * Читает строку, записанную {@link #writeNullable(DataOutput, String)}.
+     *
+     * @param in поток чтения
+     * @return строка или null
+     * @throws IOException при ошибке чтения
+     */
+    static String readNullable(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
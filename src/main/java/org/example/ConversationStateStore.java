@@ -0,0 +1,353 @@
+package org.example;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Хранилище состояний многошаговых диалогов (регистрация, ввод задачи, расширение задачи)
+ * по идентификатору пользователя на платформе.
+ * <p>
+ * Состояние, к которому не обращались дольше времени простоя, удаляется: при чтении
+ * и фоновой очисткой, которая раз в период проходит по всем записям. Количество записей
+ * ограничено; при превышении сначала удаляются просроченные записи, затем самая давно
+ * использованная десятая часть. Поэтому брошенные диалоги не накапливаются в памяти.
+ * <p>
+ * Метрики: bot_conversation_states{flow} - текущее количество состояний,
+ * bot_conversation_states_expired_total{flow} и bot_conversation_states_evicted_total{flow} -
+ * удаленные по времени простоя и по ограничению размера.
+ * <p>
+ * Чтение всегда идет из памяти. Если задано сохраняющее {@link ConversationStateBackend},
+ * каждое изменение сериализуется и передается ему, а при создании хранилища непросроченные
+ * состояния загружаются обратно. Состояние - изменяемый объект, поэтому после изменения его полей
+ * нужно вызвать {@link #update(String, Object)}.
+ *
+ * @param <S> тип состояния
+ */
+public class ConversationStateStore<S> implements AutoCloseable {
+    private static final ScheduledExecutorService SWEEPER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "conversation-sweeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String flow;
+    private final long idleTtlNanos;
+    private final int maxEntries;
+    private final LongSupplier clock;
+    private final ConversationStateCodec<S> codec;
+    private final ConversationStateBackend backend;
+    private final boolean persistent;
+    private final Map<String, Entry<S>> entries = new ConcurrentHashMap<>();
+    private final LongAdder expired;
+    private final LongAdder evicted;
+    private final ScheduledFuture<?> sweepTask;
+
+    /**
+     * Состояние и момент последнего обращения к нему.
+     */
+    private static final class Entry<S> {
+        final S state;
+        volatile long lastAccessNanos;
+
+        Entry(S state, long lastAccessNanos) {
+            this.state = state;
+            this.lastAccessNanos = lastAccessNanos;
+        }
+    }
+
+    /**
+     * Создает хранилище с параметрами из application.properties:
+     * conversation.idle-ttl-minutes, conversation.max-entries и conversation.sweep-seconds.
+     *
+     * @param flow    название диалога для метрик и хранилища, например "auth"
+     * @param codec   сериализация состояния
+     * @param backend место сохранения состояний
+     */
+    public ConversationStateStore(String flow, ConversationStateCodec<S> codec, ConversationStateBackend backend) {
+        this(flow, codec, backend,
+                Duration.ofMinutes(AppConfig.get().getLong("conversation.idle-ttl-minutes", 30)),
+                AppConfig.get().getInt("conversation.max-entries", 100_000),
+                Duration.ofSeconds(AppConfig.get().getLong("conversation.sweep-seconds", 60)));
+    }
+
+    /**
+     * Создает хранилище.
+     *
+     * @param flow          название диалога для метрик и хранилища
+     * @param codec         сериализация состояния; может быть null для хранилища в памяти
+     * @param backend       место сохранения состояний
+     * @param idleTtl       время простоя, после которого состояние удаляется
+     * @param maxEntries    максимальное количество состояний
+     * @param sweepInterval период фоновой очистки; null - без фоновой очистки
+     */
+    public ConversationStateStore(String flow, ConversationStateCodec<S> codec, ConversationStateBackend backend,
+                                  Duration idleTtl, int maxEntries, Duration sweepInterval) {
+        this(flow, codec, backend, idleTtl, maxEntries, sweepInterval, System::nanoTime);
+    }
+
+    ConversationStateStore(String flow, ConversationStateCodec<S> codec, ConversationStateBackend backend,
+                           Duration idleTtl, int maxEntries, Duration sweepInterval, LongSupplier clock) {
+        if (maxEntries < 1 || idleTtl.isNegative() || idleTtl.isZero()) {
+            throw new IllegalArgumentException("Размер и время простоя хранилища состояний должны быть больше нуля");
+        }
+        this.persistent = backend != ConversationStateBackend.inMemory();
+        if (persistent && codec == null) {
+            throw new IllegalArgumentException("Для сохранения состояний диалога " + flow + " нужна сериализация");
+        }
+        this.flow = flow;
+        this.idleTtlNanos = idleTtl.toNanos();
+        this.maxEntries = maxEntries;
+        this.clock = clock;
+        this.codec = codec;
+        this.backend = backend;
+
+        MetricsRegistry metrics = MetricsRegistry.get();
+        this.expired = metrics.counter("bot_conversation_states_expired_total",
+                "Состояния диалогов, удаленные по времени простоя", "flow").labels(flow);
+        this.evicted = metrics.counter("bot_conversation_states_evicted_total",
+                "Состояния диалогов, удаленные из-за ограничения размера", "flow").labels(flow);
+        metrics.gauge("bot_conversation_states", "Текущее количество состояний диалогов", "flow", flow,
+                entries::size);
+
+        if (persistent) {
+            restore();
+        }
+        this.sweepTask = sweepInterval == null ? null : scheduleSweep(this, sweepInterval.toMillis());
+    }
+
+    /**
+     * Загружает непросроченные состояния из хранилища. Время простоя отсчитывается от последнего изменения.
+     */
+    private void restore() {
+        long nowMillis = System.currentTimeMillis();
+        long nowNanos = clock.getAsLong();
+        int restored = 0;
+        for (ConversationStateBackend.StoredState stored : backend.loadAll(flow, notBeforeMillis(nowMillis))) {
+            S state = decode(stored);
+            if (state != null) {
+                long idleNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, nowMillis - stored.updatedAtMillis()));
+                entries.putIfAbsent(stored.userId(), new Entry<>(state, nowNanos - idleNanos));
+                restored++;
+            }
+        }
+        if (restored > 0) {
+            BotLogger.get().info("conversation_states_restored", "flow=" + flow + " count=" + restored);
+        }
+    }
+
+    private long notBeforeMillis(long nowMillis) {
+        return nowMillis - TimeUnit.NANOSECONDS.toMillis(idleTtlNanos);
+    }
+
+    /**
+     * Планирует очистку через слабую ссылку: хранилище, которое больше никто не использует,
+     * может быть собрано сборщиком мусора, после чего задача отменяет сама себя.
+     */
+    private static ScheduledFuture<?> scheduleSweep(ConversationStateStore<?> store, long periodMillis) {
+        WeakReference<ConversationStateStore<?>> reference = new WeakReference<>(store);
+        ScheduledFuture<?>[] task = new ScheduledFuture<?>[1];
+        task[0] = SWEEPER.scheduleAtFixedRate(() -> {
+            ConversationStateStore<?> target = reference.get();
+            if (target == null) {
+                task[0].cancel(false);
+                return;
+            }
+            try {
+                target.sweep();
+            } catch (RuntimeException e) {
+                BotLogger.get().error("conversation_sweep_failed", e);
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        return task[0];
+    }
+
+    /**
+     * Возвращает состояние пользователя и продлевает его время жизни.
+     *
+     * @param userId идентификатор пользователя на платформе
+     * @return состояние или null, если его нет или оно просрочено
+     */
+    public S get(String userId) {
+        Entry<S> entry = entries.get(userId);
+        if (entry == null) {
+            return persistent ? loadMissing(userId) : null;
+        }
+        long now = clock.getAsLong();
+        if (now - entry.lastAccessNanos > idleTtlNanos) {
+            if (entries.remove(userId, entry)) {
+                expired.increment();
+                backend.delete(flow, userId);
+            }
+            return null;
+        }
+        entry.lastAccessNanos = now;
+        return entry.state;
+    }
+
+    /**
+     * Проверяет, есть ли у пользователя непросроченное состояние, и продлевает его время жизни.
+     *
+     * @param userId идентификатор пользователя на платформе
+     * @return true если состояние есть
+     */
+    public boolean contains(String userId) {
+        return get(userId) != null;
+    }
+
+    /**
+     * Сохраняет состояние пользователя, заменяя прежнее.
+     *
+     * @param userId идентификатор пользователя на платформе
+     * @param state  состояние
+     */
+    public void put(String userId, S state) {
+        entries.put(userId, new Entry<>(state, clock.getAsLong()));
+        save(userId, state);
+        if (entries.size() > maxEntries) {
+            shrink();
+        }
+    }
+
+    /**
+     * Сообщает, что поля состояния изменились, чтобы изменение было сохранено.
+     * Если состояние пользователя уже удалено или заменено другим, ничего не происходит.
+     *
+     * @param userId идентификатор пользователя на платформе
+     * @param state  измененное состояние
+     */
+    public void update(String userId, S state) {
+        Entry<S> entry = entries.get(userId);
+        if (entry != null && entry.state == state) {
+            entry.lastAccessNanos = clock.getAsLong();
+            save(userId, state);
+        }
+    }
+
+    /**
+     * Удаляет состояние пользователя.
+     *
+     * @param userId идентификатор пользователя на платформе
+     */
+    public void remove(String userId) {
+        if (entries.remove(userId) != null) {
+            backend.delete(flow, userId);
+        }
+    }
+
+    private void save(String userId, S state) {
+        if (!persistent) {
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            codec.write(state, out);
+        } catch (IOException e) {
+            BotLogger.get().error("conversation_state_encode_failed", e);
+            return;
+        }
+        backend.save(flow, userId, bytes.toByteArray(), System.currentTimeMillis());
+    }
+
+    private S decode(ConversationStateBackend.StoredState stored) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(stored.data()))) {
+            return codec.read(in);
+        } catch (IOException | RuntimeException e) {
+            BotLogger.get().warn("conversation_state_decode_failed",
+                    "flow=" + flow + " user=" + stored.userId() + " error=" + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Ищет в хранилище состояние, которого нет в памяти, например записанное другим экземпляром бота.
+     */
+    private S loadMissing(String userId) {
+        ConversationStateBackend.StoredState stored =
+                backend.load(flow, userId, notBeforeMillis(System.currentTimeMillis()));
+        S state = stored == null ? null : decode(stored);
+        if (state == null) {
+            return null;
+        }
+        Entry<S> entry = new Entry<>(state, clock.getAsLong());
+        Entry<S> existing = entries.putIfAbsent(userId, entry);
+        return existing == null ? state : existing.state;
+    }
+
+    /**
+     * Возвращает текущее количество состояний, включая еще не удаленные просроченные.
+     *
+     * @return количество состояний
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Удаляет все просроченные состояния.
+     *
+     * @return количество удаленных состояний
+     */
+    public int sweep() {
+        long now = clock.getAsLong();
+        int removed = 0;
+        for (Map.Entry<String, Entry<S>> item : entries.entrySet()) {
+            if (now - item.getValue().lastAccessNanos > idleTtlNanos && entries.remove(item.getKey(), item.getValue())) {
+                backend.delete(flow, item.getKey());
+                removed++;
+            }
+        }
+        expired.add(removed);
+        return removed;
+    }
+
+    /**
+     * Возвращает хранилище в пределы размера: удаляет просроченные состояния, а если их не хватило -
+     * десятую часть самых давно использованных. Сортировка выполняется один раз на много вставок.
+     */
+    private synchronized void shrink() {
+        if (entries.size() <= maxEntries || sweep() > 0 && entries.size() <= maxEntries) {
+            return;
+        }
+        long[] accessTimes = entries.values().stream().mapToLong(entry -> entry.lastAccessNanos).toArray();
+        Arrays.sort(accessTimes);
+        int toEvict = Math.max(entries.size() - maxEntries, maxEntries / 10);
+        long threshold = accessTimes[Math.min(toEvict, accessTimes.length) - 1];
+        int removed = 0;
+        for (Map.Entry<String, Entry<S>> item : entries.entrySet()) {
+            if (removed >= toEvict) {
+                break;
+            }
+            if (item.getValue().lastAccessNanos <= threshold && entries.remove(item.getKey(), item.getValue())) {
+                backend.delete(flow, item.getKey());
+                removed++;
+            }
+        }
+        evicted.add(removed);
+        BotLogger.get().warn("conversation_states_evicted",
+                "flow=" + flow + " removed=" + removed + " max=" + maxEntries);
+    }
+
+    /**
+     * Останавливает фоновую очистку. Состояния остаются доступны.
+     */
+    @Override
+    public void close() {
+        if (sweepTask != null) {
+            sweepTask.cancel(false);
+        }
+    }
+}
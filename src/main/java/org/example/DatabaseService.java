@@ -1,506 +1,1249 @@
-package org.example;
-
-import java.sql.*;
-import java.util.ArrayList;
-import java.util.List;
-
-/**
- * Сервис для работы с базой данных приложения планировщика задач.
- * Обеспечивает все операции с пользователями и задачами.
- */
-public class DatabaseService {
-
-    private final String databaseUrl;
-
-    /**
-     * Конструктор с указанием URL базы данных.
-     *
-     * @param dbUrl URL базы данных SQLite
-     */
-    public DatabaseService(String dbUrl) {
-        this.databaseUrl = dbUrl;
-        initializeDatabase();
-    }
-
-    /**
-     * Конструктор по умолчанию, использующий базу данных "tasks.db".
-     */
-    public DatabaseService() {
-        this("jdbc:sqlite:tasks.db");
-    }
-
-    /**
-     * Класс для хранения данных о задачах пользователя.
-     * Содержит раздельные списки текущих и выполненных задач.
-     */
-    public class TaskData {
-        private final List<String> currentTasks;
-        private final List<String> completedTasks;
-
-        /**
-         * Конструктор для создания объекта с данными задач.
-         *
-         * @param currentTasks   список текущих задач
-         * @param completedTasks список выполненных задач
-         */
-        public TaskData(List<String> currentTasks, List<String> completedTasks) {
-            if (currentTasks != null) {
-                this.currentTasks = new ArrayList<>(currentTasks);
-            } else {
-                this.currentTasks = new ArrayList<>();
-            }
-
-            if (completedTasks != null) {
-                this.completedTasks = new ArrayList<>(completedTasks);
-            } else {
-                this.completedTasks = new ArrayList<>();
-            }
-        }
-
-        /**
-         * Возвращает копию списка текущих задач.
-         *
-         * @return список текущих задач
-         */
-        public List<String> getCurrentTasks() {
-            return new ArrayList<>(currentTasks);
-        }
-
-        /**
-         * Возвращает копию списка выполненных задач.
-         *
-         * @return список выполненных задач
-         */
-        public List<String> getCompletedTasks() {
-            return new ArrayList<>(completedTasks);
-        }
-    }
-
-    /**
-     * Инициализирует базу данных, создавая необходимые таблицы если они не существуют.
-     *
-     * @throws RuntimeException если произошла ошибка
-     */
-    private void initializeDatabase() {
-        try (Connection conn = DriverManager.getConnection(databaseUrl)) {
-            conn.setAutoCommit(false);
-
-            String createUsers = """
-                    CREATE TABLE IF NOT EXISTS users (
-                        id INTEGER PRIMARY KEY AUTOINCREMENT,
-                        username TEXT UNIQUE NOT NULL,
-                        password TEXT NOT NULL,
-                        created_at DATETIME DEFAULT CURRENT_TIMESTAMP
-                    );
-                    """;
-
-            String createCurrentTasks = """
-                    CREATE TABLE IF NOT EXISTS user_tasks (
-                        id INTEGER PRIMARY KEY AUTOINCREMENT,
-                        user_id INTEGER NOT NULL,
-                        task_text TEXT NOT NULL,
-                        created_at DATETIME DEFAULT CURRENT_TIMESTAMP,
-                        FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE,
-                        UNIQUE(user_id, task_text)
-                    );
-                    """;
-
-            String createCompletedTasks = """
-                    CREATE TABLE IF NOT EXISTS completed_tasks (
-                        id INTEGER PRIMARY KEY AUTOINCREMENT,
-                        user_id INTEGER NOT NULL,
-                        task_text TEXT NOT NULL,
-                        completed_at DATETIME DEFAULT CURRENT_TIMESTAMP,
-                        FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE,
-                        UNIQUE(user_id, task_text)
-                    );
-                    """;
-
-            String createUserSessions = """
-                    CREATE TABLE IF NOT EXISTS user_sessions (
-                        platform_type TEXT NOT NULL,
-                        platform_id TEXT NOT NULL,
-                        user_id INTEGER NOT NULL,
-                        created_at DATETIME DEFAULT CURRENT_TIMESTAMP,
-                        FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE,
-                        UNIQUE(platform_type, platform_id)
-                    );
-                    """;
-
-            String createSubtask = """
-                    CREATE TABLE IF NOT EXISTS subtasks (
-                        id INTEGER PRIMARY KEY AUTOINCREMENT,
-                        task_id INTEGER NOT NULL,
-                        subtask_text TEXT NOT NULL,
-                        created_at DATETIME DEFAULT CURRENT_TIMESTAMP,
-                        FOREIGN KEY (task_id) REFERENCES user_tasks(id) ON DELETE CASCADE,
-                        UNIQUE(task_id, subtask_text)
-                    );
-                    """;
-
-            try (Statement stmt = conn.createStatement()) {
-                stmt.execute(createUsers);
-                stmt.execute(createCurrentTasks);
-                stmt.execute(createCompletedTasks);
-                stmt.execute(createUserSessions);
-                stmt.execute(createSubtask);
-            }
-            conn.commit();
-        } catch (SQLException e) {
-            throw new RuntimeException("Ошибка - не удалось инициализировать базу данных", e);
-        }
-    }
-
-    /**
-     * Добавляет новую задачу для указанного пользователя.
-     *
-     * @param userId   идентификатор пользователя
-     * @param taskText текст задачи
-     * @throws IllegalStateException если задача с таким текстом уже существует
-     */
-    public void addTask(String userId, String taskText) {
-        String sql = "INSERT INTO user_tasks (user_id, task_text) VALUES (?, ?)";
-        try (Connection conn = DriverManager.getConnection(databaseUrl);
-             PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
-            preparedStatement.setString(1, userId);
-            preparedStatement.setString(2, taskText.trim());
-            preparedStatement.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-    }
-
-    /**
-     * Отмечает задачу как выполненную.
-     *
-     * @param userId   идентификатор пользователя
-     * @param taskText текст задачи
-     * @throws SQLException          если произошла ошибка при работе с базой данных
-     * @throws IllegalStateException если задача не найдена в списке текущих задач
-     */
-    public void markTaskDone(String userId, String taskText) throws SQLException {
-        String deleteSql = "DELETE FROM user_tasks WHERE user_id = ? AND task_text = ?";
-        String insertSql = "INSERT INTO completed_tasks (user_id, task_text) VALUES (?, ?)";
-
-        try (Connection conn = DriverManager.getConnection(databaseUrl)) {
-            conn.setAutoCommit(false);
-
-            try (PreparedStatement deleteStmt = conn.prepareStatement(deleteSql);
-                 PreparedStatement insertStmt = conn.prepareStatement(insertSql)) {
-
-                deleteStmt.setString(1, userId);
-                deleteStmt.setString(2, taskText.trim());
-                int deletedRows = deleteStmt.executeUpdate();
-
-                if (deletedRows > 0) {
-                    insertStmt.setString(1, userId);
-                    insertStmt.setString(2, taskText.trim());
-                    insertStmt.executeUpdate();
-                }
-
-                conn.commit();
-            } catch (SQLException e) {
-                conn.rollback();
-                throw e;
-            }
-        }
-    }
-
-    /**
-     * Удаляет задачу из списка текущих задач пользователя.
-     *
-     * @param userId   идентификатор пользователя
-     * @param taskText текст задачи
-     * @throws SQLException если произошла ошибка при работе с базой данных
-     */
-    public void deleteTask(String userId, String taskText) throws SQLException {
-        String sql = "DELETE FROM user_tasks WHERE user_id = ? AND task_text = ?";
-        try (Connection conn = DriverManager.getConnection(databaseUrl);
-             PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
-            preparedStatement.setString(1, userId);
-            preparedStatement.setString(2, taskText.trim());
-            preparedStatement.executeUpdate();
-        }
-    }
-
-    /**
-     * Возвращает список текущих задач пользователя.
-     *
-     * @param userId идентификатор пользователя
-     * @return список текущих задач
-     * @throws SQLException если произошла ошибка при работе
-     */
-    public List<String> getCurrentTasks(String userId) throws SQLException {
-        return getTasks(userId, "user_tasks");
-    }
-
-    /**
-     * Возвращает список выполненных задач пользователя.
-     *
-     * @param userId идентификатор пользователя
-     * @return список выполненных задач
-     * @throws SQLException если произошла ошибка при работе
-     */
-    public List<String> getCompletedTasks(String userId) throws SQLException {
-        return getTasks(userId, "completed_tasks");
-    }
-
-    /**
-     * Метод для получения задач из указанной таблицы.
-     *
-     * @param userId    идентификатор пользователя
-     * @param tableName имя таблицы
-     * @return список задач
-     * @throws SQLException если произошла ошибка при работе
-     */
-    private List<String> getTasks(String userId, String tableName) throws SQLException {
-        List<String> tasks = new ArrayList<>();
-        String sql = "SELECT task_text FROM " + tableName + " WHERE user_id = ? ORDER BY id";
-
-        try (Connection conn = DriverManager.getConnection(databaseUrl);
-             PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
-            preparedStatement.setString(1, userId);
-            ResultSet rs = preparedStatement.executeQuery();
-            while (rs.next()) {
-                tasks.add(rs.getString("task_text"));
-            }
-        }
-        return tasks;
-    }
-
-    /**
-     * Регистрирует нового пользователя в системе.
-     *
-     * @param username имя пользователя
-     * @param password пароль
-     * @return true если регистрация прошла успешно, false если пользователь с таким именем уже существует
-     * @throws SQLException если произошла ошибка при работе
-     */
-    public boolean registerUser(String username, String password) throws SQLException {
-        String sql = "INSERT INTO users (username, password) VALUES (?, ?)";
-        try (Connection conn = DriverManager.getConnection(databaseUrl);
-             PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
-            preparedStatement.setString(1, username.trim());
-            preparedStatement.setString(2, password);
-            preparedStatement.executeUpdate();
-            return true;
-        } catch (SQLException e) {
-            if (e.getErrorCode() == 19) {
-                return false;
-            }
-            e.printStackTrace();
-            throw e;
-        }
-    }
-
-    /**
-     * Аутентифицирует пользователя и создает сессию для платформы.
-     *
-     * @param username     имя пользователя
-     * @param password     пароль
-     * @param platformType тип платформы
-     * @param platformId   идентификатор
-     * @return true если аутентификация прошла успешно, false в противном случае
-     * @throws SQLException если произошла ошибка при работе
-     */
-    public boolean authenticateUser(String username, String password, String platformType, String platformId) throws SQLException {
-        String userSql = "SELECT id FROM users WHERE username = ? AND password = ?";
-
-        try (Connection conn = DriverManager.getConnection(databaseUrl)) {
-            conn.setAutoCommit(false);
-
-            String userId;
-            try (PreparedStatement userStmt = conn.prepareStatement(userSql)) {
-                userStmt.setString(1, username.trim());
-                userStmt.setString(2, password);
-                ResultSet rs = userStmt.executeQuery();
-                if (rs.next()) {
-                    userId = rs.getString("id");
-                } else {
-                    return false;
-                }
-            }
-
-            String sessionSql = "INSERT OR REPLACE INTO user_sessions (platform_type, platform_id, user_id) VALUES (?, ?, ?)";
-            try (PreparedStatement sessionStmt = conn.prepareStatement(sessionSql)) {
-                sessionStmt.setString(1, platformType);
-                sessionStmt.setString(2, platformId);
-                sessionStmt.setString(3, userId);
-                sessionStmt.executeUpdate();
-            }
-            conn.commit();
-            return true;
-        }
-    }
-
-    /**
-     * Возвращает имя пользователя по идентификатору платформы.
-     *
-     * @param platformType тип платформы
-     * @param platformId   идентификатор
-     * @return имя пользователя
-     * @throws SQLException если произошла ошибка при работе
-     */
-    public String getUsername(String platformType, String platformId) throws SQLException {
-        String sql = """
-                SELECT u.username 
-                FROM users u 
-                JOIN user_sessions us ON u.id = us.user_id 
-                WHERE us.platform_type = ? AND us.platform_id = ?
-                """;
-        try (Connection conn = DriverManager.getConnection(databaseUrl);
-             PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
-            preparedStatement.setString(1, platformType);
-            preparedStatement.setString(2, platformId);
-            ResultSet rs = preparedStatement.executeQuery();
-            if (rs.next()) {
-                return rs.getString("username");
-            }
-            return null;
-        }
-    }
-
-    /**
-     * Возвращает внутренний идентификатор пользователя по идентификатору платформы.
-     *
-     * @param platformId идентификатор платформы
-     * @return внутренний идентификатор пользователя
-     * @throws SQLException если произошла ошибка при работе
-     */
-    public String getUserIdByPlatform(String platformId) throws SQLException {
-        String sql = "SELECT user_id FROM user_sessions WHERE platform_id = ?";
-        try (Connection conn = DriverManager.getConnection(databaseUrl);
-             PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
-            preparedStatement.setString(1, platformId);
-            ResultSet rs = preparedStatement.executeQuery();
-            if (rs.next()) {
-                return rs.getString("user_id");
-            }
-            return null;
-        }
-    }
-
-    /**
-     * Экспортирует все задачи пользователя в объект TaskData.
-     *
-     * @param userId идентификатор пользователя
-     * @return объект TaskData с текущими и выполненными задачами
-     * @throws SQLException если произошла ошибка при работе
-     */
-    public TaskData exportTasks(String userId) throws SQLException {
-        List<String> currentTasks = getCurrentTasks(userId);
-        List<String> completedTasks = getCompletedTasks(userId);
-        return new TaskData(currentTasks, completedTasks);
-    }
-
-    /**
-     * Проверяет существование пользователя с указанным именем.
-     *
-     * @param username имя пользователя для проверки
-     * @return true если пользователь существует, false в противном случае
-     * @throws SQLException если произошла ошибка
-     */
-    public boolean userExists(String username) throws SQLException {
-        String sql = "SELECT id FROM users WHERE username = ?";
-        try (Connection conn = DriverManager.getConnection(databaseUrl);
-             PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
-            preparedStatement.setString(1, username.trim());
-            ResultSet rs = preparedStatement.executeQuery();
-            return rs.next();
-        }
-    }
-
-    /**
-     * Выход пользователя из системы.
-     */
-    public boolean logoutUser(String platformId, String platformType) throws SQLException {
-        String sql = "DELETE FROM user_sessions WHERE platform_id = ? AND platform_type = ?";
-        try (Connection conn = DriverManager.getConnection(databaseUrl);
-             PreparedStatement preparedStatement= conn.prepareStatement(sql)) {
-            preparedStatement.setString(1, platformId);
-            preparedStatement.setString(2, platformType);
-            int affectedRows = preparedStatement.executeUpdate();
-            return affectedRows > 0;
-        }
-    }
-
-    /**
-     * Добавляет новую подзадачу к указанной задаче.
-     */
-    public void addSubtask(Integer taskId, String subtaskText) throws SQLException {
-        String sql = "INSERT INTO subtasks (task_id, subtask_text) VALUES (?, ?)";
-        try (Connection conn = DriverManager.getConnection(databaseUrl);
-             PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
-            preparedStatement.setInt(1, taskId);
-            preparedStatement.setString(2, subtaskText.trim());
-            preparedStatement.executeUpdate();
-        } catch (SQLException e) {
-            if (e.getErrorCode() != 19) {
-                e.printStackTrace();
-                throw e;
-            }
-        }
-    }
-
-    /**
-     * Удаляет подзадачу.
-     */
-    public void deleteSubtask(Integer taskId, String subtaskText) throws SQLException {
-        String sql = "DELETE FROM subtasks WHERE task_id = ? AND subtask_text = ?";
-        try (Connection conn = DriverManager.getConnection(databaseUrl);
-             PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
-            preparedStatement.setInt(1, taskId);
-            preparedStatement.setString(2, subtaskText.trim());
-            preparedStatement.executeUpdate();
-        }
-    }
-
-    /**
-     * Изменяет текст подзадачи.
-     */
-    public void editSubtask(Integer taskId, String oldSubtaskText, String newSubtaskText) throws SQLException {
-        String sql = "UPDATE subtasks SET subtask_text = ? WHERE task_id = ? AND subtask_text = ?";
-        try (Connection conn = DriverManager.getConnection(databaseUrl);
-             PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
-            preparedStatement.setString(1, newSubtaskText.trim());
-            preparedStatement.setInt(2, taskId);
-            preparedStatement.setString(3, oldSubtaskText.trim());
-            preparedStatement.executeUpdate();
-        }
-    }
-
-    /**
-     * Список подзадач для задачи.
-     */
-    public List<String> getSubtasks(Integer taskId) throws SQLException {
-        List<String> subtasks = new ArrayList<>();
-        String sql = "SELECT id, task_id, subtask_text FROM subtasks WHERE task_id = ? ORDER BY id";
-        try (Connection conn = DriverManager.getConnection(databaseUrl);
-             PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
-            preparedStatement.setInt(1, taskId);
-            ResultSet rs = preparedStatement.executeQuery();
-            while (rs.next()) {
-                subtasks.add(rs.getString("subtask_text"));
-            }
-        }
-        return subtasks;
-    }
-
-    /**
-     * Возвращает идентификатор задачи.
-     */
-    public Integer getTaskId(String userId, String taskText) throws SQLException {
-        String sql = "SELECT id FROM user_tasks WHERE user_id = ? AND task_text = ?";
-        try (Connection conn = DriverManager.getConnection(databaseUrl);
-             PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
-            preparedStatement.setString(1, userId);
-            preparedStatement.setString(2, taskText.trim());
-            ResultSet rs = preparedStatement.executeQuery();
-            if (rs.next()) {
-                return rs.getInt("id");
-            }
-            return null;
-        }
-    }
-}
-
+package org.example;
+
+import java.io.IOException;
+import java.sql.*;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Сервис для работы с базой данных приложения планировщика задач.
+ * Обеспечивает все операции с пользователями и задачами.
+ */
+public class DatabaseService implements AutoCloseable {
+    private static final BotLogger LOGGER = BotLogger.get();
+    private static final int SESSIONS_CHUNK = 500;
+
+    private final ConnectionPool connectionPool;
+    private final LruCache<String, String> sessionCache;
+    private final LruCache<String, List<String>> currentTasksCache;
+    private final LruCache<String, List<String>> completedTasksCache;
+    private final LruCache<String, List<TaskTreeNode>> taskTreeCache;
+    private final LruCache<Integer, List<String>> subtasksCache;
+    private final int importBatchSize;
+
+    /**
+     * Конструктор с указанием URL базы данных.
+     * Размер пула соединений, профиль хранилища и размеры кэшей берутся из application.properties.
+     *
+     * @param dbUrl URL базы данных SQLite
+     */
+    public DatabaseService(String dbUrl) {
+        AppConfig config = AppConfig.get();
+        try {
+            this.connectionPool = new ConnectionPool(dbUrl,
+                    StorageProfile.fromConfig(config),
+                    config.getInt("db.pool.readers", 4),
+                    config.getLong("db.pool.acquire-timeout-ms", 5000));
+        } catch (SQLException e) {
+            throw new RuntimeException("Ошибка - не удалось открыть соединения с базой данных", e);
+        }
+        this.sessionCache = new LruCache<>(config.getInt("cache.sessions.max-size", 10000));
+        int maxUsers = config.getInt("cache.tasks.max-users", 10000);
+        Duration tasksTtl = Duration.ofSeconds(config.getLong("cache.tasks.ttl-seconds", 600));
+        this.currentTasksCache = new LruCache<>(maxUsers, tasksTtl);
+        this.completedTasksCache = new LruCache<>(maxUsers, tasksTtl);
+        this.taskTreeCache = new LruCache<>(maxUsers, tasksTtl);
+        this.subtasksCache = new LruCache<>(config.getInt("cache.subtasks.max-size", 50000), tasksTtl);
+        this.importBatchSize = config.getInt("import.batch-size", 500);
+        initializeDatabase();
+    }
+
+    /**
+     * Конструктор по умолчанию, использующий базу данных из настройки db.url ("tasks.db").
+     */
+    public DatabaseService() {
+        this(AppConfig.get().getString("db.url", "jdbc:sqlite:tasks.db"));
+    }
+
+    /**
+     * Закрывает все соединения с базой данных.
+     */
+    @Override
+    public void close() {
+        connectionPool.close();
+    }
+
+    /**
+     * Задача вместе со списком ее подзадач.
+     *
+     * @param taskText    текст задачи
+     * @param subtasks    подзадачи в порядке добавления
+     * @param dueAtMillis срок выполнения, мс с начала эпохи; null - срок не задан
+     */
+    public record TaskTreeNode(String taskText, List<String> subtasks, Long dueAtMillis) {
+        /**
+         * Конструктор, делает список подзадач неизменяемым.
+         */
+        public TaskTreeNode {
+            subtasks = subtasks != null ? List.copyOf(subtasks) : List.of();
+        }
+    }
+
+    /**
+     * Инициализирует базу данных, применяя недостающие миграции схемы.
+     *
+     * @throws RuntimeException если произошла ошибка
+     * @see SchemaMigrations
+     */
+    private void initializeDatabase() {
+        try (Connection conn = connectionPool.getWriter("initializeDatabase")) {
+            SchemaMigrations.migrate(conn);
+        } catch (SQLException e) {
+            throw new RuntimeException("Ошибка - не удалось инициализировать базу данных", e);
+        }
+    }
+
+    /**
+     * Добавляет новую задачу для указанного пользователя.
+     *
+     * @param userId   идентификатор пользователя
+     * @param taskText текст задачи
+     * @throws IllegalStateException если задача с таким текстом уже существует
+     */
+    public void addTask(String userId, String taskText) {
+        String sql = "INSERT INTO user_tasks (user_id, task_text) VALUES (?, ?)";
+        try (Connection conn = connectionPool.getWriter("addTask");
+             PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
+            preparedStatement.setString(1, userId);
+            preparedStatement.setString(2, taskText.trim());
+            preparedStatement.executeUpdate();
+        } catch (SQLException e) {
+            LOGGER.error("add_task_failed", e);
+        }
+        currentTasksCache.invalidate(userId);
+        taskTreeCache.invalidate(userId);
+    }
+
+    /**
+     * Отмечает задачу как выполненную.
+     *
+     * @param userId   идентификатор пользователя
+     * @param taskText текст задачи
+     * @throws SQLException          если произошла ошибка при работе с базой данных
+     * @throws IllegalStateException если задача не найдена в списке текущих задач
+     */
+    public void markTaskDone(String userId, String taskText) throws SQLException {
+        String deleteSql = "DELETE FROM user_tasks WHERE user_id = ? AND task_text = ?";
+        String insertSql = "INSERT INTO completed_tasks (user_id, task_text) VALUES (?, ?)";
+
+        try (Connection conn = connectionPool.getWriter("markTaskDone")) {
+            conn.setAutoCommit(false);
+
+            try (PreparedStatement deleteStmt = conn.prepareStatement(deleteSql);
+                 PreparedStatement insertStmt = conn.prepareStatement(insertSql)) {
+
+                deleteStmt.setString(1, userId);
+                deleteStmt.setString(2, taskText.trim());
+                int deletedRows = deleteStmt.executeUpdate();
+
+                if (deletedRows > 0) {
+                    insertStmt.setString(1, userId);
+                    insertStmt.setString(2, taskText.trim());
+                    insertStmt.executeUpdate();
+                }
+
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+        invalidateUserTasks(userId);
+    }
+
+    /**
+     * Удаляет задачу из списка текущих задач пользователя.
+     *
+     * @param userId   идентификатор пользователя
+     * @param taskText текст задачи
+     * @throws SQLException если произошла ошибка при работе с базой данных
+     */
+    public void deleteTask(String userId, String taskText) throws SQLException {
+        String sql = "DELETE FROM user_tasks WHERE user_id = ? AND task_text = ?";
+        try (Connection conn = connectionPool.getWriter("deleteTask");
+             PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
+            preparedStatement.setString(1, userId);
+            preparedStatement.setString(2, taskText.trim());
+            preparedStatement.executeUpdate();
+        }
+        currentTasksCache.invalidate(userId);
+        taskTreeCache.invalidate(userId);
+    }
+
+    /**
+     * Сбрасывает все закэшированные списки задач пользователя.
+     *
+     * @param userId идентификатор пользователя
+     */
+    private void invalidateUserTasks(String userId) {
+        currentTasksCache.invalidate(userId);
+        completedTasksCache.invalidate(userId);
+        taskTreeCache.invalidate(userId);
+    }
+
+    /**
+     * Сбрасывает закэшированные подзадачи задачи и дерево задач ее владельца.
+     * Вызывается после изменения подзадач, пока соединение для записи еще удерживается.
+     *
+     * @param conn   соединение для записи
+     * @param taskId идентификатор задачи
+     * @throws SQLException если не удалось определить владельца задачи
+     */
+    private void invalidateSubtasks(Connection conn, Integer taskId) throws SQLException {
+        subtasksCache.invalidate(taskId);
+        try (PreparedStatement preparedStatement = conn.prepareStatement("SELECT user_id FROM user_tasks WHERE id = ?")) {
+            preparedStatement.setInt(1, taskId);
+            ResultSet rs = preparedStatement.executeQuery();
+            if (rs.next()) {
+                taskTreeCache.invalidate(rs.getString("user_id"));
+            }
+        }
+    }
+
+    /**
+     * Возвращает список текущих задач пользователя.
+     *
+     * @param userId идентификатор пользователя
+     * @return список текущих задач
+     * @throws SQLException если произошла ошибка при работе
+     */
+    public List<String> getCurrentTasks(String userId) throws SQLException {
+        return getTasks(userId, "user_tasks");
+    }
+
+    /**
+     * Возвращает список выполненных задач пользователя.
+     *
+     * @param userId идентификатор пользователя
+     * @return список выполненных задач
+     * @throws SQLException если произошла ошибка при работе
+     */
+    public List<String> getCompletedTasks(String userId) throws SQLException {
+        return getTasks(userId, "completed_tasks");
+    }
+
+    /**
+     * Метод для получения задач из указанной таблицы.
+     * Результат кэшируется до изменения задач пользователя или истечения времени жизни.
+     *
+     * @param userId    идентификатор пользователя
+     * @param tableName имя таблицы
+     * @return список задач
+     * @throws SQLException если произошла ошибка при работе
+     */
+    private List<String> getTasks(String userId, String tableName) throws SQLException {
+        LruCache<String, List<String>> cache = "user_tasks".equals(tableName) ? currentTasksCache : completedTasksCache;
+        List<String> cached = cache.get(userId);
+        if (cached != null) {
+            return cached;
+        }
+
+        long stamp = cache.stamp(userId);
+        List<String> tasks = new ArrayList<>();
+        String sql = "SELECT task_text FROM " + tableName + " WHERE user_id = ? ORDER BY id";
+
+        try (Connection conn = connectionPool.getReader(cache == currentTasksCache ? "getCurrentTasks" : "getCompletedTasks");
+             PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
+            preparedStatement.setString(1, userId);
+            ResultSet rs = preparedStatement.executeQuery();
+            while (rs.next()) {
+                tasks.add(rs.getString("task_text"));
+            }
+        }
+        List<String> result = List.copyOf(tasks);
+        cache.putIfFresh(userId, result, stamp);
+        return result;
+    }
+
+    /**
+     * Возвращает текущие задачи пользователя вместе с их подзадачами одним запросом.
+     * Задачи упорядочены по порядку добавления, подзадачи внутри задачи - тоже.
+     * Результат кэшируется до изменения задач или подзадач пользователя.
+     *
+     * @param userId идентификатор пользователя
+     * @return неизменяемый список задач с подзадачами
+     * @throws SQLException если произошла ошибка при работе
+     */
+    public List<TaskTreeNode> getTaskTree(String userId) throws SQLException {
+        List<TaskTreeNode> cached = taskTreeCache.get(userId);
+        if (cached != null) {
+            return cached;
+        }
+
+        long stamp = taskTreeCache.stamp(userId);
+        String sql = """
+                SELECT t.id, t.task_text, t.due_at, s.subtask_text
+                FROM user_tasks t
+                LEFT JOIN subtasks s ON s.task_id = t.id
+                WHERE t.user_id = ?
+                ORDER BY t.id, s.id
+                """;
+        List<TaskTreeNode> tree = new ArrayList<>();
+        try (Connection conn = connectionPool.getReader("getTaskTree");
+             PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
+            preparedStatement.setString(1, userId);
+            ResultSet rs = preparedStatement.executeQuery();
+            int currentTaskId = -1;
+            String currentTaskText = null;
+            Long currentDueAt = null;
+            List<String> subtasks = new ArrayList<>();
+            while (rs.next()) {
+                int taskId = rs.getInt("id");
+                if (taskId != currentTaskId) {
+                    if (currentTaskText != null) {
+                        tree.add(new TaskTreeNode(currentTaskText, subtasks, currentDueAt));
+                    }
+                    currentTaskId = taskId;
+                    currentTaskText = rs.getString("task_text");
+                    currentDueAt = rs.getObject("due_at") != null ? rs.getLong("due_at") : null;
+                    subtasks = new ArrayList<>();
+                }
+                String subtaskText = rs.getString("subtask_text");
+                if (subtaskText != null) {
+                    subtasks.add(subtaskText);
+                }
+            }
+            if (currentTaskText != null) {
+                tree.add(new TaskTreeNode(currentTaskText, subtasks, currentDueAt));
+            }
+        }
+        List<TaskTreeNode> result = List.copyOf(tree);
+        taskTreeCache.putIfFresh(userId, result, stamp);
+        return result;
+    }
+
+    /**
+     * Регистрирует нового пользователя в системе.
+     *
+     * @param username     имя пользователя
+     * @param passwordHash хеш пароля, см. {@link PasswordHasher}
+     * @return true если регистрация прошла успешно, false если пользователь с таким именем уже существует
+     * @throws SQLException если произошла ошибка при работе
+     */
+    public boolean registerUser(String username, String passwordHash) throws SQLException {
+        String sql = "INSERT INTO users (username, password) VALUES (?, ?)";
+        try (Connection conn = connectionPool.getWriter("registerUser");
+             PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
+            preparedStatement.setString(1, username.trim());
+            preparedStatement.setString(2, passwordHash);
+            preparedStatement.executeUpdate();
+            return true;
+        } catch (SQLException e) {
+            if (e.getErrorCode() == 19) {
+                return false;
+            }
+            LOGGER.error("register_user_failed", e);
+            throw e;
+        }
+    }
+
+    /**
+     * Возвращает сохраненный хеш пароля пользователя. У пользователей, зарегистрированных
+     * до появления хеширования, это пароль открытым текстом.
+     *
+     * @param username имя пользователя
+     * @return хеш пароля или null, если пользователя нет
+     * @throws SQLException если произошла ошибка при работе
+     */
+    public String getPasswordHash(String username) throws SQLException {
+        String sql = "SELECT password FROM users WHERE username = ?";
+        try (Connection conn = connectionPool.getReader("getPasswordHash");
+             PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
+            preparedStatement.setString(1, username.trim());
+            ResultSet rs = preparedStatement.executeQuery();
+            return rs.next() ? rs.getString("password") : null;
+        }
+    }
+
+    /**
+     * Заменяет хеш пароля, если он не изменился с момента чтения.
+     *
+     * @param username     имя пользователя
+     * @param expectedHash прочитанный ранее хеш
+     * @param passwordHash новый хеш
+     * @return true если хеш заменен
+     * @throws SQLException если произошла ошибка при работе
+     */
+    public boolean updatePasswordHash(String username, String expectedHash, String passwordHash) throws SQLException {
+        String sql = "UPDATE users SET password = ? WHERE username = ? AND password = ?";
+        try (Connection conn = connectionPool.getWriter("updatePasswordHash");
+             PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
+            preparedStatement.setString(1, passwordHash);
+            preparedStatement.setString(2, username.trim());
+            preparedStatement.setString(3, expectedHash);
+            return preparedStatement.executeUpdate() > 0;
+        }
+    }
+
+    /**
+     * Создает сессию пользователя для платформы. Пароль должен быть проверен заранее:
+     * хеширование выполняется вне соединения для записи, чтобы не задерживать другие записи.
+     *
+     * @param username     имя пользователя
+     * @param platformType тип платформы
+     * @param platformId   идентификатор
+     * @return true если сессия создана, false если пользователя нет
+     * @throws SQLException если произошла ошибка при работе
+     */
+    public boolean createSession(String username, String platformType, String platformId) throws SQLException {
+        String userSql = "SELECT id FROM users WHERE username = ?";
+
+        try (Connection conn = connectionPool.getWriter("createSession")) {
+            conn.setAutoCommit(false);
+
+            String userId;
+            try (PreparedStatement userStmt = conn.prepareStatement(userSql)) {
+                userStmt.setString(1, username.trim());
+                ResultSet rs = userStmt.executeQuery();
+                if (rs.next()) {
+                    userId = rs.getString("id");
+                } else {
+                    return false;
+                }
+            }
+
+            String sessionSql = "INSERT OR REPLACE INTO user_sessions (platform_type, platform_id, user_id) VALUES (?, ?, ?)";
+            try (PreparedStatement sessionStmt = conn.prepareStatement(sessionSql)) {
+                sessionStmt.setString(1, platformType);
+                sessionStmt.setString(2, platformId);
+                sessionStmt.setString(3, userId);
+                sessionStmt.executeUpdate();
+            }
+            conn.commit();
+            sessionCache.invalidate(sessionKey(platformType, platformId));
+            return true;
+        }
+    }
+
+    /**
+     * Возвращает имя пользователя по идентификатору платформы.
+     *
+     * @param platformType тип платформы
+     * @param platformId   идентификатор
+     * @return имя пользователя
+     * @throws SQLException если произошла ошибка при работе
+     */
+    public String getUsername(String platformType, String platformId) throws SQLException {
+        String sql = """
+                SELECT u.username 
+                FROM users u 
+                JOIN user_sessions us ON u.id = us.user_id 
+                WHERE us.platform_type = ? AND us.platform_id = ?
+                """;
+        try (Connection conn = connectionPool.getReader("getUsername");
+             PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
+            preparedStatement.setString(1, platformType);
+            preparedStatement.setString(2, platformId);
+            ResultSet rs = preparedStatement.executeQuery();
+            if (rs.next()) {
+                return rs.getString("username");
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Возвращает внутренний идентификатор пользователя по идентификатору платформы.
+     * Найденные сессии кэшируются; вход и выход сбрасывают запись кэша,
+     * поэтому вышедший пользователь из кэша не возвращается.
+     *
+     * @param platformType тип платформы
+     * @param platformId   идентификатор платформы
+     * @return внутренний идентификатор пользователя или null, если сессии нет
+     * @throws SQLException если произошла ошибка при работе
+     */
+    public String getUserIdByPlatform(String platformType, String platformId) throws SQLException {
+        String key = sessionKey(platformType, platformId);
+        String cached = sessionCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        long stamp = sessionCache.stamp(key);
+        String sql = "SELECT user_id FROM user_sessions WHERE platform_type = ? AND platform_id = ?";
+        try (Connection conn = connectionPool.getReader("getUserIdByPlatform");
+             PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
+            preparedStatement.setString(1, platformType);
+            preparedStatement.setString(2, platformId);
+            ResultSet rs = preparedStatement.executeQuery();
+            if (rs.next()) {
+                String userId = rs.getString("user_id");
+                sessionCache.putIfFresh(key, userId, stamp);
+                return userId;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Ключ кэша сессий.
+     */
+    private static String sessionKey(String platformType, String platformId) {
+        return platformType + ":" + platformId;
+    }
+
+    /**
+     * Возвращает счетчики всех кэшей сервиса.
+     *
+     * @return счетчики по имени кэша
+     */
+    public Map<String, LruCache.Stats> getCacheStats() {
+        return Map.of(
+                "sessions", sessionCache.stats(),
+                "current_tasks", currentTasksCache.stats(),
+                "completed_tasks", completedTasksCache.stats(),
+                "task_tree", taskTreeCache.stats(),
+                "subtasks", subtasksCache.stats());
+    }
+
+    /**
+     * Результат импорта задач.
+     *
+     * @param currentInserted   количество добавленных текущих задач
+     * @param completedInserted количество добавленных выполненных задач
+     * @param skipped           количество пропущенных задач: повторы и пустые строки
+     */
+    public record ImportResult(int currentInserted, int completedInserted, int skipped) {
+    }
+
+    /**
+     * Источник задач для импорта: передает прочитанные задачи получателям по одной.
+     */
+    @FunctionalInterface
+    public interface TaskSource {
+        /**
+         * Читает задачи и передает их получателям.
+         *
+         * @param currentConsumer   получатель текущих задач
+         * @param completedConsumer получатель выполненных задач
+         * @throws SQLException если получатель не смог сохранить задачу
+         * @throws IOException  если задачи не удалось прочитать
+         */
+        void read(FileWork.TaskConsumer currentConsumer, FileWork.TaskConsumer completedConsumer)
+                throws SQLException, IOException;
+    }
+
+    /**
+     * Импортирует задачи из источника одной транзакцией, не собирая их в память:
+     * задачи отправляются в базу пакетами по import.batch-size строк по мере чтения.
+     * Соединение для записи занято, пока источник читается, поэтому источник должен быть
+     * локальным, например уже загруженным файлом на диске.
+     * Задачи, которые уже есть в соответствующем списке, и пустые строки пропускаются.
+     *
+     * @param userId идентификатор пользователя
+     * @param source источник задач
+     * @return количество добавленных и пропущенных задач
+     * @throws SQLException если произошла ошибка в базе; в этом случае ничего не добавляется
+     * @throws IOException  если источник не удалось прочитать; в этом случае ничего не добавляется
+     */
+    public ImportResult importTasks(String userId, TaskSource source) throws SQLException, IOException {
+        try (TaskImport taskImport = new TaskImport(userId)) {
+            source.read(taskImport::addCurrentTask, taskImport::addCompletedTask);
+            return taskImport.commit();
+        }
+    }
+
+    /**
+     * Импортирует списки задач пользователя одной транзакцией. Задачи отправляются в базу
+     * пакетами по import.batch-size строк.
+     * Задачи, которые уже есть в соответствующем списке, и пустые строки пропускаются.
+     *
+     * @param userId         идентификатор пользователя
+     * @param currentTasks   текущие задачи
+     * @param completedTasks выполненные задачи
+     * @return количество добавленных и пропущенных задач
+     * @throws SQLException если произошла ошибка; в этом случае ничего не добавляется
+     */
+    public ImportResult importTasks(String userId, List<String> currentTasks, List<String> completedTasks)
+            throws SQLException {
+        try (TaskImport taskImport = new TaskImport(userId)) {
+            for (String task : currentTasks) {
+                taskImport.addCurrentTask(task);
+            }
+            for (String task : completedTasks) {
+                taskImport.addCompletedTask(task);
+            }
+            return taskImport.commit();
+        }
+    }
+
+    /**
+     * Пакетная загрузка задач пользователя в рамках одной транзакции.
+     * Используется INSERT OR IGNORE, поэтому повторы не прерывают импорт.
+     */
+    private class TaskImport implements AutoCloseable {
+        private final String userId;
+        private final Connection conn;
+        private final PreparedStatement currentStmt;
+        private final PreparedStatement completedStmt;
+        private int currentPending;
+        private int completedPending;
+        private int currentInserted;
+        private int completedInserted;
+        private int skipped;
+        private boolean committed;
+
+        private TaskImport(String userId) throws SQLException {
+            this.userId = userId;
+            this.conn = connectionPool.getWriter("importTasks");
+            try {
+                conn.setAutoCommit(false);
+                this.currentStmt = conn.prepareStatement(
+                        "INSERT OR IGNORE INTO user_tasks (user_id, task_text) VALUES (?, ?)");
+                this.completedStmt = conn.prepareStatement(
+                        "INSERT OR IGNORE INTO completed_tasks (user_id, task_text) VALUES (?, ?)");
+            } catch (SQLException e) {
+                conn.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Добавляет текущую задачу в пакет.
+         *
+         * @param taskText текст задачи
+         * @throws SQLException если не удалось выполнить пакет
+         */
+        void addCurrentTask(String taskText) throws SQLException {
+            if (add(currentStmt, taskText)) {
+                currentPending++;
+                if (currentPending >= importBatchSize) {
+                    currentInserted += flush(currentStmt, currentPending);
+                    currentPending = 0;
+                }
+            }
+        }
+
+        /**
+         * Добавляет выполненную задачу в пакет.
+         *
+         * @param taskText текст задачи
+         * @throws SQLException если не удалось выполнить пакет
+         */
+        void addCompletedTask(String taskText) throws SQLException {
+            if (add(completedStmt, taskText)) {
+                completedPending++;
+                if (completedPending >= importBatchSize) {
+                    completedInserted += flush(completedStmt, completedPending);
+                    completedPending = 0;
+                }
+            }
+        }
+
+        private boolean add(PreparedStatement stmt, String taskText) throws SQLException {
+            if (taskText == null || taskText.isBlank()) {
+                skipped++;
+                return false;
+            }
+            stmt.setString(1, userId);
+            stmt.setString(2, taskText.trim());
+            stmt.addBatch();
+            return true;
+        }
+
+        /**
+         * Выполняет накопленный пакет и возвращает количество реально добавленных строк.
+         */
+        private int flush(PreparedStatement stmt, int pending) throws SQLException {
+            int inserted = 0;
+            for (int count : stmt.executeBatch()) {
+                if (count > 0) {
+                    inserted += count;
+                }
+            }
+            skipped += pending - inserted;
+            return inserted;
+        }
+
+        /**
+         * Выполняет оставшиеся пакеты и фиксирует транзакцию.
+         *
+         * @return количество добавленных и пропущенных задач
+         * @throws SQLException если произошла ошибка; транзакция откатывается при закрытии
+         */
+        ImportResult commit() throws SQLException {
+            currentInserted += flush(currentStmt, currentPending);
+            completedInserted += flush(completedStmt, completedPending);
+            currentPending = 0;
+            completedPending = 0;
+            conn.commit();
+            committed = true;
+            return new ImportResult(currentInserted, completedInserted, skipped);
+        }
+
+        /**
+         * Освобождает соединение; незафиксированный импорт откатывается.
+         */
+        @Override
+        public void close() throws SQLException {
+            try {
+                currentStmt.close();
+                completedStmt.close();
+            } finally {
+                conn.close();
+                if (committed) {
+                    invalidateUserTasks(userId);
+                }
+            }
+        }
+    }
+
+    /**
+     * Передает текущие задачи пользователя получателю прямо из курсора, не собирая их в список.
+     *
+     * @param userId   идентификатор пользователя
+     * @param consumer получатель задач
+     * @throws SQLException если произошла ошибка при работе
+     * @throws IOException  если получатель не смог записать задачу
+     */
+    public void forEachCurrentTask(String userId, FileWork.TaskConsumer consumer) throws SQLException, IOException {
+        forEachTask(userId, "user_tasks", consumer);
+    }
+
+    /**
+     * Передает выполненные задачи пользователя получателю прямо из курсора, не собирая их в список.
+     *
+     * @param userId   идентификатор пользователя
+     * @param consumer получатель задач
+     * @throws SQLException если произошла ошибка при работе
+     * @throws IOException  если получатель не смог записать задачу
+     */
+    public void forEachCompletedTask(String userId, FileWork.TaskConsumer consumer) throws SQLException, IOException {
+        forEachTask(userId, "completed_tasks", consumer);
+    }
+
+    private void forEachTask(String userId, String tableName, FileWork.TaskConsumer consumer)
+            throws SQLException, IOException {
+        String sql = "SELECT task_text FROM " + tableName + " WHERE user_id = ? ORDER BY id";
+        try (Connection conn = connectionPool.getReader("forEachTask");
+             PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
+            preparedStatement.setString(1, userId);
+            preparedStatement.setFetchSize(importBatchSize);
+            ResultSet rs = preparedStatement.executeQuery();
+            while (rs.next()) {
+                consumer.accept(rs.getString("task_text"));
+            }
+        }
+    }
+
+    /**
+     * Возвращает сохраненный ответ ИИ, если он не старше указанного момента.
+     *
+     * @param cacheKey        ключ кэша
+     * @param notBeforeMillis самый ранний допустимый момент создания записи, мс с начала эпохи
+     * @return текст ответа или null, если подходящей записи нет
+     * @throws SQLException если произошла ошибка при работе
+     */
+    public String getCachedAiResponse(String cacheKey, long notBeforeMillis) throws SQLException {
+        String sql = "SELECT response FROM ai_response_cache WHERE cache_key = ? AND created_at >= ?";
+        try (Connection conn = connectionPool.getReader("getCachedAiResponse");
+             PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
+            preparedStatement.setString(1, cacheKey);
+            preparedStatement.setLong(2, notBeforeMillis);
+            ResultSet rs = preparedStatement.executeQuery();
+            return rs.next() ? rs.getString("response") : null;
+        }
+    }
+
+    /**
+     * Сохраняет ответ ИИ, заменяя прежний ответ с тем же ключом.
+     *
+     * @param cacheKey  ключ кэша
+     * @param model     модель, которая дала ответ
+     * @param prompt    нормализованный запрос
+     * @param response  текст ответа
+     * @param nowMillis текущий момент, мс с начала эпохи
+     * @throws SQLException если произошла ошибка при работе
+     */
+    public void putCachedAiResponse(String cacheKey, String model, String prompt, String response, long nowMillis)
+            throws SQLException {
+        String sql = """
+                INSERT OR REPLACE INTO ai_response_cache (cache_key, model, prompt, response, created_at)
+                VALUES (?, ?, ?, ?, ?)
+                """;
+        try (Connection conn = connectionPool.getWriter("putCachedAiResponse");
+             PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
+            preparedStatement.setString(1, cacheKey);
+            preparedStatement.setString(2, model);
+            preparedStatement.setString(3, prompt);
+            preparedStatement.setString(4, response);
+            preparedStatement.setLong(5, nowMillis);
+            preparedStatement.executeUpdate();
+        }
+    }
+
+    /**
+     * Удаляет устаревшие записи кэша ответов ИИ, а при превышении размера - самые старые записи.
+     *
+     * @param notBeforeMillis записи, созданные раньше этого момента, удаляются
+     * @param maxEntries      максимальное количество записей
+     * @return количество удаленных записей
+     * @throws SQLException если произошла ошибка при работе
+     */
+    public int trimAiResponseCache(long notBeforeMillis, int maxEntries) throws SQLException {
+        String expireSql = "DELETE FROM ai_response_cache WHERE created_at < ?";
+        String trimSql = """
+                DELETE FROM ai_response_cache WHERE cache_key IN (
+                    SELECT cache_key FROM ai_response_cache ORDER BY created_at DESC LIMIT -1 OFFSET ?
+                )
+                """;
+        try (Connection conn = connectionPool.getWriter("trimAiResponseCache")) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement expireStmt = conn.prepareStatement(expireSql);
+                 PreparedStatement trimStmt = conn.prepareStatement(trimSql)) {
+                expireStmt.setLong(1, notBeforeMillis);
+                int deleted = expireStmt.executeUpdate();
+
+                trimStmt.setInt(1, maxEntries);
+                deleted += trimStmt.executeUpdate();
+                conn.commit();
+                return deleted;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Строка таблицы состояний диалогов.
+     *
+     * @param flow            название диалога
+     * @param userId          идентификатор пользователя на платформе
+     * @param data            сериализованное состояние; null - удалить состояние
+     * @param updatedAtMillis момент изменения, мс с начала эпохи
+     */
+    public record ConversationStateRow(String flow, String userId, byte[] data, long updatedAtMillis) {
+    }
+
+    /**
+     * Возвращает состояния диалога, измененные не раньше указанного момента.
+     *
+     * @param flow            название диалога
+     * @param notBeforeMillis самый ранний допустимый момент изменения
+     * @return состояния
+     * @throws SQLException если произошла ошибка при работе
+     */
+    public List<ConversationStateRow> loadConversationStates(String flow, long notBeforeMillis) throws SQLException {
+        String sql = "SELECT user_id, state, updated_at FROM conversation_state WHERE flow = ? AND updated_at >= ?";
+        List<ConversationStateRow> rows = new ArrayList<>();
+        try (Connection conn = connectionPool.getReader("loadConversationStates");
+             PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
+            preparedStatement.setString(1, flow);
+            preparedStatement.setLong(2, notBeforeMillis);
+            ResultSet rs = preparedStatement.executeQuery();
+            while (rs.next()) {
+                rows.add(new ConversationStateRow(flow, rs.getString("user_id"), rs.getBytes("state"),
+                        rs.getLong("updated_at")));
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Возвращает состояние диалога пользователя, если оно изменено не раньше указанного момента.
+     *
+     * @param flow            название диалога
+     * @param userId          идентификатор пользователя на платформе
+     * @param notBeforeMillis самый ранний допустимый момент изменения
+     * @return состояние или null
+     * @throws SQLException если произошла ошибка при работе
+     */
+    public ConversationStateRow loadConversationState(String flow, String userId, long notBeforeMillis)
+            throws SQLException {
+        String sql = "SELECT state, updated_at FROM conversation_state WHERE flow = ? AND user_id = ? AND updated_at >= ?";
+        try (Connection conn = connectionPool.getReader("loadConversationState");
+             PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
+            preparedStatement.setString(1, flow);
+            preparedStatement.setString(2, userId);
+            preparedStatement.setLong(3, notBeforeMillis);
+            ResultSet rs = preparedStatement.executeQuery();
+            return rs.next()
+                    ? new ConversationStateRow(flow, userId, rs.getBytes("state"), rs.getLong("updated_at"))
+                    : null;
+        }
+    }
+
+    /**
+     * Записывает изменения состояний диалогов одной транзакцией.
+     * Строки без состояния удаляют состояние пользователя.
+     *
+     * @param rows изменения
+     * @throws SQLException если произошла ошибка при работе; ни одно изменение не записывается
+     */
+    public void writeConversationStates(List<ConversationStateRow> rows) throws SQLException {
+        String upsertSql = """
+                INSERT OR REPLACE INTO conversation_state (flow, user_id, state, updated_at)
+                VALUES (?, ?, ?, ?)
+                """;
+        String deleteSql = "DELETE FROM conversation_state WHERE flow = ? AND user_id = ?";
+        try (Connection conn = connectionPool.getWriter("writeConversationStates")) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement upsertStmt = conn.prepareStatement(upsertSql);
+                 PreparedStatement deleteStmt = conn.prepareStatement(deleteSql)) {
+                for (ConversationStateRow row : rows) {
+                    if (row.data() == null) {
+                        deleteStmt.setString(1, row.flow());
+                        deleteStmt.setString(2, row.userId());
+                        deleteStmt.addBatch();
+                    } else {
+                        upsertStmt.setString(1, row.flow());
+                        upsertStmt.setString(2, row.userId());
+                        upsertStmt.setBytes(3, row.data());
+                        upsertStmt.setLong(4, row.updatedAtMillis());
+                        upsertStmt.addBatch();
+                    }
+                }
+                upsertStmt.executeBatch();
+                deleteStmt.executeBatch();
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Удаляет состояния диалогов, которые не менялись с указанного момента.
+     *
+     * @param beforeMillis состояния, измененные раньше этого момента, удаляются
+     * @return количество удаленных состояний
+     * @throws SQLException если произошла ошибка при работе
+     */
+    public int deleteConversationStatesBefore(long beforeMillis) throws SQLException {
+        String sql = "DELETE FROM conversation_state WHERE updated_at < ?";
+        try (Connection conn = connectionPool.getWriter("deleteConversationStatesBefore");
+             PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
+            preparedStatement.setLong(1, beforeMillis);
+            return preparedStatement.executeUpdate();
+        }
+    }
+
+    /**
+     * Проверяет существование пользователя с указанным именем.
+     *
+     * @param username имя пользователя для проверки
+     * @return true если пользователь существует, false в противном случае
+     * @throws SQLException если произошла ошибка
+     */
+    public boolean userExists(String username) throws SQLException {
+        String sql = "SELECT id FROM users WHERE username = ?";
+        try (Connection conn = connectionPool.getReader("userExists");
+             PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
+            preparedStatement.setString(1, username.trim());
+            ResultSet rs = preparedStatement.executeQuery();
+            return rs.next();
+        }
+    }
+
+    /**
+     * Выход пользователя из системы.
+     */
+    public boolean logoutUser(String platformId, String platformType) throws SQLException {
+        String sql = "DELETE FROM user_sessions WHERE platform_id = ? AND platform_type = ?";
+        try (Connection conn = connectionPool.getWriter("logoutUser");
+             PreparedStatement preparedStatement= conn.prepareStatement(sql)) {
+            preparedStatement.setString(1, platformId);
+            preparedStatement.setString(2, platformType);
+            int affectedRows = preparedStatement.executeUpdate();
+            sessionCache.invalidate(sessionKey(platformType, platformId));
+            return affectedRows > 0;
+        }
+    }
+
+    /**
+     * Добавляет новую подзадачу к указанной задаче.
+     */
+    public void addSubtask(Integer taskId, String subtaskText) throws SQLException {
+        String sql = "INSERT INTO subtasks (task_id, subtask_text) VALUES (?, ?)";
+        try (Connection conn = connectionPool.getWriter("addSubtask");
+             PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
+            preparedStatement.setInt(1, taskId);
+            preparedStatement.setString(2, subtaskText.trim());
+            preparedStatement.executeUpdate();
+            invalidateSubtasks(conn, taskId);
+        } catch (SQLException e) {
+            if (e.getErrorCode() != 19) {
+                LOGGER.error("add_subtask_failed", e);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Добавляет несколько подзадач одной транзакцией.
+     * Подзадачи, которые уже есть у задачи, пропускаются.
+     *
+     * @param taskId   идентификатор задачи
+     * @param subtasks тексты подзадач
+     * @return количество добавленных подзадач
+     * @throws SQLException если произошла ошибка при работе; ни одна подзадача не добавляется
+     */
+    public int addSubtasks(Integer taskId, List<String> subtasks) throws SQLException {
+        String sql = "INSERT OR IGNORE INTO subtasks (task_id, subtask_text) VALUES (?, ?)";
+        try (Connection conn = connectionPool.getWriter("addSubtasks")) {
+            conn.setAutoCommit(false);
+            int inserted = 0;
+            try (PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
+                for (String subtask : subtasks) {
+                    preparedStatement.setInt(1, taskId);
+                    preparedStatement.setString(2, subtask.trim());
+                    preparedStatement.addBatch();
+                }
+                for (int count : preparedStatement.executeBatch()) {
+                    inserted += Math.max(count, 0);
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+            invalidateSubtasks(conn, taskId);
+            return inserted;
+        }
+    }
+
+    /**
+     * Удаляет подзадачу.
+     */
+    public void deleteSubtask(Integer taskId, String subtaskText) throws SQLException {
+        String sql = "DELETE FROM subtasks WHERE task_id = ? AND subtask_text = ?";
+        try (Connection conn = connectionPool.getWriter("deleteSubtask");
+             PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
+            preparedStatement.setInt(1, taskId);
+            preparedStatement.setString(2, subtaskText.trim());
+            preparedStatement.executeUpdate();
+            invalidateSubtasks(conn, taskId);
+        }
+    }
+
+    /**
+     * Изменяет текст подзадачи.
+     */
+    public void editSubtask(Integer taskId, String oldSubtaskText, String newSubtaskText) throws SQLException {
+        String sql = "UPDATE subtasks SET subtask_text = ? WHERE task_id = ? AND subtask_text = ?";
+        try (Connection conn = connectionPool.getWriter("editSubtask");
+             PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
+            preparedStatement.setString(1, newSubtaskText.trim());
+            preparedStatement.setInt(2, taskId);
+            preparedStatement.setString(3, oldSubtaskText.trim());
+            preparedStatement.executeUpdate();
+            invalidateSubtasks(conn, taskId);
+        }
+    }
+
+    /**
+     * Список подзадач для задачи. Результат кэшируется до изменения подзадач.
+     */
+    public List<String> getSubtasks(Integer taskId) throws SQLException {
+        List<String> cached = subtasksCache.get(taskId);
+        if (cached != null) {
+            return cached;
+        }
+
+        long stamp = subtasksCache.stamp(taskId);
+        List<String> subtasks = new ArrayList<>();
+        String sql = "SELECT id, task_id, subtask_text FROM subtasks WHERE task_id = ? ORDER BY id";
+        try (Connection conn = connectionPool.getReader("getSubtasks");
+             PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
+            preparedStatement.setInt(1, taskId);
+            ResultSet rs = preparedStatement.executeQuery();
+            while (rs.next()) {
+                subtasks.add(rs.getString("subtask_text"));
+            }
+        }
+        List<String> result = List.copyOf(subtasks);
+        subtasksCache.putIfFresh(taskId, result, stamp);
+        return result;
+    }
+
+    /**
+     * Возвращает идентификатор задачи.
+     */
+    public Integer getTaskId(String userId, String taskText) throws SQLException {
+        String sql = "SELECT id FROM user_tasks WHERE user_id = ? AND task_text = ?";
+        try (Connection conn = connectionPool.getReader("getTaskId");
+             PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
+            preparedStatement.setString(1, userId);
+            preparedStatement.setString(2, taskText.trim());
+            ResultSet rs = preparedStatement.executeQuery();
+            if (rs.next()) {
+                return rs.getInt("id");
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Напоминание о задаче.
+     *
+     * @param taskId         идентификатор задачи
+     * @param userId         внутренний идентификатор пользователя
+     * @param taskText       текст задачи
+     * @param remindAtMillis момент напоминания, мс с начала эпохи
+     * @param dueAtMillis    срок выполнения, мс с начала эпохи; null - срок не задан
+     */
+    public record Reminder(int taskId, String userId, String taskText, long remindAtMillis, Long dueAtMillis) {
+    }
+
+    /**
+     * Сессия пользователя на платформе: куда отправлять ему сообщения.
+     *
+     * @param userId       внутренний идентификатор пользователя
+     * @param platformType тип платформы
+     * @param platformId   идентификатор пользователя на платформе
+     */
+    public record Session(String userId, String platformType, String platformId) {
+    }
+
+    /**
+     * Задает или снимает срок задачи вместе с напоминанием в этот срок одним обновлением.
+     *
+     * @param userId      идентификатор пользователя
+     * @param taskId      идентификатор задачи
+     * @param dueAtMillis срок и момент напоминания, мс с начала эпохи; null - снять и то и другое
+     * @return true если задача найдена
+     * @throws SQLException если произошла ошибка при работе
+     */
+    public boolean setTaskDueAndRemindAt(String userId, int taskId, Long dueAtMillis) throws SQLException {
+        String sql = "UPDATE user_tasks SET due_at = ?, remind_at = ? WHERE id = ? AND user_id = ?";
+        try (Connection conn = connectionPool.getWriter("setTaskDueAndRemindAt");
+             PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
+            preparedStatement.setObject(1, dueAtMillis);
+            preparedStatement.setObject(2, dueAtMillis);
+            preparedStatement.setInt(3, taskId);
+            preparedStatement.setString(4, userId);
+            boolean updated = preparedStatement.executeUpdate() > 0;
+            taskTreeCache.invalidate(userId);
+            return updated;
+        }
+    }
+
+    /**
+     * Задает или снимает напоминание о задаче.
+     *
+     * @param userId         идентификатор пользователя
+     * @param taskId         идентификатор задачи
+     * @param remindAtMillis момент напоминания, мс с начала эпохи; null - снять напоминание
+     * @return true если задача найдена
+     * @throws SQLException если произошла ошибка при работе
+     */
+    public boolean setTaskRemindAt(String userId, int taskId, Long remindAtMillis) throws SQLException {
+        String sql = "UPDATE user_tasks SET remind_at = ? WHERE id = ? AND user_id = ?";
+        try (Connection conn = connectionPool.getWriter("setTaskRemindAt");
+             PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
+            preparedStatement.setObject(1, remindAtMillis);
+            preparedStatement.setInt(2, taskId);
+            preparedStatement.setString(3, userId);
+            return preparedStatement.executeUpdate() > 0;
+        }
+    }
+
+    /**
+     * Возвращает напоминания с моментом в полуинтервале [fromMillis, toMillis).
+     * Читает только нужный диапазон частичного индекса idx_user_tasks_remind_at.
+     *
+     * @param fromMillis начало интервала, включительно
+     * @param toMillis   конец интервала, не включительно
+     * @return напоминания по возрастанию момента
+     * @throws SQLException если произошла ошибка при работе
+     */
+    public List<Reminder> loadReminders(long fromMillis, long toMillis) throws SQLException {
+        String sql = """
+                SELECT id, user_id, task_text, remind_at, due_at
+                FROM user_tasks
+                WHERE remind_at IS NOT NULL AND remind_at >= ? AND remind_at < ?
+                ORDER BY remind_at
+                """;
+        List<Reminder> reminders = new ArrayList<>();
+        try (Connection conn = connectionPool.getReader("loadReminders");
+             PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
+            preparedStatement.setLong(1, fromMillis);
+            preparedStatement.setLong(2, toMillis);
+            ResultSet rs = preparedStatement.executeQuery();
+            while (rs.next()) {
+                reminders.add(readReminder(rs));
+            }
+        }
+        return reminders;
+    }
+
+    /**
+     * Забирает наступившие напоминания одной транзакцией: снимает remind_at у задач,
+     * напоминание которых с тех пор не изменилось. Задачи, которые выполнены, удалены
+     * или получили другое напоминание, пропускаются.
+     * Напоминание снимается до отправки, поэтому доставка - не более одного раза.
+     *
+     * @param due наступившие напоминания
+     * @return напоминания, которые нужно отправить, с текущим текстом и сроком задачи
+     * @throws SQLException если произошла ошибка при работе; ни одно напоминание не снимается
+     */
+    public List<Reminder> takeReminders(List<Reminder> due) throws SQLException {
+        String sql = """
+                UPDATE user_tasks SET remind_at = NULL
+                WHERE id = ? AND remind_at = ?
+                RETURNING user_id, task_text, due_at
+                """;
+        List<Reminder> taken = new ArrayList<>(due.size());
+        try (Connection conn = connectionPool.getWriter("takeReminders")) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
+                for (Reminder reminder : due) {
+                    preparedStatement.setInt(1, reminder.taskId());
+                    preparedStatement.setLong(2, reminder.remindAtMillis());
+                    try (ResultSet rs = preparedStatement.executeQuery()) {
+                        if (rs.next()) {
+                            taken.add(new Reminder(reminder.taskId(), rs.getString("user_id"),
+                                    rs.getString("task_text"), reminder.remindAtMillis(),
+                                    rs.getObject("due_at") != null ? rs.getLong("due_at") : null));
+                        }
+                    }
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+        return taken;
+    }
+
+    private static Reminder readReminder(ResultSet rs) throws SQLException {
+        return new Reminder(rs.getInt("id"), rs.getString("user_id"), rs.getString("task_text"),
+                rs.getLong("remind_at"), rs.getObject("due_at") != null ? rs.getLong("due_at") : null);
+    }
+
+    /**
+     * Возвращает сессии пользователей на всех платформах.
+     *
+     * @param userIds внутренние идентификаторы пользователей
+     * @return сессии
+     * @throws SQLException если произошла ошибка при работе
+     */
+    public List<Session> getSessions(Collection<String> userIds) throws SQLException {
+        List<Session> sessions = new ArrayList<>();
+        List<String> ids = List.copyOf(userIds);
+        try (Connection conn = connectionPool.getReader("getSessions")) {
+            for (int from = 0; from < ids.size(); from += SESSIONS_CHUNK) {
+                List<String> chunk = ids.subList(from, Math.min(ids.size(), from + SESSIONS_CHUNK));
+                String sql = "SELECT user_id, platform_type, platform_id FROM user_sessions WHERE user_id IN ("
+                        + "?,".repeat(chunk.size() - 1) + "?)";
+                try (PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        preparedStatement.setString(i + 1, chunk.get(i));
+                    }
+                    ResultSet rs = preparedStatement.executeQuery();
+                    while (rs.next()) {
+                        sessions.add(new Session(rs.getString("user_id"), rs.getString("platform_type"),
+                                rs.getString("platform_id")));
+                    }
+                }
+            }
+        }
+        return sessions;
+    }
+}
@@ -3,6 +3,7 @@ package org.example;
 import net.dv8tion.jda.api.JDABuilder;
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.User;
 import net.dv8tion.jda.api.entities.channel.middleman.GuildMessageChannel;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
 import net.dv8tion.jda.api.hooks.ListenerAdapter;
@@ -16,9 +17,14 @@ import java.util.List;
  * Этот класс реализует Discord бота, который взаимодействует с пользователями
  * через текстовые сообщения и файловые вложения для управления задачами.
  */
-public class DiscordBot extends ListenerAdapter {
+public class DiscordBot extends ListenerAdapter implements ReminderScheduler.Sender {
+    private static final BotLogger LOGGER = BotLogger.get();
     private final String token;
     private final MessageHandler logic;
+    private final KeyedTaskDispatcher dispatcher = new KeyedTaskDispatcher("discord",
+            AppConfig.get().getInt("dispatcher.discord.capacity", 10000),
+            AppConfig.get().getInt("dispatcher.discord.concurrency", 5));
+    private volatile JDA jda;
 
     public DiscordBot(String token, MessageHandler logic) {
         this.token = token;
@@ -30,21 +36,62 @@ public class DiscordBot extends ListenerAdapter {
      */
     public void start() {
         try {
-            JDA jda = JDABuilder.createDefault(token)
+            jda = JDABuilder.createDefault(token)
                     .enableIntents(GatewayIntent.MESSAGE_CONTENT)
                     .addEventListeners(this)
                     .build();
-            System.out.println("Discord бот запущен");
+            LOGGER.info("discord_started", "Discord бот запущен");
         } catch (Exception e) {
-            System.err.println("Ошибка запуска Discord бота: " + e.getMessage());
-            e.printStackTrace();
+            LOGGER.error("discord_start_failed", e);
         }
     }
 
+    /**
+     * Принимает сообщение в потоке событий JDA и передает его в обработку,
+     * не задерживая heartbeat и сообщения других серверов.
+     * Сообщения одного автора обрабатываются строго по очереди.
+     */
     @Override
     public void onMessageReceived(MessageReceivedEvent event) {
         if (event.getAuthor().isBot()) return;
 
+        String userId = event.getAuthor().getId();
+        if (!dispatcher.submit(userId, () -> handleMessage(event))) {
+            event.getChannel().sendMessage(KeyedTaskDispatcher.BUSY_MESSAGE).queue();
+        }
+    }
+
+    @Override
+    public String platformType() {
+        return "discord";
+    }
+
+    /**
+     * Отправляет напоминания личными сообщениями. Запросы ставятся в очередь JDA,
+     * которая сама соблюдает ограничения частоты Discord, поэтому метод не ждет отправки.
+     */
+    @Override
+    public int sendReminders(List<ReminderScheduler.Delivery> deliveries) {
+        JDA client = jda;
+        if (client == null) {
+            LOGGER.warn("discord_reminders_skipped", "Discord бот не запущен, напоминаний: " + deliveries.size());
+            return 0;
+        }
+        for (ReminderScheduler.Delivery delivery : deliveries) {
+            client.retrieveUserById(delivery.platformId())
+                    .flatMap(User::openPrivateChannel)
+                    .flatMap(channel -> channel.sendMessage(delivery.message()))
+                    .queue(null, error -> LOGGER.error("discord_send_failed", delivery.platformId(), "discord", error));
+        }
+        return deliveries.size();
+    }
+
+    /**
+     * Обрабатывает сообщение пользователя и отправляет ответ.
+     *
+     * @param event полученное сообщение
+     */
+    private void handleMessage(MessageReceivedEvent event) {
         String message = event.getMessage().getContentRaw();
         String userId = event.getAuthor().getId();
         GuildMessageChannel channel = (GuildMessageChannel) event.getChannel();
@@ -56,23 +103,41 @@ public class DiscordBot extends ListenerAdapter {
             }
             String PLATFORM_TYPE = "discord";
             BotResponse response = logic.processUserInput(message, userId, PLATFORM_TYPE);
-            if (response.hasFile()) {
-                channel.sendFiles(FileUpload.fromData(response.getFile(), response.getFileName()))
-                        .setContent(response.getMessage())
-                        .queue();
-            } else {
-                channel.sendMessage(response.getMessage()).queue();
-            }
+            sendResponse(channel, userId, response);
         } catch (Exception e) {
             channel.sendMessage("Ошибка: " + e.getMessage()).queue();
-            e.printStackTrace();
+            LOGGER.error("discord_message_failed", userId, "discord", e);
+        }
+    }
+
+    /**
+     * Отправляет ответ в канал. Если за ответом последует еще один,
+     * он ставится в очередь автора, когда будет готов, чтобы сохранить порядок сообщений.
+     * Если очередь переполнена, продолжение отправляется сразу, чтобы не потерять его.
+     */
+    private void sendResponse(GuildMessageChannel channel, String userId, BotResponse response) {
+        if (response.hasFile()) {
+            channel.sendFiles(FileUpload.fromData(response.getFileContent(), response.getFileName()))
+                    .setContent(response.getMessage())
+                    .queue();
+        } else {
+            channel.sendMessage(response.getMessage()).queue();
+        }
+
+        if (response.hasFollowUp()) {
+            response.getFollowUp().thenAccept(followUp -> {
+                if (!dispatcher.submit(userId, () -> sendResponse(channel, userId, followUp))) {
+                    sendResponse(channel, userId, followUp);
+                }
+            });
         }
     }
 
     /**
      * Обрабатывает вложение файла для импорта данных.
-     * Загружает прикрепленный файл, передает его в логику обработки и отправляет
-     * результат обратно.
+     * Передает загрузку прикрепленного файла в логику обработки, которая сохраняет его
+     * во временный файл с ограничением размера, и отправляет результат обратно. Выполняется в потоке диспетчера, поэтому ожидание загрузки
+     * не занимает потоки JDA.
      *
      * @param event полученное сообщения
      * @param userId идентификатор пользователя
@@ -84,14 +149,12 @@ public class DiscordBot extends ListenerAdapter {
         List<Message.Attachment> attachments = event.getMessage().getAttachments();
         Message.Attachment fileAttachment = attachments.get(0);
 
-        fileAttachment.getProxy().download().thenAccept(inputStream -> {
-            try {
-                BotResponse response = logic.processImport(inputStream, userId);
-                channel.sendMessage(response.getMessage()).queue();
-            } catch (Exception e) {
-                channel.sendMessage("Ошибка при обработке файла: " + e.getMessage()).queue();
-                e.printStackTrace();
-            }
-        });
+        try (InputStream inputStream = fileAttachment.getProxy().download().join()) {
+            BotResponse response = logic.processImport(inputStream, userId, "discord");
+            channel.sendMessage(response.getMessage()).queue();
+        } catch (Exception e) {
+            channel.sendMessage("Ошибка при обработке файла: " + e.getMessage()).queue();
+            LOGGER.error("discord_import_failed", userId, "discord", e);
+        }
     }
 }
\ No newline at end of file
@@ -2,9 +2,14 @@ package org.example;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import java.nio.file.Files;
-import java.util.ArrayList;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.sql.SQLException;
 import java.util.List;
 
 /**
@@ -13,69 +18,237 @@ import java.util.List;
  */
 public class FileWork {
     private final ObjectMapper objectMapper = new ObjectMapper();
+    private final long maxImportBytes;
+    private final int maxImportTasks;
+    private final boolean prettyExport;
 
     /**
-     * Создает файл с указанным именем, содержащий текущие и выполненные задачи.
-     * Автоматически добавляет расширение .json если оно отсутствует.
+     * Конструктор, берущий ограничения импорта и формат экспорта из application.properties.
+     */
+    public FileWork() {
+        this(AppConfig.get().getLong("import.max-bytes", 10L * 1024 * 1024),
+                AppConfig.get().getInt("import.max-tasks", 100_000),
+                AppConfig.get().getBoolean("export.pretty", false));
+    }
+
+    /**
+     * Конструктор с явными ограничениями импорта и форматом экспорта.
      *
-     * @param tasks список текущих задач для экспорта
-     * @param completedTasks список выполненных задач для экспорта
-     * @param filename имя файла для экспорта
-     * @return File объект созданного файла с экспортированными задачами
-     * @throws IOException если произошла ошибка ввода-вывода при создании файла
+     * @param maxImportBytes максимальный размер импортируемого файла в байтах
+     * @param maxImportTasks максимальное количество задач в файле
+     * @param prettyExport   форматировать ли экспортируемый JSON с отступами
      */
-    public File export(List<String> tasks, List<String> completedTasks, String filename) throws IOException {
-        if (!filename.endsWith(".json")) {
-            filename += ".json";
+    public FileWork(long maxImportBytes, int maxImportTasks, boolean prettyExport) {
+        this.maxImportBytes = maxImportBytes;
+        this.maxImportTasks = maxImportTasks;
+        this.prettyExport = prettyExport;
+    }
+
+    /**
+     * Получатель задач, прочитанных из файла или из базы данных.
+     */
+    @FunctionalInterface
+    public interface TaskConsumer {
+        /**
+         * Принимает очередную задачу.
+         *
+         * @param task текст задачи
+         * @throws SQLException если задачу не удалось сохранить
+         * @throws IOException  если задачу не удалось записать
+         */
+        void accept(String task) throws SQLException, IOException;
+    }
+
+    /**
+     * Источник задач для экспорта, например курсор базы данных.
+     */
+    @FunctionalInterface
+    public interface TaskSource {
+        /**
+         * Передает все задачи источника получателю по порядку.
+         *
+         * @param consumer получатель задач
+         * @throws SQLException если задачи не удалось прочитать
+         * @throws IOException  если получатель не смог записать задачу
+         */
+        void forEach(TaskConsumer consumer) throws SQLException, IOException;
+    }
+
+    /**
+     * Приводит введенное пользователем имя к безопасному имени файла с расширением .json.
+     * Разделители путей и служебные символы заменяются на '_'.
+     *
+     * @param filename имя файла, введенное пользователем
+     * @return имя файла для отправки
+     */
+    public String exportFileName(String filename) {
+        String name = filename == null ? "" : filename.trim().replaceAll("[\\\\/:*?\"<>|\\p{Cntrl}]", "_");
+        if (name.isEmpty() || name.chars().allMatch(c -> c == '.')) {
+            name = "tasks";
         }
-        File file = new File(filename);
+        if (!name.endsWith(".json")) {
+            name += ".json";
+        }
+        return name;
+    }
+
+    /**
+     * Формирует JSON с текущими и выполненными задачами в памяти, без временных файлов.
+     *
+     * @param tasks          список текущих задач для экспорта
+     * @param completedTasks список выполненных задач для экспорта
+     * @return содержимое JSON файла
+     * @throws IOException если не удалось сформировать JSON
+     */
+    public byte[] export(List<String> tasks, List<String> completedTasks) throws IOException {
+        List<String> current = tasks != null ? tasks : List.of();
+        List<String> completed = completedTasks != null ? completedTasks : List.of();
         try {
-            FileData exportData = new FileData(
-                    tasks != null ? tasks : new ArrayList<>(),
-                    completedTasks != null ? completedTasks : new ArrayList<>()
-            );
-            objectMapper.writerWithDefaultPrettyPrinter().writeValue(file, exportData);
+            return export(consumer -> {
+                for (String task : current) {
+                    consumer.accept(task);
+                }
+            }, consumer -> {
+                for (String task : completed) {
+                    consumer.accept(task);
+                }
+            });
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 
-            return file;
+    /**
+     * Формирует JSON с задачами, читая их из источников по одной и сразу записывая в буфер.
+     * Сначала записываются текущие задачи, затем выполненные.
+     *
+     * @param currentTasks   источник текущих задач
+     * @param completedTasks источник выполненных задач
+     * @return содержимое JSON файла
+     * @throws IOException  если не удалось сформировать JSON
+     * @throws SQLException если не удалось прочитать задачи
+     */
+    public byte[] export(TaskSource currentTasks, TaskSource completedTasks) throws IOException, SQLException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(buffer)) {
+            if (prettyExport) {
+                generator.useDefaultPrettyPrinter();
+            }
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("current_tasks");
+            currentTasks.forEach(generator::writeString);
+            generator.writeEndArray();
+            generator.writeArrayFieldStart("completed_tasks");
+            completedTasks.forEach(generator::writeString);
+            generator.writeEndArray();
+            generator.writeEndObject();
         } catch (IOException e) {
-            throw new IOException("Ошибка экспорта задач в файл: " + filename, e);
+            throw new IOException("Ошибка экспорта задач: " + e.getMessage(), e);
         }
+        return buffer.toByteArray();
     }
 
     /**
-     * Импортирует задачи из JSON файла.
-     * Использует библиотеку Jackson для парсинга JSON структуры.
-     * Извлекает списки текущих и выполненных задач.
+     * Потоково импортирует задачи из JSON файла.
+     * Задачи передаются получателям по мере чтения, поэтому файл целиком в памяти не хранится.
+     * Неизвестные поля пропускаются.
      *
-     * @return FileData объект, содержащий импортированные списки задач
-     * @throws IOException если файл не существует, недоступен для чтения или имеет неверный формат
+     * @param inputStream        содержимое файла
+     * @param currentConsumer    получатель текущих задач
+     * @param completedConsumer  получатель выполненных задач
+     * @return количество прочитанных задач
+     * @throws IOException  если файл имеет неверный формат или превышает ограничения
+     * @throws SQLException если получатель не смог сохранить задачу
      */
-    public FileData importData(InputStream inputStream) throws IOException {
-        try {
-            return objectMapper.readValue(inputStream, FileData.class);
-        } catch (IOException e) {
-            throw new IOException("Ошибка при чтении файла: " + e.getMessage(), e);
+    public int importStream(InputStream inputStream, TaskConsumer currentConsumer, TaskConsumer completedConsumer)
+            throws IOException, SQLException {
+        int taskCount = 0;
+        try (JsonParser parser = objectMapper.getFactory().createParser(new LimitedInputStream(inputStream))) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Ошибка при чтении файла: ожидался JSON объект");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.currentName();
+                JsonToken value = parser.nextToken();
+                TaskConsumer consumer = switch (fieldName) {
+                    case "current_tasks" -> currentConsumer;
+                    case "completed_tasks" -> completedConsumer;
+                    default -> null;
+                };
+                if (consumer == null || value == JsonToken.VALUE_NULL) {
+                    parser.skipChildren();
+                    continue;
+                }
+                if (value != JsonToken.START_ARRAY) {
+                    throw new IOException("Ошибка при чтении файла: поле " + fieldName + " должно быть списком");
+                }
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    if (parser.currentToken() != JsonToken.VALUE_STRING) {
+                        throw new IOException("Ошибка при чтении файла: задачи в " + fieldName + " должны быть строками");
+                    }
+                    if (++taskCount > maxImportTasks) {
+                        throw new IOException("Ошибка при чтении файла: больше " + maxImportTasks + " задач");
+                    }
+                    consumer.accept(parser.getText());
+                }
+            }
         }
+        return taskCount;
     }
 
     /**
-     * Record для хранения данных файла задач.
+     * Сохраняет загружаемый файл импорта во временный файл на диске.
+     * Копирование прерывается, как только размер превысил import.max-bytes,
+     * а недописанный файл удаляется. Удалить сохраненный файл должен вызывающий.
      *
-     * @param current_tasks список текущих задач
-     * @param completed_tasks список выполненных задач
+     * @param inputStream содержимое файла
+     * @return путь к временному файлу
+     * @throws IOException если файл превышает ограничение или не удалось его записать
      */
-    public record FileData(
-            List<String> current_tasks,
-            List<String> completed_tasks
-    )
-    {
-        /**
-         * Конструктор, гарантирует, что поля никогда не будут null.
-         */
-        public FileData {
-            current_tasks = current_tasks != null ? new ArrayList<>(current_tasks) : new ArrayList<>();
-            completed_tasks = completed_tasks != null ? new ArrayList<>(completed_tasks) : new ArrayList<>();
+    public Path saveImport(InputStream inputStream) throws IOException {
+        Path file = Files.createTempFile("import", ".json");
+        try (InputStream limited = new LimitedInputStream(inputStream)) {
+            Files.copy(limited, file, StandardCopyOption.REPLACE_EXISTING);
+            return file;
+        } catch (IOException e) {
+            Files.deleteIfExists(file);
+            throw e;
         }
+    }
 
+    /**
+     * Поток, который прерывает чтение, если файл больше допустимого размера.
+     */
+    private class LimitedInputStream extends FilterInputStream {
+        private long bytesRead;
+
+        LimitedInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                count(n);
+            }
+            return n;
+        }
+
+        private void count(int n) throws IOException {
+            bytesRead += n;
+            if (bytesRead > maxImportBytes) {
+                throw new IOException("Ошибка при чтении файла: размер больше " + maxImportBytes + " байт");
+            }
+        }
     }
 }
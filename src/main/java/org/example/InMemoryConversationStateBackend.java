@@ -0,0 +1,36 @@
+package org.example;
+
+import java.util.List;
+
+/**
+ * Хранилище состояний диалогов без сохранения: состояния есть только в памяти
+ * {@link ConversationStateStore} и теряются при перезапуске.
+ */
+final class InMemoryConversationStateBackend implements ConversationStateBackend {
+    static final InMemoryConversationStateBackend INSTANCE = new InMemoryConversationStateBackend();
+
+    private InMemoryConversationStateBackend() {
+    }
+
+    @Override
+    public List<StoredState> loadAll(String flow, long notBeforeMillis) {
+        return List.of();
+    }
+
+    @Override
+    public StoredState load(String flow, String userId, long notBeforeMillis) {
+        return null;
+    }
+
+    @Override
+    public void save(String flow, String userId, byte[] data, long updatedAtMillis) {
+    }
+
+    @Override
+    public void delete(String flow, String userId) {
+    }
+
+    @Override
+    public void close() {
+    }
+}
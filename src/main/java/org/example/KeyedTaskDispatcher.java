@@ -0,0 +1,190 @@
+package org.example;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Распределяет задачи по виртуальным потокам, сохраняя порядок выполнения для одного ключа.
+ * Задачи с разными ключами (разных пользователей) выполняются параллельно, но одновременно
+ * не больше concurrency задач: обработчики работают с пулом из нескольких соединений с базой,
+ * и тысячи одновременных обработчиков только ждали бы соединение до таймаута.
+ * Задачи с одним ключом - строго по очереди в порядке поступления.
+ * Общее количество принятых, но не завершенных задач (ожидающих и выполняемых) ограничено
+ * емкостью: при переполнении новая задача отклоняется.
+ * <p>
+ * Метрики выдаются в общий реестр с меткой platform, равной имени диспетчера.
+ */
+public class KeyedTaskDispatcher implements AutoCloseable {
+    /**
+     * Ответ пользователю, чье сообщение не поместилось в очередь.
+     */
+    public static final String BUSY_MESSAGE = "Бот сейчас перегружен, повторите запрос чуть позже.";
+
+    private final int capacity;
+    private final Semaphore permits;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<String, ArrayDeque<QueuedTask>> queues = new ConcurrentHashMap<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+    private final LongAdder processed;
+    private final LongAdder failed;
+    private final LongAdder rejected;
+    private final LatencyHistogram waitDuration;
+    private final LatencyHistogram processingDuration;
+
+    /**
+     * Задача вместе со временем постановки в очередь.
+     */
+    private record QueuedTask(Runnable task, long enqueuedAtNanos) {
+    }
+
+    /**
+     * Снимок счетчиков диспетчера.
+     *
+     * @param pending   принято задач, которые еще не завершились: ожидающих и выполняемых
+     * @param running   задач выполняется сейчас
+     * @param processed задач выполнено
+     * @param failed    задач завершилось исключением
+     * @param rejected  задач отклонено из-за переполнения
+     */
+    public record Stats(int pending, int running, long processed, long failed, long rejected) {
+    }
+
+    /**
+     * Создает диспетчер.
+     *
+     * @param name        имя для метрик, например платформа
+     * @param capacity    максимальное количество принятых и не завершенных задач всех ключей
+     * @param concurrency сколько задач может выполняться одновременно
+     */
+    public KeyedTaskDispatcher(String name, int capacity, int concurrency) {
+        if (capacity < 1 || concurrency < 1) {
+            throw new IllegalArgumentException("Емкость очереди и число одновременных задач должны быть больше нуля");
+        }
+        this.capacity = capacity;
+        this.permits = new Semaphore(concurrency, true);
+
+        MetricsRegistry metrics = MetricsRegistry.get();
+        this.processed = metrics.counter("bot_dispatcher_processed_total", "Обработанные сообщения", "platform")
+                .labels(name);
+        this.failed = metrics.counter("bot_dispatcher_failed_total",
+                "Сообщения, обработка которых завершилась исключением", "platform").labels(name);
+        this.rejected = metrics.counter("bot_dispatcher_rejected_total",
+                "Сообщения, отклоненные из-за переполнения очереди", "platform").labels(name);
+        this.waitDuration = metrics.histogram("bot_dispatcher_wait_seconds",
+                "Ожидание сообщения в очереди до начала обработки", "platform").labels(name);
+        this.processingDuration = metrics.histogram("bot_dispatcher_processing_seconds",
+                "Время обработки сообщения", "platform").labels(name);
+        metrics.gauge("bot_dispatcher_pending", "Сообщения, принятые и еще не обработанные", "platform", name,
+                pending::get);
+        metrics.gauge("bot_dispatcher_running", "Сообщения, обрабатываемые сейчас", "platform", name,
+                running::get);
+    }
+
+    /**
+     * Ставит задачу в очередь ключа. Если очередь ключа пуста, для нее запускается виртуальный поток,
+     * который выполняет задачи ключа по очереди, получая разрешение на каждую.
+     *
+     * @param key  ключ упорядочивания, например идентификатор пользователя
+     * @param task задача
+     * @return true если задача принята, false если принято уже capacity незавершенных задач
+     */
+    public boolean submit(String key, Runnable task) {
+        if (pending.incrementAndGet() > capacity) {
+            pending.decrementAndGet();
+            rejected.increment();
+            return false;
+        }
+        QueuedTask queuedTask = new QueuedTask(task, System.nanoTime());
+        boolean[] start = {false};
+        queues.compute(key, (k, queue) -> {
+            if (queue == null) {
+                queue = new ArrayDeque<>();
+                start[0] = true;
+            }
+            queue.add(queuedTask);
+            return queue;
+        });
+        if (start[0]) {
+            executor.execute(() -> drain(key));
+        }
+        return true;
+    }
+
+    /**
+     * Выполняет задачи ключа по очереди, пока она не опустеет.
+     * Очередь остается в таблице, пока выполняется ее последняя задача, поэтому новые задачи
+     * этого ключа не запускаются параллельно.
+     */
+    private void drain(String key) {
+        while (true) {
+            QueuedTask[] next = new QueuedTask[1];
+            queues.computeIfPresent(key, (k, queue) -> {
+                next[0] = queue.poll();
+                return next[0] == null ? null : queue;
+            });
+            if (next[0] == null) {
+                return;
+            }
+            run(next[0]);
+        }
+    }
+
+    private void run(QueuedTask queuedTask) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending.decrementAndGet();
+            failed.increment();
+            return;
+        }
+        running.incrementAndGet();
+        long startedAt = System.nanoTime();
+        waitDuration.record(startedAt - queuedTask.enqueuedAtNanos());
+        try {
+            queuedTask.task().run();
+        } catch (RuntimeException e) {
+            failed.increment();
+            BotLogger.get().error("dispatcher_task_failed", e);
+        } finally {
+            processingDuration.recordSince(startedAt);
+            processed.increment();
+            running.decrementAndGet();
+            permits.release();
+            pending.decrementAndGet();
+        }
+    }
+
+    /**
+     * Возвращает снимок счетчиков диспетчера.
+     *
+     * @return количество задач по состояниям
+     */
+    public Stats getStats() {
+        return new Stats(pending.get(), running.get(), processed.sum(), failed.sum(), rejected.sum());
+    }
+
+    /**
+     * Прекращает прием задач и ждет завершения уже поставленных.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
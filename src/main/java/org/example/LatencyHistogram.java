@@ -0,0 +1,149 @@
+package org.example;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Гистограмма задержек с логарифмически-линейными корзинами, как в HdrHistogram.
+ * Каждый интервал [2^k, 2^(k+1)) наносекунд делится на 16 равных корзин,
+ * поэтому относительная погрешность перцентилей не больше 6.25% во всем диапазоне long.
+ * Запись - несколько атомарных инкрементов без блокировок и без выделения памяти.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Неизменяемый снимок гистограммы для вычисления перцентилей.
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sumNanos;
+        private final long maxNanos;
+
+        private Snapshot(long[] counts, long count, long sumNanos, long maxNanos) {
+            this.counts = counts;
+            this.count = count;
+            this.sumNanos = sumNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        /**
+         * Возвращает количество измерений.
+         *
+         * @return количество измерений
+         */
+        public long count() {
+            return count;
+        }
+
+        /**
+         * Возвращает сумму измерений.
+         *
+         * @return сумма в наносекундах
+         */
+        public long sumNanos() {
+            return sumNanos;
+        }
+
+        /**
+         * Возвращает максимальное измерение.
+         *
+         * @return максимум в наносекундах
+         */
+        public long maxNanos() {
+            return maxNanos;
+        }
+
+        /**
+         * Возвращает значение, не меньше которого q-я доля измерений.
+         *
+         * @param quantile доля от 0 до 1, например 0.99
+         * @return верхняя граница корзины перцентиля в наносекундах, не больше максимума; 0 без измерений
+         */
+        public long valueAt(double quantile) {
+            long total = 0;
+            for (long bucketCount : counts) {
+                total += bucketCount;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * total));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(upperBound(i), maxNanos);
+                }
+            }
+            return maxNanos;
+        }
+    }
+
+    /**
+     * Записывает одно измерение.
+     *
+     * @param nanos длительность в наносекундах; отрицательные значения считаются нулем
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketIndex(value));
+        count.increment();
+        sumNanos.add(value);
+        if (value > maxNanos.get()) {
+            maxNanos.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    /**
+     * Записывает время, прошедшее с указанного момента.
+     *
+     * @param startedAtNanos значение System.nanoTime() в начале операции
+     */
+    public void recordSince(long startedAtNanos) {
+        record(System.nanoTime() - startedAtNanos);
+    }
+
+    /**
+     * Снимает копию счетчиков. Запись во время снятия может попасть в снимок частично,
+     * для метрик это допустимо.
+     *
+     * @return снимок гистограммы
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new Snapshot(copy, count.sum(), sumNanos.sum(), maxNanos.get());
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        int subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        long upper = ((long) (SUB_BUCKETS + subBucket + 1) << shift) - 1;
+        return upper < 0 ? Long.MAX_VALUE : upper;
+    }
+}
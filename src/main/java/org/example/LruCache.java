@@ -0,0 +1,163 @@
+package org.example;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Потокобезопасный кэш ограниченного размера с вытеснением давно не использованных записей.
+ * Записи также можно ограничить по времени жизни.
+ * <p>
+ * Чтобы значение, прочитанное из базы до инвалидации, не попало в кэш после нее,
+ * загрузка выполняется в два шага: сначала берется {@link #stamp(Object)}, затем значение
+ * кладется через {@link #putIfFresh(Object, Object, long)}. Если между этими шагами
+ * была инвалидация того же ключа, значение отбрасывается.
+ * <p>
+ * Поколения инвалидаций хранятся по полосам: ключ попадает в полосу по хешу, и инвалидация
+ * одного ключа отбрасывает только загрузки ключей той же полосы, а не всего кэша.
+ *
+ * @param <K> тип ключа
+ * @param <V> тип значения
+ */
+public class LruCache<K, V> {
+    private static final int STRIPES = 64;
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final Map<K, Entry<V>> entries;
+    private final long[] generations = new long[STRIPES];
+    private long hits;
+    private long misses;
+
+    /**
+     * Снимок счетчиков кэша.
+     *
+     * @param hits   количество попаданий
+     * @param misses количество промахов
+     * @param size   текущее количество записей
+     */
+    public record Stats(long hits, long misses, int size) {
+        /**
+         * Доля попаданий среди всех обращений.
+         *
+         * @return значение от 0 до 1
+         */
+        public double hitRatio() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+    }
+
+    /**
+     * Значение вместе с моментом, после которого оно считается устаревшим.
+     */
+    private record Entry<V>(V value, long expiresAtNanos) {
+    }
+
+    /**
+     * Создает кэш с указанным максимальным количеством записей без ограничения времени жизни.
+     *
+     * @param maxSize максимальное количество записей
+     */
+    public LruCache(int maxSize) {
+        this(maxSize, null);
+    }
+
+    /**
+     * Создает кэш с ограничением по количеству записей и времени жизни.
+     *
+     * @param maxSize максимальное количество записей
+     * @param ttl     время жизни записи; null - без ограничения
+     */
+    public LruCache(int maxSize, Duration ttl) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Размер кэша должен быть больше нуля");
+        }
+        this.maxSize = maxSize;
+        this.ttlNanos = ttl == null ? 0 : ttl.toNanos();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                return size() > LruCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Возвращает значение из кэша.
+     *
+     * @param key ключ
+     * @return значение или null, если его нет в кэше
+     */
+    public synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null && ttlNanos > 0 && System.nanoTime() - entry.expiresAtNanos() > 0) {
+            entries.remove(key);
+            entry = null;
+        }
+        if (entry != null) {
+            hits++;
+            return entry.value();
+        }
+        misses++;
+        return null;
+    }
+
+    private static int stripe(Object key) {
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+    }
+
+    /**
+     * Возвращает отметку, которую нужно передать в {@link #putIfFresh(Object, Object, long)}.
+     * Берется до чтения значения из источника.
+     *
+     * @param key ключ, значение которого будет загружено
+     * @return текущее поколение инвалидаций полосы ключа
+     */
+    public synchronized long stamp(K key) {
+        return generations[stripe(key)];
+    }
+
+    /**
+     * Кладет значение, если с момента получения отметки не было инвалидаций ключей его полосы.
+     *
+     * @param key   ключ
+     * @param value значение
+     * @param stamp отметка, полученная до чтения значения
+     */
+    public synchronized void putIfFresh(K key, V value, long stamp) {
+        if (stamp == generations[stripe(key)] && value != null) {
+            entries.put(key, new Entry<>(value, System.nanoTime() + ttlNanos));
+        }
+    }
+
+    /**
+     * Удаляет значение из кэша.
+     *
+     * @param key ключ
+     */
+    public synchronized void invalidate(K key) {
+        generations[stripe(key)]++;
+        entries.remove(key);
+    }
+
+    /**
+     * Удаляет все значения из кэша.
+     */
+    public synchronized void invalidateAll() {
+        for (int i = 0; i < STRIPES; i++) {
+            generations[i]++;
+        }
+        entries.clear();
+    }
+
+    /**
+     * Возвращает снимок счетчиков кэша.
+     *
+     * @return счетчики попаданий, промахов и текущий размер
+     */
+    public synchronized Stats stats() {
+        return new Stats(hits, misses, entries.size());
+    }
+}
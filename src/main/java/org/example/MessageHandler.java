@@ -1,18 +1,34 @@
 package org.example;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.SQLException;
 import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Класс для обработки сообщений пользователя и управления задачами.
  */
 public class MessageHandler {
+    private static final BotLogger LOGGER = BotLogger.get();
+    private static final MetricsRegistry.Family<LatencyHistogram> COMMAND_DURATION = MetricsRegistry.get()
+            .histogram("bot_command_duration_seconds", "Время обработки сообщения по командам", "command");
+    private static final MetricsRegistry.Family<LongAdder> COMMAND_ERRORS = MetricsRegistry.get()
+            .counter("bot_command_errors_total", "Сообщения, обработка которых завершилась ошибкой", "command");
+    private static final String UNKNOWN_COMMAND = "unknown";
+    private static final String TEXT_INPUT = "text";
+
     private final DatabaseService databaseService;
     private final AuthService authService;
     private final OperationService operationService;
     private final SubtaskService subtaskService;
+    private final ReminderService reminderService;
+    private final ReminderScheduler reminderScheduler;
+    private final ConversationEngine conversationEngine;
     private final FileWork fileWork = new FileWork();
+    private final CommandRegistry commandRegistry;
 
     private final String START_MESSAGE = """
             Добро пожаловать в планировщик задач! \uD83D\uDC31 📝
@@ -26,6 +42,8 @@ public class MessageHandler {
             /dTask - список выполненных задач
             /delete - удалить задачу
             /expand - расширить задачу
+            /due - назначить срок задачи
+            /remind - напомнить о задаче
             /export - предоставить список задач пользователя в файле
             /import - загрузить список задач из файла
             /exit - выйти из аккаунта
@@ -62,182 +80,265 @@ public class MessageHandler {
      * Конструктор по умолчанию, инициализирует сервис базы данных.
      */
     public MessageHandler() {
-        this.databaseService = new DatabaseService();
-        this.authService = new AuthService(databaseService);
-        this.operationService = new OperationService(databaseService);
-        this.subtaskService = new SubtaskService(databaseService);
+        this(new DatabaseService(), null);
     }
 
     /**
      * Конструктор для тестирования
      */
     public MessageHandler(DatabaseService databaseService) {
+        this(databaseService, null);
+    }
+
+    /**
+     * Конструктор с генерацией подзадач.
+     *
+     * @param databaseService сервис базы данных
+     * @param aiClient        клиент для генерации подзадач; null - генерация недоступна
+     */
+    public MessageHandler(DatabaseService databaseService, AiClient aiClient) {
+        this(databaseService, aiClient, ConversationStateBackend.inMemory());
+    }
+
+    /**
+     * Конструктор с генерацией подзадач и сохранением состояний многошаговых диалогов.
+     *
+     * @param databaseService сервис базы данных
+     * @param aiClient        клиент для генерации подзадач; null - генерация недоступна
+     * @param stateBackend    место сохранения состояний диалогов
+     */
+    public MessageHandler(DatabaseService databaseService, AiClient aiClient, ConversationStateBackend stateBackend) {
         this.databaseService = databaseService;
-        this.authService = new AuthService(databaseService);
-        this.operationService = new OperationService(databaseService);
-        this.subtaskService = new SubtaskService(databaseService);
+        this.conversationEngine = new ConversationEngine(stateBackend);
+        this.authService = new AuthService(databaseService, conversationEngine);
+        this.operationService = new OperationService(databaseService, conversationEngine);
+        this.subtaskService = new SubtaskService(databaseService, aiClient, conversationEngine);
+        this.reminderScheduler = new ReminderScheduler(databaseService);
+        this.reminderService = new ReminderService(databaseService, reminderScheduler);
+        this.commandRegistry = createCommandRegistry();
     }
 
     /**
      * Метод обработки пользовательского ввода.
+     * Команда определяется одним поиском в таблице команд: сначала по всему сообщению
+     * (кнопки и команды без параметра), затем по первому слову. Строка не разбивается
+     * и не копируется, пока не понадобится параметр команды.
+     * Если у пользователя идет многошаговый диалог, сообщение получает сервис этого диалога.
+     * В журнал пишется только команда и время обработки, текст сообщения не записывается:
+     * на шагах авторизации это пароль.
      */
     public BotResponse processUserInput(String userInput, String userId, String platformType) {
-        System.out.println("сообщение: " + userInput + " от: " + userId + " платформа: " + platformType);
-        try {
-            if (subtaskService.isUserInSubtaskMode(userId)) {
-                return subtaskService.processSubtaskInput(userId, userInput);
-            }
+        long startedAt = System.nanoTime();
+        int start = CommandRegistry.skipWhitespace(userInput, 0, userInput.length());
+        int end = CommandRegistry.trimEnd(userInput, start);
+        int tokenEnd = CommandRegistry.tokenEnd(userInput, start, end);
 
-            if (operationService.isUserInOperationProcess(userId)) {
-                return operationService.handleOperationStep(userId, userInput);
+        CommandRegistry.Command command = commandRegistry.find(userInput, start, end);
+        String parameter = "";
+        if (command == null && tokenEnd < end) {
+            command = commandRegistry.find(userInput, start, tokenEnd);
+            if (command != null) {
+                parameter = userInput.substring(CommandRegistry.skipWhitespace(userInput, tokenEnd, end), end);
             }
+        }
+        int taskNumber = command == null ? CommandRegistry.parseNumber(userInput, start, tokenEnd) : -1;
+        String commandName = command != null ? command.name()
+                : userInput.startsWith("/", start) ? UNKNOWN_COMMAND : TEXT_INPUT;
 
-            if (authService.isUserInAuthProcess(userId)) {
-                return authService.handleAuthStep(userId, userInput);
-            }
+        BotResponse response = handleUserInput(userInput, command, parameter, taskNumber, userId, platformType);
+        long duration = System.nanoTime() - startedAt;
+        COMMAND_DURATION.labels(commandName).record(duration);
+        LOGGER.info("message", userId, platformType, commandName, duration);
+        return response;
+    }
 
-            String[] parts = userInput.trim().split("\\s+", 2);
-            String command = parts[0];
-            String parameter = parts.length > 1 ? parts[1].trim() : "";
+    private BotResponse handleUserInput(String userInput, CommandRegistry.Command command, String parameter,
+                                        int taskNumber, String userId, String platformType) {
+        try {
+            ConversationEngine.Conversation conversation = conversationEngine.get(userId);
+            if (conversation != null) {
+                return conversationEngine.dispatch(userId, userInput, command, conversation);
+            }
 
             if (!authService.isUserAuthenticated(userId, platformType)) {
                 return handleUnauthorizedUser(command, userId, platformType);
             }
 
-            return processCommand(command, parameter, userId, platformType);
+            return processCommand(command, parameter, taskNumber, userId, platformType);
         } catch (Exception e) {
-            e.printStackTrace();
+            COMMAND_ERRORS.labels(command != null ? command.name() : TEXT_INPUT).increment();
+            LOGGER.error("message_failed", userId, platformType, e);
             return new BotResponse("Произошла ошибка: " + e.getMessage());
         }
     }
 
     /**
-     * Обрабатывает неавторизованного пользователя
+     * Обрабатывает неавторизованного пользователя: доступны только регистрация и вход
      */
-    private BotResponse handleUnauthorizedUser(String command, String userId, String platformType) {
-        if (command.equals("/registration")) {
-            return authService.handleRegistration(userId, platformType);
-        } else if (command.equals("/login")) {
-            return authService.handleLogin(userId, platformType);
+    private BotResponse handleUnauthorizedUser(CommandRegistry.Command command, String userId, String platformType)
+            throws SQLException {
+        if (command != null && command.anonymous()) {
+            return command.handler().handle(new CommandRegistry.Call(command.name(), "", userId, platformType, null));
         }
         return new BotResponse(authService.getWelcomeMessage());
     }
 
     /**
      * Обрабатывает команду пользователя
+     *
+     * @param command    найденная команда или null
+     * @param parameter  текст после команды
+     * @param taskNumber номер задачи, если сообщение начинается с числа, иначе -1
      */
-    private BotResponse processCommand(String command, String parameter, String userId, String platformType) {
+    private BotResponse processCommand(CommandRegistry.Command command, String parameter, int taskNumber,
+                                       String userId, String platformType) {
         try {
-            String internalUserId = databaseService.getUserIdByPlatform(userId);
+            String internalUserId = databaseService.getUserIdByPlatform(platformType, userId);
             if (internalUserId == null) {
                 return new BotResponse("Ошибка: пользователь не авторизован. Пожалуйста, войдите снова.");
             }
 
-            if (isSubtaskCommand(command)) {
-                return subtaskService.handleSubtaskCommand(command, userId);
+            if (command != null) {
+                return command.handler().handle(
+                        new CommandRegistry.Call(command.name(), parameter, userId, platformType, internalUserId));
             }
 
-            if (command.matches("\\d+")) {
+            if (taskNumber >= 1) {
                 List<String> tasks = databaseService.getCurrentTasks(internalUserId);
-                int taskNumber = Integer.parseInt(command);
-                if (taskNumber >= 1 && taskNumber <= tasks.size()) {
-                    return handleExpandCommand(userId, command, internalUserId);
+                if (taskNumber <= tasks.size()) {
+                    return startExpand(userId, platformType, internalUserId, tasks.get(taskNumber - 1));
                 }
             }
 
-            if (command.equals("/expand") || command.equals("Расширить задачу")) {
-                String full = command + (parameter.isEmpty() ? "" : " " + parameter);
-                return handleExpandCommand(userId, full, internalUserId);
-            }
+            return new BotResponse("""
+                    Неизвестная команда.
+                    Введите /help для просмотра доступных команд.
+                    """);
+        } catch (Exception e) {
+            COMMAND_ERRORS.labels(command != null ? command.name() : TEXT_INPUT).increment();
+            LOGGER.error("command_failed", userId, platformType, e);
+            return new BotResponse("Ошибка при выполнении команды: " + e.getMessage());
+        }
+    }
 
-            return switch (command) {
-                case "/start" -> new BotResponse(START_MESSAGE);
-                case "/help" -> new BotResponse(HELP_MESSAGE);
-                case "/add" -> operationService.handleOperation("add", parameter, userId,
+    /**
+     * Возвращает таблицу команд, например для перевода текста кнопок в команды.
+     */
+    public CommandRegistry getCommandRegistry() {
+        return commandRegistry;
+    }
+
+    /**
+     * Собирает таблицу команд. Команды подзадач регистрирует SubtaskService,
+     * команды сроков и напоминаний - ReminderService.
+     */
+    private CommandRegistry createCommandRegistry() {
+        CommandRegistry.Builder builder = CommandRegistry.builder()
+                .register("/start", call -> new BotResponse(START_MESSAGE))
+                .register("/help", call -> new BotResponse(HELP_MESSAGE), "Помощь")
+                .register("/add", call -> operationService.handleOperation("add", call.parameter(),
+                        call.userId(), call.platformType(),
                         """
                                 Введите задачу для добавления:
-                                Например: Купить молоко""");
-                case "/tasks" -> operationService.handleShowTasks(internalUserId);
-                case "/done" -> operationService.handleOperation("done", parameter, userId,
+                                Например: Купить молоко"""), "\u2795 Добавить задачу")
+                .register("/tasks", call -> operationService.handleShowTasks(call.internalUserId()),
+                        "\uD83D\uDCDD Показать список задач")
+                .register("/done", call -> operationService.handleOperation("done", call.parameter(),
+                        call.userId(), call.platformType(),
                         """
                                 Введите название задачи для отметки выполнения:
-                                Например: Купить молоко""");
-                case "/dTask" -> operationService.handleShowCompletedTasks(internalUserId);
-                case "/delete" -> operationService.handleOperation("delete", parameter, userId,
+                                Например: Купить молоко"""), "\u2714 Выполнено")
+                .register("/dTask", call -> operationService.handleShowCompletedTasks(call.internalUserId()),
+                        "\u2705 Список выполненных задач")
+                .register("/delete", call -> operationService.handleOperation("delete", call.parameter(),
+                        call.userId(), call.platformType(),
                         """
                                 Введите название задачи для удаления:
-                                Например: Купить молоко""");
-                case "/registration" -> authService.handleRegistration(userId, platformType);
-                case "/login" -> authService.handleLogin(userId, platformType);
-                case "/exit" -> authService.handleExit(userId, platformType);
-                case "/export" -> operationService.handleOperation("export", parameter, userId,
+                                Например: Купить молоко"""), "\u2718 Удалить")
+                .registerAnonymous("/registration",
+                        call -> authService.handleRegistration(call.userId(), call.platformType()),
+                        "\uD83D\uDCDD Регистрация")
+                .registerAnonymous("/login",
+                        call -> authService.handleLogin(call.userId(), call.platformType()),
+                        "Войти в аккаунт")
+                .register("/exit", call -> authService.handleExit(call.userId(), call.platformType()),
+                        "Выйти из аккаунта")
+                .register("/export", call -> operationService.handleOperation("export", call.parameter(),
+                        call.userId(), call.platformType(),
                         """
                                 Напишите имя файла для экспорта
-                                Например: 'list'""");
-                case "/import" -> new BotResponse("Для импорта отправьте JSON файл с задачами");
-                default -> new BotResponse("""
-                                        Неизвестная команда.
-                                        Введите /help для просмотра доступных команд.
-                                        """);
-            };
-        } catch (Exception e) {
-            e.printStackTrace();
-            return new BotResponse("Ошибка при выполнении команды: " + e.getMessage());
-        }
+                                Например: 'list'"""), "Экспорт")
+                .register("/import", call -> new BotResponse("Для импорта отправьте JSON файл с задачами"), "Импорт")
+                .register("/expand", this::handleExpandCommand, "Расширить задачу");
+        subtaskService.registerCommands(builder);
+        reminderService.registerCommands(builder);
+        return builder.build();
     }
 
     /**
-     * Проверяет, является ли команда командой подзадачи
+     * Обрабатывает импорт задач из загружаемого файла.
+     * Файл сначала сохраняется на диск с ограничением import.max-bytes, чтобы соединение
+     * для записи не ждало загрузки по сети, а затем импортируется как локальный файл.
      */
-    private boolean isSubtaskCommand(String command) {
-        return command.equals("/add_subtask") || command.equals("/delete_subtask") ||
-                command.equals("/edit_subtask") || command.equals("/finish_expand") ||
-                command.equals("\u2795 Добавить подзадачу") || command.equals("\u2718 Удалить подзадачу") ||
-                command.equals("Изменить подзадачу") || command.equals("Окончить расширение");
+    public BotResponse processImport(InputStream inputStream, String userId, String platformType) {
+        Path file;
+        try {
+            file = fileWork.saveImport(inputStream);
+        } catch (IOException e) {
+            COMMAND_ERRORS.labels("/import").increment();
+            LOGGER.error("import_failed", userId, platformType, e);
+            return new BotResponse("Ошибка при импорте: " + e.getMessage());
+        }
+        try {
+            return processImport(file, userId, platformType);
+        } finally {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                LOGGER.warn("import_cleanup_failed", "Не удалось удалить " + file + ": " + e.getMessage());
+            }
+        }
     }
 
     /**
-     * Обрабатывает импорт задач из файла
+     * Обрабатывает импорт задач из файла на диске.
+     * Файл читается потоком прямо в пакеты вставки, поэтому в памяти задачи не накапливаются;
+     * размер и число задач ограничены import.max-bytes и import.max-tasks,
+     * а при любой ошибке импорт откатывается целиком.
      */
-    public BotResponse processImport(InputStream inputStream, String userId) {
+    public BotResponse processImport(Path file, String userId, String platformType) {
         try {
-            String internalUserId = databaseService.getUserIdByPlatform(userId);
+            String internalUserId = databaseService.getUserIdByPlatform(platformType, userId);
             if (internalUserId == null) {
                 throw new IllegalArgumentException("Ошибка: пользователь не авторизован. Пожалуйста, войдите снова.");
             }
 
-            FileWork.FileData importedData = fileWork.importData(inputStream);
-            for (String task : importedData.current_tasks()) {
-                try {
-                    databaseService.addTask(internalUserId, task);
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-            }
-            for (String task : importedData.completed_tasks()) {
-                try {
-                    databaseService.markTaskDone(internalUserId, task);
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-            }
+            DatabaseService.ImportResult result = databaseService.importTasks(internalUserId,
+                    (currentConsumer, completedConsumer) -> {
+                        try (InputStream inputStream = Files.newInputStream(file)) {
+                            fileWork.importStream(inputStream, currentConsumer, completedConsumer);
+                        }
+                    });
 
             return new BotResponse("""
                     Импорт завершен успешно!
+                    Добавлено текущих задач: %d, выполненных: %d, пропущено повторов: %d
                     Можете проверить списки с помощью команд /tasks и /dTask
-                    """);
+                    """.formatted(result.currentInserted(), result.completedInserted(), result.skipped()));
         } catch (Exception e) {
-            e.printStackTrace();
+            COMMAND_ERRORS.labels("/import").increment();
+            LOGGER.error("import_failed", userId, platformType, e);
             return new BotResponse("Ошибка при импорте: " + e.getMessage());
         }
     }
 
     /**
-     * Обрабатывает команду расширения задачи
+     * Обрабатывает команду расширения задачи: без параметра показывает список,
+     * с номером задачи сразу начинает расширение
      */
-    private BotResponse handleExpandCommand(String userId, String userInput, String internalUserId) throws SQLException {
-        if (userInput.trim().equals("/expand") || userInput.trim().equals("Расширить задачу")) {
-            List<String> tasks = databaseService.getCurrentTasks(internalUserId);
+    private BotResponse handleExpandCommand(CommandRegistry.Call call) throws SQLException {
+        List<String> tasks = databaseService.getCurrentTasks(call.internalUserId());
+        if (call.parameter().isEmpty()) {
             if (tasks.isEmpty()) {
                 return new BotResponse("Нет задач для расширения");
             }
@@ -249,27 +350,35 @@ public class MessageHandler {
             sb.append("\nВведите номер задачи:");
             return new BotResponse(sb.toString());
         }
-        if (userInput.trim().matches("\\d+")) {
-            try {
-                List<String> tasks = databaseService.getCurrentTasks(internalUserId);
-                int taskNumber = Integer.parseInt(userInput.trim());
-                if (taskNumber < 1 || taskNumber > tasks.size()) {
-                    return new BotResponse("Выберите номер из списка");
-                }
-                String selectedTask = tasks.get(taskNumber - 1);
-                Integer taskId = databaseService.getTaskId(internalUserId, selectedTask);
+        int taskNumber = CommandRegistry.parseNumber(call.parameter(), 0, call.parameter().length());
+        if (taskNumber < 0) {
+            return new BotResponse("Используйте: /expand [номер_задачи] или просто /expand для выбора из списка");
+        }
+        if (taskNumber < 1 || taskNumber > tasks.size()) {
+            return new BotResponse("Выберите номер из списка");
+        }
+        return startExpand(call.userId(), call.platformType(), call.internalUserId(), tasks.get(taskNumber - 1));
+    }
 
-                if (taskId == null) {
-                    throw new IllegalArgumentException("Задача не найдена.");
-                }
-                subtaskService.startSubtaskMode(userId, taskId, selectedTask);
-                return new BotResponse(subtaskService.getSubtaskMessage());
-            } catch (NumberFormatException e) {
-                e.printStackTrace();
-                return new BotResponse("Пожалуйста, введите номер задачи:");
-            }
+    /**
+     * Начинает режим работы с подзадачами для выбранной задачи
+     */
+    private BotResponse startExpand(String userId, String platformType, String internalUserId, String selectedTask)
+            throws SQLException {
+        Integer taskId = databaseService.getTaskId(internalUserId, selectedTask);
+        if (taskId == null) {
+            throw new IllegalArgumentException("Задача не найдена.");
         }
-        return new BotResponse("Используйте: /expand [номер_задачи] или просто /expand для выбора из списка");
+        subtaskService.startSubtaskMode(userId, platformType, taskId, selectedTask);
+        return new BotResponse(subtaskService.getSubtaskMessage());
+    }
+
+    /**
+     * Возвращает планировщик напоминаний. Планировщик запускается вызывающей стороной
+     * после подключения платформ, через которые отправляются напоминания.
+     */
+    public ReminderScheduler getReminderScheduler() {
+        return reminderScheduler;
     }
 
     /**
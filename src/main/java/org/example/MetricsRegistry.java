@@ -0,0 +1,184 @@
+package org.example;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Реестр метрик приложения: счетчики, гистограммы задержек и показатели,
+ * которые вычисляются при чтении. Выдается в текстовом формате Prometheus.
+ * <p>
+ * Метрика - семейство с одной меткой, например bot_command_duration_seconds{command="/add"}.
+ * Обращение к уже созданной метке - один поиск в ConcurrentHashMap без выделения памяти,
+ * поэтому вызывающему коду не нужно хранить ссылки на отдельные счетчики.
+ * Количество значений метки ограничено, остальные значения попадают в метку "other".
+ */
+public class MetricsRegistry {
+    /**
+     * Значение метки для значений сверх лимита.
+     */
+    public static final String OTHER = "other";
+
+    private static final int MAX_LABEL_VALUES = 256;
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final MetricsRegistry INSTANCE = new MetricsRegistry();
+
+    private final Map<String, Family<?>> families = new ConcurrentSkipListMap<>();
+
+    /**
+     * Создает отдельный реестр. Приложение использует общий реестр {@link #get()}.
+     */
+    MetricsRegistry() {
+    }
+
+    private enum Type {
+        COUNTER, SUMMARY, GAUGE
+    }
+
+    /**
+     * Семейство метрик с одной меткой.
+     *
+     * @param <T> тип метрики: LongAdder, LatencyHistogram или DoubleSupplier
+     */
+    public static final class Family<T> {
+        private final String name;
+        private final String help;
+        private final Type type;
+        private final String labelName;
+        private final Supplier<T> factory;
+        private final Map<String, T> children = new ConcurrentHashMap<>();
+
+        private Family(String name, String help, Type type, String labelName, Supplier<T> factory) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.labelName = labelName;
+            this.factory = factory;
+        }
+
+        /**
+         * Возвращает метрику для значения метки, создавая ее при первом обращении.
+         *
+         * @param labelValue значение метки
+         * @return метрика
+         */
+        public T labels(String labelValue) {
+            T child = children.get(labelValue);
+            if (child != null) {
+                return child;
+            }
+            String value = children.size() < MAX_LABEL_VALUES ? labelValue : OTHER;
+            return children.computeIfAbsent(value, v -> factory.get());
+        }
+    }
+
+    /**
+     * Возвращает общий реестр приложения.
+     *
+     * @return реестр
+     */
+    public static MetricsRegistry get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Возвращает семейство счетчиков, создавая его при первом обращении.
+     *
+     * @param name      имя метрики, по соглашению Prometheus оканчивается на _total
+     * @param help      описание
+     * @param labelName имя метки
+     * @return семейство счетчиков
+     */
+    public Family<LongAdder> counter(String name, String help, String labelName) {
+        return family(name, help, Type.COUNTER, labelName, LongAdder::new);
+    }
+
+    /**
+     * Возвращает семейство гистограмм задержек, создавая его при первом обращении.
+     * Выдается как summary с перцентилями 0.5, 0.9, 0.99 и 0.999 в секундах.
+     *
+     * @param name      имя метрики, по соглашению Prometheus оканчивается на _seconds
+     * @param help      описание
+     * @param labelName имя метки
+     * @return семейство гистограмм
+     */
+    public Family<LatencyHistogram> histogram(String name, String help, String labelName) {
+        return family(name, help, Type.SUMMARY, labelName, LatencyHistogram::new);
+    }
+
+    /**
+     * Регистрирует показатель, значение которого вычисляется при каждом чтении метрик.
+     * Повторная регистрация той же метки заменяет источник значения.
+     *
+     * @param name       имя метрики
+     * @param help       описание
+     * @param labelName  имя метки
+     * @param labelValue значение метки
+     * @param value      источник значения
+     */
+    public void gauge(String name, String help, String labelName, String labelValue, DoubleSupplier value) {
+        Family<DoubleSupplier> family = family(name, help, Type.GAUGE, labelName, () -> () -> Double.NaN);
+        family.children.put(labelValue, value);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> Family<T> family(String name, String help, Type type, String labelName, Supplier<T> factory) {
+        Family<?> family = families.computeIfAbsent(name, n -> new Family<>(n, help, type, labelName, factory));
+        if (family.type != type || !family.labelName.equals(labelName)) {
+            throw new IllegalArgumentException("Метрика " + name + " уже зарегистрирована с другим типом или меткой");
+        }
+        return (Family<T>) family;
+    }
+
+    /**
+     * Формирует текущие значения всех метрик в текстовом формате Prometheus.
+     *
+     * @return текст для ответа на запрос /metrics
+     */
+    public String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+        for (Family<?> family : families.values()) {
+            out.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(family.name).append(' ')
+                    .append(family.type.name().toLowerCase(Locale.ROOT)).append('\n');
+            Map<String, ?> children = new ConcurrentSkipListMap<>(family.children);
+            for (Map.Entry<String, ?> child : children.entrySet()) {
+                String label = family.labelName + "=\"" + escape(child.getKey()) + "\"";
+                switch (family.type) {
+                    case COUNTER -> sample(out, family.name, label, ((LongAdder) child.getValue()).sum());
+                    case GAUGE -> sample(out, family.name, label, ((DoubleSupplier) child.getValue()).getAsDouble());
+                    case SUMMARY -> {
+                        LatencyHistogram.Snapshot snapshot = ((LatencyHistogram) child.getValue()).snapshot();
+                        for (double quantile : QUANTILES) {
+                            sample(out, family.name, label + ",quantile=\"" + quantile + "\"",
+                                    snapshot.valueAt(quantile) / 1e9);
+                        }
+                        sample(out, family.name + "_sum", label, snapshot.sumNanos() / 1e9);
+                        sample(out, family.name + "_count", label, snapshot.count());
+                    }
+                }
+            }
+        }
+        return out.toString();
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name).append('{').append(labels).append("} ");
+        if (Double.isNaN(value)) {
+            out.append("NaN");
+        } else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+
+    private static String escape(String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,84 @@
+package org.example;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Локальный HTTP сервер, отдающий метрики по адресу /metrics в текстовом формате Prometheus.
+ * По умолчанию слушает только 127.0.0.1.
+ */
+public class MetricsServer implements AutoCloseable {
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "metrics-server");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Запускает сервер.
+     *
+     * @param registry реестр метрик
+     * @param address  адрес и порт; порт 0 - любой свободный
+     * @throws IOException если порт занят
+     */
+    public MetricsServer(MetricsRegistry registry, InetSocketAddress address) throws IOException {
+        server = HttpServer.create(address, 0);
+        server.createContext("/metrics", exchange -> handle(exchange, registry));
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Запускает сервер на адресе из application.properties (metrics.host, metrics.port).
+     *
+     * @param registry реестр метрик
+     * @return запущенный сервер
+     * @throws IOException если порт занят
+     */
+    public static MetricsServer fromConfig(MetricsRegistry registry) throws IOException {
+        return new MetricsServer(registry, new InetSocketAddress(
+                AppConfig.get().getString("metrics.host", "127.0.0.1"),
+                AppConfig.get().getInt("metrics.port", 9404)));
+    }
+
+    /**
+     * Возвращает порт, на котором слушает сервер.
+     *
+     * @return номер порта
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private static void handle(HttpExchange exchange, MetricsRegistry registry) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = registry.scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(body);
+            }
+        }
+    }
+
+    /**
+     * Останавливает сервер.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
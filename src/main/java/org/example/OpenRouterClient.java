@@ -2,52 +2,270 @@ package org.example;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 
 import java.io.IOException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * OpenRouterClient - класс работы с ИИ.
+ * Один HTTP/2 клиент используется для всех запросов, поэтому соединение и TLS-сессия переиспользуются.
+ * Количество одновременных запросов ограничено.
  */
-public class OpenRouterClient {
+public class OpenRouterClient implements AiClient {
+    private static final String SYSTEM_PROMPT = "You are a helpful assistant that breaks down tasks into subtasks. "
+            + "Respond with a clear list of subtasks, one per line, without numbering or bullet points.";
+
     private final String apiKey;
+    private final URI endpoint;
+    private final String model;
+    private final Duration requestTimeout;
+    private final Semaphore inFlight;
+    private final HttpClient client;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
     private final ObjectMapper objectMapper = new ObjectMapper();
 
+    /**
+     * Конструктор, берущий адрес, модель, таймауты и лимит запросов из application.properties.
+     *
+     * @param apiKey ключ OpenRouter API
+     */
     public OpenRouterClient(String apiKey) {
+        this(apiKey,
+                URI.create(AppConfig.get().getString("openrouter.url", "https://openrouter.ai/api/v1/chat/completions")),
+                AppConfig.get().getString("openrouter.model", "gpt-3.5-turbo"),
+                Duration.ofMillis(AppConfig.get().getLong("openrouter.connect-timeout-ms", 5000)),
+                Duration.ofMillis(AppConfig.get().getLong("openrouter.request-timeout-ms", 30000)),
+                AppConfig.get().getInt("openrouter.max-in-flight", 8));
+    }
+
+    /**
+     * Конструктор с явными параметрами.
+     *
+     * @param apiKey         ключ OpenRouter API
+     * @param endpoint       адрес chat completions
+     * @param model          имя модели
+     * @param connectTimeout таймаут установки соединения
+     * @param requestTimeout таймаут ответа на запрос
+     * @param maxInFlight    максимальное количество одновременных запросов
+     */
+    public OpenRouterClient(String apiKey, URI endpoint, String model, Duration connectTimeout,
+                            Duration requestTimeout, int maxInFlight) {
         this.apiKey = apiKey;
+        this.endpoint = endpoint;
+        this.model = model;
+        this.requestTimeout = requestTimeout;
+        this.inFlight = new Semaphore(maxInFlight, true);
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(connectTimeout)
+                .build();
+    }
+
+    /**
+     * Возвращает имя модели, к которой обращается клиент.
+     *
+     * @return имя модели
+     */
+    public String getModel() {
+        return model;
     }
 
     /**
      * отправка запроса через OpenRouter.
+     * Если все слоты заняты, ждет освобождения одного из них.
      */
     public String sendRequest(String userPrompt) throws IOException, InterruptedException {
-        String requestBody = createRequestBody(userPrompt);
-        HttpRequest request = createHttpRequest(requestBody);
+        HttpRequest request = createHttpRequest(createRequestBody(userPrompt, false));
 
-        HttpClient client = HttpClient.newHttpClient();
-        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        inFlight.acquire();
+        try {
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            return processResponse(response);
+        } finally {
+            inFlight.release();
+        }
+    }
 
-        return processResponse(response);
+    /**
+     * Асинхронная отправка запроса через OpenRouter.
+     * Запрос и ожидание свободного слота выполняются в виртуальном потоке,
+     * вызывающий поток не блокируется.
+     *
+     * @param userPrompt текст запроса пользователя
+     * @return ответ модели
+     */
+    @Override
+    public CompletableFuture<String> sendRequestAsync(String userPrompt) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return sendRequest(userPrompt);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+        }, executor);
     }
 
-    private String createRequestBody(String userPrompt) {
-        return String.format("""
-                    {
-                      "model": "gpt-3.5-turbo",
-                      "messages": [
-                        {"role": "system", "content": "You are a helpful assistant that breaks down tasks into subtasks. Respond with a clear list of subtasks, one per line, without numbering or bullet points."},
-                        {"role": "user", "content": "%s"}
-                      ]
+    /**
+     * Потоковая генерация подзадач.
+     * Ответ модели читается по мере поступления (server-sent events), каждая подзадача
+     * публикуется, как только модель закончила ее строку, не дожидаясь конца ответа.
+     * Запрос отправляется отдельно для каждого подписчика при подписке;
+     * отмена подписки прерывает чтение ответа.
+     *
+     * @param userPrompt текст запроса пользователя
+     * @return издатель подзадач; ошибка HTTP или модели приходит в onError
+     */
+    public Flow.Publisher<String> streamSubtasks(String userPrompt) {
+        return subscriber -> {
+            SubmissionPublisher<String> publisher = new SubmissionPublisher<>(executor, Flow.defaultBufferSize());
+            publisher.subscribe(subscriber);
+            executor.execute(() -> stream(userPrompt, publisher));
+        };
+    }
+
+    /**
+     * Потоковая генерация подзадач с обратным вызовом на каждую подзадачу.
+     * Удобна для постепенного обновления сообщения пользователю.
+     *
+     * @param userPrompt текст запроса пользователя
+     * @param onSubtask  вызывается для каждой подзадачи в порядке поступления
+     * @return все подзадачи после окончания ответа
+     */
+    @Override
+    public CompletableFuture<List<String>> streamSubtasks(String userPrompt, Consumer<String> onSubtask) {
+        List<String> subtasks = new ArrayList<>();
+        CompletableFuture<List<String>> result = new CompletableFuture<>();
+        streamSubtasks(userPrompt).subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(String subtask) {
+                subtasks.add(subtask);
+                onSubtask.accept(subtask);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                result.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                result.complete(List.copyOf(subtasks));
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Читает потоковый ответ и публикует подзадачи. Выполняется в виртуальном потоке.
+     */
+    private void stream(String userPrompt, SubmissionPublisher<String> publisher) {
+        HttpRequest request = createHttpRequest(createRequestBody(userPrompt, true));
+        try {
+            inFlight.acquire();
+            try {
+                HttpResponse<Stream<String>> response = client.send(request, HttpResponse.BodyHandlers.ofLines());
+                try (Stream<String> lines = response.body()) {
+                    if (response.statusCode() != 200) {
+                        String body = lines.collect(Collectors.joining("\n"));
+                        throw new RuntimeException(errorMessage(response.statusCode(), objectMapper.readTree(body)));
                     }
-                """, userPrompt.replace("\"", "\\\""));
+                    publishEvents(lines.iterator(), publisher);
+                }
+            } finally {
+                inFlight.release();
+            }
+            publisher.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            publisher.closeExceptionally(e);
+        } catch (IOException | RuntimeException e) {
+            publisher.closeExceptionally(e);
+        }
+    }
+
+    /**
+     * Разбирает события "data: {...}", собирает фрагменты текста и публикует законченные строки.
+     * Строки-комментарии (": ...") и пустые строки между событиями пропускаются.
+     */
+    private void publishEvents(Iterator<String> lines, SubmissionPublisher<String> publisher) throws IOException {
+        StringBuilder pending = new StringBuilder();
+        while (lines.hasNext() && !publisher.isClosed() && publisher.hasSubscribers()) {
+            String line = lines.next();
+            if (!line.startsWith("data:")) {
+                continue;
+            }
+            String data = line.substring(5).trim();
+            if (data.equals("[DONE]")) {
+                break;
+            }
+            JsonNode json = objectMapper.readTree(data);
+            if (json.has("error")) {
+                throw new RuntimeException(errorMessage(json.path("error").path("code").asInt(200), json));
+            }
+            JsonNode content = json.path("choices").path(0).path("delta").path("content");
+            if (!content.isTextual()) {
+                continue;
+            }
+            pending.append(content.asText());
+            int newline;
+            while ((newline = pending.indexOf("\n")) >= 0) {
+                publishSubtask(pending.substring(0, newline), publisher);
+                pending.delete(0, newline + 1);
+            }
+        }
+        publishSubtask(pending.toString(), publisher);
+    }
+
+    private void publishSubtask(String line, SubmissionPublisher<String> publisher) {
+        String subtask = line.trim();
+        if (!subtask.isEmpty()) {
+            publisher.submit(subtask);
+        }
+    }
+
+    private String createRequestBody(String userPrompt, boolean stream) {
+        ObjectNode body = objectMapper.createObjectNode();
+        body.put("model", model);
+        if (stream) {
+            body.put("stream", true);
+        }
+        ArrayNode messages = body.putArray("messages");
+        messages.addObject().put("role", "system").put("content", SYSTEM_PROMPT);
+        messages.addObject().put("role", "user").put("content", userPrompt);
+        return body.toString();
     }
 
     private HttpRequest createHttpRequest(String requestBody) {
         return HttpRequest.newBuilder()
-                .uri(URI.create("https://openrouter.ai/api/v1/chat/completions"))
+                .uri(endpoint)
+                .timeout(requestTimeout)
                 .header("Content-Type", "application/json")
                 .header("Authorization", "Bearer " + apiKey)
                 .header("HTTP-Referer", "https://example.com")
@@ -57,22 +275,15 @@ public class OpenRouterClient {
     }
 
     private String processResponse(HttpResponse<String> response) throws IOException {
-        System.out.println("Status code: " + response.statusCode());
+        BotLogger logger = BotLogger.get();
+        if (logger.isEnabled(BotLogger.Level.DEBUG)) {
+            logger.debug("openrouter_response", "Status code: " + response.statusCode());
+        }
 
         JsonNode json = objectMapper.readTree(response.body());
 
         if (response.statusCode() != 200) {
-            String errorMessage = "HTTP Error: " + response.statusCode();
-            if (json.has("error")) {
-                JsonNode error = json.get("error");
-                errorMessage += " - " + error.get("message").asText();
-                if (error.has("type")) {
-                    errorMessage += " (Type: " + error.get("type").asText() + ")";
-                }
-            } else if (json.has("message")) {
-                errorMessage += " - " + json.get("message").asText();
-            }
-            throw new RuntimeException(errorMessage);
+            throw new RuntimeException(errorMessage(response.statusCode(), json));
         }
 
         if (!json.has("choices")) {
@@ -86,4 +297,20 @@ public class OpenRouterClient {
                 .asText()
                 .trim();
     }
+
+    private String errorMessage(int statusCode, JsonNode json) {
+        String errorMessage = "HTTP Error: " + statusCode;
+        if (json.has("error")) {
+            JsonNode error = json.get("error");
+            if (error.has("message")) {
+                errorMessage += " - " + error.get("message").asText();
+            }
+            if (error.has("type")) {
+                errorMessage += " (Type: " + error.get("type").asText() + ")";
+            }
+        } else if (json.has("message")) {
+            errorMessage += " - " + json.get("message").asText();
+        }
+        return errorMessage;
+    }
 }
\ No newline at end of file
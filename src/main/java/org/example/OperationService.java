@@ -1,10 +1,10 @@
 package org.example;
 
-import java.io.File;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.sql.SQLException;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Сервис для управления операциями с задачами.
@@ -12,15 +12,30 @@ import java.util.concurrent.ConcurrentHashMap;
 public class OperationService {
     private final DatabaseService databaseService;
     private final FileWork fileWork = new FileWork();
-    private final Map<String, Operation> operationStates = new ConcurrentHashMap<>();
+    private final ConversationEngine conversationEngine;
 
     /**
      * Класс для отслеживания состояния операции.
      */
-    private class Operation {
+    private static class Operation {
+        static final ConversationStateCodec<Operation> CODEC = new ConversationStateCodec<>() {
+            @Override
+            public void write(Operation state, DataOutput out) throws IOException {
+                out.writeUTF(state.type);
+                out.writeUTF(state.platformType);
+            }
+
+            @Override
+            public Operation read(DataInput in) throws IOException {
+                return new Operation(in.readUTF(), in.readUTF());
+            }
+        };
+
         String type;
-        Operation(String type) {
+        String platformType;
+        Operation(String type, String platformType) {
             this.type = type;
+            this.platformType = platformType;
         }
     }
 
@@ -28,36 +43,51 @@ public class OperationService {
      * Конструктор сервиса операций.
      */
     public OperationService(DatabaseService databaseService) {
+        this(databaseService, new ConversationEngine());
+    }
+
+    /**
+     * Конструктор сервиса операций, подключающий ввод задачи к общему автомату диалогов.
+     *
+     * @param databaseService    сервис базы данных
+     * @param conversationEngine автомат диалогов
+     */
+    public OperationService(DatabaseService databaseService, ConversationEngine conversationEngine) {
         this.databaseService = databaseService;
+        this.conversationEngine = conversationEngine;
+        conversationEngine.register(ConversationEngine.Flow.OPERATION, this::handleOperationStep, Operation.CODEC);
     }
 
     /**
      * Обрабатывает операцию, требующую дополнительного ввода от пользователя
      */
-    public BotResponse handleOperation(String operation, String parameter, String userId, String prompt) {
+    public BotResponse handleOperation(String operation, String parameter, String userId, String platformType,
+                                       String prompt) {
         if (parameter.isEmpty()) {
-            operationStates.put(userId, new Operation(operation));
+            conversationEngine.start(userId, ConversationEngine.State.OPERATION_INPUT,
+                    new Operation(operation, platformType));
             return new BotResponse(prompt);
         } else {
-            return executeOperation(operation, parameter, userId);
+            return executeOperation(operation, parameter, userId, platformType);
         }
     }
 
     /**
      * Обрабатывает операции после получения ввода
      */
-    public BotResponse handleOperationStep(String userId, String userInput) {
-        Operation state = operationStates.get(userId);
-        operationStates.remove(userId);
-        return executeOperation(state.type, userInput.trim(), userId);
+    private BotResponse handleOperationStep(String userId, String userInput, CommandRegistry.Command command,
+                                            ConversationEngine.Conversation conversation) {
+        Operation state = (Operation) conversation.data();
+        conversationEngine.finish(userId);
+        return executeOperation(state.type, userInput.trim(), userId, state.platformType);
     }
 
     /**
      * Выполняет указанную операцию
      */
-    private BotResponse executeOperation(String operation, String input, String userId) {
+    private BotResponse executeOperation(String operation, String input, String userId, String platformType) {
         try {
-            String internalUserId = databaseService.getUserIdByPlatform(userId);
+            String internalUserId = databaseService.getUserIdByPlatform(platformType, userId);
             if (internalUserId == null) {
                 return new BotResponse("Пользователь не авторизован");
             }
@@ -76,15 +106,16 @@ public class OperationService {
                     yield new BotResponse("✅ Задача \"" + input + "\" выполнена!");
                 }
                 case "export" -> {
-                    DatabaseService.TaskData taskData = databaseService.exportTasks(internalUserId);
-                    File exportFile = fileWork.export(taskData.getCurrentTasks(), taskData.getCompletedTasks(), input);
-                    yield new BotResponse("Ваши задачи экспортированы в файл: " + exportFile.getName(),
-                            exportFile, exportFile.getName());
+                    String fileName = fileWork.exportFileName(input);
+                    byte[] content = fileWork.export(
+                            consumer -> databaseService.forEachCurrentTask(internalUserId, consumer),
+                            consumer -> databaseService.forEachCompletedTask(internalUserId, consumer));
+                    yield new BotResponse("Ваши задачи экспортированы в файл: " + fileName, content, fileName);
                 }
                 default -> new BotResponse("Неизвестная команда.\nВведите /help для просмотра доступных команд.");
             };
         } catch (Exception e) {
-            e.printStackTrace();
+            BotLogger.get().error("operation_failed", e);
             return new BotResponse("Ошибка " + getOperationError(operation) + ": " + e.getMessage());
         }
     }
@@ -107,20 +138,22 @@ public class OperationService {
      */
     public BotResponse handleShowTasks(String internalUserId) {
         try {
-            List<String> tasks = databaseService.getCurrentTasks(internalUserId);
+            List<DatabaseService.TaskTreeNode> tasks = databaseService.getTaskTree(internalUserId);
             if (tasks.isEmpty()) {
                 return new BotResponse("📝 Список задач пуст!");
             }
 
             StringBuilder sb = new StringBuilder("📝 Ваши задачи:\n");
             for (int i = 0; i < tasks.size(); i++) {
-                sb.append(i + 1).append(". ").append(tasks.get(i)).append("\n");
-                Integer taskId = databaseService.getTaskId(internalUserId, tasks.get(i));
-                if (taskId != null) {
-                    List<String> subtasks = databaseService.getSubtasks(taskId);
-                    for (int j = 0; j < subtasks.size(); j++) {
-                        sb.append(" ").append(i + 1).append(".").append(j + 1).append(" ").append(subtasks.get(j)).append("\n");
-                    }
+                DatabaseService.TaskTreeNode task = tasks.get(i);
+                sb.append(i + 1).append(". ").append(task.taskText());
+                if (task.dueAtMillis() != null) {
+                    sb.append(" (до ").append(ReminderService.formatTime(task.dueAtMillis())).append(")");
+                }
+                sb.append("\n");
+                List<String> subtasks = task.subtasks();
+                for (int j = 0; j < subtasks.size(); j++) {
+                    sb.append(" ").append(i + 1).append(".").append(j + 1).append(" ").append(subtasks.get(j)).append("\n");
                 }
             }
             return new BotResponse(sb.toString());
@@ -148,11 +181,4 @@ public class OperationService {
             throw new RuntimeException("Ошибка при получении выполненных задач: " + e.getMessage());
         }
     }
-
-    /**
-     * Проверяет, находится ли пользователь в процессе операции
-     */
-    public boolean isUserInOperationProcess(String userId) {
-        return operationStates.containsKey(userId);
-    }
 }
\ No newline at end of file
@@ -0,0 +1,246 @@
+package org.example;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Хеширование и проверка паролей PBKDF2-HMAC-SHA512 с солью для каждого пользователя.
+ * Хеш хранится строкой pbkdf2-sha512$итерации$соль$хеш (соль и хеш в Base64),
+ * поэтому стоимость можно поднять без миграции: старые хеши проверяются со своим числом итераций
+ * и пересчитываются при следующем входе, см. {@link #needsRehash(String)}.
+ * <p>
+ * Вычисление хеша занимает десятки миллисекунд процессорного времени. Сообщения обрабатываются
+ * в виртуальных потоках, и такая работа заняла бы их потоки-носители, задерживая ответы остальным
+ * пользователям. Поэтому хеши считаются в отдельном пуле с ограниченным числом потоков и очередью,
+ * а при переполнении очереди вызывающий получает {@link RejectedExecutionException}.
+ * Обработчики сообщений используют {@link #hashAsync(String)} и {@link #verifyAsync(String, String)},
+ * чтобы не занимать место в очереди обработки, пока хеш считается.
+ */
+public class PasswordHasher implements AutoCloseable {
+    private static final String PREFIX = "pbkdf2-sha512";
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA512";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 512;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final int iterations;
+    private final ThreadPoolExecutor executor;
+    private final LatencyHistogram hashDuration;
+    private final LatencyHistogram verifyDuration;
+    private final LongAdder rejected;
+
+    /**
+     * Создает хешер с параметрами из application.properties:
+     * auth.password.iterations, auth.password.threads и auth.password.queue.
+     */
+    public PasswordHasher() {
+        this(AppConfig.get().getInt("auth.password.iterations", 210_000),
+                AppConfig.get().getInt("auth.password.threads", 0),
+                AppConfig.get().getInt("auth.password.queue", 64));
+    }
+
+    /**
+     * Создает хешер.
+     *
+     * @param iterations    число итераций PBKDF2 для новых хешей
+     * @param threads       потоков для вычисления хешей; 0 - половина процессоров, но не меньше одного
+     * @param queueCapacity сколько вычислений может ждать свободного потока
+     */
+    public PasswordHasher(int iterations, int threads, int queueCapacity) {
+        if (iterations < 1 || threads < 0 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Некорректные параметры хеширования паролей");
+        }
+        int poolSize = threads == 0 ? Math.max(1, Runtime.getRuntime().availableProcessors() / 2) : threads;
+        this.iterations = iterations;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "password-hasher-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.allowCoreThreadTimeOut(true);
+
+        MetricsRegistry metrics = MetricsRegistry.get();
+        MetricsRegistry.Family<LatencyHistogram> duration = metrics.histogram("bot_password_hash_seconds",
+                "Время вычисления хеша пароля вместе с ожиданием в очереди", "operation");
+        this.hashDuration = duration.labels("hash");
+        this.verifyDuration = duration.labels("verify");
+        this.rejected = metrics.counter("bot_password_hash_rejected_total",
+                "Вычисления хеша пароля, отклоненные из-за переполнения очереди", "operation").labels("any");
+        metrics.gauge("bot_password_hash_queue", "Вычисления хеша пароля, ожидающие свободного потока",
+                "pool", "password", () -> executor.getQueue().size());
+    }
+
+    /**
+     * Вычисляет хеш пароля с новой солью.
+     *
+     * @param password пароль
+     * @return хеш в формате pbkdf2-sha512$итерации$соль$хеш
+     * @throws RejectedExecutionException если очередь вычислений переполнена
+     */
+    public String hash(String password) {
+        return await(hashAsync(password));
+    }
+
+    /**
+     * Вычисляет хеш пароля с новой солью в пуле, не дожидаясь результата.
+     *
+     * @param password пароль
+     * @return будущий хеш в формате pbkdf2-sha512$итерации$соль$хеш
+     * @throws RejectedExecutionException если очередь вычислений переполнена
+     */
+    public CompletableFuture<String> hashAsync(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        long startedAt = System.nanoTime();
+        return submit(() -> derive(password, salt, iterations, HASH_BITS)).thenApply(hash -> {
+            hashDuration.recordSince(startedAt);
+            Base64.Encoder encoder = Base64.getEncoder().withoutPadding();
+            return PREFIX + "$" + iterations + "$" + encoder.encodeToString(salt) + "$" + encoder.encodeToString(hash);
+        });
+    }
+
+    /**
+     * Проверяет пароль. Пароль, сохраненный до появления хеширования открытым текстом,
+     * сравнивается напрямую.
+     *
+     * @param password пароль
+     * @param stored   сохраненный хеш или пароль
+     * @return true если пароль верный
+     * @throws RejectedExecutionException если очередь вычислений переполнена
+     */
+    public boolean verify(String password, String stored) {
+        return await(verifyAsync(password, stored));
+    }
+
+    /**
+     * Проверяет пароль в пуле, не дожидаясь результата. Пароль открытым текстом
+     * и некорректный хеш проверяются сразу, без пула.
+     *
+     * @param password пароль
+     * @param stored   сохраненный хеш или пароль
+     * @return будущий результат: true если пароль верный
+     * @throws RejectedExecutionException если очередь вычислений переполнена
+     */
+    public CompletableFuture<Boolean> verifyAsync(String password, String stored) {
+        if (!isHashed(stored)) {
+            return CompletableFuture.completedFuture(MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8),
+                    stored.getBytes(StandardCharsets.UTF_8)));
+        }
+        String[] parts = stored.split("\\$");
+        byte[] salt;
+        byte[] expected;
+        int storedIterations;
+        try {
+            if (parts.length != 4) {
+                throw new IllegalArgumentException("ожидается 4 части, найдено " + parts.length);
+            }
+            storedIterations = Integer.parseInt(parts[1]);
+            salt = Base64.getDecoder().decode(parts[2]);
+            expected = Base64.getDecoder().decode(parts[3]);
+        } catch (IllegalArgumentException e) {
+            BotLogger.get().warn("password_hash_malformed", e.getMessage());
+            return CompletableFuture.completedFuture(false);
+        }
+        if (storedIterations < 1 || expected.length == 0) {
+            return CompletableFuture.completedFuture(false);
+        }
+        long startedAt = System.nanoTime();
+        return submit(() -> derive(password, salt, storedIterations, expected.length * 8)).thenApply(actual -> {
+            verifyDuration.recordSince(startedAt);
+            return MessageDigest.isEqual(expected, actual);
+        });
+    }
+
+    /**
+     * Проверяет, нужно ли пересчитать сохраненный хеш: пароль хранится открытым текстом
+     * или хеш вычислен с меньшим числом итераций, чем настроено сейчас.
+     *
+     * @param stored сохраненный хеш или пароль
+     * @return true если после успешного входа хеш нужно заменить
+     */
+    public boolean needsRehash(String stored) {
+        if (!isHashed(stored)) {
+            return true;
+        }
+        int end = stored.indexOf('$', PREFIX.length() + 1);
+        try {
+            return end < 0 || Integer.parseInt(stored, PREFIX.length() + 1, end, 10) < iterations;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Проверяет, что значение - хеш, а не пароль открытым текстом.
+     *
+     * @param stored сохраненное значение
+     * @return true для хеша в формате этого класса
+     */
+    public static boolean isHashed(String stored) {
+        return stored.startsWith(PREFIX + "$");
+    }
+
+    private CompletableFuture<byte[]> submit(Callable<byte[]> task) {
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return task.call();
+                } catch (Exception e) {
+                    throw new IllegalStateException("Ошибка хеширования пароля", e);
+                }
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw e;
+        }
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Прервано ожидание хеширования пароля", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IllegalStateException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException("Ошибка хеширования пароля", e.getCause());
+        }
+    }
+
+    private static byte[] derive(String password, byte[] salt, int iterations, int bits)
+            throws GeneralSecurityException {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, bits);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    /**
+     * Останавливает пул вычислений. Уже принятые вычисления завершаются.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,75 @@
+package org.example;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Ограничение частоты действий по ключу: не больше attempts действий за period,
+ * после паузы попытки постепенно восстанавливаются.
+ * <p>
+ * Для каждого ключа хранится одно число - момент, к которому все попытки восстановятся
+ * (алгоритм GCRA). Ключи, у которых попытки уже восстановились, ничем не отличаются
+ * от отсутствующих и удаляются, когда ключей становится больше maxKeys.
+ */
+public class RateLimiter {
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final int maxKeys;
+    private final LongSupplier clock;
+    private final Map<String, Long> fullAt = new ConcurrentHashMap<>();
+
+    /**
+     * Создает ограничение.
+     *
+     * @param attempts сколько действий разрешено подряд
+     * @param period   за какое время восстанавливаются все попытки
+     * @param maxKeys  сколько ключей хранить до очистки восстановившихся
+     */
+    public RateLimiter(int attempts, Duration period, int maxKeys) {
+        this(attempts, period, maxKeys, System::nanoTime);
+    }
+
+    RateLimiter(int attempts, Duration period, int maxKeys, LongSupplier clock) {
+        if (attempts < 1 || maxKeys < 1 || period.isNegative() || period.isZero()) {
+            throw new IllegalArgumentException("Параметры ограничения частоты должны быть больше нуля");
+        }
+        this.intervalNanos = period.toNanos() / attempts;
+        this.burstNanos = intervalNanos * attempts;
+        this.maxKeys = maxKeys;
+        this.clock = clock;
+    }
+
+    /**
+     * Пытается выполнить действие.
+     *
+     * @param key ключ, например платформа и идентификатор пользователя на ней
+     * @return 0, если действие разрешено, иначе сколько наносекунд ждать следующей попытки
+     */
+    public long tryAcquire(String key) {
+        long now = clock.getAsLong();
+        long[] waitNanos = new long[1];
+        fullAt.compute(key, (k, current) -> {
+            long next = (current == null || current - now < 0 ? now : current) + intervalNanos;
+            if (next - now > burstNanos) {
+                waitNanos[0] = next - now - burstNanos;
+                return current;
+            }
+            return next;
+        });
+        if (fullAt.size() > maxKeys) {
+            fullAt.values().removeIf(value -> value - now <= 0);
+        }
+        return waitNanos[0];
+    }
+
+    /**
+     * Возвращает количество хранимых ключей.
+     *
+     * @return количество ключей
+     */
+    public int size() {
+        return fullAt.size();
+    }
+}
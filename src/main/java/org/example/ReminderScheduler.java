@@ -0,0 +1,310 @@
+package org.example;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Планировщик напоминаний о задачах.
+ * <p>
+ * Напоминания ближайшего окна (reminders.window-hours) хранятся в {@link TimingWheel}:
+ * один поток раз в такт продвигает колесо и отправляет наступившие напоминания одним пакетом.
+ * Окно читается из базы диапазонным запросом по индексу remind_at при запуске и дочитывается,
+ * когда пройдена его половина, поэтому таблица задач не опрашивается каждую минуту,
+ * а дальние напоминания не занимают память. Напоминания, назначенные пользователем,
+ * добавляются в колесо сразу через {@link #schedule(DatabaseService.Reminder)}.
+ * <p>
+ * Перед отправкой напоминания снимаются в базе одной транзакцией, и только если remind_at
+ * с момента загрузки не изменился: выполненные, удаленные и перенесенные задачи пропускаются,
+ * а напоминание не отправляется дважды, если бот работает в нескольких экземплярах.
+ * Доставка - не более одного раза: напоминание снимается до отправки, и если платформа
+ * не смогла его отправить или бот остановился раньше, напоминание теряется, а не повторяется.
+ */
+public class ReminderScheduler implements AutoCloseable {
+    private static final long RETRY_MILLIS = 60_000;
+
+    private final DatabaseService databaseService;
+    private final LongSupplier clock;
+    private final long tickMillis;
+    private final long windowMillis;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final TimingWheel<DatabaseService.Reminder> wheel;
+    private final Map<Integer, TimingWheel.Timeout<DatabaseService.Reminder>> timers = new HashMap<>();
+    private final Map<String, Sender> senders = new ConcurrentHashMap<>();
+    private final MetricsRegistry.Family<LongAdder> sent;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "reminder-wheel");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private long loadedUntil = Long.MIN_VALUE;
+
+    /**
+     * Платформа, через которую отправляются напоминания.
+     */
+    public interface Sender {
+        /**
+         * Возвращает тип платформы, как он записан в сессиях пользователей.
+         *
+         * @return тип платформы
+         */
+        String platformType();
+
+        /**
+         * Отправляет пакет напоминаний. Не должен ждать отправки: вызывается из потока планировщика.
+         * Напоминания пакета уже сняты в базе, повторно они не передаются.
+         *
+         * @param deliveries напоминания
+         * @return сколько напоминаний принято к отправке
+         */
+        int sendReminders(List<Delivery> deliveries);
+    }
+
+    /**
+     * Напоминание, готовое к отправке.
+     *
+     * @param platformId идентификатор пользователя на платформе
+     * @param message    текст сообщения
+     */
+    public record Delivery(String platformId, String message) {
+    }
+
+    /**
+     * Создает планировщик с параметрами из application.properties:
+     * reminders.tick-ms и reminders.window-hours.
+     *
+     * @param databaseService сервис базы данных
+     */
+    public ReminderScheduler(DatabaseService databaseService) {
+        this(databaseService, AppConfig.get().getLong("reminders.tick-ms", 1000),
+                AppConfig.get().getLong("reminders.window-hours", 24) * 3_600_000, System::currentTimeMillis);
+    }
+
+    ReminderScheduler(DatabaseService databaseService, long tickMillis, long windowMillis, LongSupplier clock) {
+        this.databaseService = databaseService;
+        this.clock = clock;
+        this.tickMillis = tickMillis;
+        this.wheel = new TimingWheel<>(tickMillis, 6, 4, clock.getAsLong());
+        if (windowMillis < tickMillis || windowMillis > wheel.horizonMillis()) {
+            throw new IllegalArgumentException("Окно напоминаний должно быть не меньше такта и не больше "
+                    + wheel.horizonMillis() + " мс");
+        }
+        this.windowMillis = windowMillis;
+        this.sent = MetricsRegistry.get().counter("bot_reminders_sent_total",
+                "Отправленные напоминания о задачах", "platform");
+    }
+
+    /**
+     * Подключает платформу для отправки напоминаний.
+     *
+     * @param sender платформа
+     */
+    public void register(Sender sender) {
+        senders.put(sender.platformType(), sender);
+    }
+
+    /**
+     * Загружает ближайшие напоминания, в том числе просроченные, пока бот не работал,
+     * и запускает поток планировщика.
+     */
+    public void start() {
+        MetricsRegistry.get().gauge("bot_reminders_scheduled", "Напоминания, ожидающие отправки в памяти",
+                "scheduler", "main", this::size);
+        executor.scheduleWithFixedDelay(this::tickQuietly, 0, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Ставит напоминание вместо прежнего для той же задачи. Напоминание за пределами
+     * загруженного окна только снимает прежнее: оно будет загружено из базы вместе со своим окном.
+     *
+     * @param reminder напоминание, уже сохраненное в базе
+     */
+    public void schedule(DatabaseService.Reminder reminder) {
+        lock.lock();
+        try {
+            cancelLocked(reminder.taskId());
+            if (reminder.remindAtMillis() < loadedUntil) {
+                scheduleLocked(reminder, reminder.remindAtMillis());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Снимает напоминание о задаче.
+     *
+     * @param taskId идентификатор задачи
+     */
+    public void cancel(int taskId) {
+        lock.lock();
+        try {
+            cancelLocked(taskId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Возвращает количество напоминаний в памяти.
+     *
+     * @return количество напоминаний
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return timers.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Один такт планировщика: дочитывает окно, если пройдена его половина,
+     * и отправляет наступившие напоминания.
+     *
+     * @throws SQLException если не удалось загрузить окно напоминаний
+     */
+    void tick() throws SQLException {
+        long now = clock.getAsLong();
+        List<DatabaseService.Reminder> due;
+        lock.lock();
+        try {
+            if (now + windowMillis / 2 >= loadedUntil) {
+                long until = now + windowMillis;
+                for (DatabaseService.Reminder reminder : databaseService.loadReminders(Math.max(0, loadedUntil), until)) {
+                    cancelLocked(reminder.taskId());
+                    scheduleLocked(reminder, reminder.remindAtMillis());
+                }
+                loadedUntil = until;
+            }
+            due = wheel.advance(now);
+            for (DatabaseService.Reminder reminder : due) {
+                TimingWheel.Timeout<DatabaseService.Reminder> timeout = timers.get(reminder.taskId());
+                if (timeout != null && timeout.value() == reminder) {
+                    timers.remove(reminder.taskId());
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (!due.isEmpty()) {
+            deliver(due, now);
+        }
+    }
+
+    private void tickQuietly() {
+        try {
+            tick();
+        } catch (SQLException | RuntimeException e) {
+            BotLogger.get().error("reminder_tick_failed", e);
+        }
+    }
+
+    /**
+     * Отправляет пакет напоминаний: одним запросом находит сессии пользователей, одной транзакцией
+     * снимает напоминания и передает сообщения платформам. Если база недоступна,
+     * пакет повторяется через минуту.
+     */
+    private void deliver(List<DatabaseService.Reminder> due, long now) {
+        List<DatabaseService.Reminder> taken;
+        List<DatabaseService.Session> sessions;
+        try {
+            Set<String> userIds = new LinkedHashSet<>();
+            for (DatabaseService.Reminder reminder : due) {
+                userIds.add(reminder.userId());
+            }
+            sessions = databaseService.getSessions(userIds);
+            taken = databaseService.takeReminders(due);
+        } catch (SQLException e) {
+            BotLogger.get().error("reminder_delivery_failed", e);
+            lock.lock();
+            try {
+                for (DatabaseService.Reminder reminder : due) {
+                    if (!timers.containsKey(reminder.taskId())) {
+                        scheduleLocked(reminder, now + RETRY_MILLIS);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+            return;
+        }
+
+        Map<String, List<DatabaseService.Reminder>> byUser = new HashMap<>();
+        for (DatabaseService.Reminder reminder : taken) {
+            byUser.computeIfAbsent(reminder.userId(), id -> new ArrayList<>()).add(reminder);
+        }
+        Map<String, List<Delivery>> byPlatform = new HashMap<>();
+        for (DatabaseService.Session session : sessions) {
+            for (DatabaseService.Reminder reminder : byUser.getOrDefault(session.userId(), List.of())) {
+                byPlatform.computeIfAbsent(session.platformType(), platform -> new ArrayList<>())
+                        .add(new Delivery(session.platformId(), formatMessage(reminder)));
+            }
+        }
+        for (Map.Entry<String, List<Delivery>> entry : byPlatform.entrySet()) {
+            Sender sender = senders.get(entry.getKey());
+            if (sender == null) {
+                continue;
+            }
+            try {
+                sent.labels(entry.getKey()).add(sender.sendReminders(entry.getValue()));
+            } catch (RuntimeException e) {
+                BotLogger.get().error("reminder_send_failed", e);
+            }
+        }
+    }
+
+    /**
+     * Формирует текст напоминания.
+     *
+     * @param reminder напоминание
+     * @return текст сообщения
+     */
+    static String formatMessage(DatabaseService.Reminder reminder) {
+        String message = "⏰ Напоминание: " + reminder.taskText();
+        if (reminder.dueAtMillis() != null) {
+            message += "\nСрок: " + ReminderService.formatTime(reminder.dueAtMillis());
+        }
+        return message;
+    }
+
+    private void scheduleLocked(DatabaseService.Reminder reminder, long deadlineMillis) {
+        TimingWheel.Timeout<DatabaseService.Reminder> timeout = wheel.schedule(reminder, deadlineMillis);
+        if (timeout != null) {
+            timers.put(reminder.taskId(), timeout);
+        }
+    }
+
+    private void cancelLocked(int taskId) {
+        TimingWheel.Timeout<DatabaseService.Reminder> timeout = timers.remove(taskId);
+        if (timeout != null) {
+            wheel.cancel(timeout);
+        }
+    }
+
+    /**
+     * Останавливает поток планировщика. Напоминания остаются в базе
+     * и будут загружены при следующем запуске.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package org.example;
+
+import java.sql.SQLException;
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.MonthDay;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.ResolverStyle;
+import java.util.List;
+
+/**
+ * Сервис сроков и напоминаний о задачах: команды /due и /remind.
+ * Время вводится в часовом поясе reminders.zone.
+ */
+public class ReminderService {
+    private static final ZoneId ZONE = ZoneId.of(AppConfig.get().getString("reminders.zone", "Europe/Moscow"));
+    private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("dd.MM.uuuu HH:mm")
+            .withResolverStyle(ResolverStyle.STRICT);
+    private static final DateTimeFormatter DAY_MONTH = DateTimeFormatter.ofPattern("dd.MM")
+            .withResolverStyle(ResolverStyle.STRICT);
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH:mm")
+            .withResolverStyle(ResolverStyle.STRICT);
+
+    private final DatabaseService databaseService;
+    private final ReminderScheduler reminderScheduler;
+
+    private final String DUE_USAGE = """
+            Используйте: /due [номер_задачи] [срок]
+            Срок: 18:30, 25.12 18:30, 25.12.2025 18:30, +30m, +2h, +1d
+            В срок придет напоминание. /due [номер_задачи] off - снять срок""";
+
+    private final String REMIND_USAGE = """
+            Используйте: /remind [номер_задачи] [время]
+            Время: 18:30, 25.12 18:30, 25.12.2025 18:30, +30m, +2h, +1d
+            /remind [номер_задачи] off - снять напоминание""";
+
+    /**
+     * Конструктор сервиса напоминаний.
+     *
+     * @param databaseService   сервис базы данных
+     * @param reminderScheduler планировщик, которому передаются новые напоминания
+     */
+    public ReminderService(DatabaseService databaseService, ReminderScheduler reminderScheduler) {
+        this.databaseService = databaseService;
+        this.reminderScheduler = reminderScheduler;
+    }
+
+    /**
+     * Регистрирует команды сроков и напоминаний в таблице команд.
+     *
+     * @param builder построитель таблицы команд
+     */
+    public void registerCommands(CommandRegistry.Builder builder) {
+        builder.register("/due", call -> handleReminderCommand(call, true))
+                .register("/remind", call -> handleReminderCommand(call, false));
+    }
+
+    /**
+     * Обрабатывает /due и /remind: параметр - номер задачи из списка /tasks и время или off.
+     * Срок задачи одновременно становится моментом напоминания.
+     */
+    private BotResponse handleReminderCommand(CommandRegistry.Call call, boolean due) throws SQLException {
+        String parameter = call.parameter();
+        int end = parameter.length();
+        int tokenEnd = CommandRegistry.tokenEnd(parameter, 0, end);
+        int taskNumber = CommandRegistry.parseNumber(parameter, 0, tokenEnd);
+        int timeStart = CommandRegistry.skipWhitespace(parameter, tokenEnd, end);
+        if (taskNumber < 0 || timeStart == end) {
+            return new BotResponse(due ? DUE_USAGE : REMIND_USAGE);
+        }
+
+        String internalUserId = call.internalUserId();
+        List<String> tasks = databaseService.getCurrentTasks(internalUserId);
+        if (taskNumber < 1 || taskNumber > tasks.size()) {
+            return new BotResponse("Выберите номер из списка");
+        }
+        String taskText = tasks.get(taskNumber - 1);
+        Integer taskId = databaseService.getTaskId(internalUserId, taskText);
+        if (taskId == null) {
+            return new BotResponse("Задача не найдена.");
+        }
+
+        String time = parameter.substring(timeStart);
+        if (time.equalsIgnoreCase("off")) {
+            if (due) {
+                databaseService.setTaskDueAndRemindAt(internalUserId, taskId, null);
+            } else {
+                databaseService.setTaskRemindAt(internalUserId, taskId, null);
+            }
+            reminderScheduler.cancel(taskId);
+            return new BotResponse(due
+                    ? "Срок задачи \"" + taskText + "\" снят."
+                    : "Напоминание о задаче \"" + taskText + "\" снято.");
+        }
+
+        ZonedDateTime now = ZonedDateTime.now(ZONE);
+        Long at = parseTime(time, now);
+        if (at == null) {
+            return new BotResponse(due ? DUE_USAGE : REMIND_USAGE);
+        }
+        if (at <= now.toInstant().toEpochMilli()) {
+            return new BotResponse("Это время уже прошло.");
+        }
+
+        if (due) {
+            databaseService.setTaskDueAndRemindAt(internalUserId, taskId, at);
+        } else {
+            databaseService.setTaskRemindAt(internalUserId, taskId, at);
+        }
+        reminderScheduler.schedule(new DatabaseService.Reminder(taskId, internalUserId, taskText, at,
+                due ? at : null));
+        return new BotResponse(due
+                ? "Срок задачи \"" + taskText + "\": " + formatTime(at) + ". В срок придет напоминание."
+                : "Напомню о задаче \"" + taskText + "\" " + formatTime(at));
+    }
+
+    /**
+     * Разбирает время напоминания: HH:mm (сегодня, а если это время прошло - завтра),
+     * dd.MM HH:mm, dd.MM.yyyy HH:mm или смещение от текущего момента +30m, +2h, +1d.
+     *
+     * @param text текст
+     * @param now  текущий момент в часовом поясе пользователя
+     * @return момент, мс с начала эпохи, или null, если текст не разобран
+     */
+    static Long parseTime(String text, ZonedDateTime now) {
+        String value = text.trim();
+        try {
+            if (value.length() > 2 && value.charAt(0) == '+') {
+                int amount = CommandRegistry.parseNumber(value, 1, value.length() - 1);
+                Duration unit = switch (value.charAt(value.length() - 1)) {
+                    case 'm', 'м' -> Duration.ofMinutes(1);
+                    case 'h', 'ч' -> Duration.ofHours(1);
+                    case 'd', 'д' -> Duration.ofDays(1);
+                    default -> null;
+                };
+                if (amount < 0 || unit == null) {
+                    return null;
+                }
+                return now.toInstant().plus(unit.multipliedBy(amount)).toEpochMilli();
+            }
+
+            int space = value.indexOf(' ');
+            if (space < 0) {
+                LocalTime time = LocalTime.parse(value, TIME);
+                ZonedDateTime at = now.with(time);
+                return (at.isAfter(now) ? at : at.plusDays(1)).toInstant().toEpochMilli();
+            }
+            String date = value.substring(0, space);
+            String time = value.substring(CommandRegistry.skipWhitespace(value, space, value.length()));
+            LocalDateTime dateTime = date.length() > 5
+                    ? LocalDateTime.parse(date + " " + time, DATE_TIME)
+                    : LocalDateTime.of(MonthDay.parse(date, DAY_MONTH).atYear(now.getYear()),
+                    LocalTime.parse(time, TIME));
+            return dateTime.atZone(now.getZone()).toInstant().toEpochMilli();
+        } catch (DateTimeException | ArithmeticException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Форматирует момент для сообщений пользователю.
+     *
+     * @param millis момент, мс с начала эпохи
+     * @return дата и время в формате dd.MM.yyyy HH:mm
+     */
+    public static String formatTime(long millis) {
+        return DATE_TIME.format(Instant.ofEpochMilli(millis).atZone(ZONE));
+    }
+}
@@ -0,0 +1,179 @@
+package org.example;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * Версионные миграции схемы базы данных.
+ * Номер примененной версии хранится в таблице schema_version, при запуске
+ * выполняются только миграции с большим номером, каждая в своей транзакции.
+ * Новые изменения схемы добавляются в конец списка MIGRATIONS, уже выпущенные миграции не меняются.
+ */
+public class SchemaMigrations {
+
+    /**
+     * Одна миграция схемы.
+     *
+     * @param version     номер версии, к которой приводит миграция
+     * @param description краткое описание изменения
+     * @param statements  SQL-операторы миграции
+     */
+    public record Migration(int version, String description, List<String> statements) {
+    }
+
+    static final List<Migration> MIGRATIONS = List.of(
+            new Migration(1, "Начальная схема", List.of(
+                    """
+                    CREATE TABLE IF NOT EXISTS users (
+                        id INTEGER PRIMARY KEY AUTOINCREMENT,
+                        username TEXT UNIQUE NOT NULL,
+                        password TEXT NOT NULL,
+                        created_at DATETIME DEFAULT CURRENT_TIMESTAMP
+                    );
+                    """,
+                    """
+                    CREATE TABLE IF NOT EXISTS user_tasks (
+                        id INTEGER PRIMARY KEY AUTOINCREMENT,
+                        user_id INTEGER NOT NULL,
+                        task_text TEXT NOT NULL,
+                        created_at DATETIME DEFAULT CURRENT_TIMESTAMP,
+                        FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE,
+                        UNIQUE(user_id, task_text)
+                    );
+                    """,
+                    """
+                    CREATE TABLE IF NOT EXISTS completed_tasks (
+                        id INTEGER PRIMARY KEY AUTOINCREMENT,
+                        user_id INTEGER NOT NULL,
+                        task_text TEXT NOT NULL,
+                        completed_at DATETIME DEFAULT CURRENT_TIMESTAMP,
+                        FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE,
+                        UNIQUE(user_id, task_text)
+                    );
+                    """,
+                    """
+                    CREATE TABLE IF NOT EXISTS user_sessions (
+                        platform_type TEXT NOT NULL,
+                        platform_id TEXT NOT NULL,
+                        user_id INTEGER NOT NULL,
+                        created_at DATETIME DEFAULT CURRENT_TIMESTAMP,
+                        FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE,
+                        UNIQUE(platform_type, platform_id)
+                    );
+                    """,
+                    """
+                    CREATE TABLE IF NOT EXISTS subtasks (
+                        id INTEGER PRIMARY KEY AUTOINCREMENT,
+                        task_id INTEGER NOT NULL,
+                        subtask_text TEXT NOT NULL,
+                        created_at DATETIME DEFAULT CURRENT_TIMESTAMP,
+                        FOREIGN KEY (task_id) REFERENCES user_tasks(id) ON DELETE CASCADE,
+                        UNIQUE(task_id, subtask_text)
+                    );
+                    """)),
+            new Migration(2, "Индексы для частых запросов", List.of(
+                    "CREATE INDEX IF NOT EXISTS idx_user_sessions_platform_id ON user_sessions(platform_id)",
+                    "CREATE INDEX IF NOT EXISTS idx_user_tasks_user_id_id ON user_tasks(user_id, id)",
+                    "CREATE INDEX IF NOT EXISTS idx_completed_tasks_user_id_id ON completed_tasks(user_id, id)",
+                    "CREATE INDEX IF NOT EXISTS idx_subtasks_task_id_id ON subtasks(task_id, id)")),
+            new Migration(3, "Кэш ответов ИИ", List.of(
+                    """
+                    CREATE TABLE IF NOT EXISTS ai_response_cache (
+                        cache_key TEXT PRIMARY KEY,
+                        model TEXT NOT NULL,
+                        prompt TEXT NOT NULL,
+                        response TEXT NOT NULL,
+                        created_at INTEGER NOT NULL
+                    );
+                    """,
+                    "CREATE INDEX IF NOT EXISTS idx_ai_response_cache_created_at ON ai_response_cache(created_at)")),
+            new Migration(4, "Состояния диалогов", List.of(
+                    """
+                    CREATE TABLE IF NOT EXISTS conversation_state (
+                        flow TEXT NOT NULL,
+                        user_id TEXT NOT NULL,
+                        state BLOB NOT NULL,
+                        updated_at INTEGER NOT NULL,
+                        PRIMARY KEY (flow, user_id)
+                    ) WITHOUT ROWID;
+                    """,
+                    "CREATE INDEX IF NOT EXISTS idx_conversation_state_updated_at ON conversation_state(updated_at)")),
+            new Migration(5, "Сроки и напоминания задач", List.of(
+                    "ALTER TABLE user_tasks ADD COLUMN due_at INTEGER",
+                    "ALTER TABLE user_tasks ADD COLUMN remind_at INTEGER",
+                    """
+                    CREATE INDEX IF NOT EXISTS idx_user_tasks_remind_at ON user_tasks(remind_at)
+                    WHERE remind_at IS NOT NULL
+                    """,
+                    "CREATE INDEX IF NOT EXISTS idx_user_sessions_user_id ON user_sessions(user_id)")),
+            new Migration(6, "Удаление лишнего индекса сессий", List.of(
+                    // Сессии ищутся только по паре (platform_type, platform_id), ее покрывает индекс UNIQUE
+                    "DROP INDEX IF EXISTS idx_user_sessions_platform_id"))
+    );
+
+    private SchemaMigrations() {
+    }
+
+    /**
+     * Приводит схему базы данных к последней версии.
+     *
+     * @param conn соединение для записи
+     * @return номер версии схемы после применения миграций
+     * @throws SQLException если миграцию не удалось применить; она откатывается целиком
+     */
+    public static int migrate(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("""
+                    CREATE TABLE IF NOT EXISTS schema_version (
+                        version INTEGER PRIMARY KEY,
+                        description TEXT NOT NULL,
+                        applied_at DATETIME DEFAULT CURRENT_TIMESTAMP
+                    );
+                    """);
+        }
+
+        int currentVersion = currentVersion(conn);
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            for (Migration migration : MIGRATIONS) {
+                if (migration.version() <= currentVersion) {
+                    continue;
+                }
+                try (Statement stmt = conn.createStatement();
+                     PreparedStatement versionStmt = conn.prepareStatement(
+                             "INSERT INTO schema_version (version, description) VALUES (?, ?)")) {
+                    for (String sql : migration.statements()) {
+                        stmt.execute(sql);
+                    }
+                    versionStmt.setInt(1, migration.version());
+                    versionStmt.setString(2, migration.description());
+                    versionStmt.executeUpdate();
+                    conn.commit();
+                    currentVersion = migration.version();
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw new SQLException("Ошибка миграции схемы до версии " + migration.version()
+                            + " (" + migration.description() + ")", e);
+                }
+            }
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+        return currentVersion;
+    }
+
+    /**
+     * Возвращает номер последней примененной версии схемы, 0 для пустой базы.
+     */
+    private static int currentVersion(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(version), 0) FROM schema_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+}
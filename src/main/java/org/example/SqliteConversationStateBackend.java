@@ -0,0 +1,175 @@
+package org.example;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Хранилище состояний диалогов в таблице conversation_state с отложенной записью.
+ * Изменения копятся в памяти, несколько изменений одного состояния схлопываются в одно,
+ * и фоновый поток записывает их пакетом в одной транзакции: раз в flushInterval
+ * или сразу, когда накопилось batchSize изменений. Поток бота в базу не пишет.
+ * <p>
+ * Состояния переживают перезапуск: при создании {@link ConversationStateStore} загружает их из таблицы.
+ * Если включено чтение при промахе, состояние, которого нет в памяти, ищется в таблице,
+ * поэтому пользователь может перейти на другой экземпляр бота с той же базой.
+ * Изменения, которые еще не записаны, другой экземпляр не увидит.
+ */
+public class SqliteConversationStateBackend implements ConversationStateBackend {
+    private final DatabaseService databaseService;
+    private final int batchSize;
+    private final boolean readThrough;
+    private final Map<PendingKey, DatabaseService.ConversationStateRow> pending = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final LongAdder written;
+    private final LongAdder failures;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "conversation-state-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private record PendingKey(String flow, String userId) {
+    }
+
+    /**
+     * Создает хранилище и запускает фоновую запись.
+     *
+     * @param databaseService сервис базы данных
+     * @param flushInterval   наибольшая задержка записи изменения
+     * @param batchSize       количество изменений, после которого запись начинается сразу
+     * @param readThrough     искать в таблице состояния, которых нет в памяти
+     */
+    public SqliteConversationStateBackend(DatabaseService databaseService, Duration flushInterval, int batchSize,
+                                          boolean readThrough) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Размер пакета должен быть больше нуля");
+        }
+        this.databaseService = databaseService;
+        this.batchSize = batchSize;
+        this.readThrough = readThrough;
+
+        MetricsRegistry metrics = MetricsRegistry.get();
+        this.written = metrics.counter("bot_conversation_state_writes_total",
+                "Изменения состояний диалогов, записанные в базу", "backend").labels("sqlite");
+        this.failures = metrics.counter("bot_conversation_state_write_failures_total",
+                "Неудачные пакетные записи состояний диалогов", "backend").labels("sqlite");
+        metrics.gauge("bot_conversation_state_pending", "Изменения состояний диалогов, ожидающие записи",
+                "backend", "sqlite", pending::size);
+
+        long periodMillis = Math.max(1, flushInterval.toMillis());
+        executor.scheduleWithFixedDelay(this::flushQuietly, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public List<StoredState> loadAll(String flow, long notBeforeMillis) {
+        try {
+            databaseService.deleteConversationStatesBefore(notBeforeMillis);
+            List<StoredState> states = new ArrayList<>();
+            for (DatabaseService.ConversationStateRow row : databaseService.loadConversationStates(flow, notBeforeMillis)) {
+                states.add(new StoredState(row.userId(), row.data(), row.updatedAtMillis()));
+            }
+            return states;
+        } catch (SQLException e) {
+            BotLogger.get().error("conversation_state_load_failed", e);
+            return List.of();
+        }
+    }
+
+    @Override
+    public StoredState load(String flow, String userId, long notBeforeMillis) {
+        if (!readThrough) {
+            return null;
+        }
+        DatabaseService.ConversationStateRow row = pending.get(new PendingKey(flow, userId));
+        try {
+            if (row == null) {
+                row = databaseService.loadConversationState(flow, userId, notBeforeMillis);
+            }
+        } catch (SQLException e) {
+            BotLogger.get().error("conversation_state_load_failed", e);
+            return null;
+        }
+        return row == null || row.data() == null || row.updatedAtMillis() < notBeforeMillis
+                ? null
+                : new StoredState(row.userId(), row.data(), row.updatedAtMillis());
+    }
+
+    @Override
+    public void save(String flow, String userId, byte[] data, long updatedAtMillis) {
+        enqueue(new DatabaseService.ConversationStateRow(flow, userId, data, updatedAtMillis));
+    }
+
+    @Override
+    public void delete(String flow, String userId) {
+        enqueue(new DatabaseService.ConversationStateRow(flow, userId, null, System.currentTimeMillis()));
+    }
+
+    private void enqueue(DatabaseService.ConversationStateRow row) {
+        pending.put(new PendingKey(row.flow(), row.userId()), row);
+        if (pending.size() >= batchSize && flushScheduled.compareAndSet(false, true)) {
+            executor.execute(this::flushQuietly);
+        }
+    }
+
+    /**
+     * Записывает накопленные изменения одной транзакцией.
+     *
+     * @return количество записанных изменений
+     * @throws SQLException если запись не удалась; изменения, которые не были заменены более новыми,
+     *                      остаются в очереди
+     */
+    public synchronized int flush() throws SQLException {
+        flushScheduled.set(false);
+        if (pending.isEmpty()) {
+            return 0;
+        }
+        List<DatabaseService.ConversationStateRow> batch = new ArrayList<>(pending.size());
+        for (Map.Entry<PendingKey, DatabaseService.ConversationStateRow> entry : pending.entrySet()) {
+            if (pending.remove(entry.getKey(), entry.getValue())) {
+                batch.add(entry.getValue());
+            }
+        }
+        try {
+            databaseService.writeConversationStates(batch);
+        } catch (SQLException e) {
+            for (DatabaseService.ConversationStateRow row : batch) {
+                pending.putIfAbsent(new PendingKey(row.flow(), row.userId()), row);
+            }
+            failures.increment();
+            throw e;
+        }
+        written.add(batch.size());
+        return batch.size();
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (SQLException | RuntimeException e) {
+            BotLogger.get().error("conversation_state_flush_failed", e);
+        }
+    }
+
+    /**
+     * Останавливает фоновую запись и записывает оставшиеся изменения.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushQuietly();
+    }
+}
@@ -0,0 +1,117 @@
+package org.example;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Профиль хранилища SQLite - набор PRAGMA, применяемых к каждому соединению пула.
+ *
+ * @param journalMode       режим журнала (WAL, DELETE, ...)
+ * @param synchronous       режим синхронизации с диском (OFF, NORMAL, FULL, EXTRA)
+ * @param cacheSize         размер кэша страниц; отрицательное значение - размер в КиБ
+ * @param mmapSize          размер отображаемой в память области в байтах
+ * @param busyTimeoutMillis сколько ждать снятия блокировки, мс
+ * @param tempStore         где хранить временные таблицы (DEFAULT, FILE, MEMORY)
+ */
+public record StorageProfile(
+        String journalMode,
+        String synchronous,
+        int cacheSize,
+        long mmapSize,
+        int busyTimeoutMillis,
+        String tempStore
+) {
+    private static final Set<String> JOURNAL_MODES = Set.of("DELETE", "TRUNCATE", "PERSIST", "MEMORY", "WAL", "OFF");
+    private static final Set<String> SYNCHRONOUS_MODES = Set.of("OFF", "NORMAL", "FULL", "EXTRA");
+    private static final Set<String> TEMP_STORES = Set.of("DEFAULT", "FILE", "MEMORY");
+
+    /**
+     * Поведение SQLite по умолчанию: журнал отката и synchronous=FULL.
+     */
+    public static final StorageProfile LEGACY = new StorageProfile("DELETE", "FULL", -2000, 0, 3000, "DEFAULT");
+
+    /**
+     * WAL и synchronous=FULL: читатели не блокируются писателем, каждая транзакция сразу на диске.
+     */
+    public static final StorageProfile DURABLE = new StorageProfile("WAL", "FULL", -16000, 64L * 1024 * 1024, 5000, "MEMORY");
+
+    /**
+     * WAL и synchronous=NORMAL: при сбое питания можно потерять последние транзакции,
+     * но база остается целостной.
+     */
+    public static final StorageProfile BALANCED = new StorageProfile("WAL", "NORMAL", -16000, 64L * 1024 * 1024, 5000, "MEMORY");
+
+    /**
+     * Конструктор, проверяет и нормализует значения PRAGMA.
+     */
+    public StorageProfile {
+        journalMode = checked("journal_mode", journalMode, JOURNAL_MODES);
+        synchronous = checked("synchronous", synchronous, SYNCHRONOUS_MODES);
+        tempStore = checked("temp_store", tempStore, TEMP_STORES);
+        if (mmapSize < 0 || busyTimeoutMillis < 0) {
+            throw new IllegalArgumentException("mmap_size и busy_timeout не могут быть отрицательными");
+        }
+    }
+
+    private static String checked(String pragma, String value, Set<String> allowed) {
+        String normalized = value.trim().toUpperCase(Locale.ROOT);
+        if (!allowed.contains(normalized)) {
+            throw new IllegalArgumentException("Недопустимое значение PRAGMA " + pragma + ": " + value);
+        }
+        return normalized;
+    }
+
+    /**
+     * Возвращает готовый профиль по имени.
+     *
+     * @param name имя профиля: legacy, durable или balanced
+     * @return профиль хранилища
+     * @throws IllegalArgumentException если профиль неизвестен
+     */
+    public static StorageProfile named(String name) {
+        return switch (name.trim().toLowerCase(Locale.ROOT)) {
+            case "legacy" -> LEGACY;
+            case "durable" -> DURABLE;
+            case "balanced" -> BALANCED;
+            default -> throw new IllegalArgumentException("Неизвестный профиль хранилища: " + name);
+        };
+    }
+
+    /**
+     * Собирает профиль из настроек: db.profile задает основу,
+     * а ключи db.pragma.* переопределяют отдельные значения.
+     *
+     * @param config настройки приложения
+     * @return профиль хранилища
+     */
+    public static StorageProfile fromConfig(AppConfig config) {
+        StorageProfile base = named(config.getString("db.profile", "balanced"));
+        return new StorageProfile(
+                config.getString("db.pragma.journal_mode", base.journalMode()),
+                config.getString("db.pragma.synchronous", base.synchronous()),
+                config.getInt("db.pragma.cache_size", base.cacheSize()),
+                config.getLong("db.pragma.mmap_size", base.mmapSize()),
+                config.getInt("db.pragma.busy_timeout", base.busyTimeoutMillis()),
+                config.getString("db.pragma.temp_store", base.tempStore()));
+    }
+
+    /**
+     * Применяет профиль к соединению.
+     *
+     * @param connection соединение с базой данных
+     * @throws SQLException если не удалось выполнить PRAGMA
+     */
+    public void apply(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("PRAGMA busy_timeout = " + busyTimeoutMillis);
+            stmt.execute("PRAGMA journal_mode = " + journalMode);
+            stmt.execute("PRAGMA synchronous = " + synchronous);
+            stmt.execute("PRAGMA cache_size = " + cacheSize);
+            stmt.execute("PRAGMA mmap_size = " + mmapSize);
+            stmt.execute("PRAGMA temp_store = " + tempStore);
+        }
+    }
+}
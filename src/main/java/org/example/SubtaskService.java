@@ -1,16 +1,24 @@
 package org.example;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Pattern;
 
 /**
  * Сервис для управления подзадачами.
  */
 public class SubtaskService {
+    private static final int MAX_PROPOSED_SUBTASKS = 20;
+    private static final Pattern LIST_MARKER = Pattern.compile("^(\\d+[.)]|[-*\u2022])\\s*");
+
     private final DatabaseService databaseService;
-    private final Map<String, SubtaskState> expandStates = new ConcurrentHashMap<>();
+    private final AiClient aiClient;
+    private final ConversationEngine conversationEngine;
 
     private final String SUBTASK_MESSAGE = """
             Отлично! Выберите действие, которое хотите сделать:
@@ -22,39 +30,117 @@ public class SubtaskService {
 
     /**
      * Класс для отслеживания состояния работы с подзадачами.
+     * Идущая генерация подзадач не сохраняется: после перезапуска ее нужно запустить снова.
      */
-    private class SubtaskState {
+    private static class SubtaskState {
+        static final ConversationStateCodec<SubtaskState> CODEC = new ConversationStateCodec<>() {
+            @Override
+            public void write(SubtaskState state, DataOutput out) throws IOException {
+                out.writeInt(state.taskId);
+                out.writeUTF(state.taskText);
+                out.writeUTF(state.platformType);
+                ConversationStateCodec.writeNullable(out, state.selectSubtask);
+                List<String> proposed = state.proposedSubtasks;
+                out.writeShort(proposed == null ? -1 : proposed.size());
+                if (proposed != null) {
+                    for (String subtask : proposed) {
+                        out.writeUTF(subtask);
+                    }
+                }
+            }
+
+            @Override
+            public SubtaskState read(DataInput in) throws IOException {
+                SubtaskState state = new SubtaskState(in.readInt(), in.readUTF(), in.readUTF());
+                state.selectSubtask = ConversationStateCodec.readNullable(in);
+                int proposedCount = in.readShort();
+                if (proposedCount >= 0) {
+                    List<String> proposed = new ArrayList<>(proposedCount);
+                    for (int i = 0; i < proposedCount; i++) {
+                        proposed.add(in.readUTF());
+                    }
+                    state.proposedSubtasks = List.copyOf(proposed);
+                }
+                return state;
+            }
+        };
+
         Integer taskId;
         String taskText;
-        String step;
         String selectSubtask;
+        String platformType;
+        volatile boolean generating;
+        volatile int receivedSubtasks;
+        volatile boolean generated;
+        volatile List<String> proposedSubtasks;
 
-        SubtaskState(Integer taskId, String taskText) {
+        SubtaskState(Integer taskId, String taskText, String platformType) {
             this.taskId = taskId;
+            this.platformType = platformType;
             this.taskText = taskText;
-            this.step = null;
         }
     }
 
     /**
-     * Конструктор сервиса подзадач.
+     * Конструктор сервиса подзадач без генерации подзадач.
      */
     public SubtaskService(DatabaseService databaseService) {
+        this(databaseService, null);
+    }
+
+    /**
+     * Конструктор сервиса подзадач.
+     *
+     * @param databaseService сервис базы данных
+     * @param aiClient        клиент для генерации подзадач; null - генерация недоступна
+     */
+    public SubtaskService(DatabaseService databaseService, AiClient aiClient) {
+        this(databaseService, aiClient, new ConversationEngine());
+    }
+
+    /**
+     * Конструктор сервиса подзадач, подключающий работу с подзадачами к общему автомату диалогов.
+     *
+     * @param databaseService    сервис базы данных
+     * @param aiClient           клиент для генерации подзадач; null - генерация недоступна
+     * @param conversationEngine автомат диалогов
+     */
+    public SubtaskService(DatabaseService databaseService, AiClient aiClient, ConversationEngine conversationEngine) {
         this.databaseService = databaseService;
+        this.aiClient = aiClient;
+        this.conversationEngine = conversationEngine;
+        conversationEngine.register(ConversationEngine.Flow.SUBTASK, this::handleSubtaskStep, SubtaskState.CODEC);
+    }
+
+    /**
+     * Регистрирует команды подзадач и тексты их кнопок в таблице команд.
+     *
+     * @param builder построитель таблицы команд
+     */
+    public void registerCommands(CommandRegistry.Builder builder) {
+        CommandRegistry.Handler handler = call -> handleSubtaskCommand(call.command(), call.userId());
+        builder.register("/add_subtask", handler, "\u2795 Добавить подзадачу")
+                .register("/delete_subtask", handler, "\u2718 Удалить подзадачу")
+                .register("/edit_subtask", handler, "Изменить подзадачу")
+                .register("/finish_expand", handler, "Окончить расширение")
+                .register("/add_subtasks_with_gpt", handler, "GPT добавление подзадач")
+                .register("/save_subtasks_from_gpt", handler, "Сохранить")
+                .register("/delete_subtasks_from_gpt", handler, "Удалить");
     }
 
     /**
      * Начинает режим работы с подзадачами для пользователя.
      */
-    public void startSubtaskMode(String userId, Integer taskId, String taskText) {
-        expandStates.put(userId, new SubtaskState(taskId, taskText));
+    public void startSubtaskMode(String userId, String platformType, Integer taskId, String taskText) {
+        conversationEngine.start(userId, ConversationEngine.State.SUBTASK_MENU,
+                new SubtaskState(taskId, taskText, platformType));
     }
 
     /**
      * Проверяет, находится ли пользователь в режиме работы с подзадачами.
      */
     public boolean isUserInSubtaskMode(String userId) {
-        return expandStates.containsKey(userId);
+        return conversationEngine.flowOf(userId) == ConversationEngine.Flow.SUBTASK;
     }
 
     /**
@@ -67,58 +153,97 @@ public class SubtaskService {
     /**
      * Обрабатывает ввод данных в режиме расширения задачи
      */
-    public BotResponse handleSubtaskInput(String userId, String userInput, Object stateObj) {
-        SubtaskState state = (SubtaskState) stateObj;
+    private BotResponse handleSubtaskInput(String userId, String userInput,
+                                           ConversationEngine.Conversation conversation, SubtaskState state) {
         try {
-            String internalUserId = databaseService.getUserIdByPlatform(userId);
+            String internalUserId = databaseService.getUserIdByPlatform(state.platformType, userId);
             if (internalUserId == null) {
-                expandStates.remove(userId);
+                conversationEngine.finish(userId);
                 return new BotResponse("Ошибка, пользователь не авторизован.");
             }
 
-            return switch (state.step) {
-                case "add_subtask" -> handleAddSubtask(userId, userInput, state.taskId);
-                case "delete_subtask" -> handleDeleteSubtask(userId, userInput, state.taskId);
-                case "edit_subtask" -> handleEditSubtask(userInput, state);
+            return switch (conversation.state()) {
+                case SUBTASK_ADD -> handleAddSubtask(userId, userInput, conversation, state);
+                case SUBTASK_DELETE -> handleDeleteSubtask(userId, userInput, conversation, state);
+                case SUBTASK_EDIT_SELECT -> handleSelectEditedSubtask(userId, userInput, conversation, state);
+                case SUBTASK_EDIT_TEXT -> handleEditSubtask(userId, userInput, conversation, state);
                 default -> {
-                    expandStates.remove(userId);
+                    conversationEngine.finish(userId);
                     yield new BotResponse("Ошибка режима расширения");
                 }
             };
         } catch (Exception e) {
-            e.printStackTrace();
+            BotLogger.get().error("subtask_input_failed", userId, state.platformType, e);
             return new BotResponse("Ошибка при работе с подзадачами: " + e.getMessage());
         }
     }
 
     /**
-     * Обрабатывает команды работы с подзадачами
+     * Обрабатывает команды работы с подзадачами, пришедшие вне режима расширения
      */
-    public BotResponse handleSubtaskCommand(String command, String userId) throws SQLException {
-        SubtaskState state = expandStates.get(userId);
-        if (state == null) {
+    public BotResponse handleSubtaskCommand(String commandName, String userId) {
+        ConversationEngine.Conversation conversation = conversationEngine.get(userId);
+        if (conversation == null || conversation.state().flow() != ConversationEngine.Flow.SUBTASK) {
             return new BotResponse("Сначала выберите задачу для расширения.");
         }
+        return handleSubtaskStep(userId, commandName, commandName, conversation);
+    }
 
-        if (state.step != null) {
-            return handleSubtaskInput(userId, command, state);
+    /**
+     * Обрабатывает сообщение пользователя в режиме расширения.
+     */
+    private BotResponse handleSubtaskStep(String userId, String userInput, CommandRegistry.Command command,
+                                          ConversationEngine.Conversation conversation) {
+        return handleSubtaskStep(userId, userInput, command == null ? "" : command.name(), conversation);
+    }
+
+    /**
+     * Обрабатывает сообщение пользователя в режиме расширения: в меню - как действие,
+     * в остальных состояниях - как ввод, которого ждет текущее действие.
+     *
+     * @param commandName основное имя команды, найденной в сообщении, или пустая строка
+     */
+    private BotResponse handleSubtaskStep(String userId, String userInput, String commandName,
+                                          ConversationEngine.Conversation conversation) {
+        SubtaskState state = (SubtaskState) conversation.data();
+        try {
+            BotResponse response = conversation.state() == ConversationEngine.State.SUBTASK_MENU
+                    ? handleSubtaskAction(commandName, userId, conversation, state)
+                    : handleSubtaskInput(userId, userInput, conversation, state);
+            conversationEngine.update(userId, conversation);
+            return response;
+        } catch (SQLException e) {
+            BotLogger.get().error("subtask_command_failed", e);
+            return new BotResponse("Ошибка при работе с подзадачами: " + e.getMessage());
         }
+    }
 
-        return switch (command) {
-            case "/add_subtask", "\u2795 Добавить подзадачу" -> {
-                state.step = "add_subtask";
+    /**
+     * Выполняет действие с подзадачами, выбранное кнопкой или командой.
+     * Тексты кнопок уже переведены в имена команд таблицей команд.
+     */
+    private BotResponse handleSubtaskAction(String commandName, String userId,
+                                            ConversationEngine.Conversation conversation,
+                                            SubtaskState state) throws SQLException {
+        return switch (commandName) {
+            case "/add_subtask" -> {
+                conversationEngine.moveTo(userId, conversation, ConversationEngine.State.SUBTASK_ADD);
                 yield new BotResponse("Отлично! Напишите подзадачу для добавления:");
             }
-            case "/delete_subtask", "\u2718 Удалить подзадачу" -> {
-                state.step = "delete_subtask";
+            case "/delete_subtask" -> {
+                conversationEngine.moveTo(userId, conversation, ConversationEngine.State.SUBTASK_DELETE);
                 yield new BotResponse("Отлично! Напишите подзадачу для удаления:");
             }
-            case "/edit_subtask", "Изменить подзадачу" -> {
-                state.step = "edit_subtask";
+            case "/edit_subtask" -> {
                 state.selectSubtask = null;
+                conversationEngine.moveTo(userId, conversation, ConversationEngine.State.SUBTASK_EDIT_SELECT);
                 yield new BotResponse("Отлично! Напишите подзадачу для изменения:");
             }
-            case "/finish_expand", "Окончить расширение" -> handleFinishExpand(userId);
+            case "/add_subtasks_with_gpt" ->
+                    handleGenerateSubtasks(userId, conversation, state);
+            case "/save_subtasks_from_gpt" -> handleSaveProposedSubtasks(state);
+            case "/delete_subtasks_from_gpt" -> handleDeleteProposedSubtasks(state);
+            case "/finish_expand" -> handleFinishExpand(userId);
             default -> new BotResponse("Используйте кнопки для работы с подзадачами или введите /finish_expand для выхода.");
         };
     }
@@ -126,16 +251,18 @@ public class SubtaskService {
     /**
      * Обрабатывает добавление подзадачи
      */
-    private BotResponse handleAddSubtask(String userId, String userInput, Integer taskId) throws SQLException {
+    private BotResponse handleAddSubtask(String userId, String userInput,
+                                         ConversationEngine.Conversation conversation,
+                                         SubtaskState state) throws SQLException {
         if (userInput.trim().isEmpty()) {
             return new BotResponse("Отлично! Напишите подзадачу для добавления.");
         }
         try {
-            databaseService.addSubtask(taskId, userInput);
-            expandStates.get(userId).step = null;
+            databaseService.addSubtask(state.taskId, userInput);
+            backToMenu(userId, conversation);
             return new BotResponse("Подзадача добавлена");
         } catch (SQLException e) {
-            expandStates.get(userId).step = null;
+            backToMenu(userId, conversation);
             if (e.getErrorCode() == 19) {
                 return new BotResponse("Подзадача уже существует.");
             }
@@ -146,11 +273,13 @@ public class SubtaskService {
     /**
      * Обрабатывает удаление подзадачи
      */
-    private BotResponse handleDeleteSubtask(String userId, String userInput, Integer taskId) throws SQLException {
+    private BotResponse handleDeleteSubtask(String userId, String userInput,
+                                            ConversationEngine.Conversation conversation,
+                                            SubtaskState state) throws SQLException {
         if (userInput.trim().isEmpty()) {
-            List<String> subtasks = databaseService.getSubtasks(taskId);
+            List<String> subtasks = databaseService.getSubtasks(state.taskId);
             if (subtasks.isEmpty()) {
-                expandStates.get(userId).step = null;
+                backToMenu(userId, conversation);
                 return new BotResponse("Нет подзадачи для удаления.");
             }
             StringBuilder sb = new StringBuilder("Отлично! Выберите задачу для удаления.");
@@ -160,16 +289,16 @@ public class SubtaskService {
             return new BotResponse(sb.toString());
         }
         String subtaskToDelete = userInput.trim();
-        List<String> subtasks = databaseService.getSubtasks(taskId);
+        List<String> subtasks = databaseService.getSubtasks(state.taskId);
 
         if (!subtasks.contains(subtaskToDelete)) {
-            expandStates.get(userId).step = null;
+            backToMenu(userId, conversation);
             return new BotResponse("Подзадача не найдена.");
         }
 
         try {
-            databaseService.deleteSubtask(taskId, subtaskToDelete);
-            expandStates.get(userId).step = null;
+            databaseService.deleteSubtask(state.taskId, subtaskToDelete);
+            backToMenu(userId, conversation);
             return new BotResponse("Подзадача удалена.");
         } catch (SQLException e) {
             throw new RuntimeException("Не удалось удалить подзадачу: " + e.getMessage());
@@ -177,70 +306,167 @@ public class SubtaskService {
     }
 
     /**
-     * Обрабатывает изменение подзадачи
+     * Обрабатывает выбор подзадачи для изменения
      */
-    private BotResponse handleEditSubtask(String userInput, SubtaskState state) throws SQLException {
-        if (state.selectSubtask == null) {
-            if (userInput.trim().isEmpty()) {
-                List<String> subtasks = databaseService.getSubtasks(state.taskId);
-                if (subtasks.isEmpty()) {
-                    state.step = null;
-                    return new BotResponse("Нет подзадач для изменения.");
-                }
+    private BotResponse handleSelectEditedSubtask(String userId, String userInput,
+                                                  ConversationEngine.Conversation conversation,
+                                                  SubtaskState state) throws SQLException {
+        if (userInput.trim().isEmpty()) {
+            List<String> subtasks = databaseService.getSubtasks(state.taskId);
+            if (subtasks.isEmpty()) {
+                backToMenu(userId, conversation);
+                return new BotResponse("Нет подзадач для изменения.");
+            }
 
-                StringBuilder sb = new StringBuilder("Отлично! Напишите подзадачу для изменения.\n");
-                for (int i = 0; i < subtasks.size(); i++) {
-                    sb.append(i + 1).append(". ").append(subtasks.get(i)).append("\n");
-                }
-                return new BotResponse(sb.toString());
+            StringBuilder sb = new StringBuilder("Отлично! Напишите подзадачу для изменения.\n");
+            for (int i = 0; i < subtasks.size(); i++) {
+                sb.append(i + 1).append(". ").append(subtasks.get(i)).append("\n");
             }
+            return new BotResponse(sb.toString());
+        }
 
-            String selectedSubtask = userInput.trim();
-            List<String> subtasks = databaseService.getSubtasks(state.taskId);
+        String selectedSubtask = userInput.trim();
+        List<String> subtasks = databaseService.getSubtasks(state.taskId);
 
-            if (!subtasks.contains(selectedSubtask)) {
-                state.step = null;
-                return new BotResponse("Подзадача не найдена.");
-            }
+        if (!subtasks.contains(selectedSubtask)) {
+            backToMenu(userId, conversation);
+            return new BotResponse("Подзадача не найдена.");
+        }
+
+        state.selectSubtask = selectedSubtask;
+        conversationEngine.moveTo(userId, conversation, ConversationEngine.State.SUBTASK_EDIT_TEXT);
+        return new BotResponse("Напишите новую формулировку:");
+    }
 
-            state.selectSubtask = selectedSubtask;
+    /**
+     * Обрабатывает изменение подзадачи
+     */
+    private BotResponse handleEditSubtask(String userId, String userInput,
+                                          ConversationEngine.Conversation conversation, SubtaskState state) {
+        if (userInput.trim().isEmpty()) {
             return new BotResponse("Напишите новую формулировку:");
-        } else {
-            if (userInput.trim().isEmpty()) {
-                return new BotResponse("Напишите новую формулировку:");
+        }
+        try {
+            databaseService.editSubtask(state.taskId, state.selectSubtask, userInput.trim());
+            state.selectSubtask = null;
+            backToMenu(userId, conversation);
+            return new BotResponse("Подзадача изменена.");
+        } catch (SQLException e) {
+            throw new RuntimeException("Не удалось изменить подзадачу: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Возвращает пользователя к выбору действия с подзадачами
+     */
+    private void backToMenu(String userId, ConversationEngine.Conversation conversation) {
+        conversationEngine.moveTo(userId, conversation, ConversationEngine.State.SUBTASK_MENU);
+    }
+
+    /**
+     * Запускает генерацию подзадач. Модель работает в фоне, поток бота не ждет ее ответа:
+     * пользователь сразу получает уведомление, а предложенные подзадачи приходят вторым ответом.
+     * Подзадачи читаются из потокового ответа, поэтому, пока генерация идет, бот сообщает,
+     * сколько подзадач уже получено. Первая генерация для задачи может взять сохраненный ответ,
+     * повторная запрашивает у модели новый.
+     */
+    private BotResponse handleGenerateSubtasks(String userId, ConversationEngine.Conversation conversation,
+                                               SubtaskState state) {
+        if (aiClient == null) {
+            return new BotResponse("Генерация подзадач сейчас недоступна.");
+        }
+        if (state.generating) {
+            return new BotResponse("Подзадачи уже генерируются, получено: " + state.receivedSubtasks
+                    + ". Подождите немного.");
+        }
+        state.generating = true;
+        state.receivedSubtasks = 0;
+        state.proposedSubtasks = null;
+        CompletableFuture<BotResponse> followUp = aiClient
+                .streamSubtasks(state.taskText, state.generated, subtask -> state.receivedSubtasks++)
+                .handle((subtasks, error) -> {
+                    state.generating = false;
+                    state.generated = true;
+                    if (error != null) {
+                        BotLogger.get().error("subtask_generation_failed", userId, state.platformType, error);
+                        return new BotResponse("Не удалось сгенерировать подзадачи: " + error.getMessage());
+                    }
+                    return proposeSubtasks(userId, conversation, state, parseSubtasks(String.join("\n", subtasks)));
+                });
+        return new BotResponse("Генерирую подзадачи для задачи \"" + state.taskText + "\"...", followUp);
+    }
+
+    /**
+     * Сохраняет предложение в состоянии пользователя и формирует ответ со списком.
+     */
+    private BotResponse proposeSubtasks(String userId, ConversationEngine.Conversation conversation,
+                                        SubtaskState state, List<String> subtasks) {
+        if (conversationEngine.get(userId) != conversation) {
+            return new BotResponse("Подзадачи сгенерированы, но работа с задачей \"" + state.taskText
+                    + "\" уже завершена.");
+        }
+        if (subtasks.isEmpty()) {
+            return new BotResponse("Не удалось предложить подзадачи, попробуйте еще раз.");
+        }
+        state.proposedSubtasks = subtasks;
+        conversationEngine.update(userId, conversation);
+        StringBuilder sb = new StringBuilder("Предлагаемые подзадачи:\n");
+        for (int i = 0; i < subtasks.size(); i++) {
+            sb.append(i + 1).append(". ").append(subtasks.get(i)).append("\n");
+        }
+        sb.append("Нажмите \"Сохранить\", чтобы добавить их, или \"Удалить\", чтобы отказаться.");
+        return new BotResponse(sb.toString());
+    }
+
+    /**
+     * Разбирает ответ модели: одна подзадача на строку, нумерация и маркеры списка убираются.
+     */
+    static List<String> parseSubtasks(String response) {
+        List<String> subtasks = new ArrayList<>();
+        for (String line : response.split("\\R")) {
+            String subtask = LIST_MARKER.matcher(line.trim()).replaceFirst("").trim();
+            if (!subtask.isEmpty() && !subtasks.contains(subtask)) {
+                subtasks.add(subtask);
             }
-            try {
-                databaseService.editSubtask(state.taskId, state.selectSubtask, userInput.trim());
-                state.step = null;
-                state.selectSubtask = null;
-                return new BotResponse("Подзадача изменена.");
-            } catch (SQLException e) {
-                throw new RuntimeException("Не удалось изменить подзадачу: " + e.getMessage());
+            if (subtasks.size() == MAX_PROPOSED_SUBTASKS) {
+                break;
             }
         }
+        return subtasks;
     }
 
     /**
-     * Завершает режим работы с подзадачами
+     * Сохраняет предложенные подзадачи одной транзакцией.
      */
-    private BotResponse handleFinishExpand(String userId) {
-        expandStates.remove(userId);
-        return new BotResponse("Добавление подзадач завершено! Вы можете посмотреть список задач.");
+    private BotResponse handleSaveProposedSubtasks(SubtaskState state) throws SQLException {
+        List<String> subtasks = state.proposedSubtasks;
+        if (subtasks == null) {
+            return new BotResponse(state.generating
+                    ? "Подзадачи еще генерируются, получено: " + state.receivedSubtasks + ". Подождите немного."
+                    : "Нет предложенных подзадач. Нажмите \"GPT добавление подзадач\".");
+        }
+        int inserted = databaseService.addSubtasks(state.taskId, subtasks);
+        state.proposedSubtasks = null;
+        return new BotResponse("Сохранено подзадач: " + inserted
+                + (inserted < subtasks.size() ? ", уже были добавлены: " + (subtasks.size() - inserted) : ""));
     }
 
     /**
-     * Обрабатывает ввод в режиме подзадач
+     * Отбрасывает предложенные подзадачи.
      */
-    public BotResponse processSubtaskInput(String userId, String userInput) {
-        SubtaskState state = expandStates.get(userId);
-        if (state != null && state.step != null) {
-            return handleSubtaskInput(userId, userInput, state);
-        }
-        try {
-            return handleSubtaskCommand(userInput, userId);
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return new BotResponse("Ошибка при работе с подзадачами: " + e.getMessage());
+    private BotResponse handleDeleteProposedSubtasks(SubtaskState state) {
+        if (state.proposedSubtasks == null) {
+            return new BotResponse("Нет предложенных подзадач.");
         }
+        state.proposedSubtasks = null;
+        return new BotResponse("Предложенные подзадачи удалены.");
+    }
+
+    /**
+     * Завершает режим работы с подзадачами
+     */
+    private BotResponse handleFinishExpand(String userId) {
+        conversationEngine.finish(userId);
+        return new BotResponse("Добавление подзадач завершено! Вы можете посмотреть список задач.");
     }
 }
\ No newline at end of file
@@ -7,15 +7,30 @@ import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.api.objects.InputFile;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
-import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Telegram бот для управления задачами с кнопками
  */
-public class TelegramBot extends TelegramLongPollingBot {
+public class TelegramBot extends TelegramLongPollingBot implements ReminderScheduler.Sender {
+    private static final BotLogger LOGGER = BotLogger.get();
     private final MessageHandler logic;
     private final String botUsername;
     private final Keyboard keyboard;
+    private final KeyedTaskDispatcher dispatcher = new KeyedTaskDispatcher("telegram",
+            AppConfig.get().getInt("dispatcher.telegram.capacity", 10000),
+            AppConfig.get().getInt("dispatcher.telegram.concurrency", 5));
+    private final long reminderPauseNanos =
+            1_000_000_000L / Math.max(1, AppConfig.get().getInt("reminders.telegram.per-second", 25));
+    private final BlockingQueue<ReminderScheduler.Delivery> reminders =
+            new ArrayBlockingQueue<>(Math.max(1, AppConfig.get().getInt("reminders.telegram.queue", 10000)));
+    private final LongAdder droppedReminders = MetricsRegistry.get().counter("bot_reminders_dropped_total",
+            "Напоминания, не поместившиеся в очередь отправки", "platform").labels("telegram");
 
     /**
      * Создаем новый экземпляр Telegram бота.
@@ -29,12 +44,82 @@ public class TelegramBot extends TelegramLongPollingBot {
         this.botUsername = botUsername;
         this.logic = logic;
         this.keyboard = new Keyboard();
+        Thread.ofVirtual().name("telegram-reminders").start(this::sendReminderLoop);
     }
 
+    /**
+     * Принимает обновление в потоке long polling и передает его в обработку.
+     * Сообщения разных пользователей обрабатываются параллельно,
+     * сообщения одного пользователя - строго по очереди.
+     * Если очередь переполнена, пользователь получает просьбу повторить запрос.
+     */
     @Override
     public void onUpdateReceived(Update update) {
         if (!update.hasMessage()) return;
 
+        String userId = update.getMessage().getFrom().getId().toString();
+        if (!dispatcher.submit(userId, () -> handleUpdate(update))) {
+            try {
+                execute(new SendMessage(update.getMessage().getChatId().toString(), KeyedTaskDispatcher.BUSY_MESSAGE));
+            } catch (TelegramApiException e) {
+                LOGGER.error("telegram_send_failed", userId, "telegram", e);
+            }
+        }
+    }
+
+    @Override
+    public String platformType() {
+        return "telegram";
+    }
+
+    /**
+     * Ставит напоминания в очередь отправки. Очередь разбирает один поток, не чаще
+     * reminders.telegram.per-second сообщений в секунду: Telegram ограничивает частоту рассылки.
+     * Пакеты отправляются в порядке поступления. Очередь ограничена reminders.telegram.queue:
+     * напоминания сверх нее не отправляются и учитываются в bot_reminders_dropped_total,
+     * так как в базе они уже сняты.
+     */
+    @Override
+    public int sendReminders(List<ReminderScheduler.Delivery> deliveries) {
+        int dropped = 0;
+        for (ReminderScheduler.Delivery delivery : deliveries) {
+            if (!reminders.offer(delivery)) {
+                dropped++;
+            }
+        }
+        if (dropped > 0) {
+            droppedReminders.add(dropped);
+            LOGGER.warn("telegram_reminders_dropped", "Очередь напоминаний переполнена, не отправлено: " + dropped);
+        }
+        return deliveries.size() - dropped;
+    }
+
+    /**
+     * Поток отправки напоминаний: берет их из очереди по одному с паузой между сообщениями.
+     */
+    private void sendReminderLoop() {
+        while (true) {
+            ReminderScheduler.Delivery delivery;
+            try {
+                delivery = reminders.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                execute(new SendMessage(delivery.platformId(), delivery.message()));
+            } catch (TelegramApiException | RuntimeException e) {
+                LOGGER.error("telegram_send_failed", delivery.platformId(), "telegram", e);
+            }
+            LockSupport.parkNanos(reminderPauseNanos);
+        }
+    }
+
+    /**
+     * Обрабатывает сообщение пользователя и отправляет ответ.
+     *
+     * @param update обновление с сообщением
+     */
+    private void handleUpdate(Update update) {
         String userId = update.getMessage().getFrom().getId().toString();
         String chatId = update.getMessage().getChatId().toString();
 
@@ -51,29 +136,12 @@ public class TelegramBot extends TelegramLongPollingBot {
 
                 String PLATFORM_TYPE = "telegram";
                 BotResponse response = logic.processUserInput(command, userId, PLATFORM_TYPE);
-                SendMessage message = new SendMessage();
-                message.setChatId(chatId);
-                message.setText(response.getMessage());
-
-                if (logic.isUserInSubtaskMode(userId)) {
-                    message.setReplyMarkup(keyboard.subtaskKeyboard());
-                } else {
-                    message.setReplyMarkup(keyboard.authorizationKeyboard());
-                }
-
-                if (response.hasFile()) {
-                    SendDocument document = new SendDocument();
-                    document.setChatId(chatId);
-                    document.setDocument(new InputFile(response.getFile(), response.getFileName()));
-                    document.setCaption(response.getMessage());
-                    execute(document);
-                } else {
-                    execute(message);
-                }
+                sendResponse(chatId, userId, response);
             }
 
 
         } catch (Exception e) {
+            LOGGER.error("telegram_update_failed", userId, "telegram", e);
             try {
                 SendMessage error = new SendMessage();
                 error.setChatId(chatId);
@@ -81,38 +149,58 @@ public class TelegramBot extends TelegramLongPollingBot {
                 error.setReplyMarkup(keyboard.authorizationKeyboard());
                 execute(error);
             } catch (TelegramApiException ex) {
-                ex.printStackTrace();
+                LOGGER.error("telegram_send_failed", userId, "telegram", ex);
             }
         }
     }
 
+    /**
+     * Отправляет ответ пользователю. Если за ответом последует еще один,
+     * он ставится в очередь пользователя, когда будет готов, чтобы сохранить порядок сообщений.
+     * Если очередь переполнена, продолжение отправляется сразу, чтобы не потерять его.
+     */
+    private void sendResponse(String chatId, String userId, BotResponse response) throws TelegramApiException {
+        SendMessage message = new SendMessage();
+        message.setChatId(chatId);
+        message.setText(response.getMessage());
+
+        if (logic.isUserInSubtaskMode(userId)) {
+            message.setReplyMarkup(keyboard.subtaskKeyboard());
+        } else {
+            message.setReplyMarkup(keyboard.authorizationKeyboard());
+        }
+
+        if (response.hasFile()) {
+            SendDocument document = new SendDocument();
+            document.setChatId(chatId);
+            document.setDocument(new InputFile(response.openFile(), response.getFileName()));
+            document.setCaption(response.getMessage());
+            execute(document);
+        } else {
+            execute(message);
+        }
+
+        if (response.hasFollowUp()) {
+            response.getFollowUp().thenAccept(followUp -> {
+                Runnable send = () -> {
+                    try {
+                        sendResponse(chatId, userId, followUp);
+                    } catch (TelegramApiException e) {
+                        LOGGER.error("telegram_send_failed", userId, "telegram", e);
+                    }
+                };
+                if (!dispatcher.submit(userId, send)) {
+                    send.run();
+                }
+            });
+        }
+    }
+
     /**
      * Конвертирует текст кнопок в команды бота
      */
     private String convertButton(String button) {
-        return switch (button) {
-            case "\u2795 Добавить задачу" -> "/add";
-            case "\uD83D\uDCDD Показать список задач" -> "/tasks";
-            case "\u2705 Список выполненных задач" -> "/dTask";
-            case "\u2718 Удалить" -> "/delete";
-            case "\u2714 Выполнено" -> "/done";
-            case "Экспорт" -> "/export";
-            case "Импорт" -> "/import";
-            case "Помощь" -> "/help";
-            case "\uD83D\uDCDD Регистрация" -> "/registration";
-            case "Войти в аккаунт" -> "/login";
-            case "Выйти из аккаунта" -> "/exit";
-            case "Расширить задачу" -> "/expand";
-
-            case "\u2795 Добавить подзадачу" -> "/add_subtask";
-            case "\u2718 Удалить подзадачу" -> "/delete_subtask";
-            case "Изменить подзадачу" -> "/edit_subtask";
-            case "Окончить расширение" -> "/finish_expand";
-            case "GPT добавление подзадач" -> "/add_subtasks_with_gpt";
-            case "Сохранить" -> "/save_subtasks_from_gpt";
-            case "Удалить" -> "/delete_subtasks_from_gpt";
-            default -> button;
-        };
+        return logic.getCommandRegistry().resolveAlias(button);
     }
 
     /**
@@ -129,16 +217,19 @@ public class TelegramBot extends TelegramLongPollingBot {
             org.telegram.telegrambots.meta.api.objects.File file = execute(getFile);
 
             java.io.File downloadedFile = downloadFile(file);
-            try (InputStream inputStream = new java.io.FileInputStream(downloadedFile)) {
-                BotResponse response = logic.processImport(inputStream, userId);
+            try {
+                BotResponse response = logic.processImport(downloadedFile.toPath(), userId, "telegram");
                 execute(new SendMessage(chatId, response.getMessage()));
+            } finally {
+                Files.deleteIfExists(downloadedFile.toPath());
             }
 
         } catch (Exception e) {
+            LOGGER.error("telegram_import_failed", userId, "telegram", e);
             try {
                 execute(new SendMessage(chatId, "Ошибка импорта: " + e.getMessage()));
             } catch (TelegramApiException ex) {
-                ex.printStackTrace();
+                LOGGER.error("telegram_send_failed", userId, "telegram", ex);
             }
         }
     }
@@ -0,0 +1,221 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Иерархическое колесо таймеров: добавление и отмена за O(1), продвижение времени - за O(1)
+ * на такт плюс число сработавших таймеров.
+ * <p>
+ * Время делится на такты длиной tickMillis. На каждом уровне 2^bits ячеек; ячейка уровня 0
+ * соответствует одному такту, ячейка уровня L - 2^(bits*L) тактам. Таймер попадает на самый
+ * нижний уровень, который покрывает его задержку, а когда время доходит до его ячейки,
+ * переносится на уровень ниже. Таймеры дальше {@link #horizonMillis()} не принимаются:
+ * их нужно хранить отдельно и добавить, когда они окажутся в пределах горизонта.
+ * <p>
+ * Класс не потокобезопасен, синхронизацией занимается владелец.
+ *
+ * @param <T> тип значения таймера
+ */
+public class TimingWheel<T> {
+    private final long tickMillis;
+    private final int bits;
+    private final int mask;
+    private final int levels;
+    private final Timeout<T>[][] slots;
+    private long currentTick;
+    private int size;
+
+    /**
+     * Таймер в колесе. Хранит ссылки на соседей по ячейке, чтобы отмена не требовала поиска.
+     *
+     * @param <T> тип значения таймера
+     */
+    public static final class Timeout<T> {
+        private final T value;
+        private final long deadlineTick;
+        private Timeout<T> prev;
+        private Timeout<T> next;
+        private int level = -1;
+        private int slot;
+
+        private Timeout(T value, long deadlineTick) {
+            this.value = value;
+            this.deadlineTick = deadlineTick;
+        }
+
+        /**
+         * Возвращает значение таймера.
+         *
+         * @return значение
+         */
+        public T value() {
+            return value;
+        }
+
+        /**
+         * Проверяет, что таймер еще в колесе: не сработал и не отменен.
+         *
+         * @return true если таймер ожидает срабатывания
+         */
+        public boolean isPending() {
+            return level >= 0;
+        }
+    }
+
+    /**
+     * Создает колесо.
+     *
+     * @param tickMillis  длина такта, мс
+     * @param bits        log2 числа ячеек на уровне
+     * @param levels      число уровней
+     * @param startMillis текущее время, мс
+     */
+    @SuppressWarnings("unchecked")
+    public TimingWheel(long tickMillis, int bits, int levels, long startMillis) {
+        if (tickMillis < 1 || bits < 1 || levels < 1 || (long) bits * levels > 62) {
+            throw new IllegalArgumentException("Некорректные параметры колеса таймеров");
+        }
+        this.tickMillis = tickMillis;
+        this.bits = bits;
+        this.mask = (1 << bits) - 1;
+        this.levels = levels;
+        this.slots = new Timeout[levels][1 << bits];
+        this.currentTick = Math.floorDiv(startMillis, tickMillis);
+    }
+
+    /**
+     * Возвращает наибольшую задержку таймера, которую принимает колесо.
+     *
+     * @return горизонт, мс
+     */
+    public long horizonMillis() {
+        return ((1L << (bits * levels)) - 1) * tickMillis;
+    }
+
+    /**
+     * Возвращает количество таймеров в колесе.
+     *
+     * @return количество таймеров
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Добавляет таймер. Таймер с прошедшим моментом сработает при следующем продвижении времени.
+     * Таймер не срабатывает раньше своего момента, но может сработать позже на длину такта.
+     *
+     * @param value          значение таймера
+     * @param deadlineMillis момент срабатывания, мс
+     * @return таймер или null, если момент дальше горизонта
+     */
+    public Timeout<T> schedule(T value, long deadlineMillis) {
+        long deadlineTick = Math.max(Math.ceilDiv(deadlineMillis, tickMillis), currentTick + 1);
+        if (deadlineTick - currentTick >= 1L << (bits * levels)) {
+            return null;
+        }
+        Timeout<T> timeout = new Timeout<>(value, deadlineTick);
+        place(timeout);
+        size++;
+        return timeout;
+    }
+
+    /**
+     * Отменяет таймер.
+     *
+     * @param timeout таймер
+     * @return true если таймер был в колесе
+     */
+    public boolean cancel(Timeout<T> timeout) {
+        if (!timeout.isPending()) {
+            return false;
+        }
+        unlink(timeout);
+        size--;
+        return true;
+    }
+
+    /**
+     * Продвигает время и возвращает значения сработавших таймеров.
+     *
+     * @param nowMillis текущее время, мс
+     * @return значения в порядке срабатывания
+     */
+    public List<T> advance(long nowMillis) {
+        long targetTick = Math.floorDiv(nowMillis, tickMillis);
+        List<T> expired = new ArrayList<>();
+        while (currentTick < targetTick) {
+            if (size == 0) {
+                currentTick = targetTick;
+                break;
+            }
+            currentTick++;
+            cascade();
+            Timeout<T> timeout = slots[0][(int) (currentTick & mask)];
+            while (timeout != null) {
+                Timeout<T> next = timeout.next;
+                unlink(timeout);
+                size--;
+                expired.add(timeout.value);
+                timeout = next;
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Переносит на нижние уровни таймеры из ячеек, до которых дошло время.
+     * Верхние уровни переносятся первыми, чтобы их таймеры успели спуститься до уровня 0 в этом такте.
+     */
+    private void cascade() {
+        int top = 0;
+        while (top + 1 < levels && ((currentTick >>> (bits * top)) & mask) == 0) {
+            top++;
+        }
+        for (int level = top; level >= 1; level--) {
+            int slot = (int) ((currentTick >>> (bits * level)) & mask);
+            Timeout<T> timeout = slots[level][slot];
+            slots[level][slot] = null;
+            while (timeout != null) {
+                Timeout<T> next = timeout.next;
+                timeout.prev = null;
+                timeout.next = null;
+                place(timeout);
+                timeout = next;
+            }
+        }
+    }
+
+    private void place(Timeout<T> timeout) {
+        long delay = timeout.deadlineTick - currentTick;
+        int level = 0;
+        while (level + 1 < levels && delay >= 1L << (bits * (level + 1))) {
+            level++;
+        }
+        int slot = (int) ((timeout.deadlineTick >>> (bits * level)) & mask);
+        Timeout<T> head = slots[level][slot];
+        timeout.level = level;
+        timeout.slot = slot;
+        timeout.prev = null;
+        timeout.next = head;
+        if (head != null) {
+            head.prev = timeout;
+        }
+        slots[level][slot] = timeout;
+    }
+
+    private void unlink(Timeout<T> timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            slots[timeout.level][timeout.slot] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.level = -1;
+    }
+}
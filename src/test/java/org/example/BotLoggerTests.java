@@ -0,0 +1,145 @@
+package org.example;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Тесты для класса BotLogger.
+ */
+public class BotLoggerTests {
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+    private BotLogger logger(BotLogger.Level level) {
+        return new BotLogger(level, 16, new PrintStream(output, true, StandardCharsets.UTF_8));
+    }
+
+    private String written() {
+        return output.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Тестирует формат записи обработки сообщения.
+     */
+    @Test
+    void testStructuredRecord() {
+        try (BotLogger logger = logger(BotLogger.Level.INFO)) {
+            logger.info("message", "42", "telegram", "/add", 1_500_000);
+            logger.warn("ai_disabled", "ключ \"не\" задан");
+            logger.flush();
+
+            String[] lines = written().split("\\R");
+            Assertions.assertEquals(2, lines.length);
+            Assertions.assertTrue(lines[0].endsWith(
+                    " level=INFO event=message user=42 platform=telegram command=/add latency_ms=1.500"), lines[0]);
+            Assertions.assertTrue(lines[1].endsWith(
+                    " level=WARN event=ai_disabled msg=\"ключ \\\"не\\\" задан\""), lines[1]);
+        }
+    }
+
+    /**
+     * Тестирует, что записи ниже минимального уровня не пишутся.
+     */
+    @Test
+    void testDisabledLevel() {
+        try (BotLogger logger = logger(BotLogger.Level.WARN)) {
+            Assertions.assertFalse(logger.isEnabled(BotLogger.Level.INFO));
+            logger.info("message", "42", "telegram", "/add", 1_000);
+            logger.debug("debug", "текст");
+            logger.flush();
+
+            Assertions.assertEquals("", written());
+            Assertions.assertEquals(0, logger.getDroppedCount());
+        }
+    }
+
+    /**
+     * Тестирует запись исключения со стеком и порядок записей из одного потока.
+     */
+    @Test
+    void testErrorAndOrder() {
+        try (BotLogger logger = logger(BotLogger.Level.DEBUG)) {
+            for (int i = 0; i < 10; i++) {
+                logger.debug("step", String.valueOf(i));
+            }
+            logger.error("failed", "7", "discord", new IllegalStateException("сломалось"));
+            logger.flush();
+
+            String text = written();
+            int previous = -1;
+            for (int i = 0; i < 10; i++) {
+                int position = text.indexOf(" msg=" + i + System.lineSeparator());
+                Assertions.assertTrue(position > previous, "Запись " + i + " не на своем месте");
+                previous = position;
+            }
+            Assertions.assertTrue(text.contains("level=ERROR event=failed user=7 platform=discord msg=сломалось"));
+            Assertions.assertTrue(text.contains("java.lang.IllegalStateException: сломалось"));
+        }
+    }
+
+    /**
+     * Тестирует, что при заполненном буфере обычные записи отбрасываются, а ошибки печатаются.
+     */
+    @Test
+    void testErrorsAreNotDroppedWhenBufferIsFull() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        OutputStream blocking = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                writing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                output.write(b, off, len);
+            }
+        };
+        try (BotLogger logger = new BotLogger(BotLogger.Level.INFO, 2,
+                new PrintStream(blocking, true, StandardCharsets.UTF_8))) {
+            logger.info("first", "печатается");
+            Assertions.assertTrue(writing.await(5, TimeUnit.SECONDS));
+            logger.info("second", "ждет в буфере");
+            logger.info("third", "отброшена");
+            logger.error("failed", new IllegalStateException("не потеряна"));
+            release.countDown();
+            logger.flush();
+
+            String text = written();
+            Assertions.assertTrue(text.contains("event=first"));
+            Assertions.assertTrue(text.contains("event=second"));
+            Assertions.assertFalse(text.contains("event=third"));
+            Assertions.assertTrue(text.contains("level=ERROR event=failed"));
+            Assertions.assertEquals(1, logger.getDroppedCount());
+            Assertions.assertEquals(1, logger.getOverflowedErrorCount());
+        }
+    }
+
+    /**
+     * Тестирует, что фоновый поток, уснувший без записей, просыпается от новой записи.
+     */
+    @Test
+    void testWriterWakesUpAfterIdle() throws Exception {
+        try (BotLogger logger = logger(BotLogger.Level.INFO)) {
+            for (int i = 0; i < 5; i++) {
+                Thread.sleep(20);
+                logger.info("after_idle", String.valueOf(i));
+                logger.flush();
+                Assertions.assertTrue(written().contains("msg=" + i), "Запись " + i + " не напечатана");
+            }
+        }
+    }
+}
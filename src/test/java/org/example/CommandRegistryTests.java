@@ -0,0 +1,76 @@
+package org.example;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Тесты для таблицы команд и разбора сообщений.
+ */
+public class CommandRegistryTests {
+
+    private static CommandRegistry createRegistry() {
+        return CommandRegistry.builder()
+                .register("/add", call -> new BotResponse("add " + call.parameter()), "➕ Добавить задачу")
+                .register("/tasks", call -> new BotResponse("tasks"))
+                .registerAnonymous("/login", call -> new BotResponse("login"), "Войти в аккаунт")
+                .build();
+    }
+
+    /**
+     * Тестирует поиск по имени команды, тексту кнопки и части строки.
+     */
+    @Test
+    void testFind() {
+        CommandRegistry registry = createRegistry();
+
+        Assertions.assertEquals("/add", registry.find("/add").name());
+        Assertions.assertEquals("/add", registry.find("➕ Добавить задачу").name());
+        Assertions.assertEquals("/tasks", registry.find("  /tasks 5", 2, 8).name());
+        Assertions.assertTrue(registry.find("Войти в аккаунт").anonymous());
+        Assertions.assertFalse(registry.find("/add").anonymous());
+        Assertions.assertNull(registry.find("/ad"));
+        Assertions.assertNull(registry.find("/tasks5"));
+        Assertions.assertNull(registry.find(""));
+
+        Assertions.assertEquals("/login", registry.resolveAlias("Войти в аккаунт"));
+        Assertions.assertEquals("Купить молоко", registry.resolveAlias("Купить молоко"));
+    }
+
+    /**
+     * Тестирует, что одна команда или кнопка не может быть зарегистрирована дважды.
+     */
+    @Test
+    void testDuplicateCommand() {
+        CommandRegistry.Builder duplicateAlias = CommandRegistry.builder()
+                .register("/delete", call -> null, "✘ Удалить")
+                .register("/delete_subtask", call -> null, "✘ Удалить");
+        Assertions.assertThrows(IllegalArgumentException.class, duplicateAlias::build);
+
+        CommandRegistry.Builder blankName = CommandRegistry.builder().register(" /help", call -> null);
+        Assertions.assertThrows(IllegalArgumentException.class, blankName::build);
+    }
+
+    /**
+     * Тестирует разбор слов и чисел без регулярных выражений.
+     */
+    @Test
+    void testTokenizeAndParseNumber() {
+        String input = "  /add   Купить молоко \t";
+        int start = CommandRegistry.skipWhitespace(input, 0, input.length());
+        int end = CommandRegistry.trimEnd(input, start);
+        int tokenEnd = CommandRegistry.tokenEnd(input, start, end);
+
+        Assertions.assertEquals("/add", input.substring(start, tokenEnd));
+        Assertions.assertEquals("Купить молоко",
+                input.substring(CommandRegistry.skipWhitespace(input, tokenEnd, end), end));
+        Assertions.assertEquals(0, CommandRegistry.trimEnd("   ", 0));
+
+        Assertions.assertEquals(42, CommandRegistry.parseNumber("42", 0, 2));
+        Assertions.assertEquals(7, CommandRegistry.parseNumber("x7 ", 1, 2));
+        Assertions.assertEquals(Integer.MAX_VALUE, CommandRegistry.parseNumber("2147483647", 0, 10));
+        Assertions.assertEquals(-1, CommandRegistry.parseNumber("2147483648", 0, 10));
+        Assertions.assertEquals(-1, CommandRegistry.parseNumber("4a", 0, 2));
+        Assertions.assertEquals(-1, CommandRegistry.parseNumber("-1", 0, 2));
+        Assertions.assertEquals(-1, CommandRegistry.parseNumber("", 0, 0));
+    }
+}
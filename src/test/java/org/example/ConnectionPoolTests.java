@@ -0,0 +1,159 @@
+package org.example;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Тесты для пула соединений с SQLite.
+ */
+public class ConnectionPoolTests {
+    @TempDir
+    Path tempDir;
+
+    private ConnectionPool pool;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        pool = new ConnectionPool("jdbc:sqlite:" + tempDir.resolve("pool_test.db"), StorageProfile.BALANCED, 1, 200);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.close();
+    }
+
+    private static int selectOne(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT 1")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    /**
+     * Тестирует, что соединение для записи выдается только одному потоку, а после возврата - следующему.
+     */
+    @Test
+    void testWriterIsExclusive() throws Exception {
+        try (Connection writer = pool.getWriter("first")) {
+            Assertions.assertEquals(1, selectOne(writer));
+            CompletableFuture<Throwable> other = CompletableFuture.supplyAsync(() -> {
+                try (Connection ignored = pool.getWriter("second")) {
+                    return null;
+                } catch (SQLException e) {
+                    return e;
+                }
+            });
+            Throwable error = other.get(5, TimeUnit.SECONDS);
+            Assertions.assertNotNull(error);
+            Assertions.assertEquals("Нет свободного соединения для записи", error.getMessage());
+        }
+        CompletableFuture<Integer> other = CompletableFuture.supplyAsync(() -> {
+            try (Connection writer = pool.getWriter("second")) {
+                return selectOne(writer);
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        Assertions.assertEquals(1, other.get(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Тестирует, что запрос занятого соединения завершается ошибкой после таймаута, а не ждет бесконечно.
+     */
+    @Test
+    void testAcquireTimeout() throws Exception {
+        try (Connection ignored = pool.getReader("first")) {
+            long startedAt = System.nanoTime();
+            SQLException e = Assertions.assertThrows(SQLException.class, () -> pool.getReader("second"));
+            long waitedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+            Assertions.assertEquals("Нет свободного соединения для чтения", e.getMessage());
+            Assertions.assertTrue(waitedMillis >= 150, "Ожидание " + waitedMillis + " мс");
+        }
+    }
+
+    /**
+     * Тестирует, что close() выданного соединения возвращает его в пул, откатывает транзакцию
+     * и делает обертку непригодной для дальнейшей работы.
+     */
+    @Test
+    void testCloseReturnsConnection() throws Exception {
+        Connection writer = pool.getWriter("create");
+        try (Statement stmt = writer.createStatement()) {
+            stmt.execute("CREATE TABLE items (id INTEGER)");
+        }
+        writer.setAutoCommit(false);
+        try (Statement stmt = writer.createStatement()) {
+            stmt.execute("INSERT INTO items VALUES (1)");
+        }
+        writer.close();
+        writer.close();
+
+        Assertions.assertTrue(writer.isClosed());
+        Assertions.assertThrows(SQLException.class, writer::createStatement);
+        try (Connection again = pool.getWriter("count");
+             Statement stmt = again.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM items")) {
+            Assertions.assertTrue(again.getAutoCommit());
+            rs.next();
+            Assertions.assertEquals(0, rs.getInt(1));
+        }
+    }
+
+    /**
+     * Тестирует, что вложенный запрос соединения для записи тем же потоком сразу завершается ошибкой.
+     */
+    @Test
+    void testNestedWriterIsRejected() throws Exception {
+        try (Connection ignored = pool.getWriter("outer")) {
+            long startedAt = System.nanoTime();
+            SQLException e = Assertions.assertThrows(SQLException.class, () -> pool.getWriter("inner"));
+            Assertions.assertTrue(e.getMessage().contains("inner") && e.getMessage().contains("outer"),
+                    e.getMessage());
+            Assertions.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt) < 150);
+        }
+        try (Connection writer = pool.getWriter("after")) {
+            Assertions.assertEquals(1, selectOne(writer));
+        }
+    }
+
+    /**
+     * Тестирует, что закрытое физическое соединение заменяется новым при следующей выдаче.
+     */
+    @Test
+    void testBrokenConnectionIsReplaced() throws Exception {
+        try (Connection reader = pool.getReader("break")) {
+            reader.unwrap(Connection.class).close();
+        }
+        try (Connection reader = pool.getReader("after")) {
+            Assertions.assertEquals(1, selectOne(reader));
+        }
+    }
+
+    /**
+     * Тестирует, что после закрытия пул не выдает соединений, а соединения, выданные до закрытия,
+     * закрыты.
+     */
+    @Test
+    void testShutdown() throws Exception {
+        Connection reader = pool.getReader("before");
+        pool.close();
+
+        Assertions.assertThrows(SQLException.class, () -> selectOne(reader));
+        reader.close();
+        SQLException e = Assertions.assertThrows(SQLException.class, () -> pool.getWriter("after"));
+        Assertions.assertEquals("Пул соединений закрыт", e.getMessage());
+        Assertions.assertThrows(SQLException.class, () -> pool.getReader("after"));
+    }
+}
@@ -0,0 +1,159 @@
+package org.example;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Тесты для автомата многошаговых диалогов.
+ */
+public class ConversationEngineTests {
+    private static final ConversationStateCodec<String> STRING_CODEC = new ConversationStateCodec<>() {
+        @Override
+        public void write(String state, DataOutput out) throws IOException {
+            out.writeUTF(state);
+        }
+
+        @Override
+        public String read(DataInput in) throws IOException {
+            return in.readUTF();
+        }
+    };
+
+    /**
+     * Разрешенные переходы. Все остальные пары состояний должны быть запрещены.
+     */
+    private static final Map<ConversationEngine.State, Set<ConversationEngine.State>> EXPECTED = Map.of(
+            ConversationEngine.State.AUTH_USERNAME, EnumSet.of(ConversationEngine.State.AUTH_PASSWORD),
+            ConversationEngine.State.AUTH_PASSWORD, EnumSet.noneOf(ConversationEngine.State.class),
+            ConversationEngine.State.OPERATION_INPUT, EnumSet.noneOf(ConversationEngine.State.class),
+            ConversationEngine.State.SUBTASK_MENU, EnumSet.of(ConversationEngine.State.SUBTASK_ADD,
+                    ConversationEngine.State.SUBTASK_DELETE, ConversationEngine.State.SUBTASK_EDIT_SELECT),
+            ConversationEngine.State.SUBTASK_ADD, EnumSet.of(ConversationEngine.State.SUBTASK_MENU),
+            ConversationEngine.State.SUBTASK_DELETE, EnumSet.of(ConversationEngine.State.SUBTASK_MENU),
+            ConversationEngine.State.SUBTASK_EDIT_SELECT, EnumSet.of(ConversationEngine.State.SUBTASK_EDIT_TEXT,
+                    ConversationEngine.State.SUBTASK_MENU),
+            ConversationEngine.State.SUBTASK_EDIT_TEXT, EnumSet.of(ConversationEngine.State.SUBTASK_MENU));
+
+    private static ConversationEngine createEngine() {
+        ConversationEngine engine = new ConversationEngine();
+        for (ConversationEngine.Flow flow : ConversationEngine.Flow.values()) {
+            engine.register(flow, (userId, input, command, conversation) ->
+                    new BotResponse(flow + " " + conversation.state() + " " + conversation.data() + " " + input),
+                    STRING_CODEC);
+        }
+        return engine;
+    }
+
+    /**
+     * Проверяет таблицу переходов для каждой пары состояний: разрешенный переход меняет состояние,
+     * запрещенный бросает исключение и оставляет состояние прежним.
+     */
+    @Test
+    void testEveryTransition() {
+        ConversationEngine engine = createEngine();
+        Assertions.assertEquals(ConversationEngine.State.values().length, EXPECTED.size());
+
+        for (ConversationEngine.State from : ConversationEngine.State.values()) {
+            for (ConversationEngine.State to : ConversationEngine.State.values()) {
+                boolean allowed = EXPECTED.get(from).contains(to);
+                Assertions.assertEquals(allowed, ConversationEngine.canMove(from, to), from + " -> " + to);
+                Assertions.assertTrue(!allowed || from.flow() == to.flow(), from + " -> " + to);
+
+                ConversationEngine.Conversation conversation = reach(engine, "user", from);
+                if (allowed) {
+                    engine.moveTo("user", conversation, to);
+                    Assertions.assertEquals(to, engine.get("user").state());
+                } else {
+                    Assertions.assertThrows(IllegalStateException.class,
+                            () -> engine.moveTo("user", conversation, to), from + " -> " + to);
+                    Assertions.assertEquals(from, engine.get("user").state());
+                }
+            }
+        }
+    }
+
+    /**
+     * Приводит диалог пользователя в нужное состояние разрешенными переходами.
+     */
+    private static ConversationEngine.Conversation reach(ConversationEngine engine, String userId,
+                                                         ConversationEngine.State target) {
+        ConversationEngine.Conversation conversation = switch (target.flow()) {
+            case AUTH -> engine.start(userId, ConversationEngine.State.AUTH_USERNAME, "auth");
+            case OPERATION -> engine.start(userId, ConversationEngine.State.OPERATION_INPUT, "add");
+            case SUBTASK -> engine.start(userId, ConversationEngine.State.SUBTASK_MENU, "task");
+        };
+        if (target == ConversationEngine.State.SUBTASK_EDIT_TEXT) {
+            engine.moveTo(userId, conversation, ConversationEngine.State.SUBTASK_EDIT_SELECT);
+        }
+        if (conversation.state() != target) {
+            engine.moveTo(userId, conversation, target);
+        }
+        return conversation;
+    }
+
+    /**
+     * Тестирует, что диалог начинается только с начального состояния подключенного вида.
+     */
+    @Test
+    void testStart() {
+        ConversationEngine engine = createEngine();
+        for (ConversationEngine.State state : ConversationEngine.State.values()) {
+            if (state.isInitial()) {
+                Assertions.assertEquals(state, engine.start("user", state, "data").state());
+                Assertions.assertEquals(state.flow(), engine.flowOf("user"));
+            } else {
+                Assertions.assertThrows(IllegalStateException.class, () -> engine.start("user", state, "data"));
+            }
+        }
+
+        ConversationEngine empty = new ConversationEngine();
+        Assertions.assertThrows(IllegalStateException.class,
+                () -> empty.start("user", ConversationEngine.State.AUTH_USERNAME, "data"));
+    }
+
+    /**
+     * Тестирует, что сообщение попадает в обработчик вида текущего диалога, а новый диалог
+     * заменяет прежний.
+     */
+    @Test
+    void testDispatchAndFinish() {
+        ConversationEngine engine = createEngine();
+        Assertions.assertNull(engine.get("user"));
+        Assertions.assertNull(engine.flowOf("user"));
+
+        engine.start("user", ConversationEngine.State.OPERATION_INPUT, "add");
+        ConversationEngine.Conversation conversation = engine.get("user");
+        Assertions.assertEquals("OPERATION OPERATION_INPUT add Купить молоко",
+                engine.dispatch("user", "Купить молоко", null, conversation).getMessage());
+
+        engine.start("user", ConversationEngine.State.SUBTASK_MENU, "task");
+        Assertions.assertEquals(ConversationEngine.Flow.SUBTASK, engine.flowOf("user"));
+        Assertions.assertEquals("SUBTASK SUBTASK_MENU task /add_subtask",
+                engine.dispatch("user", "/add_subtask", null, engine.get("user")).getMessage());
+
+        engine.finish("user");
+        Assertions.assertNull(engine.get("user"));
+    }
+
+    /**
+     * Тестирует, что вид диалога подключается один раз и только до первого обращения к диалогам.
+     */
+    @Test
+    void testRegister() {
+        ConversationEngine engine = new ConversationEngine();
+        engine.register(ConversationEngine.Flow.AUTH, (userId, input, command, conversation) -> null, STRING_CODEC);
+        Assertions.assertThrows(IllegalStateException.class, () -> engine.register(ConversationEngine.Flow.AUTH,
+                (userId, input, command, conversation) -> null, STRING_CODEC));
+
+        engine.get("user");
+        Assertions.assertThrows(IllegalStateException.class, () -> engine.register(ConversationEngine.Flow.SUBTASK,
+                (userId, input, command, conversation) -> null, STRING_CODEC));
+    }
+}
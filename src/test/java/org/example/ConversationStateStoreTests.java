@@ -0,0 +1,168 @@
+package org.example;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Тесты для хранилища состояний диалогов.
+ */
+public class ConversationStateStoreTests {
+    private static final String PLATFORM_TYPE = "test";
+    private static final ConversationStateCodec<String> STRING_CODEC = new ConversationStateCodec<>() {
+        @Override
+        public void write(String state, DataOutput out) throws IOException {
+            out.writeUTF(state);
+        }
+
+        @Override
+        public String read(DataInput in) throws IOException {
+            return in.readUTF();
+        }
+    };
+
+    private final AtomicLong now = new AtomicLong();
+
+    @TempDir
+    Path tempDir;
+
+    private ConversationStateStore<String> createStore(int maxEntries) {
+        return new ConversationStateStore<>("test", null, ConversationStateBackend.inMemory(),
+                Duration.ofMinutes(30), maxEntries, null, now::get);
+    }
+
+    /**
+     * Тестирует удаление состояния по времени простоя и продление при обращении.
+     */
+    @Test
+    void testIdleExpiry() {
+        ConversationStateStore<String> store = createStore(10);
+        store.put("user1", "login");
+        store.put("user2", "add");
+
+        now.addAndGet(Duration.ofMinutes(20).toNanos());
+        Assertions.assertEquals("login", store.get("user1"));
+
+        now.addAndGet(Duration.ofMinutes(20).toNanos());
+        Assertions.assertTrue(store.contains("user1"));
+        Assertions.assertFalse(store.contains("user2"));
+        Assertions.assertEquals(1, store.size());
+
+        now.addAndGet(Duration.ofMinutes(31).toNanos());
+        Assertions.assertEquals(1, store.sweep());
+        Assertions.assertEquals(0, store.size());
+        Assertions.assertNull(store.get("user1"));
+    }
+
+    /**
+     * Тестирует ограничение размера: вытесняются самые давно использованные состояния.
+     */
+    @Test
+    void testSizeCap() {
+        ConversationStateStore<String> store = createStore(10);
+        for (int i = 0; i < 10; i++) {
+            store.put("user" + i, "state" + i);
+            now.incrementAndGet();
+        }
+        store.get("user0");
+        now.incrementAndGet();
+
+        store.put("user10", "state10");
+
+        Assertions.assertEquals(10, store.size());
+        Assertions.assertTrue(store.contains("user0"));
+        Assertions.assertFalse(store.contains("user1"));
+        Assertions.assertTrue(store.contains("user10"));
+    }
+
+    /**
+     * Тестирует замену и удаление состояния.
+     */
+    @Test
+    void testReplaceAndRemove() {
+        ConversationStateStore<String> store = createStore(10);
+        store.put("user", "first");
+        store.put("user", "second");
+        Assertions.assertEquals("second", store.get("user"));
+        Assertions.assertEquals(1, store.size());
+
+        store.remove("user");
+        Assertions.assertFalse(store.contains("user"));
+    }
+
+    /**
+     * Тестирует, что начатый вход в аккаунт и работа с подзадачами продолжаются после перезапуска.
+     */
+    @Test
+    void testFlowsSurviveRestart() throws SQLException {
+        try (DatabaseService databaseService = new DatabaseService("jdbc:sqlite:" + tempDir.resolve("state.db"))) {
+            SqliteConversationStateBackend backend = createBackend(databaseService, false);
+            MessageHandler handler = new MessageHandler(databaseService, null, backend);
+            handler.processUserInput("/registration", "user1", PLATFORM_TYPE);
+            handler.processUserInput("restart_user", "user1", PLATFORM_TYPE);
+            handler.processUserInput("password", "user1", PLATFORM_TYPE).getFollowUp().join();
+            handler.processUserInput("/add Задача", "user1", PLATFORM_TYPE);
+            handler.processUserInput("/expand 1", "user1", PLATFORM_TYPE);
+            handler.processUserInput("/add_subtask", "user1", PLATFORM_TYPE);
+
+            handler.processUserInput("/login", "user2", PLATFORM_TYPE);
+            handler.processUserInput("restart_user", "user2", PLATFORM_TYPE);
+            backend.close();
+
+            SqliteConversationStateBackend restartedBackend = createBackend(databaseService, false);
+            MessageHandler restarted = new MessageHandler(databaseService, null, restartedBackend);
+            Assertions.assertTrue(restarted.isUserInSubtaskMode("user1"));
+            Assertions.assertEquals("Подзадача добавлена",
+                    restarted.processUserInput("Подзадача", "user1", PLATFORM_TYPE).getMessage());
+            Assertions.assertTrue(restarted.processUserInput("password", "user2", PLATFORM_TYPE).getFollowUp().join()
+                    .getMessage().startsWith("✅ Вход выполнен успешно!"));
+
+            restarted.processUserInput("/finish_expand", "user1", PLATFORM_TYPE);
+            restartedBackend.flush();
+            Assertions.assertTrue(databaseService.loadConversationStates("conversation", 0).isEmpty());
+            restartedBackend.close();
+        }
+    }
+
+    /**
+     * Тестирует, что изменения одного состояния схлопываются, а состояние, которого нет в памяти,
+     * читается из базы, если это включено.
+     */
+    @Test
+    void testWriteBehindAndReadThrough() throws SQLException {
+        try (DatabaseService databaseService = new DatabaseService("jdbc:sqlite:" + tempDir.resolve("shared.db"))) {
+            SqliteConversationStateBackend first = createBackend(databaseService, true);
+            ConversationStateStore<String> store = new ConversationStateStore<>("test", STRING_CODEC, first,
+                    Duration.ofMinutes(30), 10, null);
+            store.put("user", "first");
+            store.put("user", "second");
+            store.put("other", "state");
+            store.remove("other");
+            Assertions.assertEquals(2, first.flush());
+            Assertions.assertEquals(1, databaseService.loadConversationStates("test", 0).size());
+
+            SqliteConversationStateBackend second = createBackend(databaseService, true);
+            ConversationStateStore<String> secondStore = new ConversationStateStore<>("test", STRING_CODEC, second,
+                    Duration.ofMinutes(30), 10, null);
+            store.put("late", "written by first");
+            first.flush();
+            Assertions.assertEquals("second", secondStore.get("user"));
+            Assertions.assertEquals("written by first", secondStore.get("late"));
+            Assertions.assertNull(secondStore.get("missing"));
+            first.close();
+            second.close();
+        }
+    }
+
+    private static SqliteConversationStateBackend createBackend(DatabaseService databaseService, boolean readThrough) {
+        return new SqliteConversationStateBackend(databaseService, Duration.ofHours(1), 1000, readThrough);
+    }
+}
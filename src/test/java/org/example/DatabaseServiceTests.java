@@ -0,0 +1,292 @@
+package org.example;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Тесты схемы базы данных: миграции и планы частых запросов.
+ */
+public class DatabaseServiceTests {
+    @TempDir
+    Path tempDir;
+
+    private String databaseUrl;
+    private DatabaseService databaseService;
+
+    @BeforeEach
+    void setUp() {
+        databaseUrl = "jdbc:sqlite:" + tempDir.resolve("schema_test.db");
+        databaseService = new DatabaseService(databaseUrl);
+    }
+
+    @AfterEach
+    void tearDown() {
+        databaseService.close();
+    }
+
+    /**
+     * Возвращает строки плана выполнения запроса.
+     */
+    private List<String> queryPlan(String sql) throws SQLException {
+        List<String> plan = new ArrayList<>();
+        try (Connection conn = DriverManager.getConnection(databaseUrl);
+             PreparedStatement preparedStatement = conn.prepareStatement("EXPLAIN QUERY PLAN " + sql)) {
+            int parameterCount = preparedStatement.getParameterMetaData().getParameterCount();
+            for (int i = 1; i <= parameterCount; i++) {
+                preparedStatement.setString(i, "1");
+            }
+            ResultSet rs = preparedStatement.executeQuery();
+            while (rs.next()) {
+                plan.add(rs.getString("detail"));
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * Проверяет, что запрос не читает таблицу целиком и не сортирует результат во временном дереве.
+     */
+    private void assertNoFullScan(String sql) throws SQLException {
+        List<String> plan = queryPlan(sql);
+        for (String step : plan) {
+            Assertions.assertFalse(step.startsWith("SCAN"), "Полный просмотр в плане " + plan + " для " + sql);
+            Assertions.assertFalse(step.contains("TEMP B-TREE"), "Сортировка в плане " + plan + " для " + sql);
+        }
+    }
+
+    /**
+     * Тестирует, что после инициализации схема находится на последней версии.
+     */
+    @Test
+    void testSchemaIsOnLatestVersion() throws SQLException {
+        int latest = SchemaMigrations.MIGRATIONS.get(SchemaMigrations.MIGRATIONS.size() - 1).version();
+        try (Connection conn = DriverManager.getConnection(databaseUrl);
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT MAX(version), COUNT(*) FROM schema_version")) {
+            Assertions.assertTrue(rs.next());
+            Assertions.assertEquals(latest, rs.getInt(1));
+            Assertions.assertEquals(SchemaMigrations.MIGRATIONS.size(), rs.getInt(2));
+        }
+    }
+
+    /**
+     * Тестирует, что повторный запуск не применяет миграции заново.
+     */
+    @Test
+    void testMigrationsAreAppliedOnce() throws SQLException {
+        new DatabaseService(databaseUrl).close();
+        try (Connection conn = DriverManager.getConnection(databaseUrl);
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM schema_version")) {
+            Assertions.assertTrue(rs.next());
+            Assertions.assertEquals(SchemaMigrations.MIGRATIONS.size(), rs.getInt(1));
+        }
+    }
+
+    /**
+     * Тестирует планы запросов, которые выполняются на каждое сообщение.
+     */
+    @Test
+    void testHotQueriesUseIndexes() throws SQLException {
+        assertNoFullScan("SELECT user_id FROM user_sessions WHERE platform_type = ? AND platform_id = ?");
+        assertNoFullScan("DELETE FROM user_sessions WHERE platform_id = ? AND platform_type = ?");
+        assertNoFullScan("""
+                SELECT u.username
+                FROM users u
+                JOIN user_sessions us ON u.id = us.user_id
+                WHERE us.platform_type = ? AND us.platform_id = ?
+                """);
+        assertNoFullScan("SELECT task_text FROM user_tasks WHERE user_id = ? ORDER BY id");
+        assertNoFullScan("SELECT task_text FROM completed_tasks WHERE user_id = ? ORDER BY id");
+        assertNoFullScan("SELECT id, task_id, subtask_text FROM subtasks WHERE task_id = ? ORDER BY id");
+        assertNoFullScan("SELECT id FROM user_tasks WHERE user_id = ? AND task_text = ?");
+        assertNoFullScan("""
+                SELECT t.id, t.task_text, s.subtask_text
+                FROM user_tasks t
+                LEFT JOIN subtasks s ON s.task_id = t.id
+                WHERE t.user_id = ?
+                ORDER BY t.id, s.id
+                """);
+    }
+
+    /**
+     * Тестирует, что сессии ищутся по индексу UNIQUE(platform_type, platform_id),
+     * а отдельный индекс по platform_id удален миграцией.
+     */
+    @Test
+    void testSessionLookupUsesUniqueIndex() throws SQLException {
+        Assertions.assertTrue(queryPlan("SELECT user_id FROM user_sessions WHERE platform_type = ? AND platform_id = ?")
+                .stream().anyMatch(step -> step.contains("sqlite_autoindex_user_sessions_1")));
+        try (Connection conn = DriverManager.getConnection(databaseUrl);
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(
+                     "SELECT COUNT(*) FROM sqlite_master WHERE name = 'idx_user_sessions_platform_id'")) {
+            Assertions.assertTrue(rs.next());
+            Assertions.assertEquals(0, rs.getInt(1));
+        }
+    }
+
+    /**
+     * Тестирует, что напоминания читаются диапазоном индекса, а не просмотром всех задач.
+     */
+    @Test
+    void testReminderQueriesUseIndexes() throws SQLException {
+        assertNoFullScan("""
+                SELECT id, user_id, task_text, remind_at, due_at
+                FROM user_tasks
+                WHERE remind_at IS NOT NULL AND remind_at >= ? AND remind_at < ?
+                ORDER BY remind_at
+                """);
+        assertNoFullScan("SELECT user_id, platform_type, platform_id FROM user_sessions WHERE user_id IN (?, ?)");
+        Assertions.assertTrue(queryPlan("UPDATE user_tasks SET remind_at = NULL WHERE id = ? AND remind_at = ?")
+                .stream().anyMatch(step -> step.contains("INTEGER PRIMARY KEY")));
+    }
+
+    /**
+     * Создает пользователя с сессией и возвращает его внутренний идентификатор.
+     */
+    private static String createUser(DatabaseService service) throws SQLException {
+        service.registerUser("import_user", "hash");
+        service.createSession("import_user", "test", "1");
+        return service.getUserIdByPlatform("test", "1");
+    }
+
+    /**
+     * Тестирует, что запись сбрасывает закэшированные списки задач, дерево задач и подзадачи.
+     */
+    @Test
+    void testWritesInvalidateCachedLists() throws SQLException {
+        String userId = createUser(databaseService);
+        databaseService.addTask(userId, "Купить молоко");
+        Assertions.assertEquals(List.of("Купить молоко"), databaseService.getCurrentTasks(userId));
+        Assertions.assertEquals(1, databaseService.getTaskTree(userId).size());
+
+        databaseService.addTask(userId, "Полить цветы");
+        Assertions.assertEquals(List.of("Купить молоко", "Полить цветы"), databaseService.getCurrentTasks(userId));
+        Assertions.assertEquals(2, databaseService.getTaskTree(userId).size());
+
+        databaseService.markTaskDone(userId, "Полить цветы");
+        Assertions.assertEquals(List.of("Купить молоко"), databaseService.getCurrentTasks(userId));
+        Assertions.assertEquals(List.of("Полить цветы"), databaseService.getCompletedTasks(userId));
+
+        Integer taskId = databaseService.getTaskId(userId, "Купить молоко");
+        Assertions.assertEquals(List.of(), databaseService.getSubtasks(taskId));
+        databaseService.addSubtask(taskId, "Дойти до магазина");
+        Assertions.assertEquals(List.of("Дойти до магазина"), databaseService.getSubtasks(taskId));
+        Assertions.assertEquals(List.of("Дойти до магазина"), databaseService.getTaskTree(userId).get(0).subtasks());
+
+        databaseService.editSubtask(taskId, "Дойти до магазина", "Доехать до магазина");
+        Assertions.assertEquals(List.of("Доехать до магазина"), databaseService.getSubtasks(taskId));
+        databaseService.deleteSubtask(taskId, "Доехать до магазина");
+        Assertions.assertEquals(List.of(), databaseService.getSubtasks(taskId));
+
+        databaseService.deleteTask(userId, "Купить молоко");
+        Assertions.assertEquals(List.of(), databaseService.getCurrentTasks(userId));
+        Assertions.assertEquals(List.of(), databaseService.getTaskTree(userId));
+    }
+
+    /**
+     * Тестирует импорт: повторы и пустые строки пропускаются, кэш списка задач сбрасывается.
+     */
+    @Test
+    void testImportTasks() throws SQLException {
+        String userId = createUser(databaseService);
+        databaseService.addTask(userId, "Купить молоко");
+        Assertions.assertEquals(List.of("Купить молоко"), databaseService.getCurrentTasks(userId));
+
+        DatabaseService.ImportResult result = databaseService.importTasks(userId,
+                List.of("Купить молоко", "Полить цветы", " ", "Полить цветы"), List.of("Накормить кота"));
+
+        Assertions.assertEquals(new DatabaseService.ImportResult(1, 1, 3), result);
+        Assertions.assertEquals(List.of("Купить молоко", "Полить цветы"), databaseService.getCurrentTasks(userId));
+        Assertions.assertEquals(List.of("Накормить кота"), databaseService.getCompletedTasks(userId));
+    }
+
+    /**
+     * Тестирует, что ошибка в одном из пакетов откатывает весь импорт, включая уже отправленные пакеты.
+     */
+    @Test
+    void testImportIsRolledBackOnBadRow() throws SQLException {
+        System.setProperty("import.batch-size", "2");
+        DatabaseService service;
+        try {
+            service = new DatabaseService("jdbc:sqlite:" + tempDir.resolve("import_test.db"));
+        } finally {
+            System.clearProperty("import.batch-size");
+        }
+        try (service) {
+            String userId = createUser(service);
+            try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + tempDir.resolve("import_test.db"));
+                 Statement stmt = conn.createStatement()) {
+                stmt.execute("""
+                        CREATE TRIGGER reject_bad_task BEFORE INSERT ON user_tasks
+                        WHEN NEW.task_text = 'плохая'
+                        BEGIN SELECT RAISE(ABORT, 'плохая задача'); END
+                        """);
+            }
+
+            Assertions.assertThrows(SQLException.class, () -> service.importTasks(userId,
+                    List.of("1", "2", "3", "4", "плохая", "6"), List.of("готово")));
+
+            Assertions.assertEquals(List.of(), service.getCurrentTasks(userId));
+            Assertions.assertEquals(List.of(), service.getCompletedTasks(userId));
+            Assertions.assertEquals(new DatabaseService.ImportResult(2, 0, 0),
+                    service.importTasks(userId, List.of("1", "2"), List.of()));
+        }
+    }
+
+    /**
+     * Тестирует потоковый импорт из файла: ошибка чтения откатывает уже отправленные пакеты.
+     */
+    @Test
+    void testStreamingImportIsRolledBackOnReadError() throws Exception {
+        System.setProperty("import.batch-size", "2");
+        DatabaseService service;
+        try {
+            service = new DatabaseService("jdbc:sqlite:" + tempDir.resolve("stream_import_test.db"));
+        } finally {
+            System.clearProperty("import.batch-size");
+        }
+        try (service) {
+            String userId = createUser(service);
+            Path file = tempDir.resolve("tasks.json");
+            Files.writeString(file, """
+                    {"current_tasks": ["1", "2", "3", "4"], "completed_tasks": ["5"]}
+                    """);
+
+            FileWork limited = new FileWork(1024, 4, false);
+            Assertions.assertThrows(IOException.class, () -> service.importTasks(userId,
+                    (current, completed) -> {
+                        try (InputStream inputStream = Files.newInputStream(file)) {
+                            limited.importStream(inputStream, current, completed);
+                        }
+                    }));
+            Assertions.assertEquals(List.of(), service.getCurrentTasks(userId));
+
+            FileWork fileWork = new FileWork(1024, 10, false);
+            Assertions.assertEquals(new DatabaseService.ImportResult(4, 1, 0), service.importTasks(userId,
+                    (current, completed) -> {
+                        try (InputStream inputStream = Files.newInputStream(file)) {
+                            fileWork.importStream(inputStream, current, completed);
+                        }
+                    }));
+            Assertions.assertEquals(List.of("1", "2", "3", "4"), service.getCurrentTasks(userId));
+        }
+    }
+}
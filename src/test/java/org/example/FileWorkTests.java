@@ -0,0 +1,85 @@
+package org.example;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Тесты для потокового импорта файла задач и его ограничений.
+ */
+public class FileWorkTests {
+
+    private static InputStream json(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Тестирует разбор файла: задачи попадают в свои списки, неизвестные поля пропускаются.
+     */
+    @Test
+    void testImportStream() throws Exception {
+        FileWork fileWork = new FileWork(1024, 10, false);
+        List<String> current = new ArrayList<>();
+        List<String> completed = new ArrayList<>();
+
+        int count = fileWork.importStream(json("""
+                {"version": {"major": 1}, "current_tasks": ["Купить молоко", "Полить цветы"],
+                 "completed_tasks": ["Накормить кота"], "notes": null}
+                """), current::add, completed::add);
+
+        Assertions.assertEquals(3, count);
+        Assertions.assertEquals(List.of("Купить молоко", "Полить цветы"), current);
+        Assertions.assertEquals(List.of("Накормить кота"), completed);
+    }
+
+    /**
+     * Тестирует ограничение import.max-tasks: считаются задачи обоих списков.
+     */
+    @Test
+    void testTaskCountLimit() throws Exception {
+        FileWork fileWork = new FileWork(1024, 2, false);
+        Assertions.assertEquals(2, fileWork.importStream(json("""
+                {"current_tasks": ["1"], "completed_tasks": ["2"]}
+                """), task -> { }, task -> { }));
+
+        IOException e = Assertions.assertThrows(IOException.class, () -> fileWork.importStream(json("""
+                {"current_tasks": ["1", "2"], "completed_tasks": ["3"]}
+                """), task -> { }, task -> { }));
+        Assertions.assertEquals("Ошибка при чтении файла: больше 2 задач", e.getMessage());
+    }
+
+    /**
+     * Тестирует ограничение import.max-bytes: чтение прерывается, как только файл превысил размер.
+     */
+    @Test
+    void testSizeLimit() {
+        FileWork fileWork = new FileWork(64, 1000, false);
+        String tasks = "\"" + "x".repeat(100) + "\"";
+        List<String> received = new ArrayList<>();
+
+        IOException e = Assertions.assertThrows(IOException.class, () -> fileWork.importStream(
+                json("{\"current_tasks\": [" + tasks + "]}"), received::add, received::add));
+        Assertions.assertTrue(e.getMessage().contains("размер больше 64 байт"), e.getMessage());
+        Assertions.assertTrue(received.isEmpty());
+    }
+
+    /**
+     * Тестирует отказ для файлов неверной структуры.
+     */
+    @Test
+    void testInvalidStructure() {
+        FileWork fileWork = new FileWork(1024, 10, false);
+        Assertions.assertThrows(IOException.class,
+                () -> fileWork.importStream(json("[\"задача\"]"), task -> { }, task -> { }));
+        Assertions.assertThrows(IOException.class,
+                () -> fileWork.importStream(json("{\"current_tasks\": \"задача\"}"), task -> { }, task -> { }));
+        Assertions.assertThrows(IOException.class,
+                () -> fileWork.importStream(json("{\"current_tasks\": [1]}"), task -> { }, task -> { }));
+    }
+}
@@ -0,0 +1,104 @@
+package org.example;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Тесты для диспетчера задач с упорядочиванием по ключу.
+ */
+public class KeyedTaskDispatcherTests {
+
+    /**
+     * Тестирует, что задачи одного ключа выполняются по очереди в порядке поступления.
+     */
+    @Test
+    void testTasksOfOneKeyRunInOrder() throws Exception {
+        List<Integer> first = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> second = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        try (KeyedTaskDispatcher dispatcher = new KeyedTaskDispatcher("test_order", 1000, 4)) {
+            for (int i = 0; i < 200; i++) {
+                int number = i;
+                Assertions.assertTrue(dispatcher.submit("first", () -> {
+                    if (active.incrementAndGet() > 1) {
+                        overlaps.incrementAndGet();
+                    }
+                    first.add(number);
+                    active.decrementAndGet();
+                }));
+                Assertions.assertTrue(dispatcher.submit("second", () -> second.add(number)));
+            }
+        }
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            expected.add(i);
+        }
+        Assertions.assertEquals(expected, first);
+        Assertions.assertEquals(expected, second);
+        Assertions.assertEquals(0, overlaps.get());
+    }
+
+    /**
+     * Тестирует, что выполняемые задачи занимают емкость, а одновременно выполняется
+     * не больше concurrency задач разных ключей.
+     */
+    @Test
+    void testCapacityCountsRunningTasksAndConcurrencyIsBounded() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(2);
+        AtomicInteger maxActive = new AtomicInteger();
+        AtomicInteger active = new AtomicInteger();
+        try (KeyedTaskDispatcher dispatcher = new KeyedTaskDispatcher("test_capacity", 3, 2)) {
+            for (int i = 0; i < 3; i++) {
+                Assertions.assertTrue(dispatcher.submit("user" + i, () -> {
+                    maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    active.decrementAndGet();
+                }));
+            }
+            Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+            Assertions.assertFalse(dispatcher.submit("user3", () -> { }));
+
+            KeyedTaskDispatcher.Stats stats = dispatcher.getStats();
+            Assertions.assertEquals(3, stats.pending());
+            Assertions.assertEquals(2, stats.running());
+            Assertions.assertEquals(1, stats.rejected());
+
+            release.countDown();
+        }
+        Assertions.assertEquals(2, maxActive.get());
+    }
+
+    /**
+     * Тестирует, что исключение в задаче учитывается и не останавливает очередь ключа.
+     */
+    @Test
+    void testFailedTaskIsCountedAndQueueContinues() throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+        KeyedTaskDispatcher dispatcher = new KeyedTaskDispatcher("test_failure", 10, 1);
+        try {
+            dispatcher.submit("user", () -> {
+                throw new IllegalStateException("сбой");
+            });
+            dispatcher.submit("user", done::countDown);
+            Assertions.assertTrue(done.await(5, TimeUnit.SECONDS));
+        } finally {
+            dispatcher.close();
+        }
+        KeyedTaskDispatcher.Stats stats = dispatcher.getStats();
+        Assertions.assertEquals(new KeyedTaskDispatcher.Stats(0, 0, 2, 1, 0), stats);
+    }
+}
@@ -0,0 +1,68 @@
+package org.example;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+/**
+ * Тесты для кэша с вытеснением давно не использованных записей.
+ */
+public class LruCacheTests {
+
+    /**
+     * Тестирует вытеснение по размеру: удаляется запись, к которой дольше всего не обращались.
+     */
+    @Test
+    void testSizeEviction() {
+        LruCache<String, String> cache = new LruCache<>(2);
+        cache.putIfFresh("a", "1", cache.stamp("a"));
+        cache.putIfFresh("b", "2", cache.stamp("b"));
+        Assertions.assertEquals("1", cache.get("a"));
+
+        cache.putIfFresh("c", "3", cache.stamp("c"));
+
+        Assertions.assertNull(cache.get("b"));
+        Assertions.assertEquals("1", cache.get("a"));
+        Assertions.assertEquals("3", cache.get("c"));
+        Assertions.assertEquals(2, cache.stats().size());
+    }
+
+    /**
+     * Тестирует, что запись с истекшим временем жизни не возвращается и удаляется из кэша.
+     */
+    @Test
+    void testTtlEviction() throws Exception {
+        LruCache<String, String> cache = new LruCache<>(10, Duration.ofMillis(50));
+        cache.putIfFresh("a", "1", cache.stamp("a"));
+        Assertions.assertEquals("1", cache.get("a"));
+
+        Thread.sleep(100);
+
+        Assertions.assertNull(cache.get("a"));
+        Assertions.assertEquals(new LruCache.Stats(1, 1, 0), cache.stats());
+    }
+
+    /**
+     * Тестирует, что значение, прочитанное до инвалидации своего ключа, отбрасывается,
+     * а инвалидация другого ключа не мешает загрузке.
+     */
+    @Test
+    void testStaleValueIsDropped() {
+        LruCache<Integer, String> cache = new LruCache<>(10);
+        long stamp = cache.stamp(1);
+        cache.invalidate(1);
+        cache.putIfFresh(1, "старое", stamp);
+        Assertions.assertNull(cache.get(1));
+
+        stamp = cache.stamp(1);
+        cache.invalidate(2);
+        cache.putIfFresh(1, "новое", stamp);
+        Assertions.assertEquals("новое", cache.get(1));
+
+        stamp = cache.stamp(1);
+        cache.invalidateAll();
+        cache.putIfFresh(1, "старое", stamp);
+        Assertions.assertNull(cache.get(1));
+    }
+}
@@ -4,9 +4,13 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.Statement;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Тесты для класса MessageHandler.
@@ -58,7 +62,15 @@ public class MessageHandlerTests {
     private void registerTestUser(String userId) {
         messageHandler.processUserInput("/registration", userId, PLATFORM_TYPE);
         messageHandler.processUserInput("test_user_" + userId, userId, PLATFORM_TYPE);
-        messageHandler.processUserInput("test_password", userId, PLATFORM_TYPE);
+        enterPassword("test_password", userId);
+    }
+
+    /**
+     * Вводит пароль и дожидается итогового ответа, если пароль проверяется асинхронно.
+     */
+    private BotResponse enterPassword(String password, String userId) {
+        BotResponse response = messageHandler.processUserInput(password, userId, PLATFORM_TYPE);
+        return response.getFollowUp() == null ? response : response.getFollowUp().join();
     }
 
     /**
@@ -302,7 +314,10 @@ public class MessageHandlerTests {
         BotResponse step2 = messageHandler.processUserInput("new_test_user", newUserId, PLATFORM_TYPE);
         Assertions.assertEquals("✅Отлично! Теперь введите пароль:", step2.getMessage());
 
-        BotResponse step3 = messageHandler.processUserInput("password123", newUserId, PLATFORM_TYPE);
+        BotResponse checking = messageHandler.processUserInput("password123", newUserId, PLATFORM_TYPE);
+        Assertions.assertEquals("Проверяю пароль...", checking.getMessage());
+        Assertions.assertNotNull(checking.getFollowUp());
+        BotResponse step3 = checking.getFollowUp().join();
         String expectedStep3 = """
             ✅ Регистрация завершена успешно!
             Добро пожаловать, new_test_user!
@@ -364,7 +379,7 @@ public class MessageHandlerTests {
 
         messageHandler.processUserInput("/registration", firstUserId, PLATFORM_TYPE);
         messageHandler.processUserInput("user", firstUserId, PLATFORM_TYPE);
-        messageHandler.processUserInput("password123", firstUserId, PLATFORM_TYPE);
+        enterPassword("password123", firstUserId);
 
         messageHandler.processUserInput("/registration", secondUserId, PLATFORM_TYPE);
         BotResponse response = messageHandler.processUserInput("user", secondUserId, PLATFORM_TYPE);
@@ -399,11 +414,11 @@ public class MessageHandlerTests {
 
         messageHandler.processUserInput("/registration", regUserId, PLATFORM_TYPE);
         messageHandler.processUserInput("test_login_user", regUserId, PLATFORM_TYPE);
-        messageHandler.processUserInput("correct_password", regUserId, PLATFORM_TYPE);
+        enterPassword("correct_password", regUserId);
 
         messageHandler.processUserInput("/login", loginUserId, PLATFORM_TYPE);
         messageHandler.processUserInput("test_login_user", loginUserId, PLATFORM_TYPE);
-        BotResponse response = messageHandler.processUserInput("wrong_password", loginUserId, PLATFORM_TYPE);
+        BotResponse response = enterPassword("wrong_password", loginUserId);
 
         Assertions.assertEquals("Неверный пароль. Попробуйте снова.", response.getMessage());
     }
@@ -625,5 +640,232 @@ public class MessageHandlerTests {
         2. Полить цветы
         """, tasksResponse.getMessage());
     }
-}
 
+    /**
+     * Тестирует импорт задач из файла с повторами.
+     */
+    @Test
+    void testImportSkipsDuplicates() {
+        String userId = "user22";
+        registerTestUser(userId);
+        messageHandler.processUserInput("/add Полить цветы", userId, PLATFORM_TYPE);
+
+        String json = """
+                {
+                  "current_tasks": ["Полить цветы", "Накормить кошку", "Накормить кошку"],
+                  "completed_tasks": ["Помыть пол"]
+                }
+                """;
+        BotResponse response = messageHandler.processImport(
+                new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), userId, PLATFORM_TYPE);
+        Assertions.assertEquals("""
+                Импорт завершен успешно!
+                Добавлено текущих задач: 1, выполненных: 1, пропущено повторов: 2
+                Можете проверить списки с помощью команд /tasks и /dTask
+                """, response.getMessage());
+
+        BotResponse tasksResponse = messageHandler.processUserInput("/tasks", userId, PLATFORM_TYPE);
+        Assertions.assertEquals("""
+        📝 Ваши задачи:
+        1. Полить цветы
+        2. Накормить кошку
+        """, tasksResponse.getMessage());
+
+        BotResponse dTaskResponse = messageHandler.processUserInput("/dTask", userId, PLATFORM_TYPE);
+        Assertions.assertEquals("""
+            ✅ Выполненные задачи:
+            1. Помыть пол
+            """, dTaskResponse.getMessage());
+    }
+
+    /**
+     * Тестирует экспорт задач в файл.
+     */
+    @Test
+    void testExportTasks() {
+        String userId = "user23";
+        registerTestUser(userId);
+        messageHandler.processUserInput("/add Полить цветы", userId, PLATFORM_TYPE);
+        messageHandler.processUserInput("/add Помыть пол", userId, PLATFORM_TYPE);
+        messageHandler.processUserInput("/done Помыть пол", userId, PLATFORM_TYPE);
+
+        BotResponse response = messageHandler.processUserInput("/export ../list", userId, PLATFORM_TYPE);
+        Assertions.assertTrue(response.hasFile());
+        Assertions.assertEquals(".._list.json", response.getFileName());
+        Assertions.assertEquals("{\"current_tasks\":[\"Полить цветы\"],\"completed_tasks\":[\"Помыть пол\"]}",
+                new String(response.getFileContent(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Тестирует, что в режиме расширения команды и кнопки распознаются таблицей команд,
+     * в том числе с пробелами по краям.
+     */
+    @Test
+    void testSubtaskCommandsWithSpaces() {
+        String userId = "subtask_spaces_user";
+        registerTestUser(userId);
+        messageHandler.processUserInput("/add Нарисовать картину", userId, PLATFORM_TYPE);
+        enterExpandMode(userId);
+
+        Assertions.assertEquals("Отлично! Напишите подзадачу для добавления:",
+                messageHandler.processUserInput("/add_subtask ", userId, PLATFORM_TYPE).getMessage());
+        Assertions.assertEquals("Подзадача добавлена",
+                messageHandler.processUserInput("Купить краски", userId, PLATFORM_TYPE).getMessage());
+        Assertions.assertEquals("Отлично! Напишите подзадачу для удаления:",
+                messageHandler.processUserInput(" \u2718 Удалить подзадачу", userId, PLATFORM_TYPE).getMessage());
+    }
+
+    /**
+     * Тестирует генерацию подзадач с помощью GPT и их сохранение.
+     */
+    @Test
+    void testAddSubtasksWithGpt() throws Exception {
+        messageHandler = new MessageHandler(new TestDatabaseService(),
+                prompt -> CompletableFuture.completedFuture("1. Купить краски\n- Найти пейзаж\n\nКупить краски"));
+        String userId = "user24";
+        registerTestUser(userId);
+        messageHandler.processUserInput("/add Нарисовать картину", userId, PLATFORM_TYPE);
+        enterExpandMode(userId);
+
+        BotResponse response = messageHandler.processUserInput("/add_subtasks_with_gpt", userId, PLATFORM_TYPE);
+        Assertions.assertEquals("Генерирую подзадачи для задачи \"Нарисовать картину\"...", response.getMessage());
+        Assertions.assertTrue(response.hasFollowUp());
+        Assertions.assertEquals("""
+                Предлагаемые подзадачи:
+                1. Купить краски
+                2. Найти пейзаж
+                Нажмите "Сохранить", чтобы добавить их, или "Удалить", чтобы отказаться.""",
+                response.getFollowUp().get().getMessage());
+
+        BotResponse saveResponse = messageHandler.processUserInput("/save_subtasks_from_gpt", userId, PLATFORM_TYPE);
+        Assertions.assertEquals("Сохранено подзадач: 2", saveResponse.getMessage());
+        BotResponse deleteResponse = messageHandler.processUserInput("/delete_subtasks_from_gpt", userId, PLATFORM_TYPE);
+        Assertions.assertEquals("Нет предложенных подзадач.", deleteResponse.getMessage());
+        messageHandler.processUserInput("/finish_expand", userId, PLATFORM_TYPE);
+
+        BotResponse tasksResponse = messageHandler.processUserInput("/tasks", userId, PLATFORM_TYPE);
+        Assertions.assertEquals("""
+        📝 Ваши задачи:
+        1. Нарисовать картину
+         1.1 Купить краски
+         1.2 Найти пейзаж
+        """, tasksResponse.getMessage());
+    }
+
+    /**
+     * Тестирует команды, отправленные текстом кнопки, и расширение задачи по номеру из команды
+     */
+    @Test
+    void testButtonAliasesAndExpandWithNumber() {
+        String userId = "alias_user";
+        registerTestUser(userId);
+        messageHandler.processUserInput("\u2795 Добавить задачу", userId, PLATFORM_TYPE);
+        messageHandler.processUserInput("Задача с кнопки", userId, PLATFORM_TYPE);
+
+        BotResponse tasksResponse = messageHandler.processUserInput("\uD83D\uDCDD Показать список задач", userId, PLATFORM_TYPE);
+        Assertions.assertEquals("""
+        📝 Ваши задачи:
+        1. Задача с кнопки
+        """, tasksResponse.getMessage());
+
+        BotResponse wrongNumberResponse = messageHandler.processUserInput("/expand 5", userId, PLATFORM_TYPE);
+        Assertions.assertEquals("Выберите номер из списка", wrongNumberResponse.getMessage());
+
+        BotResponse wrongParameterResponse = messageHandler.processUserInput("/expand первая", userId, PLATFORM_TYPE);
+        Assertions.assertEquals("Используйте: /expand [номер_задачи] или просто /expand для выбора из списка",
+                wrongParameterResponse.getMessage());
+
+        BotResponse expandResponse = messageHandler.processUserInput("/expand 1", userId, PLATFORM_TYPE);
+        Assertions.assertTrue(expandResponse.getMessage().startsWith("Отлично! Выберите действие"));
+        Assertions.assertTrue(messageHandler.isUserInSubtaskMode(userId));
+        messageHandler.processUserInput("Окончить расширение", userId, PLATFORM_TYPE);
+        Assertions.assertFalse(messageHandler.isUserInSubtaskMode(userId));
+
+        BotResponse unknownResponse = messageHandler.processUserInput("/unknown_command", userId, PLATFORM_TYPE);
+        Assertions.assertTrue(unknownResponse.getMessage().startsWith("Неизвестная команда."));
+    }
+
+    /**
+     * Тестирует, что пароль хранится хешем, пароль открытым текстом пересчитывается при входе,
+     * а число попыток ввода пароля ограничено.
+     */
+    @Test
+    void testPasswordHashingAndAttemptsLimit() throws Exception {
+        String userId = "hash_user";
+        registerTestUser(userId);
+        try (Connection conn = DriverManager.getConnection(TEST_DB_URL);
+             Statement stmt = conn.createStatement()) {
+            ResultSet rs = stmt.executeQuery("SELECT password FROM users WHERE username = 'test_user_hash_user'");
+            Assertions.assertTrue(rs.next());
+            Assertions.assertTrue(rs.getString(1).startsWith("pbkdf2-sha512$"));
+            stmt.execute("INSERT INTO users (username, password) VALUES ('legacy_user', 'legacy_password')");
+        }
+
+        String legacyId = "legacy_platform_user";
+        messageHandler.processUserInput("/login", legacyId, PLATFORM_TYPE);
+        messageHandler.processUserInput("legacy_user", legacyId, PLATFORM_TYPE);
+        Assertions.assertEquals("Неверный пароль. Попробуйте снова.",
+                enterPassword("wrong_password", legacyId).getMessage());
+
+        messageHandler.processUserInput("/login", legacyId, PLATFORM_TYPE);
+        messageHandler.processUserInput("legacy_user", legacyId, PLATFORM_TYPE);
+        Assertions.assertTrue(enterPassword("legacy_password", legacyId)
+                .getMessage().startsWith("✅ Вход выполнен успешно!"));
+        try (Connection conn = DriverManager.getConnection(TEST_DB_URL);
+             Statement stmt = conn.createStatement()) {
+            ResultSet rs = stmt.executeQuery("SELECT password FROM users WHERE username = 'legacy_user'");
+            Assertions.assertTrue(rs.next());
+            Assertions.assertTrue(rs.getString(1).startsWith("pbkdf2-sha512$"));
+        }
+        messageHandler.processUserInput("/exit", legacyId, PLATFORM_TYPE);
+
+        for (int attempt = 0; attempt < 3; attempt++) {
+            messageHandler.processUserInput("/login", legacyId, PLATFORM_TYPE);
+            messageHandler.processUserInput("legacy_user", legacyId, PLATFORM_TYPE);
+            Assertions.assertEquals("Неверный пароль. Попробуйте снова.",
+                    enterPassword("wrong_password", legacyId).getMessage());
+        }
+        messageHandler.processUserInput("/login", legacyId, PLATFORM_TYPE);
+        messageHandler.processUserInput("legacy_user", legacyId, PLATFORM_TYPE);
+        Assertions.assertTrue(enterPassword("legacy_password", legacyId)
+                .getMessage().startsWith("Слишком много попыток."));
+    }
+
+    /**
+     * Тестирует назначение срока и напоминания и показ срока в списке задач.
+     */
+    @Test
+    void testDueAndRemindCommands() throws Exception {
+        String userId = "reminder_user";
+        registerTestUser(userId);
+        messageHandler.processUserInput("/add Сдать отчет", userId, PLATFORM_TYPE);
+
+        Assertions.assertTrue(messageHandler.processUserInput("/remind", userId, PLATFORM_TYPE)
+                .getMessage().startsWith("Используйте: /remind [номер_задачи] [время]"));
+        Assertions.assertTrue(messageHandler.processUserInput("/due 1 когда-нибудь", userId, PLATFORM_TYPE)
+                .getMessage().startsWith("Используйте: /due [номер_задачи] [срок]"));
+        Assertions.assertEquals("Выберите номер из списка",
+                messageHandler.processUserInput("/remind 2 +1h", userId, PLATFORM_TYPE).getMessage());
+
+        BotResponse dueResponse = messageHandler.processUserInput("/due 1 +2h", userId, PLATFORM_TYPE);
+        Assertions.assertTrue(dueResponse.getMessage().startsWith("Срок задачи \"Сдать отчет\": "));
+        BotResponse tasksResponse = messageHandler.processUserInput("/tasks", userId, PLATFORM_TYPE);
+        Assertions.assertTrue(tasksResponse.getMessage().startsWith("📝 Ваши задачи:\n1. Сдать отчет (до "));
+
+        Assertions.assertTrue(messageHandler.processUserInput("/remind 1 +30m", userId, PLATFORM_TYPE)
+                .getMessage().startsWith("Напомню о задаче \"Сдать отчет\" "));
+        try (Connection conn = DriverManager.getConnection(TEST_DB_URL);
+             Statement stmt = conn.createStatement()) {
+            ResultSet rs = stmt.executeQuery("SELECT due_at - remind_at FROM user_tasks WHERE task_text = 'Сдать отчет'");
+            Assertions.assertTrue(rs.next());
+            Assertions.assertTrue(Math.abs(rs.getLong(1) - 90 * 60_000) < 60_000);
+        }
+
+        Assertions.assertEquals("Срок задачи \"Сдать отчет\" снят.",
+                messageHandler.processUserInput("/due 1 off", userId, PLATFORM_TYPE).getMessage());
+        Assertions.assertEquals("""
+        📝 Ваши задачи:
+        1. Сдать отчет
+        """, messageHandler.processUserInput("/tasks", userId, PLATFORM_TYPE).getMessage());
+    }
+}
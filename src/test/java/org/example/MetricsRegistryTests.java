@@ -0,0 +1,99 @@
+package org.example;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Тесты для метрик: гистограммы задержек, формата Prometheus и HTTP сервера.
+ */
+public class MetricsRegistryTests {
+
+    /**
+     * Тестирует точность перцентилей гистограммы.
+     */
+    @Test
+    void testHistogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 10_000; micros++) {
+            histogram.record(micros * 1000);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        Assertions.assertEquals(10_000, snapshot.count());
+        Assertions.assertEquals(10_000_000, snapshot.maxNanos());
+        assertWithin(5_000_000, snapshot.valueAt(0.5));
+        assertWithin(9_900_000, snapshot.valueAt(0.99));
+        Assertions.assertEquals(10_000_000, snapshot.valueAt(1.0));
+        Assertions.assertEquals(0, new LatencyHistogram().snapshot().valueAt(0.99));
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        Assertions.assertTrue(Math.abs(actual - expected) <= expected * 0.0625,
+                "Ожидалось около " + expected + ", получено " + actual);
+    }
+
+    /**
+     * Тестирует, что каждое значение попадает в корзину, верхняя граница которой не меньше его.
+     */
+    @Test
+    void testBucketBounds() {
+        long[] values = {0, 1, 15, 16, 17, 31, 32, 1000, 123_456_789, Long.MAX_VALUE};
+        for (long value : values) {
+            int index = LatencyHistogram.bucketIndex(value);
+            Assertions.assertTrue(LatencyHistogram.upperBound(index) >= value, "Значение " + value);
+            if (index > 0) {
+                Assertions.assertTrue(LatencyHistogram.upperBound(index - 1) < value, "Значение " + value);
+            }
+        }
+    }
+
+    /**
+     * Тестирует текстовый формат Prometheus и ограничение количества меток.
+     */
+    @Test
+    void testScrapeFormat() {
+        MetricsRegistry registry = new MetricsRegistry();
+        MetricsRegistry.Family<LongAdder> errors = registry.counter("test_errors_total", "Ошибки", "command");
+        errors.labels("/add").add(3);
+        registry.histogram("test_duration_seconds", "Время", "command").labels("/add").record(2_000_000);
+        registry.gauge("test_ratio", "Доля", "cache", "sessions", () -> 0.25);
+        for (int i = 0; i < 300; i++) {
+            errors.labels("/c" + i).increment();
+        }
+
+        String text = registry.scrape();
+        Assertions.assertTrue(text.contains("# TYPE test_errors_total counter\n"));
+        Assertions.assertTrue(text.contains("test_errors_total{command=\"/add\"} 3\n"));
+        Assertions.assertTrue(text.contains("# TYPE test_duration_seconds summary\n"));
+        Assertions.assertTrue(text.contains("test_duration_seconds{command=\"/add\",quantile=\"0.99\"} 0.002\n"));
+        Assertions.assertTrue(text.contains("test_duration_seconds_count{command=\"/add\"} 1\n"));
+        Assertions.assertTrue(text.contains("test_ratio{cache=\"sessions\"} 0.25\n"));
+        Assertions.assertTrue(text.contains("test_errors_total{command=\"other\"} "));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> registry.histogram("test_errors_total", "Ошибки", "command"));
+    }
+
+    /**
+     * Тестирует выдачу метрик по HTTP.
+     */
+    @Test
+    void testMetricsServer() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("test_requests_total", "Запросы", "platform").labels("telegram").increment();
+        try (MetricsServer server = new MetricsServer(registry, new InetSocketAddress("127.0.0.1", 0))) {
+            HttpResponse<String> response = HttpClient.newHttpClient().send(
+                    HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.getPort() + "/metrics")).build(),
+                    HttpResponse.BodyHandlers.ofString());
+
+            Assertions.assertEquals(200, response.statusCode());
+            Assertions.assertTrue(response.body().contains("test_requests_total{platform=\"telegram\"} 1\n"));
+        }
+    }
+}
@@ -0,0 +1,349 @@
+package org.example;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Тесты для класса OpenRouterClient на локальном HTTP сервере-заглушке.
+ */
+public class OpenRouterClientTests {
+    private static final String COMPLETION = """
+            {"choices": [{"message": {"role": "assistant", "content": "Купить краски\\nНайти пейзаж\\n"}}]}
+            """;
+
+    @TempDir
+    Path tempDir;
+
+    private HttpServer server;
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final AtomicInteger concurrentRequests = new AtomicInteger();
+    private final AtomicInteger maxConcurrentRequests = new AtomicInteger();
+    private volatile int statusCode = 200;
+    private volatile String responseBody = COMPLETION;
+    private volatile String lastRequestBody;
+    private final CountDownLatch firstSubtaskReceived = new CountDownLatch(1);
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/chat/completions", this::handle);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    /**
+     * Отвечает заранее заданным телом, запоминая максимальное число одновременных запросов.
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        requestCount.incrementAndGet();
+        int current = concurrentRequests.incrementAndGet();
+        maxConcurrentRequests.accumulateAndGet(current, Math::max);
+        try {
+            lastRequestBody = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            if (statusCode == 200 && lastRequestBody.contains("\"stream\":true")) {
+                streamEvents(exchange);
+                return;
+            }
+            Thread.sleep(50);
+            byte[] body = responseBody.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(statusCode, body.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(body);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            concurrentRequests.decrementAndGet();
+        }
+    }
+
+    /**
+     * Отвечает потоком server-sent events, разбивая строки подзадач на фрагменты.
+     * Вторая половина ответа отправляется только после того, как клиент получил первую подзадачу.
+     */
+    private void streamEvents(HttpExchange exchange) throws IOException, InterruptedException {
+        exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            writeEvent(outputStream, ": OPENROUTER PROCESSING");
+            writeEvent(outputStream, delta("Купить "));
+            writeEvent(outputStream, delta("краски\\nНайти"));
+            firstSubtaskReceived.await(5, TimeUnit.SECONDS);
+            writeEvent(outputStream, delta(" пейзаж\\n"));
+            writeEvent(outputStream, "data: {\"choices\": [{\"delta\": {}, \"finish_reason\": \"stop\"}]}");
+            writeEvent(outputStream, delta("Натянуть холст"));
+            writeEvent(outputStream, "data: [DONE]");
+        }
+    }
+
+    private static String delta(String content) {
+        return "data: {\"choices\": [{\"delta\": {\"content\": \"" + content + "\"}}]}";
+    }
+
+    private static void writeEvent(OutputStream outputStream, String event) throws IOException {
+        outputStream.write((event + "\n\n").getBytes(StandardCharsets.UTF_8));
+        outputStream.flush();
+    }
+
+    private OpenRouterClient client(int maxInFlight) {
+        URI endpoint = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/chat/completions");
+        return new OpenRouterClient("test-key", endpoint, "test-model",
+                Duration.ofSeconds(2), Duration.ofSeconds(5), maxInFlight);
+    }
+
+    /**
+     * Тестирует разбор успешного ответа и формирование тела запроса.
+     */
+    @Test
+    void testSendRequest() throws Exception {
+        String response = client(2).sendRequest("Нарисовать \"картину\"\nмаслом");
+
+        Assertions.assertEquals("Купить краски\nНайти пейзаж", response);
+        Assertions.assertTrue(lastRequestBody.contains("\"model\":\"test-model\""));
+        Assertions.assertTrue(lastRequestBody.contains("Нарисовать \\\"картину\\\"\\nмаслом"));
+    }
+
+    /**
+     * Тестирует асинхронный запрос.
+     */
+    @Test
+    void testSendRequestAsync() throws Exception {
+        Assertions.assertEquals("Купить краски\nНайти пейзаж", client(2).sendRequestAsync("задача").get());
+    }
+
+    /**
+     * Тестирует, что ошибка сервера передается вызывающему.
+     */
+    @Test
+    void testErrorResponse() {
+        statusCode = 429;
+        responseBody = """
+                {"error": {"message": "Rate limit exceeded", "type": "rate_limit"}}
+                """;
+
+        ExecutionException e = Assertions.assertThrows(ExecutionException.class,
+                () -> client(2).sendRequestAsync("задача").get());
+        Assertions.assertEquals("HTTP Error: 429 - Rate limit exceeded (Type: rate_limit)", e.getCause().getMessage());
+
+        responseBody = """
+                {"error": {"type": "rate_limit"}}
+                """;
+        e = Assertions.assertThrows(ExecutionException.class, () -> client(2).sendRequestAsync("задача").get());
+        Assertions.assertEquals("HTTP Error: 429 (Type: rate_limit)", e.getCause().getMessage());
+    }
+
+    /**
+     * Тестирует ограничение количества одновременных запросов.
+     */
+    @Test
+    void testInFlightLimit() throws Exception {
+        OpenRouterClient client = client(2);
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(client.sendRequestAsync("задача " + i));
+        }
+        for (CompletableFuture<String> future : futures) {
+            Assertions.assertEquals("Купить краски\nНайти пейзаж", future.get());
+        }
+        Assertions.assertTrue(maxConcurrentRequests.get() <= 2,
+                "Одновременных запросов: " + maxConcurrentRequests.get());
+    }
+
+    /**
+     * Тестирует, что одинаковый с точностью до пробелов и регистра запрос берется из кэша.
+     */
+    @Test
+    void testCachingClient() throws Exception {
+        try (DatabaseService databaseService =
+                     new DatabaseService("jdbc:sqlite:" + tempDir.resolve("ai_cache_test.db"))) {
+            CachingOpenRouterClient cachingClient = new CachingOpenRouterClient(client(2), databaseService,
+                    Duration.ofHours(1), 100);
+
+            Assertions.assertEquals("Купить краски\nНайти пейзаж",
+                    cachingClient.sendRequestAsync("Нарисовать картину").get());
+            Assertions.assertEquals("Купить краски\nНайти пейзаж",
+                    cachingClient.sendRequestAsync("  нарисовать   КАРТИНУ ").get());
+            Assertions.assertEquals(1, requestCount.get());
+
+            cachingClient.sendRequestAsync("Нарисовать картину", true).get();
+            Assertions.assertEquals(2, requestCount.get());
+            Assertions.assertEquals(new CachingOpenRouterClient.Stats(1, 1, 1), cachingClient.getStats());
+        }
+    }
+
+    /**
+     * Тестирует, что кэширующий клиент получает подзадачи потоком, а повторный запрос берет из кэша.
+     */
+    @Test
+    void testCachingClientStreamsSubtasks() throws Exception {
+        try (DatabaseService databaseService =
+                     new DatabaseService("jdbc:sqlite:" + tempDir.resolve("ai_cache_stream_test.db"))) {
+            CachingOpenRouterClient cachingClient = new CachingOpenRouterClient(client(2), databaseService,
+                    Duration.ofHours(1), 100);
+            List<String> received = Collections.synchronizedList(new ArrayList<>());
+            List<String> subtasks = cachingClient.streamSubtasks("Нарисовать картину", subtask -> {
+                received.add(subtask);
+                firstSubtaskReceived.countDown();
+            }).get(10, TimeUnit.SECONDS);
+
+            List<String> expected = List.of("Купить краски", "Найти пейзаж", "Натянуть холст");
+            Assertions.assertEquals(expected, subtasks);
+            Assertions.assertEquals(expected, received);
+            Assertions.assertTrue(lastRequestBody.contains("\"stream\":true"));
+
+            received.clear();
+            Assertions.assertEquals(expected, cachingClient.streamSubtasks("нарисовать картину", received::add)
+                    .get(10, TimeUnit.SECONDS));
+            Assertions.assertEquals(expected, received);
+            Assertions.assertEquals(1, requestCount.get());
+            Assertions.assertEquals(new CachingOpenRouterClient.Stats(1, 1, 0), cachingClient.getStats());
+
+            Assertions.assertEquals(expected, cachingClient.streamSubtasks("нарисовать картину", true, subtask -> { })
+                    .get(10, TimeUnit.SECONDS));
+            Assertions.assertEquals(2, requestCount.get());
+            Assertions.assertEquals(new CachingOpenRouterClient.Stats(1, 1, 1), cachingClient.getStats());
+        }
+    }
+
+    /**
+     * Тестирует, что пустой ответ модели не сохраняется в кэш и следующий запрос снова уходит в OpenRouter.
+     */
+    @Test
+    void testCachingClientSkipsEmptyResponse() throws Exception {
+        responseBody = """
+                {"choices": [{"message": {"role": "assistant", "content": "\\n"}}]}
+                """;
+        try (DatabaseService databaseService =
+                     new DatabaseService("jdbc:sqlite:" + tempDir.resolve("ai_cache_empty_test.db"))) {
+            CachingOpenRouterClient cachingClient = new CachingOpenRouterClient(client(2), databaseService,
+                    Duration.ofHours(1), 100);
+            Assertions.assertTrue(cachingClient.sendRequestAsync("Нарисовать картину").get().isBlank());
+            Assertions.assertTrue(cachingClient.sendRequestAsync("Нарисовать картину").get().isBlank());
+            Assertions.assertEquals(2, requestCount.get());
+            Assertions.assertEquals(new CachingOpenRouterClient.Stats(0, 2, 0), cachingClient.getStats());
+        }
+    }
+
+    /**
+     * Тестирует, что кэш ответов не разрастается больше заданного размера
+     * с запасом на сохранения между очистками.
+     */
+    @Test
+    void testCachingClientTrimsEntries() throws Exception {
+        String url = "jdbc:sqlite:" + tempDir.resolve("ai_cache_trim_test.db");
+        try (DatabaseService databaseService = new DatabaseService(url)) {
+            CachingOpenRouterClient cachingClient = new CachingOpenRouterClient(client(4), databaseService,
+                    Duration.ofHours(1), 20);
+            for (int i = 0; i < 25; i++) {
+                cachingClient.sendRequestAsync("Задача " + i).get();
+            }
+            try (Connection conn = DriverManager.getConnection(url);
+                 Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM ai_response_cache")) {
+                Assertions.assertTrue(rs.next());
+                Assertions.assertTrue(rs.getInt(1) <= 22, "Записей в кэше: " + rs.getInt(1));
+            }
+        }
+    }
+
+    /**
+     * Тестирует, что ошибка чтения кэша считается промахом и запрос уходит в OpenRouter.
+     */
+    @Test
+    void testCachingClientLookupFailureIsMiss() throws Exception {
+        DatabaseService databaseService = new DatabaseService("jdbc:sqlite:" + tempDir.resolve("ai_cache_closed.db"));
+        databaseService.close();
+        CachingOpenRouterClient cachingClient = new CachingOpenRouterClient(client(2), databaseService,
+                Duration.ofHours(1), 100);
+
+        Assertions.assertEquals("Купить краски\nНайти пейзаж",
+                cachingClient.sendRequestAsync("Нарисовать картину").get(10, TimeUnit.SECONDS));
+        Assertions.assertEquals(1, requestCount.get());
+        Assertions.assertEquals(new CachingOpenRouterClient.Stats(0, 1, 0), cachingClient.getStats());
+    }
+
+    /**
+     * Тестирует, что подзадачи потокового ответа приходят по мере готовности строк.
+     */
+    @Test
+    void testStreamSubtasks() throws Exception {
+        List<String> received = Collections.synchronizedList(new ArrayList<>());
+        List<String> subtasks = client(2).streamSubtasks("Нарисовать картину", subtask -> {
+            received.add(subtask);
+            firstSubtaskReceived.countDown();
+        }).get(10, TimeUnit.SECONDS);
+
+        Assertions.assertEquals(List.of("Купить краски", "Найти пейзаж", "Натянуть холст"), subtasks);
+        Assertions.assertEquals(subtasks, received);
+        Assertions.assertTrue(lastRequestBody.contains("\"stream\":true"));
+    }
+
+    /**
+     * Тестирует, что ошибка сервера в потоковом режиме приходит подписчику в onError.
+     */
+    @Test
+    void testStreamSubtasksError() throws Exception {
+        statusCode = 429;
+        responseBody = """
+                {"error": {"message": "Rate limit exceeded", "type": "rate_limit"}}
+                """;
+        CompletableFuture<Throwable> error = new CompletableFuture<>();
+        client(2).streamSubtasks("задача").subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(String item) {
+                error.completeExceptionally(new AssertionError("Неожиданная подзадача " + item));
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                error.complete(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                error.completeExceptionally(new AssertionError("Поток завершился без ошибки"));
+            }
+        });
+
+        Assertions.assertEquals("HTTP Error: 429 - Rate limit exceeded (Type: rate_limit)",
+                error.get(10, TimeUnit.SECONDS).getMessage());
+    }
+}
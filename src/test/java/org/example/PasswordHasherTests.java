@@ -0,0 +1,103 @@
+package org.example;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Тесты для хеширования паролей и ограничения частоты попыток.
+ */
+public class PasswordHasherTests {
+
+    /**
+     * Тестирует формат хеша, проверку пароля и случайную соль.
+     */
+    @Test
+    void testHashAndVerify() {
+        try (PasswordHasher hasher = new PasswordHasher(1000, 1, 4)) {
+            String hash = hasher.hash("secret");
+            String[] parts = hash.split("\\$");
+            Assertions.assertEquals(4, parts.length);
+            Assertions.assertEquals("pbkdf2-sha512", parts[0]);
+            Assertions.assertEquals("1000", parts[1]);
+
+            Assertions.assertTrue(hasher.verify("secret", hash));
+            Assertions.assertFalse(hasher.verify("Secret", hash));
+            Assertions.assertNotEquals(hash, hasher.hash("secret"));
+            Assertions.assertFalse(hasher.needsRehash(hash));
+
+            Assertions.assertFalse(hasher.verify("secret", "pbkdf2-sha512$1000$broken"));
+            Assertions.assertFalse(hasher.verify("secret", "pbkdf2-sha512$x$AAAA$AAAA"));
+        }
+    }
+
+    /**
+     * Тестирует проверку паролей открытым текстом и хешей с устаревшей стоимостью.
+     */
+    @Test
+    void testLegacyPasswordsNeedRehash() {
+        try (PasswordHasher weak = new PasswordHasher(500, 1, 4);
+             PasswordHasher hasher = new PasswordHasher(1000, 1, 4)) {
+            Assertions.assertTrue(hasher.verify("plain", "plain"));
+            Assertions.assertFalse(hasher.verify("plain", "plain2"));
+            Assertions.assertTrue(hasher.needsRehash("plain"));
+            Assertions.assertFalse(PasswordHasher.isHashed("plain"));
+
+            String oldHash = weak.hash("secret");
+            Assertions.assertTrue(hasher.verify("secret", oldHash));
+            Assertions.assertTrue(hasher.needsRehash(oldHash));
+            Assertions.assertFalse(weak.needsRehash(hasher.hash("secret")));
+        }
+    }
+
+    /**
+     * Тестирует, что при переполненной очереди вычисление отклоняется, а не ждет.
+     */
+    @Test
+    void testRejectsWhenQueueIsFull() throws Exception {
+        try (PasswordHasher hasher = new PasswordHasher(1_000_000, 1, 1)) {
+            CountDownLatch started = new CountDownLatch(2);
+            Thread first = Thread.ofVirtual().start(() -> {
+                started.countDown();
+                hasher.hash("first");
+            });
+            Thread second = Thread.ofVirtual().start(() -> {
+                started.countDown();
+                hasher.hash("second");
+            });
+            Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+            Thread.sleep(200);
+            Assertions.assertThrows(RejectedExecutionException.class, () -> hasher.hash("third"));
+            first.join();
+            second.join();
+        }
+    }
+
+    /**
+     * Тестирует ограничение попыток: серия попыток, пауза, восстановление и очистку ключей.
+     */
+    @Test
+    void testRateLimiter() {
+        AtomicLong now = new AtomicLong();
+        RateLimiter limiter = new RateLimiter(3, Duration.ofSeconds(30), 2, now::get);
+
+        for (int i = 0; i < 3; i++) {
+            Assertions.assertEquals(0, limiter.tryAcquire("telegram:1"));
+        }
+        Assertions.assertEquals(Duration.ofSeconds(10).toNanos(), limiter.tryAcquire("telegram:1"));
+        Assertions.assertEquals(0, limiter.tryAcquire("discord:1"));
+
+        now.addAndGet(Duration.ofSeconds(10).toNanos());
+        Assertions.assertEquals(0, limiter.tryAcquire("telegram:1"));
+        Assertions.assertTrue(limiter.tryAcquire("telegram:1") > 0);
+
+        now.addAndGet(Duration.ofMinutes(1).toNanos());
+        limiter.tryAcquire("telegram:2");
+        Assertions.assertEquals(1, limiter.size());
+    }
+}
@@ -0,0 +1,182 @@
+package org.example;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Тесты для планировщика напоминаний и разбора времени напоминания.
+ */
+public class ReminderSchedulerTests {
+    private static final long HOUR = 3_600_000;
+
+    @TempDir
+    Path tempDir;
+
+    private DatabaseService databaseService;
+    private final AtomicLong now = new AtomicLong(1_000 * HOUR);
+    private final List<ReminderScheduler.Delivery> delivered = new ArrayList<>();
+    private int acceptLimit = Integer.MAX_VALUE;
+    private ReminderScheduler scheduler;
+    private String userId;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        databaseService = new DatabaseService("jdbc:sqlite:" + tempDir.resolve("reminders_test.db"));
+        databaseService.registerUser("reminder_user", "hash");
+        databaseService.createSession("reminder_user", "telegram", "100");
+        databaseService.createSession("reminder_user", "discord", "200");
+        userId = databaseService.getUserIdByPlatform("telegram", "100");
+
+        scheduler = new ReminderScheduler(databaseService, 1000, 24 * HOUR, now::get);
+        scheduler.register(new ReminderScheduler.Sender() {
+            @Override
+            public String platformType() {
+                return "telegram";
+            }
+
+            @Override
+            public int sendReminders(List<ReminderScheduler.Delivery> deliveries) {
+                int accepted = Math.min(deliveries.size(), acceptLimit);
+                delivered.addAll(deliveries.subList(0, accepted));
+                return accepted;
+            }
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.close();
+        databaseService.close();
+    }
+
+    private int addTask(String taskText, Long remindAt, Long dueAt) throws SQLException {
+        databaseService.addTask(userId, taskText);
+        int taskId = databaseService.getTaskId(userId, taskText);
+        databaseService.setTaskDueAndRemindAt(userId, taskId, dueAt);
+        databaseService.setTaskRemindAt(userId, taskId, remindAt);
+        return taskId;
+    }
+
+    /**
+     * Тестирует, что в bot_reminders_sent_total попадают только напоминания, принятые платформой.
+     */
+    @Test
+    void testSentCountsAcceptedReminders() throws SQLException {
+        LongAdder sent = MetricsRegistry.get().counter("bot_reminders_sent_total",
+                "Отправленные напоминания о задачах", "platform").labels("telegram");
+        addTask("Первая", now.get() - HOUR, null);
+        addTask("Вторая", now.get() - HOUR, null);
+        acceptLimit = 1;
+
+        long before = sent.sum();
+        scheduler.tick();
+        now.addAndGet(1_000);
+        scheduler.tick();
+        Assertions.assertEquals(1, delivered.size());
+        Assertions.assertEquals(before + 1, sent.sum());
+    }
+
+    /**
+     * Тестирует отправку пакетом: просроченные и наступившие напоминания уходят на платформы
+     * пользователя, после отправки remind_at снимается, удаленные задачи пропускаются.
+     */
+    @Test
+    void testDueRemindersAreSentOnceInBatch() throws SQLException {
+        addTask("Просрочено", now.get() - HOUR, null);
+        addTask("Полить цветы", now.get() + 5_000, now.get() + HOUR);
+        addTask("Удалена", now.get() + 5_000, null);
+        addTask("Завтра", now.get() + 20 * HOUR, null);
+
+        scheduler.tick();
+        Assertions.assertEquals(4, scheduler.size());
+        Assertions.assertTrue(delivered.isEmpty());
+        now.addAndGet(1_000);
+        scheduler.tick();
+        Assertions.assertEquals(3, scheduler.size());
+        Assertions.assertEquals(List.of(new ReminderScheduler.Delivery("100", "⏰ Напоминание: Просрочено")), delivered);
+
+        databaseService.deleteTask(userId, "Удалена");
+        delivered.clear();
+        now.addAndGet(3_000);
+        scheduler.tick();
+        Assertions.assertTrue(delivered.isEmpty());
+        now.addAndGet(1_000);
+        scheduler.tick();
+        Assertions.assertEquals(1, delivered.size());
+        Assertions.assertEquals("100", delivered.get(0).platformId());
+        Assertions.assertEquals("⏰ Напоминание: Полить цветы\nСрок: "
+                + ReminderService.formatTime(now.get() - 5_000 + HOUR), delivered.get(0).message());
+        Assertions.assertEquals(1, scheduler.size());
+
+        Assertions.assertTrue(databaseService.loadReminders(0, now.get() + HOUR).isEmpty());
+        Assertions.assertEquals(1, databaseService.loadReminders(0, Long.MAX_VALUE).size());
+    }
+
+    /**
+     * Тестирует, что дальние напоминания загружаются, когда пройдена половина окна,
+     * а перенесенное напоминание заменяет прежнее.
+     */
+    @Test
+    void testWindowIsRefilledAndRescheduleReplaces() throws SQLException {
+        int later = addTask("Через двое суток", now.get() + 48 * HOUR, null);
+        int moved = addTask("Перенесена", now.get() + HOUR, null);
+
+        scheduler.tick();
+        Assertions.assertEquals(1, scheduler.size());
+
+        long movedAt = now.get() + 2 * HOUR;
+        databaseService.setTaskRemindAt(userId, moved, movedAt);
+        scheduler.schedule(new DatabaseService.Reminder(moved, userId, "Перенесена", movedAt, null));
+        Assertions.assertEquals(1, scheduler.size());
+        scheduler.schedule(new DatabaseService.Reminder(later, userId, "Через двое суток", now.get() + 48 * HOUR, null));
+        Assertions.assertEquals(1, scheduler.size());
+
+        now.addAndGet(HOUR);
+        scheduler.tick();
+        Assertions.assertTrue(delivered.isEmpty());
+        now.addAndGet(HOUR);
+        scheduler.tick();
+        Assertions.assertEquals(1, delivered.size());
+
+        now.addAndGet(34 * HOUR);
+        scheduler.tick();
+        Assertions.assertEquals(1, scheduler.size());
+        scheduler.cancel(later);
+        Assertions.assertEquals(0, scheduler.size());
+    }
+
+    /**
+     * Тестирует форматы времени напоминания.
+     */
+    @Test
+    void testParseTime() {
+        ZonedDateTime at = ZonedDateTime.of(2025, 3, 10, 12, 0, 0, 0, ZoneId.of("Europe/Moscow"));
+        long base = at.toInstant().toEpochMilli();
+
+        Assertions.assertEquals(base + 30 * 60_000, ReminderService.parseTime("+30m", at));
+        Assertions.assertEquals(base + 2 * HOUR, ReminderService.parseTime("+2h", at));
+        Assertions.assertEquals(base + 24 * HOUR, ReminderService.parseTime(" +1d ", at));
+        Assertions.assertEquals(base + 6 * HOUR + 30 * 60_000, ReminderService.parseTime("18:30", at));
+        Assertions.assertEquals(base + 21 * HOUR, ReminderService.parseTime("09:00", at));
+        Assertions.assertEquals(base + 24 * HOUR, ReminderService.parseTime("11.03 12:00", at));
+        Assertions.assertEquals(at.plusYears(1).toInstant().toEpochMilli(),
+                ReminderService.parseTime("10.03.2026 12:00", at));
+
+        Assertions.assertNull(ReminderService.parseTime("завтра", at));
+        Assertions.assertNull(ReminderService.parseTime("+5x", at));
+        Assertions.assertNull(ReminderService.parseTime("25:00", at));
+        Assertions.assertNull(ReminderService.parseTime("31.02 10:00", at));
+    }
+}
@@ -0,0 +1,102 @@
+package org.example;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+
+/**
+ * Тесты для профилей хранилища SQLite.
+ */
+public class StorageProfileTests {
+    @TempDir
+    Path tempDir;
+
+    private static AppConfig config(String... keyValues) {
+        Properties properties = new Properties();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            properties.setProperty(keyValues[i], keyValues[i + 1]);
+        }
+        return new AppConfig(properties);
+    }
+
+    private static String pragma(Connection connection, String name) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA " + name)) {
+            Assertions.assertTrue(rs.next());
+            return rs.getString(1);
+        }
+    }
+
+    /**
+     * Тестирует выбор готового профиля по имени без учета регистра и пробелов.
+     */
+    @Test
+    void testNamed() {
+        Assertions.assertSame(StorageProfile.LEGACY, StorageProfile.named("legacy"));
+        Assertions.assertSame(StorageProfile.DURABLE, StorageProfile.named(" Durable "));
+        Assertions.assertSame(StorageProfile.BALANCED, StorageProfile.named("BALANCED"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> StorageProfile.named("fast"));
+    }
+
+    /**
+     * Тестирует сборку профиля из настроек: основа из db.profile, отдельные PRAGMA из db.pragma.*.
+     */
+    @Test
+    void testFromConfig() {
+        Assertions.assertEquals(StorageProfile.BALANCED, StorageProfile.fromConfig(config()));
+        Assertions.assertEquals(StorageProfile.LEGACY, StorageProfile.fromConfig(config("db.profile", "legacy")));
+
+        StorageProfile profile = StorageProfile.fromConfig(config(
+                "db.profile", "durable",
+                "db.pragma.synchronous", "normal",
+                "db.pragma.cache_size", "-4000",
+                "db.pragma.busy_timeout", "1000"));
+
+        Assertions.assertEquals(new StorageProfile("WAL", "NORMAL", -4000, StorageProfile.DURABLE.mmapSize(),
+                1000, "MEMORY"), profile);
+    }
+
+    /**
+     * Тестирует отказ для недопустимых значений PRAGMA и неизвестного профиля.
+     */
+    @Test
+    void testRejectsBadValues() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> StorageProfile.fromConfig(config("db.pragma.journal_mode", "WAL; DROP TABLE users")));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> StorageProfile.fromConfig(config("db.pragma.synchronous", "SOMETIMES")));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> StorageProfile.fromConfig(config("db.pragma.temp_store", "DISK")));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> StorageProfile.fromConfig(config("db.pragma.mmap_size", "-1")));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> StorageProfile.fromConfig(config("db.pragma.busy_timeout", "-1")));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> StorageProfile.fromConfig(config("db.profile", "unknown")));
+    }
+
+    /**
+     * Тестирует, что профиль применяется к соединению.
+     */
+    @Test
+    void testApply() throws SQLException {
+        StorageProfile profile = new StorageProfile("wal", "normal", -4000, 0, 1500, "memory");
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + tempDir.resolve("profile.db"))) {
+            profile.apply(connection);
+
+            Assertions.assertEquals("wal", pragma(connection, "journal_mode"));
+            Assertions.assertEquals("1", pragma(connection, "synchronous"));
+            Assertions.assertEquals("-4000", pragma(connection, "cache_size"));
+            Assertions.assertEquals("1500", pragma(connection, "busy_timeout"));
+            Assertions.assertEquals("2", pragma(connection, "temp_store"));
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package org.example;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Тесты для иерархического колеса таймеров.
+ */
+public class TimingWheelTests {
+
+    /**
+     * Тестирует, что таймеры на всех уровнях срабатывают в свой такт, не раньше.
+     */
+    @Test
+    void testTimersFireOnTheirTick() {
+        TimingWheel<Long> wheel = new TimingWheel<>(10, 2, 3, 0);
+        long[] deadlines = {10, 35, 40, 160, 161, 300, 630};
+        for (long deadline : deadlines) {
+            Assertions.assertNotNull(wheel.schedule(deadline, deadline));
+        }
+        Assertions.assertEquals(deadlines.length, wheel.size());
+
+        List<Long> fired = new ArrayList<>();
+        for (long now = 0; now <= 640; now += 10) {
+            for (long deadline : wheel.advance(now)) {
+                Assertions.assertTrue(deadline <= now, "Таймер " + deadline + " сработал в " + now);
+                Assertions.assertTrue(now - deadline < 10, "Таймер " + deadline + " опоздал до " + now);
+                fired.add(deadline);
+            }
+        }
+        Assertions.assertEquals(List.of(10L, 35L, 40L, 160L, 161L, 300L, 630L), fired);
+        Assertions.assertEquals(0, wheel.size());
+    }
+
+    /**
+     * Тестирует случайные моменты при продвижении времени большими шагами.
+     */
+    @Test
+    void testRandomDeadlinesWithLargeSteps() {
+        TimingWheel<Long> wheel = new TimingWheel<>(1, 6, 4, 1_000);
+        Random random = new Random(42);
+        List<Long> expected = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            long deadline = 1_001 + random.nextInt(5_000_000);
+            wheel.schedule(deadline, deadline);
+            expected.add(deadline);
+        }
+        expected.sort(null);
+
+        List<Long> fired = new ArrayList<>();
+        for (long now = 1_000; now <= 5_002_000; now += 1 + random.nextInt(20_000)) {
+            for (long deadline : wheel.advance(now)) {
+                Assertions.assertTrue(deadline <= now);
+                fired.add(deadline);
+            }
+        }
+        fired.addAll(wheel.advance(5_002_000));
+        fired.sort(null);
+        Assertions.assertEquals(expected, fired);
+    }
+
+    /**
+     * Тестирует отмену, горизонт и таймеры с прошедшим моментом.
+     */
+    @Test
+    void testCancelHorizonAndPastDeadlines() {
+        TimingWheel<String> wheel = new TimingWheel<>(1000, 6, 4, 0);
+        TimingWheel.Timeout<String> cancelled = wheel.schedule("cancelled", 5_000_000);
+        TimingWheel.Timeout<String> kept = wheel.schedule("kept", 5_000_000);
+        Assertions.assertTrue(wheel.cancel(cancelled));
+        Assertions.assertFalse(wheel.cancel(cancelled));
+        Assertions.assertFalse(cancelled.isPending());
+        Assertions.assertTrue(kept.isPending());
+
+        Assertions.assertNull(wheel.schedule("too far", wheel.horizonMillis() + 1000));
+        Assertions.assertNotNull(wheel.schedule("edge", wheel.horizonMillis()));
+
+        wheel.advance(10_000);
+        Assertions.assertNotNull(wheel.schedule("past", 0));
+        Assertions.assertEquals(List.of("past"), wheel.advance(11_000));
+
+        Assertions.assertEquals(List.of("kept"), wheel.advance(5_000_000));
+        Assertions.assertFalse(kept.isPending());
+        Assertions.assertEquals(1, wheel.size());
+    }
+}